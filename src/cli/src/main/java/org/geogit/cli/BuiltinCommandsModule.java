@@ -6,6 +6,7 @@ package org.geogit.cli;
 
 import org.geogit.cli.plumbing.Cat;
 import org.geogit.cli.plumbing.DiffTree;
+import org.geogit.cli.plumbing.IndexChangedPaths;
 import org.geogit.cli.plumbing.LsTree;
 import org.geogit.cli.plumbing.MergeBase;
 import org.geogit.cli.plumbing.RebuildGraph;
@@ -78,6 +79,7 @@ import com.google.inject.AbstractModule;
  * @see Fetch
  * @see Version
  * @see RebuildGraph
+ * @see IndexChangedPaths
  */
 public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
 
@@ -124,6 +126,7 @@ public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
         bind(WalkGraph.class);
         bind(Version.class);
         bind(RebuildGraph.class);
+        bind(IndexChangedPaths.class);
     }
 
 }
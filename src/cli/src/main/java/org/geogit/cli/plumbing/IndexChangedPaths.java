@@ -0,0 +1,32 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli.plumbing;
+
+import java.io.IOException;
+
+import org.geogit.api.plumbing.IndexChangedPathsOp;
+import org.geogit.cli.AbstractCommand;
+import org.geogit.cli.CLICommand;
+import org.geogit.cli.GeogitCLI;
+
+import com.beust.jcommander.Parameters;
+
+/**
+ * Computes the changed paths filters used to speed up path limited history queries for the
+ * commits that don't have one yet.
+ * 
+ * @see IndexChangedPathsOp
+ */
+@Parameters(commandNames = "index-changed-paths", commandDescription = "Computes the changed paths filters of commits that lack them.")
+public class IndexChangedPaths extends AbstractCommand implements CLICommand {
+
+    @Override
+    public void runInternal(GeogitCLI cli) throws IOException {
+        Integer count = cli.getGeogit().command(IndexChangedPathsOp.class)
+                .setProgressListener(cli.getProgressListener()).call();
+        cli.getConsole().println(count + " commits indexed.");
+    }
+}
@@ -29,6 +29,7 @@ import org.geogit.repository.Repository;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.io.Files;
 
@@ -132,7 +133,14 @@ public class Clone extends AbstractCommand implements CLICommand {
         GeoGIT geogit = new GeoGIT(cli.getGeogitInjector(), repoDir);
 
         Repository repository = geogit.command(InitOp.class).call();
-        checkParameter(repository != null,
+        boolean resume = false;
+        if (repository == null) {
+            // an existing repository, see if it's an interrupted clone of the same remote
+            Optional<String> interruptedClone = CloneOp.getInterruptedCloneURL(geogit
+                    .getRepository());
+            resume = interruptedClone.isPresent() && interruptedClone.get().equals(repoURL);
+        }
+        checkParameter(repository != null || resume,
                 "Destination path already exists and is not an empty directory.");
         cli.setGeogit(geogit);
         cli.getPlatform().setWorkingDir(repoDir);
@@ -175,7 +183,10 @@ public class Clone extends AbstractCommand implements CLICommand {
             }
         }
 
-        if (sparse) {
+        if (resume) {
+            cli.getConsole().println(
+                    "Resuming clone into '" + cli.getPlatform().pwd().getName() + "'...");
+        } else if (sparse) {
             cli.getConsole()
                     .println(
                             "Performing a sparse clone into '" + cli.getPlatform().pwd().getName()
@@ -12,12 +12,16 @@ import java.util.Map;
 import org.geogit.api.RevObject.TYPE;
 import org.geotools.filter.text.cql2.CQL;
 import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.Feature;
 import org.opengis.filter.Filter;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Envelope;
 
 /**
  * Provides a filter for sparse repositories. A default filter can be applied to all feature types,
@@ -135,4 +139,37 @@ public class RepositoryFilter {
         }
         return false;
     }
+
+    /**
+     * Computes an envelope that contains the bounds of every feature that any of the filters
+     * accepts, so that features, and trees of features, whose bounds don't intersect it can be
+     * discarded without being evaluated.
+     * 
+     * @return the envelope, or {@link Optional#absent()} if some filter is not limited to an area
+     *         or the area is given in a coordinate reference system
+     */
+    public Optional<Envelope> getBounds() {
+        if (repositoryFilters.isEmpty()) {
+            return Optional.absent();
+        }
+        Envelope bounds = new Envelope();
+        for (Filter filter : repositoryFilters.values()) {
+            Envelope filterBounds = (Envelope) filter.accept(
+                    ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            if (filterBounds == null) {
+                return Optional.absent();
+            }
+            if (filterBounds instanceof ReferencedEnvelope
+                    && ((ReferencedEnvelope) filterBounds).getCoordinateReferenceSystem() != null) {
+                // feature bounds are in the native CRS of each feature type
+                return Optional.absent();
+            }
+            if (Double.isInfinite(filterBounds.getWidth())
+                    || Double.isInfinite(filterBounds.getHeight())) {
+                return Optional.absent();
+            }
+            bounds.expandToInclude(filterBounds);
+        }
+        return Optional.of(bounds);
+    }
 }
@@ -0,0 +1,155 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.api.plumbing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.storage.ObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * Applies a set of changes to a root tree and writes the resulting trees straight to the
+ * repository's {@link ObjectDatabase}, returning the {@link ObjectId id} of the new root tree.
+ * <p>
+ * The changes are applied the same way {@link org.geogit.repository.StagingArea#stage staging}
+ * does, to a {@link RevTreeBuilder} per changed tree, but neither the index nor any ref is
+ * touched, so a sequence of commits can be replayed without going through the index.
+ */
+public class ApplyTreeDiff extends AbstractGeoGitOp<ObjectId> {
+
+    private final ObjectDatabase odb;
+
+    private RevTree root;
+
+    private Iterator<DiffEntry> diffs;
+
+    /**
+     * @param odb the repository object database
+     */
+    @Inject
+    public ApplyTreeDiff(ObjectDatabase odb) {
+        this.odb = odb;
+    }
+
+    /**
+     * @param root the root tree to apply the changes to
+     * @return {@code this}
+     */
+    public ApplyTreeDiff setTree(RevTree root) {
+        this.root = root;
+        return this;
+    }
+
+    /**
+     * @param diffs the changes to apply, a removed tree entry removes the whole tree and the
+     *        entries under it are ignored
+     * @return {@code this}
+     */
+    public ApplyTreeDiff setDiffs(Iterator<DiffEntry> diffs) {
+        this.diffs = diffs;
+        return this;
+    }
+
+    /**
+     * Executes the command.
+     *
+     * @return the id of the new root tree
+     */
+    @Override
+    public ObjectId call() {
+        checkNotNull(root, "root tree not set");
+        checkNotNull(diffs, "diffs not set");
+
+        Map<String, RevTreeBuilder> parentTrees = Maps.newHashMap();
+        Map<String, ObjectId> parentMetadataIds = Maps.newHashMap();
+        Set<String> removedTrees = Sets.newHashSet();
+        while (diffs.hasNext()) {
+            final DiffEntry diff = diffs.next();
+            final String fullPath = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+            final String parentPath = NodeRef.parentPath(fullPath);
+            if (null == parentPath) {
+                // it is the root tree that's been changed, nothing else to apply
+                return diff.newObjectId();
+            }
+            if (isRemoved(removedTrees, parentPath)) {
+                continue;
+            }
+            RevTreeBuilder parentTree = getParentTree(parentPath, parentTrees, parentMetadataIds);
+
+            NodeRef oldObject = diff.getOldObject();
+            NodeRef newObject = diff.getNewObject();
+            if (newObject == null) {
+                parentTree.remove(oldObject.name());
+                if (TYPE.TREE.equals(oldObject.getType())) {
+                    removedTrees.add(oldObject.path());
+                }
+            } else {
+                Node node = newObject.getNode();
+                parentTree.put(node);
+                if (oldObject == null) {
+                    parentMetadataIds.put(newObject.path(), newObject.getMetadataId());
+                }
+            }
+        }
+
+        WriteBackAll writeBack = command(WriteBackAll.class).setToIndex(false).setAncestor(root);
+        for (Map.Entry<String, RevTreeBuilder> entry : parentTrees.entrySet()) {
+            String changedTreePath = entry.getKey();
+            if (isRemoved(removedTrees, changedTreePath)) {
+                continue;
+            }
+            writeBack.addTree(changedTreePath, entry.getValue().build(),
+                    parentMetadataIds.get(changedTreePath));
+        }
+        return writeBack.call();
+    }
+
+    private static boolean isRemoved(Set<String> removedTrees, String treePath) {
+        for (String path = treePath; path != null; path = NodeRef.parentPath(path)) {
+            if (removedTrees.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private RevTreeBuilder getParentTree(String parentPath,
+            Map<String, RevTreeBuilder> parentTrees, Map<String, ObjectId> parentMetadataIds) {
+
+        RevTreeBuilder parentBuilder = parentTrees.get(parentPath);
+        if (parentBuilder == null) {
+            if (NodeRef.ROOT.equals(parentPath)) {
+                parentBuilder = root.builder(odb);
+            } else {
+                Optional<NodeRef> parentRef = command(FindTreeChild.class).setParent(root)
+                        .setChildPath(parentPath).call();
+                if (parentRef.isPresent()) {
+                    parentMetadataIds.put(parentPath, parentRef.get().getMetadataId());
+                }
+                parentBuilder = command(FindOrCreateSubtree.class).setParent(root)
+                        .setChildPath(parentPath).call().builder(odb);
+            }
+            parentTrees.put(parentPath, parentBuilder);
+        }
+        return parentBuilder;
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.LsTreeOp.Strategy;
+import org.geogit.api.plumbing.diff.ChangedPathsFilter;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * Computes the {@link ChangedPathsFilter} of a commit against its first parent and stores it in
+ * the {@link GraphDatabase}.
+ * <p>
+ * If the commit changed more than {@link #MAX_FEATURE_PATHS} paths, only the paths of the changed
+ * trees are recorded. If the first parent of the commit is not present (e.g. at the bottom of a
+ * shallow clone) no filter is computed.
+ * <p>
+ * {@link CommitOp} only computes the filter of each new commit when {@link #ENABLED_CONFIG_KEY}
+ * is set to {@code true} in the repository config, since it takes a diff of the commit against its
+ * parent. The filters of the commits that lack one can be computed at any time through
+ * {@link IndexChangedPathsOp}.
+ */
+public class BuildChangedPathsFilter extends AbstractGeoGitOp<Optional<ChangedPathsFilter>> {
+
+    static final int MAX_FEATURE_PATHS = 100000;
+
+    /**
+     * Config key to have the filter of every new commit computed as it's made
+     */
+    public static final String ENABLED_CONFIG_KEY = "log.changedpaths";
+
+    private RevCommit commit;
+
+    private GraphDatabase graphDb;
+
+    private ObjectDatabase objectDb;
+
+    @Inject
+    public BuildChangedPathsFilter(GraphDatabase graphDb, ObjectDatabase objectDb) {
+        this.graphDb = graphDb;
+        this.objectDb = objectDb;
+    }
+
+    /**
+     * @param commit the commit to compute the changed paths filter for
+     * @return {@code this}
+     */
+    public BuildChangedPathsFilter setCommit(RevCommit commit) {
+        this.commit = commit;
+        return this;
+    }
+
+    /**
+     * @return the filter computed and stored for the commit, or {@link Optional#absent()} if the
+     *         commit's first parent is not present
+     */
+    @Override
+    public Optional<ChangedPathsFilter> call() {
+        Preconditions.checkState(commit != null, "commit not set");
+
+        ObjectId oldTreeId = ObjectId.NULL;
+        Optional<ObjectId> parentId = commit.parentN(0);
+        if (parentId.isPresent()) {
+            RevCommit parent = objectDb.getIfPresent(parentId.get(), RevCommit.class);
+            if (parent == null) {
+                return Optional.absent();
+            }
+            oldTreeId = parent.getTreeId();
+        }
+        final ObjectId newTreeId = commit.getTreeId();
+
+        Set<String> paths = Sets.newHashSet();
+        boolean treesOnly = false;
+        Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(oldTreeId)
+                .setNewTree(newTreeId).setReportTrees(true).call();
+        while (diffs.hasNext()) {
+            if (paths.size() >= MAX_FEATURE_PATHS) {
+                treesOnly = true;
+                break;
+            }
+            DiffEntry diff = diffs.next();
+            if (diff.oldPath() != null) {
+                paths.add(diff.oldPath());
+            }
+            if (diff.newPath() != null) {
+                paths.add(diff.newPath());
+            }
+        }
+        if (treesOnly) {
+            paths = changedTreePaths(oldTreeId, newTreeId);
+        }
+
+        ChangedPathsFilter filter = ChangedPathsFilter.create(paths, treesOnly);
+        filter.write(graphDb, commit.getId());
+        return Optional.of(filter);
+    }
+
+    private Set<String> changedTreePaths(ObjectId oldTreeId, ObjectId newTreeId) {
+        MapDifference<String, ObjectId> difference = Maps.difference(treePaths(oldTreeId),
+                treePaths(newTreeId));
+        Set<String> paths = Sets.newHashSet();
+        paths.addAll(difference.entriesOnlyOnLeft().keySet());
+        paths.addAll(difference.entriesOnlyOnRight().keySet());
+        paths.addAll(difference.entriesDiffering().keySet());
+        return paths;
+    }
+
+    private Map<String, ObjectId> treePaths(ObjectId treeId) {
+        Map<String, ObjectId> trees = Maps.newHashMap();
+        if (treeId.isNull()) {
+            return trees;
+        }
+        Iterator<NodeRef> refs = command(LsTreeOp.class).setReference(treeId.toString())
+                .setStrategy(Strategy.DEPTHFIRST_ONLY_TREES).call();
+        while (refs.hasNext()) {
+            NodeRef ref = refs.next();
+            trees.put(ref.path(), ref.objectId());
+        }
+        return trees;
+    }
+}
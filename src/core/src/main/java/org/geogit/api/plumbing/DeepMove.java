@@ -5,30 +5,26 @@
 
 package org.geogit.api.plumbing;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
-import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
-import org.geogit.api.plumbing.LsTreeOp.Strategy;
 import org.geogit.repository.StagingArea;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.StagingDatabase;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
-import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 /**
@@ -36,9 +32,17 @@ import com.google.inject.Inject;
  * database} to the permanent {@link ObjectDatabase object database}, including any child reference,
  * or from the repository database to the index database if {@link #setToIndex} is set to
  * {@code true}.
+ * <p>
+ * Objects are copied in their raw serialized form and removed from the origin database in
+ * batches, so moving a tree takes a single pass over it and the same memory whatever its size.
  */
 public class DeepMove extends AbstractGeoGitOp<ObjectId> {
 
+    /**
+     * Number of objects copied and deleted at once
+     */
+    private static final int BATCH_SIZE = 10000;
+
     private boolean toIndex;
 
     private ObjectDatabase odb;
@@ -143,26 +147,14 @@ public class DeepMove extends AbstractGeoGitOp<ObjectId> {
     private void moveObjects(final ObjectDatabase from, final ObjectDatabase to,
             final Supplier<Iterator<Node>> nodesToMove, final Set<ObjectId> metadataIds) {
 
-        Iterable<ObjectId> ids = new Iterable<ObjectId>() {
-
-            final Function<Node, ObjectId> asId = new Function<Node, ObjectId>() {
-                @Override
-                public ObjectId apply(Node input) {
-                    return input.getObjectId();
-                }
-            };
-
-            @Override
-            public Iterator<ObjectId> iterator() {
-                Iterator<Node> iterator = nodesToMove.get();
-                Iterator<ObjectId> ids = Iterators.transform(iterator, asId);
-
-                return ids;
+        final List<ObjectId> batch = new ArrayList<ObjectId>(BATCH_SIZE);
+        for (Iterator<Node> nodes = nodesToMove.get(); nodes.hasNext();) {
+            batch.add(nodes.next().getObjectId());
+            if (batch.size() == BATCH_SIZE) {
+                moveBatch(batch, from, to);
             }
-        };
-
-        to.putAll(from.getAll(ids));
-        from.deleteAll(ids.iterator());
+        }
+        moveBatch(batch, from, to);
     }
 
     /**
@@ -184,94 +176,88 @@ public class DeepMove extends AbstractGeoGitOp<ObjectId> {
         }
     }
 
+    /**
+     * Moves the tree, its subtrees and bucket trees, and all their features, in a single depth
+     * first walk that only decodes the trees. The objects are copied in their raw form and deleted
+     * from the origin database in batches as they're found, each tree after everything it points
+     * to, so that a tree never reaches the target database before its children even if the move
+     * is interrupted.
+     */
     private void moveTree(final ObjectId treeId, final ObjectDatabase from,
             final ObjectDatabase to, final Set<ObjectId> metadataIds) {
 
-        Supplier<Iterator<NodeRef>> refs = command(LsTreeOp.class).setReference(treeId.toString())
-                .setStrategy(Strategy.DEPTHFIRST_ONLY_FEATURES);
-
-        Supplier<Iterator<Node>> nodes = Suppliers.compose(
-                new Function<Iterator<NodeRef>, Iterator<Node>>() {
-
-                    @Override
-                    public Iterator<Node> apply(Iterator<NodeRef> input) {
-                        return Iterators.transform(input, new Function<NodeRef, Node>() {
-                            @Override
-                            public Node apply(NodeRef input) {
-                                return input.getNode();
-                            }
-                        });
+        final List<ObjectId> batch = new ArrayList<ObjectId>(BATCH_SIZE);
+        final Deque<ObjectId> pendingTrees = new ArrayDeque<ObjectId>();
+        final Set<ObjectId> expandedTrees = new HashSet<ObjectId>();
+        final Set<ObjectId> visitedTrees = new HashSet<ObjectId>();
+        pendingTrees.push(treeId);
+
+        while (!pendingTrees.isEmpty()) {
+            final ObjectId id = pendingTrees.peek();
+            if (expandedTrees.contains(id)) {
+                // all its children have been added to the batch already
+                pendingTrees.pop();
+                if (visitedTrees.add(id)) {
+                    batch.add(id);
+                }
+            } else {
+                expandedTrees.add(id);
+                if (!isStored(id, from)) {
+                    // already in the target database, and so are its children
+                    pendingTrees.pop();
+                    visitedTrees.add(id);
+                    continue;
+                }
+                final RevTree tree = from.get(id, RevTree.class);
+                if (tree.features().isPresent()) {
+                    for (Node feature : tree.features().get()) {
+                        batch.add(feature.getObjectId());
+                        if (batch.size() >= BATCH_SIZE) {
+                            moveBatch(batch, from, to);
+                        }
                     }
-                }, refs);
-
-        // move all features, recursively as given by the LsTreeOp strategy
-        moveObjects(from, to, nodes, metadataIds);
-
-        // collect all subtree and bucket ids here to delete them from the origin db
-        final Set<ObjectId> alltreeIds = Sets.newTreeSet();
-        Predicate<RevTree> collectIds = new Predicate<RevTree>() {
-            @Override
-            public boolean apply(RevTree input) {
-                alltreeIds.add(input.getId());
-                return true;
-            }
-        };
-
-        // iterator that traverses the tree,all its subtrees, an bucket trees
-        Iterator<RevTree> allSubtreesAndBuckets = new AllTrees(treeId, from);
-        allSubtreesAndBuckets = Iterators.filter(allSubtreesAndBuckets, collectIds);
-
-        to.putAll(allSubtreesAndBuckets);
-        from.deleteAll(alltreeIds.iterator());
-    }
-
-    private static class AllTrees extends AbstractIterator<RevTree> {
-
-        private RevTree tree;
-
-        private ObjectDatabase from;
-
-        private Iterator<Node> trees;
-
-        private Iterator<Bucket> buckets;
-
-        private Iterator<RevTree> bucketTrees;
-
-        public AllTrees(ObjectId id, ObjectDatabase from) {
-            this.from = from;
-            this.tree = from.getTree(id);
-            this.trees = Iterators.emptyIterator();
-            if (tree.trees().isPresent()) {
-                trees = tree.trees().get().iterator();
+                }
+                if (tree.trees().isPresent()) {
+                    for (Node subtree : tree.trees().get()) {
+                        pendingTrees.push(subtree.getObjectId());
+                    }
+                }
+                if (tree.buckets().isPresent()) {
+                    for (Bucket bucket : tree.buckets().get().values()) {
+                        pendingTrees.push(bucket.id());
+                    }
+                }
             }
-            buckets = Iterators.emptyIterator();
-            if (tree.buckets().isPresent()) {
-                buckets = tree.buckets().get().values().iterator();
+            if (batch.size() >= BATCH_SIZE) {
+                moveBatch(batch, from, to);
             }
-            bucketTrees = Iterators.emptyIterator();
         }
+        moveBatch(batch, from, to);
+    }
 
-        @Override
-        protected RevTree computeNext() {
-            if (tree != null) {
-                RevTree ret = tree;
-                tree = null;
-                return ret;
-            }
-            if (trees.hasNext()) {
-                ObjectId objectId = trees.next().getObjectId();
-                return from.getTree(objectId);
-            }
-            if (bucketTrees.hasNext()) {
-                return bucketTrees.next();
-            }
-            if (buckets.hasNext()) {
-                bucketTrees = new AllTrees(buckets.next().id(), from);
-                return computeNext();
-            }
-            return endOfData();
+    /**
+     * @return whether the object is stored in the origin database itself, the index database
+     *         falls back to the repository database for objects it doesn't have
+     */
+    private boolean isStored(final ObjectId id, final ObjectDatabase from) {
+        if (from == index) {
+            return index.isStaged(id);
         }
+        return from.exists(id);
+    }
 
+    /**
+     * Copies the given objects to the target database without decoding them, deletes them from the
+     * origin database, and clears the list.
+     */
+    private static void moveBatch(final List<ObjectId> ids, final ObjectDatabase from,
+            final ObjectDatabase to) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        to.putAllRaw(from.getAllRaw(ids));
+        from.deleteAll(ids.iterator());
+        ids.clear();
     }
 
     private void moveObject(RevObject object, ObjectDatabase from, ObjectDatabase to) {
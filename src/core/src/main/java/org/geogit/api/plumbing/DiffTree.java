@@ -14,6 +14,7 @@ import java.util.List;
 import javax.annotation.Nullable;
 
 import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Bounded;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.diff.DiffEntry;
@@ -22,6 +23,7 @@ import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.StagingDatabase;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -46,6 +48,9 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
 
     private boolean recursive;
 
+    @Nullable
+    private Predicate<Bounded> boundsFilter;
+
     /**
      * Constructs a new instance of the {@code DiffTree} operation with the given parameters.
      * 
@@ -115,6 +120,17 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
         return this;
     }
 
+    /**
+     * @param boundsFilter if given, only changes where the old or the new version of the node pass
+     *        the filter are reported
+     * @return {@code this}
+     * @see DiffTreeWalk#setBoundsFilter(Predicate)
+     */
+    public DiffTree setBoundsFilter(@Nullable Predicate<Bounded> boundsFilter) {
+        this.boundsFilter = boundsFilter;
+        return this;
+    }
+
     /**
      * Implements {@link Supplier#get()} by delegating to {@link #call()}.
      */
@@ -161,6 +177,7 @@ public class DiffTree extends AbstractGeoGitOp<Iterator<DiffEntry>> implements
         treeWalk.setFilter(pathFilters);
         treeWalk.setReportTrees(reportTrees);
         treeWalk.setRecursive(recursive);
+        treeWalk.setBoundsFilter(boundsFilter);
         return treeWalk.get();
     }
 
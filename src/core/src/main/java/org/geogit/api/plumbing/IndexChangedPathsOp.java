@@ -0,0 +1,89 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.diff.ChangedPathsFilter;
+import org.geogit.api.porcelain.BranchListOp;
+import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectDatabase;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * Computes the {@link ChangedPathsFilter} of every commit reachable from the local and remote
+ * branches that does not have one yet, and returns the number of commits updated.
+ * <p>
+ * Commits created with {@link org.geogit.api.porcelain.CommitOp CommitOp} get their filter at
+ * commit time; this operation backfills the filters of commits created before that or fetched
+ * from a remote.
+ *
+ * @see BuildChangedPathsFilter
+ */
+public class IndexChangedPathsOp extends AbstractGeoGitOp<Integer> {
+
+    private GraphDatabase graphDb;
+
+    private ObjectDatabase objectDb;
+
+    @Inject
+    public IndexChangedPathsOp(GraphDatabase graphDb, ObjectDatabase objectDb) {
+        this.graphDb = graphDb;
+        this.objectDb = objectDb;
+    }
+
+    /**
+     * @return the number of commits whose filter was computed
+     */
+    @Override
+    public Integer call() {
+        ImmutableList<Ref> branches = command(BranchListOp.class).setLocal(true).setRemotes(true)
+                .call();
+
+        Set<ObjectId> visited = Sets.newHashSet();
+        Queue<ObjectId> pending = new LinkedList<ObjectId>();
+        for (Ref ref : branches) {
+            ObjectId tip = ref.getObjectId();
+            if (!tip.isNull() && visited.add(tip)) {
+                pending.add(tip);
+            }
+        }
+
+        int count = 0;
+        getProgressListener().started();
+        while (!pending.isEmpty()) {
+            if (getProgressListener().isCanceled()) {
+                break;
+            }
+            RevCommit commit = objectDb.getIfPresent(pending.poll(), RevCommit.class);
+            if (commit == null) {
+                // bottom of a shallow clone
+                continue;
+            }
+            if (!graphDb.getProperty(commit.getId(), ChangedPathsFilter.PROPERTY_NAME)
+                    .isPresent()) {
+                if (command(BuildChangedPathsFilter.class).setCommit(commit).call().isPresent()) {
+                    count++;
+                }
+            }
+            for (ObjectId parentId : commit.getParentIds()) {
+                if (visited.add(parentId)) {
+                    pending.add(parentId);
+                }
+            }
+        }
+        getProgressListener().complete();
+        return Integer.valueOf(count);
+    }
+}
@@ -4,31 +4,72 @@
  */
 package org.geogit.api.plumbing;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.porcelain.BranchListOp;
-import org.geogit.api.porcelain.LogOp;
 import org.geogit.repository.Repository;
 import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 
 /**
  * Rebuilds the {@link GraphDatabase} and returns a list of {@link ObjectId}s that were found to be
  * missing or incomplete.
+ * <p>
+ * The history is walked breadth-first from the tips of all local and remote branches (or from the
+ * tips provided through {@link #addTip(ObjectId)}), visiting each commit only once regardless of
+ * how many branches share it. Commit objects are read in parallel batches, and each batch is
+ * inserted into the graph in a single unit of work.
+ * <p>
+ * Once the history of all the tips has been walked, the tips are flagged as
+ * {@link GraphDatabase#COMPLETE_FLAG complete}, and later walks stop at them. Commits that are
+ * merely present in the graph are walked through, since their parents may be missing. Tips are not
+ * flagged if any commit in their history is missing from the object database, as in a shallow
+ * clone, so that the history is walked again once it's been fetched.
  */
 public class RebuildGraphOp extends AbstractGeoGitOp<ImmutableList<ObjectId>> {
 
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Single threaded so that background rebuilds never run concurrently with each other
+     */
+    private static final ExecutorService BACKGROUND_EXECUTOR;
+    static {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-rebuild-graph-%d").setDaemon(true).build();
+        BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
     private Repository repository;
 
+    private Set<ObjectId> tips = Sets.newLinkedHashSet();
+
     /**
      * Constructs a new {@code RebuildGraphOp} with the provided {@link Repository}.
      * 
@@ -39,6 +80,29 @@ public class RebuildGraphOp extends AbstractGeoGitOp<ImmutableList<ObjectId>> {
         this.repository = repository;
     }
 
+    /**
+     * Adds a commit to start walking the history from. If no tips are given, the tips of all the
+     * local and remote branches are used.
+     * 
+     * @param tip the id of the commit to start from
+     * @return {@code this}
+     */
+    public RebuildGraphOp addTip(ObjectId tip) {
+        Preconditions.checkNotNull(tip);
+        tips.add(tip);
+        return this;
+    }
+
+    /**
+     * Executes this operation in a background thread. Background executions are queued and run one
+     * at a time.
+     * 
+     * @return a future holding the result of {@link #call()}
+     */
+    public Future<ImmutableList<ObjectId>> callInBackground() {
+        return BACKGROUND_EXECUTOR.submit(this);
+    }
+
     /**
      * Executes the {@code RebuildGraphOp} operation.
      * 
@@ -49,22 +113,108 @@ public class RebuildGraphOp extends AbstractGeoGitOp<ImmutableList<ObjectId>> {
         Preconditions.checkState(!repository.isSparse(),
                 "Cannot rebuild the graph of a sparse repository.");
 
+        if (tips.isEmpty()) {
+            ImmutableList<Ref> branches = command(BranchListOp.class).setLocal(true)
+                    .setRemotes(true).call();
+            for (Ref ref : branches) {
+                tips.add(ref.getObjectId());
+            }
+        }
+
+        final GraphDatabase graphDb = repository.getGraphDatabase();
+        final ObjectDatabase objectDb = repository.getObjectDatabase();
+
         List<ObjectId> updated = new LinkedList<ObjectId>();
-        ImmutableList<Ref> branches = command(BranchListOp.class).setLocal(true).setRemotes(true)
-                .call();
-
-        GraphDatabase graphDb = repository.getGraphDatabase();
-        
-        for (Ref ref : branches) {
-            Iterator<RevCommit> commits = command(LogOp.class).setUntil(ref.getObjectId()).call();
-            while (commits.hasNext()) {
-                RevCommit next = commits.next();
-                if (graphDb.put(next.getId(), next.getParentIds())) {
-                    updated.add(next.getId());
+        Set<ObjectId> visited = Sets.newHashSet();
+        Queue<ObjectId> pending = new LinkedList<ObjectId>();
+        for (ObjectId tip : tips) {
+            if (!tip.isNull() && visited.add(tip)) {
+                pending.add(tip);
+            }
+        }
+
+        boolean missingCommits = false;
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-commit-reader-%d").setDaemon(true).build();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, threadFactory);
+        try {
+            while (!pending.isEmpty()) {
+                List<ObjectId> batch = new ArrayList<ObjectId>(BATCH_SIZE);
+                while (!pending.isEmpty() && batch.size() < BATCH_SIZE) {
+                    ObjectId id = pending.poll();
+                    if (!isComplete(graphDb, id)) {
+                        batch.add(id);
+                    }
+                }
+
+                Map<ObjectId, ImmutableList<ObjectId>> toInsert = new LinkedHashMap<ObjectId, ImmutableList<ObjectId>>();
+                List<RevCommit> commits = readCommits(batch, objectDb, executor, nThreads);
+                if (commits.size() < batch.size()) {
+                    missingCommits = true;
+                }
+                for (RevCommit commit : commits) {
+                    ImmutableList<ObjectId> parentIds = commit.getParentIds();
+                    toInsert.put(commit.getId(), parentIds);
+                    for (ObjectId parentId : parentIds) {
+                        if (visited.add(parentId)) {
+                            pending.add(parentId);
+                        }
+                    }
+                }
+                if (!toInsert.isEmpty()) {
+                    updated.addAll(graphDb.putAll(toInsert));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!missingCommits) {
+            for (ObjectId tip : tips) {
+                if (!tip.isNull() && !isComplete(graphDb, tip)) {
+                    graphDb.setProperty(tip, GraphDatabase.COMPLETE_FLAG, "true");
                 }
             }
         }
 
         return ImmutableList.copyOf(updated);
     }
+
+    private static boolean isComplete(GraphDatabase graphDb, ObjectId commitId) {
+        return graphDb.getProperty(commitId, GraphDatabase.COMPLETE_FLAG).isPresent();
+    }
+
+    /**
+     * Reads the commits in {@code ids} splitting the work among {@code nThreads} tasks. Ids of
+     * commits that are not present in the object database (e.g. in a shallow clone) are ignored.
+     */
+    private List<RevCommit> readCommits(List<ObjectId> ids, final ObjectDatabase objectDb,
+            ExecutorService executor, int nThreads) {
+
+        final int partitionSize = Math.max(1, (ids.size() + nThreads - 1) / nThreads);
+        List<Future<List<RevCommit>>> results = Lists.newArrayList();
+        for (final List<ObjectId> partition : Lists.partition(ids, partitionSize)) {
+            results.add(executor.submit(new Callable<List<RevCommit>>() {
+                @Override
+                public List<RevCommit> call() {
+                    Iterator<RevCommit> commits = Iterators.filter(objectDb.getAll(partition),
+                            RevCommit.class);
+                    return Lists.newArrayList(commits);
+                }
+            }));
+        }
+
+        List<RevCommit> commits = new ArrayList<RevCommit>(ids.size());
+        try {
+            for (Future<List<RevCommit>> result : results) {
+                commits.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        return commits;
+    }
 }
@@ -0,0 +1,287 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.api.plumbing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.repository.SpatialOps;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.StagingDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Writes a set of changed trees back to a root tree, creating any intermediate tree needed, and
+ * returns the {@link ObjectId id} of the resulting new root tree.
+ * <p>
+ * Unlike calling {@link WriteBack} once per changed tree, every ancestor shared by several changed
+ * trees is rebuilt only once, deepest trees first, and the trees at the same depth are built
+ * concurrently since they don't depend on each other. Updating the ref that points to the root is
+ * left to the caller, so it can be done once for the whole set of changes.
+ * <p>
+ * A changed tree at the {@link NodeRef#ROOT root path} replaces the direct contents of the root,
+ * any changed tree below it is then written on top of it.
+ *
+ * @see WriteBack
+ */
+public class WriteBackAll extends AbstractGeoGitOp<ObjectId> {
+
+    private final ObjectDatabase odb;
+
+    private final StagingDatabase index;
+
+    private boolean indexDb;
+
+    private Supplier<RevTree> ancestor;
+
+    private final Map<String, RevTree> trees = Maps.newHashMap();
+
+    private final Map<String, ObjectId> metadataIds = Maps.newHashMap();
+
+    /**
+     * Constructs a new {@code WriteBackAll} operation with the given parameters.
+     *
+     * @param odb the object database to use
+     * @param index the staging database to use
+     */
+    @Inject
+    public WriteBackAll(ObjectDatabase odb, StagingDatabase index) {
+        this.odb = odb;
+        this.index = index;
+    }
+
+    /**
+     * @param indexDb if {@code true} the trees will be stored to the {@link StagingDatabase},
+     *        otherwise to the repository's {@link ObjectDatabase permanent store}. Defaults to
+     *        {@code false}
+     * @return {@code this}
+     */
+    public WriteBackAll setToIndex(boolean indexDb) {
+        this.indexDb = indexDb;
+        return this;
+    }
+
+    /**
+     * @param root mandatory, the root tree to write the changed trees to
+     * @return {@code this}
+     */
+    public WriteBackAll setAncestor(RevTree root) {
+        return setAncestor(Suppliers.ofInstance(root));
+    }
+
+    /**
+     * @param root mandatory, the root tree to write the changed trees to
+     * @return {@code this}
+     */
+    public WriteBackAll setAncestor(Supplier<RevTree> root) {
+        this.ancestor = root;
+        return this;
+    }
+
+    /**
+     * Adds a changed tree to write back, replacing any tree previously added for the same path.
+     *
+     * @param path the path of the tree, relative to the root tree
+     * @param tree the new contents of the tree
+     * @param metadataId the (optional) metadata id for the resulting tree ref
+     * @return {@code this}
+     */
+    public WriteBackAll addTree(String path, RevTree tree, @Nullable ObjectId metadataId) {
+        checkNotNull(path, "path");
+        checkNotNull(tree, "tree");
+        trees.put(path, tree);
+        metadataIds.put(path, metadataId == null ? ObjectId.NULL : metadataId);
+        return this;
+    }
+
+    /**
+     * Executes the write back operation.
+     *
+     * @return the {@link ObjectId id} of the resulting new root tree.
+     */
+    @Override
+    public ObjectId call() {
+        checkNotNull(ancestor, "ancestor tree not set");
+        final RevTree root = ancestor.get();
+        checkState(null != root, "provided ancestor tree supplier returned null");
+        if (trees.isEmpty()) {
+            return root.getId();
+        }
+
+        final ObjectDatabase targetDb = indexDb ? index : odb;
+
+        // the changed trees and all their ancestors, grouped by parent and by depth
+        final Map<String, Set<String>> changedChildren = Maps.newHashMap();
+        final SortedMap<Integer, List<String>> levels = new TreeMap<Integer, List<String>>(
+                Ordering.natural().reverse());
+        final Set<String> visited = Sets.newHashSet();
+        for (String path : trees.keySet()) {
+            String child = path;
+            if (!visited.add(child)) {
+                continue;
+            }
+            addToLevel(levels, child);
+            while (!NodeRef.ROOT.equals(child)) {
+                String parent = NodeRef.parentPath(child);
+                Set<String> children = changedChildren.get(parent);
+                if (children == null) {
+                    children = Sets.newTreeSet();
+                    changedChildren.put(parent, children);
+                }
+                children.add(child);
+                if (!visited.add(parent)) {
+                    break;
+                }
+                addToLevel(levels, parent);
+                child = parent;
+            }
+        }
+
+        // resolve the current contents of the ancestors that were not changed themselves
+        final Map<String, RevTree> baseTrees = Maps.newHashMap(trees);
+        for (String path : visited) {
+            if (baseTrees.containsKey(path)) {
+                continue;
+            }
+            if (NodeRef.ROOT.equals(path)) {
+                baseTrees.put(path, root);
+                continue;
+            }
+            Optional<NodeRef> ref = command(FindTreeChild.class).setIndex(true).setParent(root)
+                    .setChildPath(path).call();
+            if (ref.isPresent()) {
+                baseTrees.put(path, getTree(targetDb, ref.get().objectId()));
+                metadataIds.put(path, ref.get().getMetadataId());
+            } else {
+                baseTrees.put(path, RevTree.EMPTY);
+                metadataIds.put(path, ObjectId.NULL);
+            }
+        }
+
+        final Map<String, RevTree> built = new ConcurrentHashMap<String, RevTree>();
+        ExecutorService executor = null;
+        try {
+            for (List<String> level : levels.values()) {
+                if (level.size() == 1) {
+                    buildTree(level.get(0), baseTrees, changedChildren, built, targetDb);
+                    continue;
+                }
+                if (executor == null) {
+                    executor = newExecutor();
+                }
+                List<Future<?>> results = new ArrayList<Future<?>>(level.size());
+                for (final String path : level) {
+                    results.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            buildTree(path, baseTrees, changedChildren, built, targetDb);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        return built.get(NodeRef.ROOT).getId();
+    }
+
+    private static void addToLevel(SortedMap<Integer, List<String>> levels, String path) {
+        final Integer depth = Integer.valueOf(NodeRef.depth(path));
+        List<String> level = levels.get(depth);
+        if (level == null) {
+            level = new ArrayList<String>();
+            levels.put(depth, level);
+        }
+        level.add(path);
+    }
+
+    /**
+     * Builds the new version of the tree at {@code path} by putting the already built versions of
+     * its changed children on top of its base contents, and saves it.
+     */
+    private void buildTree(String path, Map<String, RevTree> baseTrees,
+            Map<String, Set<String>> changedChildren, Map<String, RevTree> built,
+            ObjectDatabase targetDb) {
+
+        RevTree tree = baseTrees.get(path);
+        Set<String> children = changedChildren.get(path);
+        if (children != null) {
+            RevTreeBuilder builder = tree.builder(targetDb);
+            for (String childPath : children) {
+                RevTree childTree = built.get(childPath);
+                ObjectId metadataId = metadataIds.get(childPath);
+                Envelope treeBounds = null;
+                if (!metadataId.isNull()) {// only include bounds for trees with a default feature type
+                    treeBounds = SpatialOps.boundsOf(childTree);
+                }
+                String childName = NodeRef.nodeFromPath(childPath);
+                builder.put(Node.create(childName, childTree.getId(), metadataId, TYPE.TREE,
+                        treeBounds));
+            }
+            tree = builder.build();
+        }
+        targetDb.put(tree);
+        built.put(path, tree);
+    }
+
+    private RevTree getTree(ObjectDatabase targetDb, ObjectId treeId) {
+        if (treeId.isNull()) {
+            return RevTree.EMPTY;
+        }
+        return targetDb.getTree(treeId);
+    }
+
+    private static ExecutorService newExecutor() {
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-writeback-%d").setDaemon(true).build();
+        return Executors.newFixedThreadPool(nThreads, threadFactory);
+    }
+}
@@ -11,6 +11,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.Nullable;
 
@@ -22,7 +28,6 @@ import org.geogit.api.Ref;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.RevTreeBuilder;
-import org.geogit.api.plumbing.LsTreeOp.Strategy;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.MutableTree;
 import org.geogit.api.plumbing.diff.TreeDifference;
@@ -38,9 +43,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 
 /**
@@ -60,6 +67,9 @@ import com.google.inject.Inject;
  * Conceptually, write-tree sync()s the current index contents into a set of tree objects on the
  * {@link ObjectDatabase}. In order to have that match what is actually in your directory right now,
  * you need to have done a {@link UpdateIndex} phase before you did the write-tree.
+ * <p>
+ * Only the trees that differ between {@code HEAD} and the index are read, and the changed trees
+ * are rebuilt in parallel.
  * 
  * @see TreeDifference
  * @see MutableTree
@@ -69,6 +79,18 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WriteTree2.class);
 
+    /**
+     * Shared by all the calls, the changed trees of each call are rebuilt by as many threads as
+     * there are processors
+     */
+    private static final ExecutorService EXECUTOR;
+    static {
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-writetree-%d").setDaemon(true).build();
+        EXECUTOR = Executors.newFixedThreadPool(nThreads, threadFactory);
+    }
+
     private ObjectDatabase repositoryDatabase;
 
     private Supplier<RevTree> oldRoot;
@@ -137,9 +159,6 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
             return leftOid;
         }
 
-        final MutableTree oldLeftTree = treeDifference.getLeftTree().clone();
-        Preconditions.checkState(oldLeftTree.equals(treeDifference.getLeftTree()));
-
         // handle renames before new and deleted trees for the computation of new and deleted to be
         // accurate
         Set<String> ignoreList = Sets.newHashSet();
@@ -265,13 +284,10 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
 
         // old/new refs to trees that have changed and apply to the pathFilters, deepest paths first
         final SortedMap<NodeRef, NodeRef> changedTrees = treeDifference.findChanges();
-        final SortedMap<NodeRef, NodeRef> filteredChangedTrees = changedTrees;// filterChanges(changedTrees);
-
-        for (Map.Entry<NodeRef, NodeRef> changedTreeRefs : filteredChangedTrees.entrySet()) {
+        final List<Map.Entry<NodeRef, NodeRef>> toApply = Lists.newArrayList();
 
-            NodeRef leftTreeRef = changedTreeRefs.getKey();
-            NodeRef rightTreeRef = changedTreeRefs.getValue();
-            String newPath = rightTreeRef.path();
+        for (Map.Entry<NodeRef, NodeRef> changedTreeRefs : changedTrees.entrySet()) {
+            String newPath = changedTreeRefs.getValue().path();
             if (ignoreList.contains(newPath)) {
                 continue;
             }
@@ -279,17 +295,63 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
                 continue;
             }
             ignoreList.add(newPath);
-            RevTree tree = applyChanges(leftTreeRef, rightTreeRef);
+            toApply.add(changedTreeRefs);
+        }
+
+        final List<RevTree> newTrees = applyChanges(toApply);
+
+        MutableTree leftRoot = treeDifference.getLeftTree();
+        for (int i = 0; i < toApply.size(); i++) {
+            NodeRef rightTreeRef = toApply.get(i).getValue();
+            RevTree tree = newTrees.get(i);
 
             Node newTreeNode = Node.create(rightTreeRef.name(), tree.getId(),
                     rightTreeRef.getMetadataId(), TYPE.TREE);
 
-            MutableTree leftRoot = treeDifference.getLeftTree();
             String parentPath = rightTreeRef.getParentPath();
             leftRoot.setChild(parentPath, newTreeNode);
         }
     }
 
+    /**
+     * Each tree is rebuilt out of its own direct changes, so the trees are built concurrently
+     * when there's more than one.
+     * 
+     * @return the new trees, in the same order as the old/new refs given
+     */
+    private List<RevTree> applyChanges(final List<Map.Entry<NodeRef, NodeRef>> changedTrees) {
+        final List<RevTree> newTrees = Lists.newArrayListWithCapacity(changedTrees.size());
+        if (changedTrees.size() < 2) {
+            for (Map.Entry<NodeRef, NodeRef> refs : changedTrees) {
+                newTrees.add(applyChanges(refs.getKey(), refs.getValue()));
+            }
+            return newTrees;
+        }
+        List<Future<RevTree>> results = Lists.newArrayListWithCapacity(changedTrees.size());
+        try {
+            for (final Map.Entry<NodeRef, NodeRef> refs : changedTrees) {
+                results.add(EXECUTOR.submit(new Callable<RevTree>() {
+                    @Override
+                    public RevTree call() {
+                        return applyChanges(refs.getKey(), refs.getValue());
+                    }
+                }));
+            }
+            for (Future<RevTree> result : results) {
+                newTrees.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            for (Future<RevTree> result : results) {
+                result.cancel(true);
+            }
+        }
+        return newTrees;
+    }
+
     private RevTree applyChanges(@Nullable final NodeRef leftTreeRef,
             @Nullable final NodeRef rightTreeRef) {
 
@@ -309,7 +371,7 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
                 .setReportTrees(false).setOldTree(leftTreeId).setNewTree(rightTreeId)
                 .setFilter(strippedPathFilters);
 
-        // move new blobs from the index to the repository (note: this could be parallelized)
+        // move new blobs from the index to the repository
         Supplier<Iterator<Node>> nodesToMove = asNodeSupplierOfNewContents(diffs,
                 strippedPathFilters);
         command(DeepMove.class).setObjects(nodesToMove).call();
@@ -401,8 +463,6 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
             return true;
         }
 
-        final Set<String> childTrees = rightTree.getChildrenAsMap().keySet();
-
         for (String filter : pathFilters) {
             if (filter.equals(treePath)) {
                 return true;
@@ -412,7 +472,7 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
                 return true;
             }
             boolean filterIsParentOfTree = filterMatchesOrIsParent(treePath);
-            boolean filterIsTree = childTrees.contains(filter);
+            boolean filterIsTree = rightTree.hasChild(filter);
             if (filterIsParentOfTree && filterIsTree) {
                 return true;
             }
@@ -490,25 +550,13 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
     }
 
     private TreeDifference computeTreeDifference() {
-        final String rightTreeish = Ref.STAGE_HEAD;
-
         final ObjectId rootTreeId = resolveRootTreeId();
         final ObjectId stageRootId = getIndex().getTree().getId();
 
-        final Supplier<Iterator<NodeRef>> leftTreeRefs;
-        final Supplier<Iterator<NodeRef>> rightTreeRefs;
-        if (rootTreeId.isNull()) {
-            Iterator<NodeRef> empty = Iterators.emptyIterator();
-            leftTreeRefs = Suppliers.ofInstance(empty);
-        } else {
-            leftTreeRefs = command(LsTreeOp.class).setReference(rootTreeId.toString()).setStrategy(
-                    Strategy.DEPTHFIRST_ONLY_TREES);
-        }
-        rightTreeRefs = command(LsTreeOp.class).setReference(rightTreeish).setStrategy(
-                Strategy.DEPTHFIRST_ONLY_TREES);
-
-        MutableTree leftTree = MutableTree.createFromRefs(rootTreeId, leftTreeRefs);
-        MutableTree rightTree = MutableTree.createFromRefs(stageRootId, rightTreeRefs);
+        // the trees are read as they're compared, so unchanged subtrees are never read
+        final StagingDatabase source = getIndex().getDatabase();
+        MutableTree leftTree = MutableTree.create(rootTreeId, source);
+        MutableTree rightTree = MutableTree.create(stageRootId, source);
 
         TreeDifference treeDifference = TreeDifference.create(leftTree, rightTree);
         return treeDifference;
@@ -0,0 +1,154 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.storage.GraphDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A probabilistic set of the paths a commit changed with respect to its first parent, stored as a
+ * property of the commit node in the {@link GraphDatabase}.
+ * <p>
+ * {@link #mightBeAffected(String)} never returns {@code false} for a path the commit did change,
+ * so it can be used to skip computing the diff of commits that certainly did not touch a path.
+ * <p>
+ * For commits that changed too many features to keep track of each one of them, the filter holds
+ * only the paths of the changed trees, and any feature inside a changed tree is reported as
+ * possibly affected.
+ */
+public class ChangedPathsFilter {
+
+    /**
+     * Name of the commit graph node property the encoded filter is stored as
+     */
+    public static final String PROPERTY_NAME = "changedPaths";
+
+    private static final char ALL_PATHS = 'P';
+
+    private static final char TREE_PATHS = 'T';
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final BloomFilter<CharSequence> filter;
+
+    private final boolean treesOnly;
+
+    private ChangedPathsFilter(BloomFilter<CharSequence> filter, boolean treesOnly) {
+        this.filter = filter;
+        this.treesOnly = treesOnly;
+    }
+
+    /**
+     * Creates a filter for the given changed paths. The paths of all the trees leading to each
+     * changed path are added too.
+     *
+     * @param changedPaths the paths changed by a commit
+     * @param treesOnly whether {@code changedPaths} are only the paths of the changed trees
+     * @return the new filter
+     */
+    public static ChangedPathsFilter create(Collection<String> changedPaths, boolean treesOnly) {
+        Set<String> paths = Sets.newHashSet();
+        for (String path : changedPaths) {
+            if (!path.isEmpty()) {
+                paths.addAll(NodeRef.allPathsTo(path));
+            }
+        }
+        BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(),
+                Math.max(1, paths.size()), FALSE_POSITIVE_PROBABILITY);
+        for (String path : paths) {
+            filter.put(path);
+        }
+        return new ChangedPathsFilter(filter, treesOnly);
+    }
+
+    /**
+     * @param path the path of a feature or tree
+     * @return {@code false} if the commit certainly did not change anything at or under
+     *         {@code path}, {@code true} if it might have
+     */
+    public boolean mightBeAffected(String path) {
+        if (filter.mightContain(path)) {
+            return true;
+        }
+        if (treesOnly) {
+            String parentPath = NodeRef.parentPath(path);
+            return parentPath != null && !parentPath.isEmpty() && filter.mightContain(parentPath);
+        }
+        return false;
+    }
+
+    /**
+     * @return whether this filter holds only the paths of the changed trees
+     */
+    public boolean isTreesOnly() {
+        return treesOnly;
+    }
+
+    /**
+     * @return the string representation of this filter, as stored in the graph database
+     */
+    public String encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            filter.writeTo(out);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return (treesOnly ? TREE_PATHS : ALL_PATHS) + BaseEncoding.base64().encode(out.toByteArray());
+    }
+
+    /**
+     * Parses a filter out of its {@link #encode() string representation}
+     */
+    public static ChangedPathsFilter decode(String encoded) {
+        Preconditions.checkArgument(encoded.length() > 1, "Invalid changed paths filter");
+        final char type = encoded.charAt(0);
+        Preconditions.checkArgument(type == ALL_PATHS || type == TREE_PATHS,
+                "Invalid changed paths filter type: %s", type);
+        byte[] bytes = BaseEncoding.base64().decode(encoded.substring(1));
+        BloomFilter<CharSequence> filter;
+        try {
+            filter = BloomFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.stringFunnel());
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return new ChangedPathsFilter(filter, type == TREE_PATHS);
+    }
+
+    /**
+     * Reads the filter of the given commit from the graph database.
+     *
+     * @return the filter, or {@link Optional#absent()} if it hasn't been computed for that commit
+     */
+    public static Optional<ChangedPathsFilter> read(GraphDatabase graphDb, ObjectId commitId) {
+        Optional<String> encoded = graphDb.getProperty(commitId, PROPERTY_NAME);
+        if (encoded.isPresent()) {
+            return Optional.of(decode(encoded.get()));
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Stores this filter as a property of the given commit in the graph database.
+     */
+    public void write(GraphDatabase graphDb, ObjectId commitId) {
+        graphDb.setProperty(commitId, PROPERTY_NAME, encode());
+    }
+}
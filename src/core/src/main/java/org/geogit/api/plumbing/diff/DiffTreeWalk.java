@@ -12,6 +12,7 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.geogit.api.Bounded;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
@@ -47,6 +48,9 @@ public class DiffTreeWalk {
 
     private boolean recursive;
 
+    @Nullable
+    private Predicate<Bounded> boundsFilter;
+
     public DiffTreeWalk(final ObjectDatabase db, final RevTree fromRootTree,
             final RevTree toRootTree) {
         Preconditions.checkNotNull(db);
@@ -87,6 +91,15 @@ public class DiffTreeWalk {
         this.recursive = recursive;
     }
 
+    /**
+     * @param boundsFilter if given, changes are reported only if the old or the new version of the
+     *        node passes the filter, and buckets for which neither the old nor the new version pass
+     *        it are not traversed. Defaults to {@code null}, meaning all changes are reported.
+     */
+    public void setBoundsFilter(@Nullable Predicate<Bounded> boundsFilter) {
+        this.boundsFilter = boundsFilter;
+    }
+
     public Iterator<DiffEntry> get() {
 
         RevTree oldTree = this.fromRootTree;
@@ -139,7 +152,7 @@ public class DiffTreeWalk {
         // TODO: pass pathFilter to TreeDiffEntryIterator so it ignores inner trees where the path
         // is guaranteed not to be present
         Iterator<DiffEntry> iterator = new TreeDiffEntryIterator(oldRef, newRef, oldTree, newTree,
-                reportTrees, recursive, objectDb);
+                reportTrees, recursive, boundsFilter, objectDb);
 
         // boolean comparingTree = (oldRef == null ? newRef : oldRef).getType().equals(TYPE.TREE);
         // if (reportTrees && comparingTree && !Objects.equal(oldRef, newRef)) {
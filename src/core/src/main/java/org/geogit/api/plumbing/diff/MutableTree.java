@@ -38,13 +38,28 @@ import com.google.common.collect.Ordering;
 
 /**
  * A mutable data structure representing the state of a tree and its subtrees
+ * <p>
+ * A tree {@link #create(ObjectId, ObjectDatabase) created} from an object database only reads the
+ * subtrees of a tree when they're first asked for, so the subtrees that are never looked at, like
+ * the ones {@link TreeDifference} finds unchanged, are never expanded and are kept as they are when
+ * the tree is {@link #build(ObjectDatabase, ObjectDatabase) built}.
  */
 public class MutableTree implements Cloneable {
 
     private Node node;
 
+    /**
+     * The subtrees by name, {@code null} until read from {@link #source}
+     */
+    @Nullable
     private Map<String, MutableTree> childTrees;
 
+    /**
+     * Where to read the subtrees from, or {@code null} if they're all given beforehand
+     */
+    @Nullable
+    private final ObjectDatabase source;
+
     public static final Ordering<NodeRef> DEEPEST_LAST_COMPARATOR = new Ordering<NodeRef>() {
         @Override
         public int compare(NodeRef o1, NodeRef o2) {
@@ -62,13 +77,42 @@ public class MutableTree implements Cloneable {
     public static final Ordering<NodeRef> DEEPEST_FIRST_COMPARATOR = DEEPEST_LAST_COMPARATOR
             .reverse();
 
-    private MutableTree(String name) {
-        this(Node.tree(name, ObjectId.NULL, ObjectId.NULL));
+    private MutableTree(String name, @Nullable ObjectDatabase source) {
+        this(Node.tree(name, ObjectId.NULL, ObjectId.NULL), source);
     }
 
-    private MutableTree(Node node) {
+    private MutableTree(Node node, @Nullable ObjectDatabase source) {
         this.node = node;
-        this.childTrees = Maps.newTreeMap();
+        this.source = source;
+        if (source == null || node.getObjectId().isNull()) {
+            this.childTrees = Maps.newTreeMap();
+        }
+    }
+
+    /**
+     * @return whether the subtrees of this tree have been read, always {@code true} for trees not
+     *         created from an object database
+     */
+    boolean isExpanded() {
+        return childTrees != null;
+    }
+
+    /**
+     * @return the direct subtrees of this tree by name, reading them the first time if needed
+     */
+    Map<String, MutableTree> childTrees() {
+        if (childTrees == null) {
+            Map<String, MutableTree> children = Maps.newTreeMap();
+            RevTree tree = source.getTree(node.getObjectId());
+            Iterator<NodeRef> subtrees = new DepthTreeIterator(ROOT, ObjectId.NULL, tree,
+                    source, DepthTreeIterator.Strategy.TREES_ONLY);
+            while (subtrees.hasNext()) {
+                Node child = subtrees.next().getNode();
+                children.put(child.getName(), new MutableTree(child, source));
+            }
+            childTrees = children;
+        }
+        return childTrees;
     }
 
     @Override
@@ -82,8 +126,10 @@ public class MutableTree implements Cloneable {
         Node node = tree.getNode();
         append(sb, node, indent);
 
-        for (MutableTree c : tree.childTrees.values()) {
-            toString(c, sb, indent + 1);
+        if (tree.childTrees != null) {
+            for (MutableTree c : tree.childTrees.values()) {
+                toString(c, sb, indent + 1);
+            }
         }
 
     }
@@ -102,8 +148,25 @@ public class MutableTree implements Cloneable {
             return false;
         }
         MutableTree other = (MutableTree) o;
-        return node.equals(other.node) && node.getMetadataId().equals(other.node.getMetadataId())
-                && childTrees.equals(other.childTrees);
+        if (!node.equals(other.node) || !node.getMetadataId().equals(other.node.getMetadataId())) {
+            return false;
+        }
+        if (!isExpanded() && !other.isExpanded()) {
+            // both still match the trees they were read from
+            return true;
+        }
+        return childTrees().equals(other.childTrees());
+    }
+
+    /**
+     * Creates a tree whose subtrees are read from {@code source} as they're needed.
+     * 
+     * @param rootId the id of the root tree, may be {@link ObjectId#NULL} for an empty tree
+     * @param source the database to read the trees from
+     * @return the root of the tree
+     */
+    public static MutableTree create(final ObjectId rootId, final ObjectDatabase source) {
+        return new MutableTree(Node.create(ROOT, rootId, ObjectId.NULL, TYPE.TREE), source);
     }
 
     public static MutableTree createFromRefs(final ObjectId rootId,
@@ -141,7 +204,8 @@ public class MutableTree implements Cloneable {
         List<NodeRef> refsByDepth = Lists.newArrayList(entries.values());
         Collections.sort(refsByDepth, DEEPEST_LAST_COMPARATOR);
 
-        MutableTree root = new MutableTree(Node.create(ROOT, rootId, ObjectId.NULL, TYPE.TREE));
+        MutableTree root = new MutableTree(Node.create(ROOT, rootId, ObjectId.NULL, TYPE.TREE),
+                null);
 
         for (NodeRef entry : refsByDepth) {
             Node node = entry.getNode();
@@ -160,18 +224,18 @@ public class MutableTree implements Cloneable {
         ImmutableList<String> parentSteps = NodeRef.split(parentPath);
         MutableTree parent = this;
         for (String name : parentSteps) {
-            MutableTree child = parent.childTrees.get(name);
+            MutableTree child = parent.childTrees().get(name);
             if (child == null) {
-                child = new MutableTree(name);
-                parent.childTrees.put(name, child);
+                child = new MutableTree(name, source);
+                parent.childTrees().put(name, child);
             }
             parent = child;
         }
 
-        MutableTree tree = parent.childTrees.get(treeNode.getName());
+        MutableTree tree = parent.childTrees().get(treeNode.getName());
         if (tree == null) {
-            tree = new MutableTree(treeNode);
-            parent.childTrees.put(treeNode.getName(), tree);
+            tree = new MutableTree(treeNode, source);
+            parent.childTrees().put(treeNode.getName(), tree);
         } else {
             tree.setNode(treeNode);
         }
@@ -191,10 +255,10 @@ public class MutableTree implements Cloneable {
             parent = getChild(parentPath);
         }
 
-        child = parent.childTrees.get(node.getName());
+        child = parent.childTrees().get(node.getName());
         if (child == null) {
-            child = new MutableTree(node);
-            parent.childTrees.put(node.getName(), child);
+            child = new MutableTree(node, source);
+            parent.childTrees().put(node.getName(), child);
         } else {
             child.setNode(node);
         }
@@ -208,10 +272,10 @@ public class MutableTree implements Cloneable {
         Preconditions.checkArgument(!path.isEmpty());
 
         String directChildName = path.get(0);
-        MutableTree child = childTrees.get(directChildName);
+        MutableTree child = childTrees().get(directChildName);
         if (child == null) {
             throw new IllegalArgumentException(String.format("No child named %s exists: %s",
-                    directChildName, childTrees.keySet()));
+                    directChildName, childTrees().keySet()));
         }
         if (path.size() == 1) {
             return child;
@@ -219,6 +283,21 @@ public class MutableTree implements Cloneable {
         return child.getChild(path.subList(1, path.size()));
     }
 
+    /**
+     * @param path the path of a tree relative to this one
+     * @return whether the tree exists, only reading the trees along the path
+     */
+    public boolean hasChild(final String path) {
+        MutableTree tree = this;
+        for (String name : NodeRef.split(path)) {
+            tree = tree.childTrees().get(name);
+            if (tree == null) {
+                return false;
+            }
+        }
+        return tree != this;
+    }
+
     public SortedMap<String, MutableTree> getChildrenAsMap() {
         TreeMap<String, MutableTree> map = Maps.newTreeMap();
         asMap("", map);
@@ -226,7 +305,7 @@ public class MutableTree implements Cloneable {
     }
 
     private void asMap(String parentPath, TreeMap<String, MutableTree> target) {
-        for (MutableTree childTree : this.childTrees.values()) {
+        for (MutableTree childTree : childTrees().values()) {
             String childTreePath = NodeRef.appendChild(parentPath, childTree.getNode().getName());
             target.put(childTreePath, childTree);
             childTree.asMap(childTreePath, target);
@@ -241,12 +320,12 @@ public class MutableTree implements Cloneable {
 
         for (Iterator<String> childNames = steps.iterator(); childNames.hasNext();) {
             String childName = childNames.next();
-            MutableTree child = tree.childTrees.get(childName);
+            MutableTree child = tree.childTrees().get(childName);
             if (child == null) {
                 return null;
             }
             if (!childNames.hasNext()) {
-                MutableTree removed = tree.childTrees.remove(childName);
+                MutableTree removed = tree.childTrees().remove(childName);
                 return removed;
             } else {
                 tree = child;
@@ -266,13 +345,18 @@ public class MutableTree implements Cloneable {
         }
         RevTreeBuilder builder = tree.builder(target).clearSubtrees();
 
-        for (MutableTree childTree : this.childTrees.values()) {
-            RevTree newChild = childTree.build(origin, target);
-            target.put(newChild);
+        for (MutableTree childTree : childTrees().values()) {
             Node oldNode = childTree.getNode();
             String name = oldNode.getName();
-            ObjectId newObjectId = newChild.getId();
             ObjectId metadataId = oldNode.getMetadataId().or(ObjectId.NULL);
+            if (!childTree.isExpanded()) {
+                // untouched, the tree it points to is already there
+                builder.put(Node.create(name, oldNode.getObjectId(), metadataId, TYPE.TREE));
+                continue;
+            }
+            RevTree newChild = childTree.build(origin, target);
+            target.put(newChild);
+            ObjectId newObjectId = newChild.getId();
             Node newNode = Node.create(name, newObjectId, metadataId, TYPE.TREE);
             builder.put(newNode);
         }
@@ -288,9 +372,12 @@ public class MutableTree implements Cloneable {
 
     @Override
     public MutableTree clone() {
-        MutableTree clone = new MutableTree(node);
-        for (MutableTree child : this.childTrees.values()) {
-            clone.childTrees.put(child.getNode().getName(), child.clone());
+        MutableTree clone = new MutableTree(node, source);
+        if (childTrees != null) {
+            clone.childTrees = Maps.newTreeMap();
+            for (MutableTree child : childTrees.values()) {
+                clone.childTrees.put(child.getNode().getName(), child.clone());
+            }
         }
         return clone;
     }
@@ -15,6 +15,7 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.Bounded;
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
@@ -30,6 +31,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSortedMap;
@@ -47,7 +49,7 @@ import com.google.common.collect.UnmodifiableIterator;
  * addition or a deletion; when the change is on a subtree, returns the subtree differences before
  * continuing with the own ones.
  */
-class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
+public class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
     private final ObjectDatabase objectDb;
 
@@ -57,6 +59,9 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
     private final boolean recursive;
 
+    @Nullable
+    private final Predicate<Bounded> boundsFilter;
+
     /**
      * The {@link Strategy} used to iterate the two trees which tells whether to report or not tree
      * entries besides feature entries
@@ -66,10 +71,22 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
     public TreeDiffEntryIterator(@Nullable NodeRef oldTreeRef, @Nullable NodeRef newTreeRef,
             @Nullable RevTree oldTree, @Nullable RevTree newTree, final boolean reportTrees,
             final boolean recursive, final ObjectDatabase db) {
+        this(oldTreeRef, newTreeRef, oldTree, newTree, reportTrees, recursive, null, db);
+    }
+
+    /**
+     * @param boundsFilter if given, buckets and nodes for which neither the old nor the new version
+     *        pass the filter are not reported
+     */
+    public TreeDiffEntryIterator(@Nullable NodeRef oldTreeRef, @Nullable NodeRef newTreeRef,
+            @Nullable RevTree oldTree, @Nullable RevTree newTree, final boolean reportTrees,
+            final boolean recursive, @Nullable final Predicate<Bounded> boundsFilter,
+            final ObjectDatabase db) {
 
         checkArgument(oldTree != null || newTree != null);
         this.reportTrees = reportTrees;
         this.recursive = recursive;
+        this.boundsFilter = boundsFilter;
         this.objectDb = db;
 
         this.strategy = resolveStrategy();
@@ -155,6 +172,17 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         return endOfData();
     }
 
+    /**
+     * @return whether the given bucket or node passes the bounds filter, {@code false} if it's
+     *         {@code null}
+     */
+    private boolean passes(@Nullable Bounded bounded) {
+        if (bounded == null) {
+            return false;
+        }
+        return boundsFilter == null || boundsFilter.apply(bounded);
+    }
+
     private Iterator<DiffEntry> addRemoveAll(@Nullable final NodeRef treeRef, final RevTree tree,
             final ChangeType changeType) {
         DepthTreeIterator treeIterator;
@@ -163,6 +191,8 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
         final ObjectId metadataId = treeRef == null ? ObjectId.NULL : treeRef.getMetadataId();
 
         treeIterator = new DepthTreeIterator(path, metadataId, tree, objectDb, strategy);
+        // only one side is present, so nothing the filter rejects can be reported
+        treeIterator.setBoundsFilter(boundsFilter);
 
         Iterator<DiffEntry> iterator;
 
@@ -202,51 +232,60 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
         @Override
         protected DiffEntry computeNext() {
-            if (null != subtreeIterator) {
-                if (subtreeIterator.hasNext()) {
-                    return subtreeIterator.next();
+            // loop rather than recurse over the entries that are skipped, a bounds filter may skip
+            // long runs of them
+            while (true) {
+                if (null != subtreeIterator) {
+                    if (subtreeIterator.hasNext()) {
+                        return subtreeIterator.next();
+                    }
+                    subtreeIterator = null;
+                }
+                if (!(left.hasNext() || right.hasNext())) {
+                    return endOfData();
                 }
-                subtreeIterator = null;
-            }
-            if (!(left.hasNext() || right.hasNext())) {
-                return endOfData();
-            }
 
-            // use peek to glimpse over the next values without consuming the iterator
-            NodeRef nextLeft = left.hasNext() ? left.peek() : null;
-            NodeRef nextRight = right.hasNext() ? right.peek() : null;
-
-            if (nextLeft == null) {
-                nextRight = right.next();
-            } else if (nextRight == null) {
-                nextLeft = left.next();
-            } else if (nextLeft.path().equals(nextRight.path())) {
-                // same path, consume both
-                nextLeft = left.next();
-                nextRight = right.next();
-                if (nextLeft.equals(nextRight)) {
-                    // but not a diff
-                    return computeNext();
+                // use peek to glimpse over the next values without consuming the iterator
+                NodeRef nextLeft = left.hasNext() ? left.peek() : null;
+                NodeRef nextRight = right.hasNext() ? right.peek() : null;
+
+                if (nextLeft == null) {
+                    nextRight = right.next();
+                } else if (nextRight == null) {
+                    nextLeft = left.next();
+                } else if (nextLeft.path().equals(nextRight.path())) {
+                    // same path, consume both
+                    nextLeft = left.next();
+                    nextRight = right.next();
+                    if (nextLeft.equals(nextRight)) {
+                        // but not a diff
+                        continue;
+                    }
+                } else if (comparator.min(nextLeft.getNode(), nextRight.getNode()) == nextLeft
+                        .getNode()) {
+                    nextLeft = left.next();
+                    nextRight = null;
+                } else {
+                    nextLeft = null;
+                    nextRight = right.next();
                 }
-            } else if (comparator.min(nextLeft.getNode(), nextRight.getNode()) == nextLeft
-                    .getNode()) {
-                nextLeft = left.next();
-                nextRight = null;
-            } else {
-                nextLeft = null;
-                nextRight = right.next();
-            }
 
-            final boolean isSubtree = (nextLeft != null && nextLeft.getType() == TYPE.TREE)
-                    || (nextRight != null && nextRight.getType() == TYPE.TREE);
+                final boolean isSubtree = (nextLeft != null && nextLeft.getType() == TYPE.TREE)
+                        || (nextRight != null && nextRight.getType() == TYPE.TREE);
 
-            if (isSubtree) {
-                this.subtreeIterator = resolveSubtreeIterator(nextLeft, nextRight);
-                return computeNext();
-            }
+                if (isSubtree) {
+                    this.subtreeIterator = resolveSubtreeIterator(nextLeft, nextRight);
+                    continue;
+                }
+
+                if (!passes(nextLeft == null ? null : nextLeft.getNode())
+                        && !passes(nextRight == null ? null : nextRight.getNode())) {
+                    continue;
+                }
 
-            DiffEntry entry = new DiffEntry(nextLeft, nextRight);
-            return entry;
+                DiffEntry entry = new DiffEntry(nextLeft, nextRight);
+                return entry;
+            }
         }
 
         private Iterator<DiffEntry> resolveSubtreeIterator(@Nullable NodeRef nextLeft,
@@ -267,7 +306,7 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
             Iterator<DiffEntry> it;
 
             it = new TreeDiffEntryIterator(nextLeft, nextRight, fromTree, toTree, reportTrees,
-                    recursive, objectDb);
+                    recursive, boundsFilter, objectDb);
 
             return it;
         }
@@ -356,12 +395,15 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
                 if (Objects.equal(leftBucket, rightBucket)) {
                     continue;
                 }
+                if (!passes(leftBucket.orNull()) && !passes(rightBucket.orNull())) {
+                    continue;
+                }
 
                 final RevTree left = resolveTree(leftBucket);
                 final RevTree right = resolveTree(rightBucket);
 
                 this.currentBucketIterator = new TreeDiffEntryIterator(leftRef, rightRef, left,
-                        right, reportTrees, recursive, objectDb);
+                        right, reportTrees, recursive, boundsFilter, objectDb);
                 break;
             }
             return computeNext();
@@ -4,7 +4,6 @@
  */
 package org.geogit.api.plumbing.diff;
 
-import static com.google.common.collect.Maps.difference;
 import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Maps.newTreeMap;
 
@@ -19,6 +18,7 @@ import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapDifference.ValueDifference;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -26,6 +26,9 @@ import com.google.common.collect.SortedMapDifference;
 
 /**
  * Finds the differences between two trees given by two {@link MutableTree}
+ * <p>
+ * Subtrees that point to the same tree on both sides and haven't been read yet are known to be
+ * equal, so they're skipped without reading them.
  */
 public class TreeDifference {
 
@@ -64,14 +67,52 @@ public class TreeDifference {
      * @return
      */
     public SortedMap<NodeRef, NodeRef> findRenames() {
+        return findRenames(difference());
+    }
 
-        SortedMap<String, MutableTree> leftEntries = leftTree.getChildrenAsMap();
-        SortedMap<String, MutableTree> rightEntries = rightTree.getChildrenAsMap();
-
-        SortedMapDifference<String, MutableTree> difference;
-        difference = difference(leftEntries, rightEntries);
+    /**
+     * @return the difference between the subtrees of both sides, leaving out the ones known to be
+     *         equal without reading them
+     */
+    private SortedMapDifference<String, MutableTree> difference() {
+        SortedMap<String, MutableTree> leftEntries = newTreeMap();
+        SortedMap<String, MutableTree> rightEntries = newTreeMap();
+        collectEntries(leftTree, rightTree, NodeRef.ROOT, leftEntries, rightEntries);
+        return Maps.difference(leftEntries, rightEntries);
+    }
 
-        return findRenames(difference);
+    private static void collectEntries(@Nullable MutableTree left, @Nullable MutableTree right,
+            String path, Map<String, MutableTree> leftEntries,
+            Map<String, MutableTree> rightEntries) {
+
+        Map<String, MutableTree> leftChildren = left == null ? ImmutableMap
+                .<String, MutableTree> of() : left.childTrees();
+        Map<String, MutableTree> rightChildren = right == null ? ImmutableMap
+                .<String, MutableTree> of() : right.childTrees();
+
+        for (String name : Sets.union(leftChildren.keySet(), rightChildren.keySet())) {
+            final String childPath = NodeRef.appendChild(path, name);
+            final MutableTree leftChild = leftChildren.get(name);
+            final MutableTree rightChild = rightChildren.get(name);
+            if (leftChild != null && rightChild != null && !leftChild.isExpanded()
+                    && !rightChild.isExpanded()
+                    && leftChild.getNode().getObjectId()
+                            .equals(rightChild.getNode().getObjectId())) {
+                // same contents, only the metadata id may have changed
+                if (!leftChild.equals(rightChild)) {
+                    leftEntries.put(childPath, leftChild);
+                    rightEntries.put(childPath, rightChild);
+                }
+                continue;
+            }
+            if (leftChild != null) {
+                leftEntries.put(childPath, leftChild);
+            }
+            if (rightChild != null) {
+                rightEntries.put(childPath, rightChild);
+            }
+            collectEntries(leftChild, rightChild, childPath, leftEntries, rightEntries);
+        }
     }
 
     private SortedMap<NodeRef, NodeRef> findRenames(
@@ -109,11 +150,7 @@ public class TreeDifference {
      */
     public SortedSet<NodeRef> findNewTrees() {
 
-        SortedMap<String, MutableTree> leftEntries = leftTree.getChildrenAsMap();
-        SortedMap<String, MutableTree> rightEntries = rightTree.getChildrenAsMap();
-
-        SortedMapDifference<String, MutableTree> difference;
-        difference = difference(leftEntries, rightEntries);
+        SortedMapDifference<String, MutableTree> difference = difference();
 
         Map<String, MutableTree> entriesOnlyOnRight;
         entriesOnlyOnRight = newHashMap(difference.entriesOnlyOnRight());
@@ -155,13 +192,9 @@ public class TreeDifference {
      */
     public SortedMap<NodeRef, NodeRef> findChanges() {
 
-        SortedMap<String, MutableTree> leftEntries = leftTree.getChildrenAsMap();
-        SortedMap<String, MutableTree> rightEntries = rightTree.getChildrenAsMap();
-
-        final Map<NodeRef, NodeRef> pureMetadataChanges = findPureMetadataChanges();
+        SortedMapDifference<String, MutableTree> difference = difference();
 
-        SortedMapDifference<String, MutableTree> difference;
-        difference = difference(leftEntries, rightEntries);
+        final Map<NodeRef, NodeRef> pureMetadataChanges = findPureMetadataChanges(difference);
 
         SortedMap<String, ValueDifference<MutableTree>> entriesDiffering;
         entriesDiffering = difference.entriesDiffering();
@@ -188,20 +221,21 @@ public class TreeDifference {
      * sides of the comparison but have different {@link NodeRef#getMetadataId() metadata ids}
      */
     public Map<NodeRef, NodeRef> findPureMetadataChanges() {
-        SortedMap<String, MutableTree> leftEntries = leftTree.getChildrenAsMap();
-        SortedMap<String, MutableTree> rightEntries = rightTree.getChildrenAsMap();
+        return findPureMetadataChanges(difference());
+    }
+
+    private Map<NodeRef, NodeRef> findPureMetadataChanges(
+            SortedMapDifference<String, MutableTree> difference) {
 
         Map<NodeRef, NodeRef> matches = Maps.newTreeMap();
 
-        for (Map.Entry<String, MutableTree> e : leftEntries.entrySet()) {
+        // entries pointing to the same tree with the same metadata id are never different
+        for (Map.Entry<String, ValueDifference<MutableTree>> e : difference.entriesDiffering()
+                .entrySet()) {
             final String nodePath = e.getKey();
 
-            final MutableTree leftTree = e.getValue();
-            final Node leftNode = leftTree.getNode();
-
-            @Nullable
-            final MutableTree rightTree = rightEntries.get(nodePath);
-            final Node rightNode = rightTree == null ? null : rightTree.getNode();
+            final Node leftNode = e.getValue().leftValue().getNode();
+            final Node rightNode = e.getValue().rightValue().getNode();
 
             if (leftNode.equals(rightNode)) {
                 final Optional<ObjectId> leftMetadata = leftNode.getMetadataId();
@@ -14,9 +14,7 @@ public class ConflictsWriteOp extends AbstractGeoGitOp<Void> {
 
     @Override
     public Void call() {
-        for (Conflict conflict : conflicts) {
-            getIndex().getDatabase().addConflict(null, conflict);
-        }
+        getIndex().getDatabase().addConflicts(null, conflicts.iterator());
         return null;
 
     }
@@ -0,0 +1,49 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.merge;
+
+import org.geogit.api.FeatureInfo;
+import org.geogit.api.plumbing.diff.DiffEntry;
+
+/**
+ * Receives the changes of a merge scenario as {@link ReportMergeScenarioOp} finds them, so that
+ * they can be applied or stored as they come instead of being held in a
+ * {@link MergeScenarioReport}.
+ * <p>
+ * The methods are never called concurrently, though they may be called from different threads.
+ * All of them do nothing by default.
+ */
+public abstract class MergeScenarioConsumer {
+
+    /**
+     * Called for each change that conflicts with a change in the branch being merged into
+     *
+     * @param conflict the conflict
+     */
+    public void conflicted(Conflict conflict) {
+    }
+
+    /**
+     * Called for each change that can be applied as it is
+     *
+     * @param diff the change, from the common ancestor to the commit being merged
+     */
+    public void unconflicted(DiffEntry diff) {
+    }
+
+    /**
+     * Called for each feature changed in both histories whose changes could be merged
+     *
+     * @param featureInfo the merged feature
+     */
+    public void merged(FeatureInfo featureInfo) {
+    }
+
+    /**
+     * Called once all the changes have been reported
+     */
+    public void finished() {
+    }
+}
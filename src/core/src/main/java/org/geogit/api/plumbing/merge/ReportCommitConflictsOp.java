@@ -11,16 +11,14 @@ import java.util.Set;
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
-import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject;
 import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.DiffFeature;
 import org.geogit.api.plumbing.DiffTree;
-import org.geogit.api.plumbing.FindTreeChild;
-import org.geogit.api.plumbing.ResolveObjectType;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.diff.AttributeDiff;
 import org.geogit.api.plumbing.diff.DiffEntry;
@@ -39,11 +37,17 @@ import com.google.inject.Inject;
  * head. That should give information about whether the specified commit can be applied safely on
  * the current branch without overwriting changes It classifies the changes of the commit in
  * conflicting or unconflicting, so they can be applied partially
+ * <p>
+ * The changes are checked against the tree of the current head, unless a different
+ * {@link #setBaseTree(RevTree) base tree} is given, which lets a sequence of commits be checked
+ * one after the other against trees that have not been checked out.
  */
 public class ReportCommitConflictsOp extends AbstractGeoGitOp<MergeScenarioReport> {
 
     private RevCommit commit;
 
+    private RevTree baseTree;
+
     private Repository repository;
 
     @Inject
@@ -59,11 +63,23 @@ public class ReportCommitConflictsOp extends AbstractGeoGitOp<MergeScenarioRepor
         return this;
     }
 
+    /**
+     * @param baseTree the tree to check the changes against, defaults to the tree of the current
+     *        head
+     */
+    public ReportCommitConflictsOp setBaseTree(RevTree baseTree) {
+        this.baseTree = baseTree;
+        return this;
+    }
+
     @Override
     public MergeScenarioReport call() {
 
         MergeScenarioReport report = new MergeScenarioReport();
 
+        final RevTree base = baseTree == null ? repository.getOrCreateHeadTree() : baseTree;
+        final DepthSearch depthSearch = new DepthSearch(repository.getObjectDatabase());
+
         ObjectId parentCommitId = ObjectId.NULL;
         if (commit.getParentIds().size() > 0) {
             parentCommitId = commit.getParentIds().get(0);
@@ -79,16 +95,16 @@ public class ReportCommitConflictsOp extends AbstractGeoGitOp<MergeScenarioRepor
         while (diffs.hasNext()) {
             DiffEntry diff = diffs.next();
             String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
-            Optional<RevObject> obj = command(RevObjectParse.class).setRefSpec(
-                    Ref.HEAD + ":" + path).call();
+            Optional<NodeRef> baseRef = depthSearch.find(base, path);
+            Optional<RevObject> obj = Optional.absent();
+            if (baseRef.isPresent()) {
+                obj = command(RevObjectParse.class).setObjectId(baseRef.get().objectId()).call();
+            }
             switch (diff.changeType()) {
             case ADDED:
                 if (obj.isPresent()) {
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            diff.getNewObject().objectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        NodeRef headVersion = command(FindTreeChild.class).setChildPath(path)
-                                .setParent(repository.getOrCreateHeadTree()).call().get();
+                    if (TYPE.TREE.equals(diff.getNewObject().getType())) {
+                        NodeRef headVersion = baseRef.get();
                         if (!headVersion.getMetadataId()
                                 .equals(diff.getNewObject().getMetadataId())) {
                             report.addConflict(new Conflict(path, ObjectId.NULL, diff
@@ -115,15 +131,11 @@ public class ReportCommitConflictsOp extends AbstractGeoGitOp<MergeScenarioRepor
                 }
                 break;
             case MODIFIED:
-                TYPE type = command(ResolveObjectType.class).setObjectId(
-                        diff.getNewObject().objectId()).call();
-                if (TYPE.TREE.equals(type)) {
+                if (TYPE.TREE.equals(diff.getNewObject().getType())) {
                     // TODO:see how to do this. For now, we will pass any change as a conflicted
                     // one
                     report.addUnconflicted(diff);
                 } else {
-                    String refSpec = Ref.HEAD + ":" + path;
-                    obj = command(RevObjectParse.class).setRefSpec(refSpec).call();
                     if (!obj.isPresent()) {
                         // git reports this as a conflict but does not mark as conflicted, just adds
                         // the missing file.
@@ -132,11 +144,8 @@ public class ReportCommitConflictsOp extends AbstractGeoGitOp<MergeScenarioRepor
                         break;
                     }
                     RevFeature feature = (RevFeature) obj.get();
-                    DepthSearch depthSearch = new DepthSearch(repository.getObjectDatabase());
-                    Optional<NodeRef> noderef = depthSearch
-                            .find(this.getWorkTree().getTree(), path);
                     RevFeatureType featureType = command(RevObjectParse.class)
-                            .setObjectId(noderef.get().getMetadataId()).call(RevFeatureType.class)
+                            .setObjectId(baseRef.get().getMetadataId()).call(RevFeatureType.class)
                             .get();
                     ImmutableList<PropertyDescriptor> descriptors = featureType.sortedDescriptors();
                     FeatureDiff featureDiff = command(DiffFeature.class)
@@ -5,12 +5,21 @@
 package org.geogit.api.plumbing.merge;
 
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Bucket;
 import org.geogit.api.FeatureInfo;
+import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
@@ -20,21 +29,29 @@ import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.DiffFeature;
-import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindCommonAncestor;
-import org.geogit.api.plumbing.FindTreeChild;
-import org.geogit.api.plumbing.ResolveObjectType;
 import org.geogit.api.plumbing.RevObjectParse;
-import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.plumbing.diff.DepthTreeIterator;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffEntry.ChangeType;
 import org.geogit.api.plumbing.diff.FeatureDiff;
+import org.geogit.api.plumbing.diff.TreeDiffEntryIterator;
+import org.geogit.storage.NodeStorageOrder;
+import org.geogit.storage.StagingDatabase;
 import org.opengis.feature.Feature;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
-import com.google.common.collect.Maps;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 
 /**
@@ -42,15 +59,35 @@ import com.google.inject.Inject;
  * another reference commit, it returns the set of changes from the common ancestor to the first
  * commit, classified according to whether they can or not be safely applied onto the reference
  * commit. Changes that will have no effect on the target commit are not included as unconflicted.
+ * <p>
+ * The ancestor, ours and theirs trees are walked together, skipping every subtree or bucket that
+ * is the same in the ancestor and theirs, or in ours and theirs, and taking theirs changes
+ * wholesale where ours is the same as the ancestor. The buckets of the first bucketed trees found
+ * are merged in parallel.
+ * <p>
+ * If a {@link #setConsumer(MergeScenarioConsumer) consumer} is set, the changes are handed to it
+ * as they are found and the returned report is empty.
  */
 public class ReportMergeScenarioOp extends AbstractGeoGitOp<MergeScenarioReport> {
 
+    private final StagingDatabase objectDb;
+
     private RevCommit toMerge;
 
     private RevCommit mergeInto;
 
+    private boolean reportWholeTrees;
+
+    @Nullable
+    private MergeScenarioConsumer consumer;
+
+    private MergeScenarioConsumer target;
+
+    private ExecutorService executor;
+
     @Inject
-    public ReportMergeScenarioOp() {
+    public ReportMergeScenarioOp(StagingDatabase objectDb) {
+        this.objectDb = objectDb;
     }
 
     /**
@@ -69,6 +106,26 @@ public class ReportMergeScenarioOp extends AbstractGeoGitOp<MergeScenarioReport>
         return this;
     }
 
+    /**
+     * @param reportWholeTrees if {@code true}, a subtree changed only by the commit to merge is
+     *        reported as a single unconflicted change of the tree itself, which is enough to apply
+     *        it wholesale, instead of a change for each element under it. Defaults to
+     *        {@code false}.
+     */
+    public ReportMergeScenarioOp setReportWholeTrees(boolean reportWholeTrees) {
+        this.reportWholeTrees = reportWholeTrees;
+        return this;
+    }
+
+    /**
+     * @param consumer if given, receives the changes as they are found instead of the returned
+     *        report
+     */
+    public ReportMergeScenarioOp setConsumer(@Nullable MergeScenarioConsumer consumer) {
+        this.consumer = consumer;
+        return this;
+    }
+
     @Override
     public MergeScenarioReport call() {
 
@@ -76,180 +133,388 @@ public class ReportMergeScenarioOp extends AbstractGeoGitOp<MergeScenarioReport>
                 .setRight(mergeInto).call();
         Preconditions.checkState(ancestor.isPresent(), "No ancestor commit could be found.");
 
-        Map<String, DiffEntry> mergeIntoDiffs = Maps.newHashMap();
-        MergeScenarioReport report = new MergeScenarioReport();
+        final MergeScenarioReport report = new MergeScenarioReport();
+        target = consumer;
+        if (target == null) {
+            target = new MergeScenarioConsumer() {
+                @Override
+                public void conflicted(Conflict conflict) {
+                    report.addConflict(conflict);
+                }
 
-        Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(ancestor.get().getId())
-                .setReportTrees(true).setNewTree(mergeInto.getId()).call();
-        while (diffs.hasNext()) {
-            DiffEntry diff = diffs.next();
-            String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
-            mergeIntoDiffs.put(path, diff);
-        }
-
-        Iterator<DiffEntry> toMergeDiffs = command(DiffTree.class)
-                .setOldTree(ancestor.get().getId()).setReportTrees(true)
-                .setNewTree(toMerge.getId()).call();
-        while (toMergeDiffs.hasNext()) {
-            DiffEntry toMergeDiff = toMergeDiffs.next();
-            String path = toMergeDiff.oldPath() == null ? toMergeDiff.newPath() : toMergeDiff
-                    .oldPath();
-            if (mergeIntoDiffs.containsKey(path)) {
-                RevTree ancestorTree = command(RevObjectParse.class)
-                        .setObjectId(ancestor.get().getTreeId()).call(RevTree.class).get();
-                Optional<NodeRef> ancestorVersion = command(FindTreeChild.class).setChildPath(path)
-                        .setParent(ancestorTree).call();
-                ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                        .getNode().getObjectId() : ObjectId.NULL;
-                ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL : toMergeDiff
-                        .getNewObject().objectId();
-                DiffEntry mergeIntoDiff = mergeIntoDiffs.get(path);
-                ObjectId ours = mergeIntoDiff.getNewObject() == null ? ObjectId.NULL
-                        : mergeIntoDiff.getNewObject().objectId();
-                if (!mergeIntoDiff.changeType().equals(toMergeDiff.changeType())) {
-                    report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                    continue;
+                @Override
+                public void unconflicted(DiffEntry diff) {
+                    report.addUnconflicted(diff);
                 }
-                switch (toMergeDiff.changeType()) {
-                case ADDED:
-                    if (toMergeDiff.getNewObject().equals(mergeIntoDiff.getNewObject())) {
-                        // already added in current branch, no need to do anything
-                    } else {
-                        TYPE type = command(ResolveObjectType.class).setObjectId(
-                                toMergeDiff.getNewObject().objectId()).call();
-                        if (TYPE.TREE.equals(type)) {
-                            boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                            if (conflict) {
-                                // In this case, we store the metadata id, not the element id
-                                ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                        .get().getMetadataId() : ObjectId.NULL;
-                                ours = mergeIntoDiff.getNewObject().getMetadataId();
-                                theirs = toMergeDiff.getNewObject().getMetadataId();
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            }
-                            // if the metadata ids match, it means both branches have added the same
-                            // tree, maybe with different content, but there is no need to do
-                            // anything. The correct tree is already there and the merge can be run
-                            // safely, so we do not add it neither as a conflicted change nor as an
-                            // unconflicted one
-                        } else {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    }
-                    break;
-                case REMOVED:
-                    // removed by both histories => no conflict and no need to do anything
-                    break;
-                case MODIFIED:
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.getNewObject().objectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                        if (conflict) {
-                            // In this case, we store the metadata id, not the element id
-                            ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                                    .getMetadataId() : ObjectId.NULL;
-                            ours = mergeIntoDiff.getNewObject().getMetadataId();
-                            theirs = toMergeDiff.getNewObject().getMetadataId();
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    } else {
-                        FeatureDiff toMergeFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(toMergeDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(toMergeDiff.getNewObject()))
-                                .call();
-                        FeatureDiff mergeIntoFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(mergeIntoDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(mergeIntoDiff.getNewObject()))
-                                .call();
-                        if (toMergeFeatureDiff.conflicts(mergeIntoFeatureDiff)) {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        } else {
-                            // if the feature types are different we report a conflict and do not
-                            // try to perform automerge
-                            if (!toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId())) {
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            } else if (!toMergeFeatureDiff.equals(mergeIntoFeatureDiff)) {
-                                Feature mergedFeature = command(MergeFeaturesOp.class)
-                                        .setFirstFeature(mergeIntoDiff.getNewObject())
-                                        .setSecondFeature(toMergeDiff.getNewObject())
-                                        .setAncestorFeature(mergeIntoDiff.getOldObject()).call();
-                                RevFeature revFeature = new RevFeatureBuilder()
-                                        .build(mergedFeature);
-                                if (revFeature.getId().equals(toMergeDiff.newObjectId())) {
-                                    // the resulting merged feature equals the feature to merge from
-                                    // the branch, which means that it exists in the repo and there
-                                    // is no need to add it
-                                    report.addUnconflicted(toMergeDiff);
-                                } else {
-                                    RevFeatureType featureType = command(RevObjectParse.class)
-                                            .setObjectId(
-                                                    mergeIntoDiff.getNewObject().getMetadataId())
-                                            .call(RevFeatureType.class).get();
-                                    FeatureInfo merged = new FeatureInfo(mergedFeature,
-                                            featureType, path);
-                                    report.addMerged(merged);
-                                }
-                            }
-                        }
-                    }
-                    break;
+
+                @Override
+                public void merged(FeatureInfo featureInfo) {
+                    report.addMerged(featureInfo);
                 }
+            };
+        }
+
+        final RevTree ancestorTree = rootTree(ancestor.get());
+        final RevTree oursTree = rootTree(mergeInto);
+        final RevTree theirsTree = rootTree(toMerge);
+
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        executor = Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                .setNameFormat("geogit-merge-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> forks = Lists.newArrayList();
+            mergeTrees(rootRef(ancestorTree), rootRef(oursTree), rootRef(theirsTree),
+                    ancestorTree, oursTree, theirsTree, forks);
+            for (Future<?> fork : forks) {
+                fork.get();
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        target.finished();
+
+        return report;
+
+    }
+
+    private RevTree rootTree(RevCommit commit) {
+        return command(RevObjectParse.class).setObjectId(commit.getTreeId()).call(RevTree.class)
+                .or(RevTree.EMPTY);
+    }
+
+    private static NodeRef rootRef(RevTree tree) {
+        return new NodeRef(Node.create(NodeRef.ROOT, tree.getId(), ObjectId.NULL, TYPE.TREE),
+                NodeRef.ROOT, ObjectId.NULL);
+    }
+
+    /**
+     * Merges the contents of three versions of a tree, or of a bucket of it, the refs being those
+     * of the tree itself.
+     *
+     * @param forks if given, the buckets of bucketed trees are merged in the executor and their
+     *        futures added to it, otherwise everything is merged in the calling thread
+     */
+    private void mergeTrees(final NodeRef ancestorRef, final NodeRef oursRef,
+            final NodeRef theirsRef, final RevTree ancestor, final RevTree ours,
+            final RevTree theirs, @Nullable List<Future<?>> forks) {
+
+        if (theirs.getId().equals(ancestor.getId()) || theirs.getId().equals(ours.getId())) {
+            // nothing to take from theirs
+            return;
+        }
+        final boolean bucketed = bucketed(ancestor, ours, theirs);
+        if (bucketed && forks != null) {
+            mergeBuckets(ancestorRef, oursRef, theirsRef, ancestor, ours, theirs, forks);
+        } else if (ours.getId().equals(ancestor.getId())) {
+            // only theirs changed, take all its changes
+            Iterator<DiffEntry> changes = new TreeDiffEntryIterator(ancestorRef, theirsRef,
+                    ancestor.isEmpty() ? null : ancestor, theirs.isEmpty() ? null : theirs, true,
+                    true, objectDb);
+            unconflicted(changes, theirsRef.path());
+        } else if (bucketed) {
+            mergeBuckets(ancestorRef, oursRef, theirsRef, ancestor, ours, theirs, null);
+        } else {
+            mergeChildren(ancestorRef, oursRef, theirsRef, ancestor, ours, theirs, forks);
+        }
+    }
+
+    /**
+     * @return whether the trees can be merged bucket by bucket, that is, at least one of them has
+     *         buckets and the others have buckets or are empty
+     */
+    private static boolean bucketed(RevTree... trees) {
+        boolean bucketed = false;
+        for (RevTree tree : trees) {
+            if (tree.buckets().isPresent()) {
+                bucketed = true;
+            } else if (!tree.isEmpty()) {
+                return false;
+            }
+        }
+        return bucketed;
+    }
+
+    private void mergeBuckets(final NodeRef ancestorRef, final NodeRef oursRef,
+            final NodeRef theirsRef, final RevTree ancestor, final RevTree ours,
+            final RevTree theirs, @Nullable List<Future<?>> forks) {
+
+        final SortedMap<Integer, Bucket> ancestorBuckets = buckets(ancestor);
+        final SortedMap<Integer, Bucket> oursBuckets = buckets(ours);
+        final SortedMap<Integer, Bucket> theirsBuckets = buckets(theirs);
+
+        Set<Integer> indexes = Sets.newTreeSet(ancestorBuckets.keySet());
+        indexes.addAll(oursBuckets.keySet());
+        indexes.addAll(theirsBuckets.keySet());
+        for (Integer index : indexes) {
+            final Bucket ancestorBucket = ancestorBuckets.get(index);
+            final Bucket oursBucket = oursBuckets.get(index);
+            final Bucket theirsBucket = theirsBuckets.get(index);
+            if (Objects.equal(ancestorBucket, theirsBucket)
+                    || Objects.equal(oursBucket, theirsBucket)) {
+                continue;
+            }
+            if (forks == null) {
+                mergeTrees(ancestorRef, oursRef, theirsRef, bucketTree(ancestorBucket),
+                        bucketTree(oursBucket), bucketTree(theirsBucket), null);
             } else {
-                // If the element is a tree, not a feature, it might be a conflict even if the other
-                // branch has not modified it.
-                // If we are removing the tree, we have to make sure that there are no features
-                // modified in the other branch under it.
-                if (ChangeType.REMOVED.equals(toMergeDiff.changeType())) {
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.oldObjectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        String parentPath = toMergeDiff.oldPath();
-                        Set<Entry<String, DiffEntry>> entries = mergeIntoDiffs.entrySet();
-                        boolean conflict = false;
-                        for (Entry<String, DiffEntry> entry : entries) {
-                            if (entry.getKey().startsWith(parentPath)) {
-                                if (!ChangeType.REMOVED.equals(entry.getValue().changeType())) {
-                                    RevTree ancestorTree = command(RevObjectParse.class)
-                                            .setObjectId(ancestor.get().getTreeId())
-                                            .call(RevTree.class).get();
-                                    Optional<NodeRef> ancestorVersion = command(FindTreeChild.class)
-                                            .setChildPath(path).setParent(ancestorTree).call();
-                                    ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                            .get().getNode().getObjectId()
-                                            : ObjectId.NULL;
-                                    ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL
-                                            : toMergeDiff.getNewObject().objectId();
-                                    String oursRefSpec = mergeInto.getId().toString() + ":"
-                                            + parentPath;
-                                    Optional<ObjectId> ours = command(RevParse.class).setRefSpec(
-                                            oursRefSpec).call();
-                                    report.addConflict(new Conflict(path, ancestorVersionId, ours
-                                            .get(), theirs));
-                                    conflict = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!conflict) {
-                            report.addUnconflicted(toMergeDiff);
-                        }
-                    } else {
-                        report.addUnconflicted(toMergeDiff);
+                forks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        mergeTrees(ancestorRef, oursRef, theirsRef, bucketTree(ancestorBucket),
+                                bucketTree(oursBucket), bucketTree(theirsBucket), null);
+                        return null;
                     }
-                } else {
-                    report.addUnconflicted(toMergeDiff);
+                }));
+            }
+        }
+    }
+
+    private static SortedMap<Integer, Bucket> buckets(RevTree tree) {
+        return tree.buckets().or(ImmutableSortedMap.<Integer, Bucket> of());
+    }
+
+    private RevTree bucketTree(@Nullable Bucket bucket) {
+        return bucket == null ? RevTree.EMPTY : objectDb.getTree(bucket.id());
+    }
+
+    /**
+     * Merges the direct children of three versions of a tree, matching them by name in
+     * {@link NodeStorageOrder storage order}.
+     */
+    private void mergeChildren(NodeRef ancestorRef, NodeRef oursRef, NodeRef theirsRef,
+            RevTree ancestor, RevTree ours, RevTree theirs, @Nullable List<Future<?>> forks) {
+
+        final NodeStorageOrder order = new NodeStorageOrder();
+        PeekingIterator<NodeRef> ancestorChildren = children(ancestorRef, ancestor);
+        PeekingIterator<NodeRef> oursChildren = children(oursRef, ours);
+        PeekingIterator<NodeRef> theirsChildren = children(theirsRef, theirs);
+        final List<PeekingIterator<NodeRef>> all = ImmutableList.of(ancestorChildren,
+                oursChildren, theirsChildren);
+
+        while (ancestorChildren.hasNext() || oursChildren.hasNext() || theirsChildren.hasNext()) {
+            Node next = null;
+            for (PeekingIterator<NodeRef> children : all) {
+                if (children.hasNext()) {
+                    Node node = children.peek().getNode();
+                    next = next == null ? node : order.min(next, node);
                 }
             }
+            NodeRef ancestorChild = next(ancestorChildren, next);
+            NodeRef oursChild = next(oursChildren, next);
+            NodeRef theirsChild = next(theirsChildren, next);
+            if (Objects.equal(ancestorChild, theirsChild)
+                    || Objects.equal(oursChild, theirsChild)) {
+                continue;
+            }
+            mergeChild(ancestorChild, oursChild, theirsChild, forks);
+        }
+    }
+
+    private PeekingIterator<NodeRef> children(NodeRef treeRef, RevTree tree) {
+        return Iterators.peekingIterator(new DepthTreeIterator(treeRef.path(),
+                treeRef.getMetadataId(), tree, objectDb, DepthTreeIterator.Strategy.CHILDREN));
+    }
 
+    /**
+     * @return the next child if it's named as {@code node}, {@code null} otherwise
+     */
+    @Nullable
+    private static NodeRef next(PeekingIterator<NodeRef> children, Node node) {
+        if (children.hasNext() && children.peek().getNode().getName().equals(node.getName())) {
+            return children.next();
         }
+        return null;
+    }
 
-        return report;
+    /**
+     * Merges three versions of a child that theirs changed, at least one of which is present.
+     */
+    private void mergeChild(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+            @Nullable NodeRef theirs, @Nullable List<Future<?>> forks) {
+
+        TYPE type = null;
+        for (NodeRef ref : new NodeRef[] { ancestor, ours, theirs }) {
+            if (ref != null) {
+                if (type == null) {
+                    type = ref.getType();
+                } else if (!type.equals(ref.getType())) {
+                    NodeRef any = theirs == null ? ours : theirs;
+                    conflicted(new Conflict(any.path(), id(ancestor), id(ours), id(theirs)));
+                    return;
+                }
+            }
+        }
+        if (TYPE.TREE.equals(type)) {
+            mergeTree(ancestor, ours, theirs, forks);
+        } else {
+            mergeFeature(ancestor, ours, theirs);
+        }
+    }
 
+    private void mergeTree(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+            @Nullable NodeRef theirs, @Nullable List<Future<?>> forks) {
+
+        if (Objects.equal(ancestor, ours)) {
+            if (reportWholeTrees) {
+                unconflicted(new DiffEntry(ancestor, theirs));
+            } else if (ancestor != null && theirs != null) {
+                if (!ancestor.getMetadataId().equals(theirs.getMetadataId())) {
+                    unconflicted(new DiffEntry(ancestor, theirs));
+                }
+                mergeTrees(ancestor, ours, theirs, tree(ancestor), tree(ours), tree(theirs), forks);
+            } else {
+                // added or removed only by theirs, reported along with all its contents
+                RevTree ancestorTree = ancestor == null ? null : tree(ancestor);
+                RevTree theirsTree = theirs == null ? null : tree(theirs);
+                unconflicted(new TreeDiffEntryIterator(ancestor, theirs, ancestorTree, theirsTree,
+                        true, true, objectDb), null);
+            }
+        } else if (ancestor == null) {
+            // added by both histories. If the metadata ids match, the same tree was added, maybe
+            // with different content, which is merged below
+            if (!ours.getMetadataId().equals(theirs.getMetadataId())) {
+                // In this case, we store the metadata id, not the element id
+                conflicted(new Conflict(theirs.path(), ObjectId.NULL, ours.getMetadataId(),
+                        theirs.getMetadataId()));
+            }
+            mergeTrees(theirs, ours, theirs, RevTree.EMPTY, tree(ours), tree(theirs), forks);
+        } else if (ours == null) {
+            // removed by ours and changed by theirs, which conflicts with the removal at the tree
+            // itself. Below it, theirs changes to features ours removed conflict too, while the
+            // features theirs added are reported as unconflicted
+            conflicted(new Conflict(theirs.path(), ancestor.objectId(), ObjectId.NULL,
+                    theirs.objectId()));
+            mergeTrees(ancestor, ancestor, theirs, tree(ancestor), RevTree.EMPTY, tree(theirs),
+                    forks);
+        } else if (theirs == null) {
+            // removed by theirs, which conflicts with anything but removals made by ours under it
+            if (hasChanges(ancestor, ours)) {
+                conflicted(new Conflict(ancestor.path(), ancestor.objectId(), ours.objectId(),
+                        ObjectId.NULL));
+            } else {
+                unconflicted(new DiffEntry(ancestor, null));
+            }
+            mergeTrees(ancestor, ours, ancestor, tree(ancestor), tree(ours), RevTree.EMPTY, forks);
+        } else {
+            // changed by both histories. Different feature types conflict, even if only theirs
+            // changed it, since the tree itself can't be taken from either side
+            if (!ours.getMetadataId().equals(theirs.getMetadataId())) {
+                // In this case, we store the metadata id, not the element id
+                conflicted(new Conflict(theirs.path(), ancestor.getMetadataId(),
+                        ours.getMetadataId(), theirs.getMetadataId()));
+            }
+            mergeTrees(ancestor, ours, theirs, tree(ancestor), tree(ours), tree(theirs), forks);
+        }
+    }
+
+    /**
+     * @return whether ours made any change under the tree other than removing elements
+     */
+    private boolean hasChanges(NodeRef ancestor, NodeRef ours) {
+        Iterator<DiffEntry> changes = new TreeDiffEntryIterator(ancestor, ours, tree(ancestor),
+                tree(ours), true, true, objectDb);
+        while (changes.hasNext()) {
+            if (!ChangeType.REMOVED.equals(changes.next().changeType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void mergeFeature(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+            @Nullable NodeRef theirs) {
+
+        if (Objects.equal(ancestor, ours)) {
+            unconflicted(new DiffEntry(ancestor, theirs));
+            return;
+        }
+        final String path = theirs == null ? ours.path() : theirs.path();
+        final ChangeType oursChange = changeType(ancestor, ours);
+        final ChangeType theirsChange = changeType(ancestor, theirs);
+        if (!oursChange.equals(theirsChange) || ChangeType.ADDED.equals(theirsChange)) {
+            // removals by both histories are never reported, so this is a change made by both
+            // differently
+            conflicted(new Conflict(path, id(ancestor), id(ours), id(theirs)));
+            return;
+        }
+
+        FeatureDiff theirsDiff = command(DiffFeature.class)
+                .setOldVersion(Suppliers.ofInstance(ancestor))
+                .setNewVersion(Suppliers.ofInstance(theirs)).call();
+        FeatureDiff oursDiff = command(DiffFeature.class)
+                .setOldVersion(Suppliers.ofInstance(ancestor))
+                .setNewVersion(Suppliers.ofInstance(ours)).call();
+        if (theirsDiff.conflicts(oursDiff)) {
+            conflicted(new Conflict(path, id(ancestor), id(ours), id(theirs)));
+        } else if (!theirs.getMetadataId().equals(ours.getMetadataId())) {
+            // if the feature types are different we report a conflict and do not try to perform
+            // automerge
+            conflicted(new Conflict(path, id(ancestor), id(ours), id(theirs)));
+        } else if (!theirsDiff.equals(oursDiff)) {
+            Feature mergedFeature = command(MergeFeaturesOp.class).setFirstFeature(ours)
+                    .setSecondFeature(theirs).setAncestorFeature(ancestor).call();
+            RevFeature revFeature = new RevFeatureBuilder().build(mergedFeature);
+            if (revFeature.getId().equals(theirs.objectId())) {
+                // the resulting merged feature equals the feature to merge from the branch, which
+                // means that it exists in the repo and there is no need to add it
+                unconflicted(new DiffEntry(ancestor, theirs));
+            } else {
+                RevFeatureType featureType = objectDb.getFeatureType(ours.getMetadataId());
+                merged(new FeatureInfo(mergedFeature, featureType, path));
+            }
+        }
+    }
+
+    private static ChangeType changeType(@Nullable NodeRef ancestor, @Nullable NodeRef version) {
+        if (ancestor == null) {
+            return ChangeType.ADDED;
+        }
+        return version == null ? ChangeType.REMOVED : ChangeType.MODIFIED;
+    }
+
+    private static ObjectId id(@Nullable NodeRef ref) {
+        return ref == null ? ObjectId.NULL : ref.objectId();
+    }
+
+    private RevTree tree(NodeRef treeRef) {
+        return objectDb.getTree(treeRef.objectId());
+    }
+
+    private void conflicted(Conflict conflict) {
+        synchronized (target) {
+            target.conflicted(conflict);
+        }
+    }
+
+    private void unconflicted(DiffEntry diff) {
+        synchronized (target) {
+            target.unconflicted(diff);
+        }
+    }
+
+    /**
+     * Reports the given changes as unconflicted
+     *
+     * @param treePath if given, entries for the tree itself are left out, since the caller already
+     *        took care of them
+     */
+    private void unconflicted(Iterator<DiffEntry> changes, @Nullable String treePath) {
+        while (changes.hasNext()) {
+            DiffEntry diff = changes.next();
+            String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+            if (!path.equals(treePath)) {
+                unconflicted(diff);
+            }
+        }
+    }
+
+    private void merged(FeatureInfo featureInfo) {
+        synchronized (target) {
+            target.merged(featureInfo);
+        }
     }
 }
@@ -27,6 +27,7 @@ import org.opengis.util.ProgressListener;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 /**
@@ -113,13 +114,15 @@ public class AddOp extends AbstractGeoGitOp<WorkingTree> {
         getIndex().stage(progress, unstaged, numChanges);
 
         List<Conflict> conflicts = getIndex().getConflicted(pathFilter);
+        // if we are staging unmerged files, the conflict should get solved. However, if the
+        // working index object is the same as the staging area one (for instance, after running
+        // checkout --ours), it will not be reported by the getUnstaged method. We solve that
+        // here.
+        List<String> paths = Lists.newArrayListWithCapacity(conflicts.size());
         for (Conflict conflict : conflicts) {
-            // if we are staging unmerged files, the conflict should get solved. However, if the
-            // working index object is the same as the staging area one (for instance, after running
-            // checkout --ours), it will not be reported by the getUnstaged method. We solve that
-            // here.
-            getIndex().getDatabase().removeConflict(null, conflict.getPath());
+            paths.add(conflict.getPath());
         }
+        getIndex().getDatabase().removeConflicts(null, paths);
     }
 
     /**
@@ -5,38 +5,58 @@
 package org.geogit.api.porcelain;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
-import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.DiffFeature;
 import org.geogit.api.plumbing.ResolveFeatureType;
 import org.geogit.api.plumbing.ResolveObjectType;
-import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.RevParse;
 import org.geogit.api.plumbing.diff.AttributeDiff;
-import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.FeatureDiff;
+import org.geogit.repository.DepthSearch;
+import org.geogit.storage.ObjectDatabase;
 import org.opengis.feature.type.PropertyDescriptor;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
 
 /**
  * Creates a report that contains information about who was the last to change each attribute in a
  * feature
+ * <p>
+ * The history is walked from {@code HEAD} following parents, resolving the feature's node at each
+ * commit by a direct tree lookup, and the feature versions are compared only when their ids differ.
+ * At a merge, the walk follows the first parent holding the same version of the feature, if any,
+ * and otherwise the first parent holding the feature at all, against which the merge commit is
+ * blamed for what it changed. The walk stops as soon as every attribute has been attributed to a
+ * commit.
  * 
  */
 public class BlameOp extends AbstractGeoGitOp<BlameReport> {
 
     private String path;
 
+    private ObjectDatabase objectDb;
+
+    @Inject
+    public BlameOp(ObjectDatabase objectDb) {
+        this.objectDb = objectDb;
+    }
+
     /**
      * Sets the path of the feature to use
      * 
@@ -60,40 +80,119 @@ public class BlameOp extends AbstractGeoGitOp<BlameReport> {
 
         BlameReport report = new BlameReport(featureType.get());
 
-        Iterator<RevCommit> log = command(LogOp.class).addPath(path).call();
-        RevCommit commit = log.next();
+        FeatureLocator locator = new FeatureLocator(objectDb, path);
+
+        final ObjectId headId = command(RevParse.class).setRefSpec(Ref.HEAD).call().get();
+        // the oldest commit found so far holding the current version of the feature
+        RevCommit commit = objectDb.getCommit(headId);
+        NodeRef version = locator.find(commit.getTreeId()).get();
 
         while (!report.isComplete()) {
-            if (!log.hasNext()) {
-                String refSpec = commit.getId().toString() + ":" + path;
-                RevFeature feature = command(RevObjectParse.class).setRefSpec(refSpec)
-                        .call(RevFeature.class).get();
-                report.setFirstVersion(feature, commit);
+            RevCommit commitB = null;
+            Optional<NodeRef> versionB = Optional.absent();
+            for (ObjectId parentId : commit.getParentIds()) {
+                RevCommit parent = objectDb.getIfPresent(parentId, RevCommit.class);
+                if (parent == null) {
+                    // not available in a shallow clone
+                    continue;
+                }
+                Optional<NodeRef> parentVersion = locator.find(parent.getTreeId());
+                if (parentVersion.isPresent()
+                        && parentVersion.get().objectId().equals(version.objectId())) {
+                    // unchanged along this parent, which is followed without blaming commit
+                    commitB = parent;
+                    versionB = parentVersion;
+                    break;
+                }
+                if (parentVersion.isPresent() && commitB == null) {
+                    commitB = parent;
+                    versionB = parentVersion;
+                }
+            }
+            if (commitB == null) {
+                // the feature was added by commit, or the history ends there
+                report.setFirstVersion(objectDb.getFeature(version.objectId()), commit);
                 break;
             }
-            RevCommit commitB = log.next();
-            Iterator<DiffEntry> diffs = command(DiffOp.class).setNewVersion(commit.getId())
-                    .setOldVersion(commitB.getId()).setReportTrees(false).call();
-
-            while (diffs.hasNext()) {
-                DiffEntry diff = diffs.next();
-                if (path.equals(diff.newPath())) {
-                    FeatureDiff featureDiff = command(DiffFeature.class)
-                            .setNewVersion(Suppliers.ofInstance(diff.getNewObject()))
-                            .setOldVersion(Suppliers.ofInstance(diff.getOldObject())).call();
-                    Map<PropertyDescriptor, AttributeDiff> attribDiffs = featureDiff.getDiffs();
-                    Iterator<PropertyDescriptor> iter = attribDiffs.keySet().iterator();
-                    while (iter.hasNext()) {
-                        PropertyDescriptor key = iter.next();
-                        Optional<?> value = attribDiffs.get(key).getNewValue();
-                        String attribute = key.getName().toString();
-                        report.addDiff(attribute, value, commit);
-                    }
+            if (!versionB.get().objectId().equals(version.objectId())) {
+                FeatureDiff featureDiff = command(DiffFeature.class)
+                        .setNewVersion(Suppliers.ofInstance(version))
+                        .setOldVersion(Suppliers.ofInstance(versionB.get())).call();
+                Map<PropertyDescriptor, AttributeDiff> attribDiffs = featureDiff.getDiffs();
+                Iterator<PropertyDescriptor> iter = attribDiffs.keySet().iterator();
+                while (iter.hasNext()) {
+                    PropertyDescriptor key = iter.next();
+                    Optional<?> value = attribDiffs.get(key).getNewValue();
+                    String attribute = key.getName().toString();
+                    report.addDiff(attribute, value, commit);
                 }
-
+                version = versionB.get();
             }
             commit = commitB;
         }
         return report;
     }
+
+    /**
+     * Resolves the node of a feature in successive root trees, remembering the tree visited at
+     * each step of the feature path so that subtrees that didn't change from one root tree to the
+     * next are not read again.
+     */
+    private static class FeatureLocator {
+
+        private final ObjectDatabase objectDb;
+
+        private final DepthSearch search;
+
+        private final String parentPath;
+
+        private final List<String> steps;
+
+        private final List<ObjectId> lastTreeIds;
+
+        private final List<Optional<Node>> lastNodes;
+
+        public FeatureLocator(ObjectDatabase objectDb, String path) {
+            this.objectDb = objectDb;
+            this.search = new DepthSearch(objectDb);
+            this.parentPath = NodeRef.parentPath(path);
+            this.steps = Lists.newArrayList(Splitter.on(NodeRef.PATH_SEPARATOR).split(path));
+            this.lastTreeIds = Lists.newArrayList();
+            this.lastNodes = Lists.newArrayList();
+            for (int i = 0; i < steps.size(); i++) {
+                lastTreeIds.add(null);
+                lastNodes.add(null);
+            }
+        }
+
+        public Optional<NodeRef> find(ObjectId rootTreeId) {
+            ObjectId treeId = rootTreeId;
+            ObjectId metadataId = ObjectId.NULL;
+            final int last = steps.size() - 1;
+            for (int i = 0; i <= last; i++) {
+                Optional<Node> node;
+                if (treeId.equals(lastTreeIds.get(i))) {
+                    node = lastNodes.get(i);
+                } else {
+                    RevTree tree = objectDb.getIfPresent(treeId, RevTree.class);
+                    if (tree == null) {
+                        tree = RevTree.EMPTY;
+                    }
+                    node = search.getDirectChild(tree, steps.get(i), 0);
+                    lastTreeIds.set(i, treeId);
+                    lastNodes.set(i, node);
+                }
+                if (!node.isPresent()) {
+                    return Optional.absent();
+                }
+                metadataId = node.get().getMetadataId().or(metadataId);
+                if (i < last) {
+                    treeId = node.get().getObjectId();
+                } else {
+                    return Optional.of(new NodeRef(node.get(), parentPath, metadataId));
+                }
+            }
+            return Optional.absent();
+        }
+    }
 }
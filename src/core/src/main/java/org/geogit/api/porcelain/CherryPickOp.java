@@ -11,10 +11,9 @@ import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.SymRef;
-import org.geogit.api.plumbing.DiffTree;
+import org.geogit.api.plumbing.ApplyTreeDiff;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.UpdateRef;
-import org.geogit.api.plumbing.WriteTree;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.merge.Conflict;
 import org.geogit.api.plumbing.merge.ConflictsWriteOp;
@@ -85,30 +84,19 @@ public class CherryPickOp extends AbstractGeoGitOp<RevCommit> {
 
         ObjectId headId = headRef.getObjectId();
 
-        ObjectId parentCommitId = ObjectId.NULL;
-        if (commitToApply.getParentIds().size() > 0) {
-            parentCommitId = commitToApply.getParentIds().get(0);
-        }
-        ObjectId parentTreeId = ObjectId.NULL;
-        if (repository.commitExists(parentCommitId)) {
-            parentTreeId = repository.getCommit(parentCommitId).getTreeId();
-        }
-        // get changes
-        Iterator<DiffEntry> diff = command(DiffTree.class).setOldTree(parentTreeId)
-                .setNewTree(commitToApply.getTreeId()).setReportTrees(true).call();
-
         // see if there are conflicts
         MergeScenarioReport report = command(ReportCommitConflictsOp.class)
                 .setCommit(commitToApply).call();
         if (report.getConflicts().isEmpty()) {
-            // stage changes
-            getIndex().stage(getProgressListener(), diff, 0);
-            // write new tree
-            ObjectId newTreeId = command(WriteTree.class).call();
+            // apply the changes straight to the head tree, the index is clean so it just has to
+            // point to the result
+            ObjectId newTreeId = command(ApplyTreeDiff.class)
+                    .setTree(repository.getOrCreateHeadTree())
+                    .setDiffs(report.getUnconflicted().iterator()).call();
+            repository.getIndex().updateStageHead(newTreeId);
             RevCommit newCommit = command(CommitOp.class).setCommit(commitToApply).call();
 
             repository.getWorkingTree().updateWorkHead(newTreeId);
-            repository.getIndex().updateStageHead(newTreeId);
 
             getProgressListener().complete();
 
@@ -32,10 +32,19 @@ import com.google.inject.Inject;
 
 /**
  * Clones a remote repository to a given directory.
- * 
+ * <p>
+ * The URL being cloned is recorded in the {@link #CLONE_URL_CONFIG_KEY} config key until the clone
+ * is complete. If the clone is interrupted, calling this operation again on the same repository
+ * with the same URL resumes it: the commits already fetched are kept and only the rest of the
+ * history is transferred.
  */
 public class CloneOp extends AbstractGeoGitOp<Void> {
 
+    /**
+     * Config key holding the URL of a clone that has been started but not completed yet
+     */
+    public static final String CLONE_URL_CONFIG_KEY = "clone.url";
+
     private Optional<String> branch = Optional.absent();
 
     private String repositoryURL;
@@ -102,10 +111,25 @@ public class CloneOp extends AbstractGeoGitOp<Void> {
         getProgressListener().started();
         getProgressListener().progress(0.f);
 
-        // Set up origin
-        Remote remote = command(RemoteAddOp.class).setName("origin").setURL(repositoryURL)
-                .setMapped(repository.isSparse())
-                .setBranch(repository.isSparse() ? branch.get() : null).call();
+        final Remote remote;
+        final Optional<String> interruptedClone = getInterruptedCloneURL(repository);
+        if (interruptedClone.isPresent()) {
+            Preconditions.checkState(interruptedClone.get().equals(repositoryURL),
+                    "An interrupted clone from %s can't be resumed from %s",
+                    interruptedClone.get(), repositoryURL);
+            Optional<Remote> origin = command(RemoteResolve.class).setName("origin").call();
+            Preconditions.checkState(origin.isPresent(),
+                    "Can't resume the clone, remote 'origin' not found.");
+            remote = origin.get();
+        } else {
+            command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET)
+                    .setScope(ConfigScope.LOCAL).setName(CLONE_URL_CONFIG_KEY)
+                    .setValue(repositoryURL).call();
+            // Set up origin
+            remote = command(RemoteAddOp.class).setName("origin").setURL(repositoryURL)
+                    .setMapped(repository.isSparse())
+                    .setBranch(repository.isSparse() ? branch.get() : null).call();
+        }
 
         if (!depth.isPresent()) {
             // See if we are cloning a shallow clone. If so, a depth must be specified.
@@ -188,8 +212,20 @@ public class CloneOp extends AbstractGeoGitOp<Void> {
             }
         }
 
+        command(ConfigOp.class).setAction(ConfigAction.CONFIG_UNSET).setScope(ConfigScope.LOCAL)
+                .setName(CLONE_URL_CONFIG_KEY).call();
+
         getProgressListener().complete();
 
         return null;
     }
+
+    /**
+     * @param repository the repository to check
+     * @return the URL of the clone into {@code repository} that was started and didn't complete,
+     *         if any
+     */
+    public static Optional<String> getInterruptedCloneURL(Repository repository) {
+        return repository.getConfigDatabase().get(CLONE_URL_CONFIG_KEY);
+    }
 }
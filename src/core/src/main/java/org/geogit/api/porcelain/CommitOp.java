@@ -23,6 +23,7 @@ import org.geogit.api.RevCommit;
 import org.geogit.api.RevPerson;
 import org.geogit.api.RevTree;
 import org.geogit.api.SymRef;
+import org.geogit.api.plumbing.BuildChangedPathsFilter;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveTreeish;
 import org.geogit.api.plumbing.RevObjectParse;
@@ -371,6 +372,11 @@ public class CommitOp extends AbstractGeoGitOp<RevCommit> {
             return null;
         }
         objectDb.put(commit);
+        if (Boolean.parseBoolean(command(ConfigGet.class)
+                .setName(BuildChangedPathsFilter.ENABLED_CONFIG_KEY).call().or("false"))) {
+            // record the paths changed by this commit to speed up path filtered history queries
+            command(BuildChangedPathsFilter.class).setCommit(commit).call();
+        }
         // set the HEAD pointing to the new commit
         final Optional<Ref> branchHead = command(UpdateRef.class).setName(currentBranch)
                 .setNewValue(commit.getId()).call();
@@ -15,6 +15,7 @@ import org.geogit.api.Ref;
 import org.geogit.api.Remote;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.LsRemote;
+import org.geogit.api.plumbing.RebuildGraphOp;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.porcelain.ConfigOp.ConfigAction;
@@ -50,6 +51,8 @@ public class FetchOp extends AbstractGeoGitOp<FetchResult> {
 
     private boolean fullDepth = false;
 
+    private boolean rebuildGraph = false;
+
     private List<Remote> remotes = new ArrayList<Remote>();
 
     private Repository localRepository;
@@ -111,6 +114,19 @@ public class FetchOp extends AbstractGeoGitOp<FetchResult> {
         return this;
     }
 
+    /**
+     * If set, once the fetch completes a {@link RebuildGraphOp} is started in the background for
+     * the updated refs, so that any commit missing from the graph database gets added to it
+     * without blocking the fetch.
+     * 
+     * @param rebuildGraph whether or not to rebuild the graph after fetching
+     * @return {@code this}
+     */
+    public FetchOp setRebuildGraph(boolean rebuildGraph) {
+        this.rebuildGraph = rebuildGraph;
+        return this;
+    }
+
     /**
      * @param remoteName the name or URL of a remote repository to fetch from
      * @return {@code this}
@@ -280,6 +296,22 @@ public class FetchOp extends AbstractGeoGitOp<FetchResult> {
                     .setScope(ConfigScope.LOCAL).setName(Repository.DEPTH_CONFIG_KEY).call();
         }
 
+        if (rebuildGraph && !localRepository.isSparse()) {
+            RebuildGraphOp rebuildOp = command(RebuildGraphOp.class);
+            boolean updated = false;
+            for (List<ChangedRef> changedRefs : result.getChangedRefs().values()) {
+                for (ChangedRef ref : changedRefs) {
+                    if (ref.getType() != ChangeTypes.REMOVED_REF) {
+                        rebuildOp.addTip(ref.getNewRef().getObjectId());
+                        updated = true;
+                    }
+                }
+            }
+            if (updated) {
+                rebuildOp.callInBackground();
+            }
+        }
+
         getProgressListener().complete();
 
         return result;
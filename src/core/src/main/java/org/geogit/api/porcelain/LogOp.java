@@ -4,10 +4,19 @@
  */
 package org.geogit.api.porcelain;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
 import java.util.regex.Matcher;
@@ -17,13 +26,20 @@ import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.plumbing.diff.ChangedPathsFilter;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.di.CanRunDuringConflict;
 import org.geogit.repository.Repository;
 import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectReader;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.datastream.FormatCommon;
 import org.geotools.util.Range;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -32,6 +48,7 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
@@ -47,6 +64,13 @@ import com.google.inject.Inject;
  * <li> {@link #addPath(String) addPath}: Show only commits that affect the specified path.
  * </ul>
  * </p>
+ * <p>
+ * The history is traversed and filtered using only the commits' ids, parents and timestamps, which
+ * are parsed from the commits' raw form. The commits are read in batches that span the whole
+ * traversal frontier, walking ahead of it through the commit graph, and each one is read once.
+ * Unless the author or committer are filtered, commits are fully decoded only once skip and limit
+ * have been applied, as the returned iterator gets to them.
+ * </p>
  * 
  * 
  */
@@ -56,6 +80,16 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
     private static final Range<Long> ALWAYS = new Range<Long>(Long.class, 0L, true, Long.MAX_VALUE,
             true);
 
+    /**
+     * Number of commits read at once
+     */
+    private static final int PREFETCH_SIZE = 100;
+
+    /**
+     * Number of read commits the traversal didn't get to that are kept before dropping them
+     */
+    private static final int MAX_PREFETCHED = 10 * PREFETCH_SIZE;
+
     private Range<Long> timeRange;
 
     private Integer skip;
@@ -261,86 +295,280 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
             }
         }
 
-        Iterator<RevCommit> history;
+        final CommitHeaders headers = new CommitHeaders(repository.getObjectDatabase(), graphDb);
+
+        Iterator<CommitHeader> history;
         if (firstParent) {
-            history = new LinearHistoryIterator(newestCommitId, repository);
+            history = new LinearHistoryIterator(newestCommitId, headers);
         } else {
             if (commits.isEmpty()) {
                 commits.add(newestCommitId);
             }
             if (topo) {
-                history = new TopologicalHistoryIterator(commits, repository, graphDb);
+                history = new TopologicalHistoryIterator(commits, headers, graphDb);
             } else {
-                history = new ChronologicalHistoryIterator(commits, repository);
+                history = new ChronologicalHistoryIterator(commits, headers);
             }
         }
-        LogFilter filter = new LogFilter(oldestCommitId, timeRange, paths, author, commiter);
-        Iterator<RevCommit> filteredCommits = Iterators.filter(history, filter);
-        if (skip != null) {
-            Iterators.advance(filteredCommits, skip.intValue());
-        }
-        if (limit != null) {
-            filteredCommits = Iterators.limit(filteredCommits, limit.intValue());
+        LogFilter filter = new LogFilter(oldestCommitId, timeRange, paths, headers);
+        Iterator<CommitHeader> filteredHeaders = Iterators.filter(history, filter);
+
+        Iterator<RevCommit> filteredCommits;
+        if (author == null && commiter == null) {
+            // skip and limit can be applied before decoding any commit
+            if (skip != null) {
+                Iterators.advance(filteredHeaders, skip.intValue());
+            }
+            if (limit != null) {
+                filteredHeaders = Iterators.limit(filteredHeaders, limit.intValue());
+            }
+            filteredCommits = headers.decode(filteredHeaders);
+        } else {
+            filteredCommits = Iterators.filter(headers.decode(filteredHeaders), new PersonFilter(
+                    author, commiter));
+            if (skip != null) {
+                Iterators.advance(filteredCommits, skip.intValue());
+            }
+            if (limit != null) {
+                filteredCommits = Iterators.limit(filteredCommits, limit.intValue());
+            }
         }
         return filteredCommits;
     }
 
+    /**
+     * The parts of a commit needed to traverse and filter the history, read from the commit's raw
+     * form without decoding its persons and message, along with that raw form so that the full
+     * commit can be decoded if it's returned.
+     */
+    private static class CommitHeader {
+
+        private final ObjectId id;
+
+        private final ImmutableList<ObjectId> parentIds;
+
+        private final long timestamp;
+
+        private final byte[] raw;
+
+        private CommitHeader(ObjectId id, ImmutableList<ObjectId> parentIds, long timestamp,
+                byte[] raw) {
+            this.id = id;
+            this.parentIds = parentIds;
+            this.timestamp = timestamp;
+            this.raw = raw;
+        }
+
+        /**
+         * Reads the tree, parents, author and committer of a raw commit, stopping before its
+         * message.
+         */
+        public static CommitHeader read(ObjectId id, byte[] raw) throws IOException {
+            DataInput in = new DataInputStream(new ByteArrayInputStream(raw));
+            FormatCommon.requireHeader(in, "commit");
+            byte tag = in.readByte();
+            Preconditions.checkArgument(tag == FormatCommon.COMMIT_TREE_REF,
+                    "Commit should include a tree ref");
+            FormatCommon.readObjectId(in);
+            ImmutableList.Builder<ObjectId> parentIds = ImmutableList.builder();
+            while ((tag = in.readByte()) == FormatCommon.COMMIT_PARENT_REF) {
+                parentIds.add(FormatCommon.readObjectId(in));
+            }
+            Preconditions.checkArgument(tag == FormatCommon.COMMIT_AUTHOR_PREFIX,
+                    "Expected AUTHOR element following parent ids in commit");
+            FormatCommon.readRevPerson(in);
+            tag = in.readByte();
+            Preconditions.checkArgument(tag == FormatCommon.COMMIT_COMMITTER_PREFIX,
+                    "Expected COMMITTER element following author in commit");
+            long timestamp = FormatCommon.readRevPerson(in).getTimestamp();
+            return new CommitHeader(id, parentIds.build(), timestamp, raw);
+        }
+
+        public Optional<ObjectId> parentN(int parentIndex) {
+            if (parentIds.size() > parentIndex) {
+                return Optional.of(parentIds.get(parentIndex));
+            }
+            return Optional.absent();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CommitHeader && id.equals(((CommitHeader) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    /**
+     * Provides the {@link CommitHeader commit headers} the history iterators ask for. When one is
+     * missing, it's read in a single batch along with the commits that follow it and the rest of
+     * the traversal frontier, which are found by walking the commit graph breadth first, so the
+     * history is read {@value LogOp#PREFETCH_SIZE} commits at a time whatever its shape. Each
+     * commit read ahead is handed out once and then forgotten.
+     */
+    private static class CommitHeaders {
+
+        private final ObjectDatabase objectDb;
+
+        private final GraphDatabase graphDb;
+
+        private final Map<ObjectId, CommitHeader> prefetched = Maps.newHashMap();
+
+        public CommitHeaders(ObjectDatabase objectDb, GraphDatabase graphDb) {
+            this.objectDb = objectDb;
+            this.graphDb = graphDb;
+        }
+
+        /**
+         * @return the header of the given commit, or absent if it is not in the repository
+         */
+        public Optional<CommitHeader> get(ObjectId id) {
+            List<CommitHeader> headers = getAll(ImmutableList.of(id),
+                    ImmutableList.<CommitHeader> of());
+            return headers.isEmpty() ? Optional.<CommitHeader> absent() : Optional.of(headers
+                    .get(0));
+        }
+
+        /**
+         * @param ids the commits to get the headers of
+         * @param frontier the other commits the traversal will continue from, commits already in
+         *        it are not returned again, and their parents are read ahead along with the
+         *        commits that have to be read
+         * @return the headers of the given commits that are present in the repository
+         */
+        public List<CommitHeader> getAll(Collection<ObjectId> ids,
+                Collection<CommitHeader> frontier) {
+            Set<ObjectId> frontierIds = Sets.newHashSet();
+            for (CommitHeader header : frontier) {
+                frontierIds.add(header.id);
+            }
+            List<ObjectId> missing = Lists.newArrayList();
+            for (ObjectId id : ids) {
+                if (!id.isNull() && !frontierIds.contains(id) && !prefetched.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                prefetch(missing, frontier, frontierIds);
+            }
+            List<CommitHeader> headers = Lists.newArrayListWithCapacity(ids.size());
+            for (ObjectId id : ids) {
+                CommitHeader header = frontierIds.contains(id) ? null : prefetched.remove(id);
+                if (header != null) {
+                    headers.add(header);
+                }
+            }
+            return headers;
+        }
+
+        /**
+         * @return whether the commit is in the repository, without handing it out
+         */
+        public boolean exists(ObjectId id) {
+            return prefetched.containsKey(id) || objectDb.exists(id);
+        }
+
+        /**
+         * Reads the missing commits and as many of the commits that follow them and the frontier
+         * as fit in a batch.
+         */
+        private void prefetch(List<ObjectId> missing, Collection<CommitHeader> frontier,
+                Set<ObjectId> frontierIds) {
+            if (prefetched.size() > MAX_PREFETCHED) {
+                // read ahead on branches the traversal doesn't follow
+                prefetched.clear();
+            }
+            Set<ObjectId> batch = Sets.newLinkedHashSet(missing);
+            Deque<ObjectId> pending = new ArrayDeque<ObjectId>();
+            for (ObjectId id : missing) {
+                pending.addAll(graphDb.getParents(id));
+            }
+            for (CommitHeader header : frontier) {
+                pending.addAll(header.parentIds);
+            }
+            while (!pending.isEmpty() && batch.size() < PREFETCH_SIZE) {
+                ObjectId id = pending.poll();
+                if (id.isNull() || frontierIds.contains(id) || prefetched.containsKey(id)
+                        || !batch.add(id)) {
+                    continue;
+                }
+                pending.addAll(graphDb.getParents(id));
+            }
+            Iterator<Entry<ObjectId, byte[]>> found = objectDb.getAllRaw(batch);
+            try {
+                while (found.hasNext()) {
+                    Entry<ObjectId, byte[]> raw = found.next();
+                    if (FormatCommon.readType(raw.getValue()) == TYPE.COMMIT) {
+                        CommitHeader header = CommitHeader.read(raw.getKey(), raw.getValue());
+                        prefetched.put(header.id, header);
+                    }
+                }
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        /**
+         * @return an iterator over the commits of the given headers, in the same order, each one
+         *         decoded as the iterator gets to it
+         */
+        public Iterator<RevCommit> decode(Iterator<CommitHeader> headers) {
+            final ObjectReader<RevCommit> reader = new DataStreamSerializationFactory()
+                    .createCommitReader();
+            return Iterators.transform(headers, new Function<CommitHeader, RevCommit>() {
+                @Override
+                public RevCommit apply(CommitHeader header) {
+                    return reader.read(header.id, new ByteArrayInputStream(header.raw));
+                }
+            });
+        }
+    }
+
     /**
      * Iterator that traverses the commit history backwards starting from the provided commit, in
      * chronological order. It performs a reverse breadth-first search
      * 
      */
-    private static class ChronologicalHistoryIterator extends AbstractIterator<RevCommit> {
+    private static class ChronologicalHistoryIterator extends AbstractIterator<CommitHeader> {
 
-        private final Repository repo;
+        private final CommitHeaders headers;
 
-        private Set<RevCommit> parents;
+        private Set<CommitHeader> parents;
 
         /**
-         * Constructs a new {@code LinearHistoryIterator} with the given parameters.
+         * Constructs a new {@code ChronologicalHistoryIterator} with the given parameters.
          * 
-         * @param tip the first commit in the history
-         * @param repo the repository where the commits are stored.
+         * @param tips the first commits in the history
+         * @param headers the source of the commit headers
          */
-        public ChronologicalHistoryIterator(final List<ObjectId> tips, final Repository repo) {
-            parents = Sets.newHashSet();
-            for (ObjectId tip : tips) {
-                if (!tip.isNull()) {
-                    final RevCommit commit = repo.getCommit(tip);
-                    parents.add(commit);
-                }
-            }
-            this.repo = repo;
+        public ChronologicalHistoryIterator(final List<ObjectId> tips, final CommitHeaders headers) {
+            this.headers = headers;
+            parents = Sets.newHashSet(headers.getAll(tips, ImmutableList.<CommitHeader> of()));
         }
 
         /**
          * Calculates the next commit in the history.
          * 
-         * @return the next {@link RevCommit commit} in the history
+         * @return the next {@link CommitHeader commit} in the history
          */
         @Override
-        protected RevCommit computeNext() {
+        protected CommitHeader computeNext() {
             if (parents.isEmpty()) {
                 return endOfData();
             } else {
-                Iterator<RevCommit> iter = parents.iterator();
-                // TODO: Maybe we should make RevCommit implement Comparable?
-                RevCommit mostRecent = iter.next();
+                Iterator<CommitHeader> iter = parents.iterator();
+                CommitHeader mostRecent = iter.next();
                 while (iter.hasNext()) {
-                    RevCommit commit = iter.next();
-                    if (mostRecent.getCommitter().getTimestamp() < commit.getCommitter()
-                            .getTimestamp()) {
+                    CommitHeader commit = iter.next();
+                    if (mostRecent.timestamp < commit.timestamp) {
                         mostRecent = commit;
                     }
                 }
                 parents.remove(mostRecent);
-                RevCommit commit;
-                for (ObjectId parent : mostRecent.getParentIds()) {
-                    if (repo.commitExists(parent)) {
-                        commit = repo.getCommit(parent);
-                        parents.add(commit);
-                    }
-                }
+                parents.addAll(headers.getAll(mostRecent.parentIds, parents));
                 return mostRecent;
             }
 
@@ -352,61 +580,65 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
      * topological order. It performs a reverse depth-first search
      * 
      */
-    private static class TopologicalHistoryIterator extends AbstractIterator<RevCommit> {
+    private static class TopologicalHistoryIterator extends AbstractIterator<CommitHeader> {
 
-        private final Repository repo;
+        private final CommitHeaders headers;
 
-        private Stack<RevCommit> tips;
+        private Stack<CommitHeader> tips;
 
-        private RevCommit lastCommit;
+        private CommitHeader lastCommit;
 
         private List<ObjectId> stopPoints;
 
         private GraphDatabase graphDb;
 
         /**
-         * Constructs a new {@code LinearHistoryIterator} with the given parameters.
+         * Constructs a new {@code TopologicalHistoryIterator} with the given parameters.
          * 
          * @param tipsList the list of tips to start computing history from
-         * @param repo the repository where the commits are stored.
+         * @param headers the source of the commit headers
          * @param graphDb
          */
-        public TopologicalHistoryIterator(final List<ObjectId> tipsList, final Repository repo,
-                GraphDatabase graphDb) {
+        public TopologicalHistoryIterator(final List<ObjectId> tipsList,
+                final CommitHeaders headers, GraphDatabase graphDb) {
             this.graphDb = graphDb;
-            tips = new Stack<RevCommit>();
+            this.headers = headers;
+            tips = new Stack<CommitHeader>();
             stopPoints = Lists.newArrayList();
             for (ObjectId tip : tipsList) {
                 if (!tip.isNull()) {
-                    final RevCommit commit = repo.getCommit(tip);
-                    tips.add(commit);
+                    Optional<CommitHeader> commit = headers.get(tip);
+                    Preconditions.checkArgument(commit.isPresent(), "Commit not found: %s", tip);
+                    tips.add(commit.get());
                     stopPoints.add(tip);
                 }
             }
-            this.repo = repo;
         }
 
         /**
          * Calculates the next commit in the history.
          * 
-         * @return the next {@link RevCommit commit} in the history
+         * @return the next {@link CommitHeader commit} in the history
          */
         @Override
-        protected RevCommit computeNext() {
+        protected CommitHeader computeNext() {
             if (lastCommit == null) {
+                if (tips.isEmpty()) {
+                    return endOfData();
+                }
                 lastCommit = tips.pop();
                 return lastCommit;
             }
-            Optional<ObjectId> parent = Optional.absent();
+            Optional<CommitHeader> parent = Optional.absent();
             int index = 0;
-            for (ObjectId parentId : lastCommit.getParentIds()) {
-                if (repo.commitExists(parentId)) {
-                    parent = Optional.of(parentId);
+            for (ObjectId parentId : lastCommit.parentIds) {
+                parent = headers.get(parentId);
+                if (parent.isPresent()) {
                     break;
                 }
                 index++;
             }
-            if (!parent.isPresent() || parent.get().isNull() || stopPoints.contains(parent.get())) {
+            if (!parent.isPresent() || stopPoints.contains(parent.get().id)) {
                 // move to the next tip and start traversing it
                 if (tips.isEmpty()) {
                     return endOfData();
@@ -414,17 +646,17 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
                     lastCommit = tips.pop();
                 }
             } else {
-                List<ObjectId> parents = lastCommit.getParentIds();
+                List<ObjectId> parents = lastCommit.parentIds;
                 for (int i = index + 1; i < parents.size(); i++) {
-                    if (repo.commitExists(parents.get(i))) {
-                        final RevCommit commit = repo.getCommit(parents.get(i));
-                        tips.push(commit);
+                    Optional<CommitHeader> commit = headers.get(parents.get(i));
+                    if (commit.isPresent()) {
+                        tips.push(commit.get());
                     }
                 }
-                lastCommit = repo.getCommit(parent.get());
-                ImmutableList<ObjectId> children = this.graphDb.getChildren(parent.get());
+                lastCommit = parent.get();
+                ImmutableList<ObjectId> children = this.graphDb.getChildren(lastCommit.id);
                 if (children.size() > 1) {
-                    stopPoints.add(parent.get());
+                    stopPoints.add(lastCommit.id);
                 }
             }
 
@@ -437,37 +669,37 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
      * only the first parent of each commit
      * 
      */
-    private static class LinearHistoryIterator extends AbstractIterator<RevCommit> {
+    private static class LinearHistoryIterator extends AbstractIterator<CommitHeader> {
 
-        private Optional<ObjectId> nextCommitId;
+        private Optional<CommitHeader> nextCommit;
 
-        private final Repository repo;
+        private final CommitHeaders headers;
 
         /**
          * Constructs a new {@code LinearHistoryIterator} with the given parameters.
          * 
          * @param tip the first commit in the history
-         * @param repo the repository where the commits are stored.
+         * @param headers the source of the commit headers
          */
-        @SuppressWarnings("unchecked")
-        public LinearHistoryIterator(final ObjectId tip, final Repository repo) {
-            this.nextCommitId = (Optional<ObjectId>) (tip.isNull() ? Optional.absent() : Optional
-                    .of(tip));
-            this.repo = repo;
+        public LinearHistoryIterator(final ObjectId tip, final CommitHeaders headers) {
+            this.headers = headers;
+            this.nextCommit = tip.isNull() ? Optional.<CommitHeader> absent() : headers.get(tip);
         }
 
         /**
          * Calculates the next commit in the history.
          * 
-         * @return the next {@link RevCommit commit} in the history
+         * @return the next {@link CommitHeader commit} in the history
          */
         @Override
-        protected RevCommit computeNext() {
-            if (nextCommitId.isPresent()) {
-                RevCommit commit = repo.getCommit(nextCommitId.get());
-                nextCommitId = commit.parentN(0);
-                if (nextCommitId.isPresent() && !repo.commitExists(nextCommitId.get())) {
-                    nextCommitId = Optional.absent();
+        protected CommitHeader computeNext() {
+            if (nextCommit.isPresent()) {
+                CommitHeader commit = nextCommit.get();
+                Optional<ObjectId> parentId = commit.parentN(0);
+                if (parentId.isPresent()) {
+                    nextCommit = headers.get(parentId.get());
+                } else {
+                    nextCommit = Optional.absent();
                 }
                 return commit;
             }
@@ -477,11 +709,12 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
     }
 
     /**
-     * Checks whether the given commit satisfies all the filter criteria set to this op.
+     * Checks whether the given commit satisfies all the filter criteria set to this op that can be
+     * evaluated without decoding the full commit.
      * 
      * @return {@code true} if the commit satisfies the filter criteria set to this op
      */
-    private class LogFilter implements Predicate<RevCommit> {
+    private class LogFilter implements Predicate<CommitHeader> {
 
         private boolean toReached;
 
@@ -491,9 +724,7 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
 
         private final Set<String> paths;
 
-        private Pattern author;
-
-        private Pattern committer;
+        private final CommitHeaders headers;
 
         /**
          * Constructs a new {@code LogFilter} with the given parameters.
@@ -502,18 +733,16 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
          * @param timeRange extra time range filter besides oldest commit
          * @param paths extra filter on content, indicates to return only commits that affected any
          *        of the provided paths
-         * @param commiter the regexp pattern to filter author names
-         * @param author the regexp pattern to filter commiter names
+         * @param headers the source of the commit headers
          */
         public LogFilter(final ObjectId oldestCommitId, final Range<Long> timeRange,
-                final Set<String> paths, Pattern author, Pattern commiter) {
+                final Set<String> paths, final CommitHeaders headers) {
             Preconditions.checkNotNull(oldestCommitId);
             Preconditions.checkNotNull(timeRange);
             this.oldestCommitId = oldestCommitId;
             this.timeRange = timeRange;
             this.paths = paths;
-            this.author = author;
-            this.committer = commiter;
+            this.headers = headers;
         }
 
         /**
@@ -521,46 +750,38 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
          * @see com.google.common.base.Predicate#apply(java.lang.Object)
          */
         @Override
-        public boolean apply(final RevCommit commit) {
+        public boolean apply(final CommitHeader commit) {
             if (toReached) {
                 return false;
             }
-            if (oldestCommitId.equals(commit.getId())) {
+            if (oldestCommitId.equals(commit.id)) {
                 toReached = true;
                 return false;
             }
-            Optional<String> authorName = commit.getAuthor().getName();
-            if (author != null && authorName.isPresent()) {
-                Matcher authorMatcher = author.matcher(authorName.get());
-                if (!authorMatcher.matches()) {
-                    return false;
-                }
-            }
-            Optional<String> committerName = commit.getCommitter().getName();
-            if (committer != null && committerName.isPresent()) {
-                Matcher committerMatcher = committer.matcher(committerName.get());
-                if (!committerMatcher.matches()) {
-                    return false;
-                }
-            }
-            boolean applies = timeRange
-                    .contains(Long.valueOf(commit.getCommitter().getTimestamp()));
+            boolean applies = timeRange.contains(Long.valueOf(commit.timestamp));
             if (!applies) {
                 return false;
             }
             if (paths != null && paths.size() > 0) {
-                // did this commit touch any of the paths?
+                // did this commit touch any of the paths? use the commit's changed paths filter
+                // to avoid computing diffs that certainly won't match
+                Optional<ChangedPathsFilter> changedPaths = ChangedPathsFilter.read(graphDb,
+                        commit.id);
+                applies = false;
                 for (String path : paths) {
+                    if (changedPaths.isPresent() && !changedPaths.get().mightBeAffected(path)) {
+                        continue;
+                    }
                     DiffOp diff = command(DiffOp.class);
                     ObjectId parentId = commit.parentN(0).or(ObjectId.NULL);
-                    if (!parentId.equals(ObjectId.NULL) && !repository.commitExists(parentId)) {
+                    if (!parentId.equals(ObjectId.NULL) && !headers.exists(parentId)) {
                         // we have reached the bottom of a shallow clone. We "fake" it and pretend
                         // it is the real first commit of the repo
                         parentId = ObjectId.NULL;
                     }
                     Iterator<DiffEntry> diffResult;
                     try {
-                        diff.setOldVersion(parentId).setNewVersion(commit.getId()).setFilter(path);
+                        diff.setOldVersion(parentId).setNewVersion(commit.id).setFilter(path);
                         diffResult = diff.call();
                         applies = diffResult.hasNext();
                         if (applies) {
@@ -576,4 +797,43 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
         }
     }
 
+    /**
+     * Checks whether the given commit's author and committer names match the patterns set to this
+     * op.
+     */
+    private static class PersonFilter implements Predicate<RevCommit> {
+
+        private Pattern author;
+
+        private Pattern committer;
+
+        /**
+         * @param author the regexp pattern to filter author names
+         * @param commiter the regexp pattern to filter commiter names
+         */
+        public PersonFilter(Pattern author, Pattern commiter) {
+            this.author = author;
+            this.committer = commiter;
+        }
+
+        @Override
+        public boolean apply(final RevCommit commit) {
+            Optional<String> authorName = commit.getAuthor().getName();
+            if (author != null && authorName.isPresent()) {
+                Matcher authorMatcher = author.matcher(authorName.get());
+                if (!authorMatcher.matches()) {
+                    return false;
+                }
+            }
+            Optional<String> committerName = commit.getCommitter().getName();
+            if (committer != null && committerName.isPresent()) {
+                Matcher committerMatcher = committer.matcher(committerName.get());
+                if (!committerMatcher.matches()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
 }
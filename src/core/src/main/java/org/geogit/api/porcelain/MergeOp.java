@@ -4,9 +4,12 @@
  */
 package org.geogit.api.porcelain;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -16,6 +19,7 @@ import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindCommonAncestor;
@@ -26,18 +30,27 @@ import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.merge.CheckMergeScenarioOp;
 import org.geogit.api.plumbing.merge.Conflict;
-import org.geogit.api.plumbing.merge.ConflictsWriteOp;
+import org.geogit.api.plumbing.merge.MergeScenarioConsumer;
 import org.geogit.api.plumbing.merge.MergeScenarioReport;
 import org.geogit.api.plumbing.merge.ReportMergeScenarioOp;
 import org.geogit.api.plumbing.merge.SaveMergeCommitMessageOp;
 import org.geogit.repository.Repository;
+import org.geogit.storage.StagingDatabase;
 import org.geotools.util.SubProgressListener;
+import org.opengis.feature.Feature;
 import org.opengis.util.ProgressListener;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.io.LineProcessor;
 import com.google.inject.Inject;
 
 /**
@@ -47,6 +60,13 @@ import com.google.inject.Inject;
  */
 public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
 
+    private static final int BATCH_SIZE = 10000;
+
+    /**
+     * Maximum number of conflicting paths listed in the merge message
+     */
+    private static final int MAX_LISTED_CONFLICTS = 1000;
+
     private List<ObjectId> commits = new ArrayList<ObjectId>();;
 
     private String message = null;
@@ -63,6 +83,8 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
 
     private Optional<String> authorEmail = Optional.absent();
 
+    private MergeScenarioConsumer consumer;
+
     /**
      * Constructs a new {@code MergeOp} using the specified parameters.
      * 
@@ -138,6 +160,18 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
         return this;
     }
 
+    /**
+     * Sets a consumer that is told about the merge scenario of a single commit merge as the merge
+     * computes it, so that it can be reported without computing it again.
+     * 
+     * @param consumer the consumer, or {@code null} not to report the merge scenario
+     * @return {@code this}
+     */
+    public MergeOp setConsumer(@Nullable MergeScenarioConsumer consumer) {
+        this.consumer = consumer;
+        return this;
+    }
+
     /**
      * Executes the merge operation.
      * 
@@ -163,8 +197,6 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
         boolean fastForward = true;
         boolean changed = false;
 
-        Optional<MergeScenarioReport> mergeScenario = Optional.absent();
-
         List<CommitAncestorPair> pairs = Lists.newArrayList();
 
         boolean hasConflictsOrAutomerge;
@@ -196,35 +228,22 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
 
             pairs.add(new CommitAncestorPair(commitId, ancestorCommit.get().getId()));
 
-            mergeScenario = Optional.of(command(ReportMergeScenarioOp.class)
-                    .setMergeIntoCommit(headCommit).setToMergeCommit(targetCommit).call());
-
-            List<FeatureInfo> merged = mergeScenario.get().getMerged();
-            for (FeatureInfo feature : merged) {
-                this.getWorkTree().insert(NodeRef.parentPath(feature.getPath()),
-                        feature.getFeature());
-                Iterator<DiffEntry> unstaged = getWorkTree().getUnstaged(null);
-                getIndex().stage(getProgressListener(), unstaged, 0);
-                changed = true;
-                fastForward = false;
-            }
-            List<DiffEntry> unconflicting = mergeScenario.get().getUnconflicted();
-            if (!unconflicting.isEmpty()) {
-                getIndex().stage(getProgressListener(), unconflicting.iterator(), 0);
+            StagingConsumer staging = stageMerge(headCommit, targetCommit, getProgressListener());
+            final StagingDatabase indexDb = getIndex().getDatabase();
+            if (staging.changed) {
                 changed = true;
                 fastForward = false;
             }
 
             getWorkTree().updateWorkHead(getIndex().getTree().getId());
 
-            List<Conflict> conflicts = mergeScenario.get().getConflicts();
-            if (!ours && !conflicts.isEmpty()) {
+            if (!ours && staging.conflicts > 0) {
                 // In case we use the "ours" strategy, we do nothing. We ignore conflicting
                 // changes and leave the current elements
                 command(UpdateRef.class).setName(Ref.MERGE_HEAD).setNewValue(commitId).call();
                 command(UpdateRef.class).setName(Ref.ORIG_HEAD).setNewValue(headCommit.getId())
                         .call();
-                command(ConflictsWriteOp.class).setConflicts(conflicts).call();
+                staging.writeConflicts(indexDb);
 
                 StringBuilder msg = new StringBuilder();
                 Optional<Ref> ref = command(ResolveBranchId.class).setObjectId(commitId).call();
@@ -234,16 +253,18 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
                     msg.append("Merge commit '" + commitId.toString() + "'. ");
                 }
                 msg.append("\n\nConflicts:\n");
-                for (Conflict conflict : mergeScenario.get().getConflicts()) {
-                    msg.append("\t" + conflict.getPath() + "\n");
+                for (String path : staging.conflictPaths) {
+                    msg.append("\t" + path + "\n");
                 }
+                staging.appendUnlisted(msg);
 
                 command(SaveMergeCommitMessageOp.class).setMessage(msg.toString()).call();
 
                 StringBuilder sb = new StringBuilder();
-                for (Conflict conflict : conflicts) {
-                    sb.append("CONFLICT: Merge conflict in " + conflict.getPath() + "\n");
+                for (String path : staging.conflictPaths) {
+                    sb.append("CONFLICT: Merge conflict in " + path + "\n");
                 }
+                staging.appendUnlisted(sb);
                 sb.append("Automatic merge failed. Fix conflicts and then commit the result.\n");
                 throw new IllegalStateException(sb.toString());
 
@@ -295,10 +316,11 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
                         "No ancestor commit could be found.");
 
                 if (commits.size() == 1) {
-                    mergeScenario = Optional.of(command(ReportMergeScenarioOp.class)
-                            .setMergeIntoCommit(headCommit).setToMergeCommit(targetCommit).call());
                     if (ancestorCommit.get().getId().equals(headCommit.getId())) {
                         // Fast-forward
+                        if (consumer != null) {
+                            reportScenario(headCommit, targetCommit);
+                        }
                         if (headRef instanceof SymRef) {
                             final String currentBranch = ((SymRef) headRef).getTarget();
                             command(UpdateRef.class).setName(currentBranch).setNewValue(commitId)
@@ -320,12 +342,21 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
                     }
                 }
 
-                // get changes
-                Iterator<DiffEntry> diff = command(DiffTree.class)
-                        .setOldTree(ancestorCommit.get().getId()).setNewTree(targetCommit.getId())
-                        .setReportTrees(true).call();
-                // stage changes
-                getIndex().stage(new SubProgressListener(subProgress, 100.f), diff, 0);
+                if (commits.size() == 1 && !hasConflictsOrAutomerge) {
+                    // only the subtrees changed by both histories need to be merged
+                    stageMerge(headCommit, targetCommit,
+                            new SubProgressListener(subProgress, 100.f)).discardConflicts();
+                } else {
+                    if (commits.size() == 1 && consumer != null) {
+                        reportScenario(headCommit, targetCommit);
+                    }
+                    // get changes
+                    Iterator<DiffEntry> diff = command(DiffTree.class)
+                            .setOldTree(ancestorCommit.get().getId())
+                            .setNewTree(targetCommit.getId()).setReportTrees(true).call();
+                    // stage changes
+                    getIndex().stage(new SubProgressListener(subProgress, 100.f), diff, 0);
+                }
                 changed = true;
                 fastForward = false;
 
@@ -343,12 +374,43 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
 
         RevCommit mergeCommit = commit(fastForward);
 
-        MergeReport result = new MergeReport(mergeCommit, mergeScenario, oursId, pairs);
+        MergeReport result = new MergeReport(mergeCommit, oursId, pairs);
 
         return result;
 
     }
 
+    /**
+     * Stages the changes made by {@code toMerge} since its common ancestor with {@code mergeInto}
+     * that can be applied, as the merge scenario is computed. Subtrees changed only by theirs are
+     * staged wholesale. The conflicts are kept aside until the end, since staging clears the
+     * conflicts of the index.
+     * 
+     * @return the consumer that staged the changes, which knows about the conflicts found
+     */
+    private StagingConsumer stageMerge(RevCommit mergeInto, RevCommit toMerge,
+            ProgressListener listener) {
+        StagingConsumer staging = new StagingConsumer(listener);
+        try {
+            command(ReportMergeScenarioOp.class).setMergeIntoCommit(mergeInto)
+                    .setToMergeCommit(toMerge).setReportWholeTrees(true).setConsumer(staging)
+                    .call();
+        } catch (RuntimeException e) {
+            staging.discardConflicts();
+            throw e;
+        }
+        return staging;
+    }
+
+    /**
+     * Reports the merge scenario to the {@link #setConsumer(MergeScenarioConsumer) consumer} when
+     * the merge doesn't compute it
+     */
+    private void reportScenario(RevCommit mergeInto, RevCommit toMerge) {
+        command(ReportMergeScenarioOp.class).setMergeIntoCommit(mergeInto)
+                .setToMergeCommit(toMerge).setConsumer(consumer).call();
+    }
+
     private RevCommit commit(boolean fastForward) {
 
         RevCommit mergeCommit;
@@ -389,6 +451,217 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
         return mergeCommit;
     }
 
+    /**
+     * Stages the changes of a merge scenario as {@link ReportMergeScenarioOp} reports them, in
+     * batches, and keeps the conflicts aside, unless the "ours" strategy is used. The conflicts are
+     * held in memory up to a batch and spilled to a temporary file beyond that. They can't go to a
+     * namespace of the staging database, since a transaction maps every namespace to its own.
+     */
+    private class StagingConsumer extends MergeScenarioConsumer {
+
+        private final List<DiffEntry> unconflicted = Lists.newArrayList();
+
+        private final List<FeatureInfo> merged = Lists.newArrayList();
+
+        private final List<Conflict> conflicted = Lists.newArrayList();
+
+        /**
+         * File the conflicts are spilled to once there are more than a batch of them, if any
+         */
+        private File spilledConflicts;
+
+        /**
+         * Paths of the trees removed so far, whose contents are removed along with them
+         */
+        private final Set<String> removedTrees = Sets.newHashSet();
+
+        private final List<String> conflictPaths = Lists.newArrayList();
+
+        private long conflicts;
+
+        private boolean changed;
+
+        private final ProgressListener listener;
+
+        StagingConsumer(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void conflicted(Conflict conflict) {
+            if (consumer != null) {
+                consumer.conflicted(conflict);
+            }
+            conflicts++;
+            if (conflictPaths.size() < MAX_LISTED_CONFLICTS) {
+                conflictPaths.add(conflict.getPath());
+            }
+            if (!ours) {
+                conflicted.add(conflict);
+                if (conflicted.size() == BATCH_SIZE) {
+                    spillConflicts();
+                }
+            }
+        }
+
+        @Override
+        public void unconflicted(DiffEntry diff) {
+            if (consumer != null) {
+                consumer.unconflicted(diff);
+            }
+            changed = true;
+            unconflicted.add(diff);
+            if (unconflicted.size() == BATCH_SIZE) {
+                flushUnconflicted();
+            }
+        }
+
+        @Override
+        public void merged(FeatureInfo featureInfo) {
+            if (consumer != null) {
+                consumer.merged(featureInfo);
+            }
+            changed = true;
+            merged.add(featureInfo);
+            if (merged.size() == BATCH_SIZE) {
+                flushMerged();
+            }
+        }
+
+        @Override
+        public void finished() {
+            flushUnconflicted();
+            flushMerged();
+            if (consumer != null) {
+                consumer.finished();
+            }
+        }
+
+        /**
+         * Appends a line telling how many conflicts are not listed, if any
+         */
+        void appendUnlisted(StringBuilder sb) {
+            if (conflicts > conflictPaths.size()) {
+                sb.append("... and " + (conflicts - conflictPaths.size()) + " more conflicts\n");
+            }
+        }
+
+        private void flushUnconflicted() {
+            if (unconflicted.isEmpty()) {
+                return;
+            }
+            List<DiffEntry> staged = Lists.newArrayListWithCapacity(unconflicted.size());
+            for (DiffEntry diff : unconflicted) {
+                String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+                if (isRemoved(NodeRef.parentPath(path))) {
+                    continue;
+                }
+                if (diff.getNewObject() == null
+                        && TYPE.TREE.equals(diff.getOldObject().getType())) {
+                    removedTrees.add(path);
+                }
+                staged.add(diff);
+            }
+            unconflicted.clear();
+            getIndex().stage(listener, staged.iterator(), staged.size());
+        }
+
+        private boolean isRemoved(@Nullable String treePath) {
+            for (String path = treePath; path != null; path = NodeRef.parentPath(path)) {
+                if (removedTrees.contains(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Inserts the merged features in the working tree, once it's up to date with the changes
+         * staged so far, and stages them
+         */
+        private void flushMerged() {
+            if (merged.isEmpty()) {
+                return;
+            }
+            flushUnconflicted();
+            getWorkTree().updateWorkHead(getIndex().getTree().getId());
+            ListMultimap<String, Feature> features = ArrayListMultimap.create();
+            for (FeatureInfo featureInfo : merged) {
+                features.put(NodeRef.parentPath(featureInfo.getPath()), featureInfo.getFeature());
+            }
+            merged.clear();
+            for (String treePath : features.keySet()) {
+                List<Feature> treeFeatures = features.get(treePath);
+                getWorkTree().insert(treePath, treeFeatures.iterator(), listener, null,
+                        treeFeatures.size());
+            }
+            Iterator<DiffEntry> unstaged = getWorkTree().getUnstaged(null);
+            getIndex().stage(listener, unstaged, 0);
+        }
+
+        private void spillConflicts() {
+            try {
+                if (spilledConflicts == null) {
+                    spilledConflicts = File.createTempFile("geogit-merge-conflicts", null);
+                }
+                StringBuilder sb = new StringBuilder();
+                for (Conflict conflict : conflicted) {
+                    sb.append(conflict.toString()).append('\n');
+                }
+                Files.append(sb, spilledConflicts, Charsets.UTF_8);
+            } catch (IOException e) {
+                discardConflicts();
+                throw Throwables.propagate(e);
+            }
+            conflicted.clear();
+        }
+
+        /**
+         * Adds the conflicts found to the index, a batch at a time
+         */
+        void writeConflicts(final StagingDatabase indexDb) {
+            try {
+                if (spilledConflicts != null) {
+                    Files.readLines(spilledConflicts, Charsets.UTF_8, new LineProcessor<Void>() {
+                        final List<Conflict> batch = Lists.newArrayList();
+
+                        @Override
+                        public boolean processLine(String line) {
+                            batch.add(Conflict.valueOf(line));
+                            if (batch.size() == BATCH_SIZE) {
+                                indexDb.addConflicts(null, batch.iterator());
+                                batch.clear();
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public Void getResult() {
+                            indexDb.addConflicts(null, batch.iterator());
+                            return null;
+                        }
+                    });
+                }
+                indexDb.addConflicts(null, conflicted.iterator());
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            } finally {
+                discardConflicts();
+            }
+        }
+
+        /**
+         * Forgets the conflicts found, deleting the file they've been spilled to
+         */
+        void discardConflicts() {
+            conflicted.clear();
+            if (spilledConflicts != null) {
+                spilledConflicts.delete();
+                spilledConflicts = null;
+            }
+        }
+    }
+
     public class CommitAncestorPair {
         private ObjectId theirs;
 
@@ -411,7 +684,7 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
     public class MergeReport {
         private RevCommit mergeCommit;
 
-        private Optional<MergeScenarioReport> report;
+        private Optional<MergeScenarioReport> report = Optional.absent();
 
         private ObjectId ours;
 
@@ -429,16 +702,31 @@ public class MergeOp extends AbstractGeoGitOp<MergeOp.MergeReport> {
             return pairs;
         }
 
+        /**
+         * @return the report given to the deprecated constructor, {@link MergeOp} itself no longer
+         *         builds one
+         * @deprecated set a {@link MergeOp#setConsumer(MergeScenarioConsumer) consumer} to be told
+         *             about the merge scenario instead
+         */
+        @Deprecated
         public Optional<MergeScenarioReport> getReport() {
             return report;
         }
 
-        public MergeReport(RevCommit mergeCommit, Optional<MergeScenarioReport> report,
-                ObjectId ours, List<CommitAncestorPair> pairs) {
+        public MergeReport(RevCommit mergeCommit, ObjectId ours, List<CommitAncestorPair> pairs) {
             this.mergeCommit = mergeCommit;
-            this.report = report;
             this.ours = ours;
             this.pairs = pairs;
         }
+
+        /**
+         * @deprecated use {@link #MergeReport(RevCommit, ObjectId, List)}
+         */
+        @Deprecated
+        public MergeReport(RevCommit mergeCommit, Optional<MergeScenarioReport> report,
+                ObjectId ours, List<CommitAncestorPair> pairs) {
+            this(mergeCommit, ours, pairs);
+            this.report = report;
+        }
     }
 }
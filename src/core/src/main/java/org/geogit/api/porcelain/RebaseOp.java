@@ -19,9 +19,10 @@ import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevTree;
 import org.geogit.api.SymRef;
+import org.geogit.api.plumbing.ApplyTreeDiff;
 import org.geogit.api.plumbing.CatObject;
-import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindCommonAncestor;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveGeogitDir;
@@ -68,7 +69,10 @@ import com.google.inject.Inject;
  * 
  * - A file named 'branch' keeps track of the current branch name
  * 
- * 
+ * Commits that apply cleanly are replayed straight on the object database, applying their changes
+ * to the tree of the last replayed commit. The branch, the index and the working tree are only
+ * updated once all the commits have been applied, or when a commit can't be applied because of
+ * conflicts.
  * 
  */
 @CanRunDuringConflict
@@ -90,6 +94,23 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
 
     private ObjectId rebaseHead;
 
+    /**
+     * The tree of {@link #rebaseHead}, {@code null} if it has to be read from the commit
+     */
+    private RevTree rebaseTree;
+
+    /**
+     * Whether commits have been replayed since the branch, index and working tree were last updated
+     */
+    private boolean rebaseHeadPending;
+
+    /**
+     * Index of the next commit to replay from the 'rebase-apply' folder, {@code 0} if not read yet.
+     * The commits before it are removed from the folder only once the branch points to their
+     * replayed versions, so that an interrupted rebase can be continued without losing them.
+     */
+    private int nextCommit;
+
     private boolean abort;
 
     private String squashMessage;
@@ -326,6 +347,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
                     throw new IllegalStateException("Cannot create squash commit info file");
                 }
                 applyCommit(squashCommit, true);
+                updateHead();
                 return true;
             } else {
                 createRebaseCommitsInfoFiles(commitsToRebase);
@@ -341,6 +363,8 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
             } while (ret);
         }
 
+        updateHead();
+
         // clean up
         File squashFile = new File(getRebaseFolder(), "squash");
         if (squashFile.exists()) {
@@ -405,15 +429,18 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
         File rebaseFolder = getRebaseFolder();
         File nextFile = new File(rebaseFolder, "next");
         try {
-            String idx = Files.readFirstLine(nextFile, Charsets.UTF_8);
-            File commitFile = new File(rebaseFolder, idx);
+            if (nextCommit == 0) {
+                nextCommit = Integer.parseInt(Files.readFirstLine(nextFile, Charsets.UTF_8));
+            }
+            File commitFile = new File(rebaseFolder, Integer.toString(nextCommit));
             if (commitFile.exists()) {
                 String commitId = Files.readFirstLine(commitFile, Charsets.UTF_8);
                 RevCommit commit = repository.getCommit(ObjectId.valueOf(commitId));
                 applyCommit(commit, useCommitChanges);
-                commitFile.delete();
-                int newIdx = Integer.parseInt(idx) + 1;
-                Files.write(Integer.toString(newIdx), nextFile, Charsets.UTF_8);
+                nextCommit++;
+                if (!rebaseHeadPending) {
+                    removeReplayedCommits();
+                }
                 return true;
             } else {
                 return false;
@@ -424,6 +451,27 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
 
     }
 
+    /**
+     * Removes the commits replayed so far from the 'rebase-apply' folder and moves its index
+     * past them. Called only once the branch points to the last of them.
+     */
+    private void removeReplayedCommits() {
+        if (nextCommit == 0) {
+            return;
+        }
+        File rebaseFolder = getRebaseFolder();
+        File nextFile = new File(rebaseFolder, "next");
+        try {
+            int idx = Integer.parseInt(Files.readFirstLine(nextFile, Charsets.UTF_8));
+            for (; idx < nextCommit; idx++) {
+                new File(rebaseFolder, Integer.toString(idx)).delete();
+            }
+            Files.write(Integer.toString(nextCommit), nextFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read/write rebase commits index file");
+        }
+    }
+
     /**
      * Applies the passed command.
      * 
@@ -435,28 +483,14 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
     private void applyCommit(RevCommit commitToApply, boolean useCommitChanges) {
 
         if (useCommitChanges) {
-            ObjectId parentTreeId;
-            ObjectId parentCommitId = ObjectId.NULL;
-            if (commitToApply.getParentIds().size() > 0) {
-                parentCommitId = commitToApply.getParentIds().get(0);
-            }
-            parentTreeId = ObjectId.NULL;
-            if (repository.commitExists(parentCommitId)) {
-                parentTreeId = repository.getCommit(parentCommitId).getTreeId();
-            }
-            // get changes
-            Iterator<DiffEntry> diff = command(DiffTree.class).setOldTree(parentTreeId)
-                    .setNewTree(commitToApply.getTreeId()).setReportTrees(true).call();
-
             // see if there are conflicts
-            MergeScenarioReport report = command(ReportCommitConflictsOp.class).setCommit(
-                    commitToApply).call();
+            MergeScenarioReport report = command(ReportCommitConflictsOp.class)
+                    .setCommit(commitToApply).setBaseTree(rebaseTree()).call();
             if (report.getConflicts().isEmpty()) {
-                // stage changes
-                getIndex().stage(getProgressListener(), diff, 0);
-
-                // write new tree
-                ObjectId newTreeId = command(WriteTree.class).call();
+                // apply the changes to the tree of the last replayed commit, leaving the index
+                // and the working tree alone until the rebase is done
+                ObjectId newTreeId = command(ApplyTreeDiff.class).setTree(rebaseTree())
+                        .setDiffs(report.getUnconflicted().iterator()).call();
 
                 long timestamp = platform.currentTimeMillis();
                 // Create new commit
@@ -470,14 +504,12 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
                 repository.getObjectDatabase().put(newCommit);
 
                 rebaseHead = newCommit.getId();
-
-                command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
-                command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
-
-                getWorkTree().updateWorkHead(newTreeId);
-                getIndex().updateStageHead(newTreeId);
+                rebaseTree = repository.getTree(newTreeId);
+                rebaseHeadPending = true;
 
             } else {
+                updateHead();
+
                 Iterator<DiffEntry> unconflicted = report.getUnconflicted().iterator();
                 // stage unconflicted changes
                 getIndex().stage(getProgressListener(), unconflicted, 0);
@@ -522,6 +554,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
             repository.getObjectDatabase().put(newCommit);
 
             rebaseHead = newCommit.getId();
+            rebaseTree = null;
 
             command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
             command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
@@ -532,6 +565,35 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
 
     }
 
+    /**
+     * @return the tree of the commit the next commit is to be replayed on
+     */
+    private RevTree rebaseTree() {
+        if (rebaseTree == null) {
+            rebaseTree = repository.getTree(repository.getCommit(rebaseHead).getTreeId());
+        }
+        return rebaseTree;
+    }
+
+    /**
+     * Points the current branch, the index and the working tree to the last replayed commit, if
+     * any commit has been replayed since they were last updated, and only then removes the
+     * replayed commits from the 'rebase-apply' folder.
+     */
+    private void updateHead() {
+        if (!rebaseHeadPending) {
+            return;
+        }
+        command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
+        command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
+
+        final ObjectId treeId = rebaseTree().getId();
+        getWorkTree().updateWorkHead(treeId);
+        getIndex().updateStageHead(treeId);
+        rebaseHeadPending = false;
+        removeReplayedCommits();
+    }
+
     /**
      * Return the commit that is the squashed version of all the commits to apply, reading it from
      * the 'squash' file. If the file does not exist (that is, we are not in the middle of a rebase
@@ -18,6 +18,7 @@ import org.geogit.repository.WorkingTree;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 /**
@@ -56,9 +57,11 @@ public class RemoveOp extends AbstractGeoGitOp<WorkingTree> {
                     .setChildPath(pathToRemove).call();
             List<Conflict> conflicts = getIndex().getConflicted(pathToRemove);
             if (conflicts.size() > 0) {
+                List<String> paths = Lists.newArrayListWithCapacity(conflicts.size());
                 for (Conflict conflict : conflicts) {
-                    getIndex().getDatabase().removeConflict(null, conflict.getPath());
+                    paths.add(conflict.getPath());
                 }
+                getIndex().getDatabase().removeConflicts(null, paths);
                 if (!node.isPresent()) {
                     pathsToRemove.remove(pathToRemove);
                 }
@@ -29,9 +29,9 @@ import org.geogit.storage.TinkerGraphDatabase;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
 import org.geogit.storage.fs.FileObjectDatabase;
 import org.geogit.storage.fs.FileRefDatabase;
+import org.geogit.storage.fs.FileStagingDatabase;
 import org.geogit.storage.fs.IniConfigDatabase;
 import org.geogit.storage.memory.HeapDeduplicationService;
-import org.geogit.storage.memory.HeapStagingDatabase;
 
 import com.google.common.base.Throwables;
 import com.google.inject.AbstractModule;
@@ -72,7 +72,7 @@ public class GeogitModule extends AbstractModule {
         bind(Repository.class).in(Scopes.SINGLETON);
         bind(ConfigDatabase.class).to(IniConfigDatabase.class).in(Scopes.SINGLETON);
         bind(StagingArea.class).to(Index.class).in(Scopes.SINGLETON);
-        bind(StagingDatabase.class).to(HeapStagingDatabase.class).in(Scopes.SINGLETON);
+        bind(StagingDatabase.class).to(FileStagingDatabase.class).in(Scopes.SINGLETON);
         bind(WorkingTree.class).in(Scopes.SINGLETON);
         bind(GraphDatabase.class).to(TinkerGraphDatabase.class).in(Scopes.SINGLETON);
 
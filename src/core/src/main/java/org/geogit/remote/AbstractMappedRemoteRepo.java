@@ -9,11 +9,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.geogit.api.CommitBuilder;
 import org.geogit.api.IniRepositoryFilter;
@@ -40,7 +44,11 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Abstract base implementation for mapped (sparse) clone.
@@ -49,6 +57,16 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
 
     public static String PLACEHOLDER_COMMIT_MESSAGE = "Placeholder Sparse Commit";
 
+    /**
+     * Number of commits retrieved from the remote at once during a fetch
+     */
+    private static final int FETCH_BATCH_SIZE = 100;
+
+    /**
+     * Number of commits whose changes can be retrieved ahead of the one being applied
+     */
+    private static final int FETCH_LOOKAHEAD = 4;
+
     protected Repository localRepository;
 
     protected RepositoryFilter filter;
@@ -88,6 +106,27 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
         }
     }
 
+    /**
+     * A commit retrieved from the remote, along with its changes that match the repository filter.
+     */
+    protected static class FilteredCommit {
+
+        final RevCommit commit;
+
+        final FilteredDiffIterator changes;
+
+        /**
+         * Constructs a new {@code FilteredCommit}.
+         * 
+         * @param commit the original, non-sparse commit
+         * @param changes the changes of the commit that match the repository filter
+         */
+        public FilteredCommit(RevCommit commit, FilteredDiffIterator changes) {
+            this.commit = commit;
+            this.changes = changes;
+        }
+    }
+
     /**
      * CommitTraverser for gathering all of the commits that I need to fetch.
      */
@@ -162,6 +201,9 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
 
     /**
      * Fetch all new objects from the specified {@link Ref} from the remote.
+     * <p>
+     * The changes of the commits are retrieved and filtered by background stages, see
+     * {@link #getFilteredCommits}, while the sparse commits are built on this thread.
      * 
      * @param ref the remote ref that points to new commit data
      * @param fetchLimit the maximum depth to fetch, note, a sparse clone cannot be a shallow clone
@@ -170,22 +212,106 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
         Preconditions.checkState(!fetchLimit.isPresent(), "A sparse clone cannot be shallow.");
         FetchCommitGatherer gatherer = new FetchCommitGatherer(getRemoteWrapper(), localRepository);
 
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-sparse-fetch-%d").setDaemon(true).build();
+        ExecutorService executor = Executors.newCachedThreadPool(threadFactory);
         try {
             gatherer.traverse(ref.getObjectId());
             Stack<ObjectId> needed = gatherer.commits;
-            while (!needed.empty()) {
-                ObjectId commitId = needed.pop();
-                // If the last commit is empty, add it anyways to preserve parentage of new commits.
-                boolean allowEmpty = needed.isEmpty();
-                fetchSparseCommit(commitId, allowEmpty);
+            if (needed.isEmpty()) {
+                return;
+            }
+            // commits are popped newest last
+            final ObjectId lastCommitId = needed.firstElement();
+
+            Iterator<FilteredCommit> filteredCommits = getFilteredCommits(
+                    new NeededCommits(needed), gatherer.have, executor);
+            while (filteredCommits.hasNext()) {
+                FilteredCommit next = filteredCommits.next();
+                // If the last commit is empty, add it anyways to preserve parentage of new
+                // commits.
+                boolean allowEmpty = next.commit.getId().equals(lastCommitId);
+                fetchSparseCommit(next.commit, next.changes, allowEmpty);
             }
 
         } catch (Exception e) {
             Throwables.propagate(e);
         } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Retrieves the commits that need to be fetched from the remote, in batches, as they are
+     * iterated.
+     */
+    private class NeededCommits extends AbstractIterator<RevCommit> {
+
+        private final Stack<ObjectId> needed;
+
+        private Iterator<RevCommit> batch = Iterators.emptyIterator();
+
+        NeededCommits(Stack<ObjectId> needed) {
+            this.needed = needed;
+        }
+
+        @Override
+        protected RevCommit computeNext() {
+            while (!batch.hasNext()) {
+                if (needed.empty()) {
+                    return endOfData();
+                }
+                List<ObjectId> ids = new ArrayList<ObjectId>();
+                while (!needed.empty() && ids.size() < FETCH_BATCH_SIZE) {
+                    ids.add(needed.pop());
+                }
+                Map<ObjectId, RevObject> objects = getObjects(ids);
+                List<RevCommit> commits = new ArrayList<RevCommit>();
+                for (ObjectId id : ids) {
+                    RevObject object = objects.get(id);
+                    if (object != null && object.getType().equals(TYPE.COMMIT)) {
+                        commits.add((RevCommit) object);
+                    }
+                }
+                batch = commits.iterator();
+            }
+            return batch.next();
         }
     }
 
+    /**
+     * Retrieves the filtered changes of the given commits, in the same order.
+     * <p>
+     * The default implementation calls {@link #getFilteredChanges(RevCommit)} for each commit in
+     * order on a background thread, up to {@value #FETCH_LOOKAHEAD} commits ahead of the one being
+     * applied. Remotes that can split the work further should override this method.
+     * 
+     * @param commits the commits to fetch, oldest first
+     * @param have the commits of the remote that the local repository already has
+     * @param executor the executor to run background work on
+     * @return the filtered changes of each commit. The changes of a commit are consumed before
+     *         moving to the next commit.
+     */
+    protected Iterator<FilteredCommit> getFilteredCommits(final Iterator<RevCommit> commits,
+            List<ObjectId> have, ExecutorService executor) {
+        final StageQueue<FilteredCommit> queue = new StageQueue<FilteredCommit>(FETCH_LOOKAHEAD);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (commits.hasNext()) {
+                        RevCommit commit = commits.next();
+                        queue.put(new FilteredCommit(commit, getFilteredChanges(commit)));
+                    }
+                    queue.close();
+                } catch (Throwable e) {
+                    queue.fail(e);
+                }
+            }
+        });
+        return queue;
+    }
+
     /**
      * This function takes all of the changes introduced by the specified commit and filters them
      * based on the repository filter. It then uses the filtered results to construct a new commit
@@ -195,83 +321,103 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
      * @param allowEmpty allow the function to create an empty sparse commit
      */
     protected void fetchSparseCommit(ObjectId commitId, boolean allowEmpty) {
+        fetchSparseCommit(commitId, getObject(commitId), allowEmpty);
+    }
 
-        Optional<RevObject> object = getObject(commitId);
+    /**
+     * Same as {@link #fetchSparseCommit(ObjectId, boolean)}, for a commit already retrieved from
+     * the remote.
+     * 
+     * @param commitId the commit id of the original, non-sparse commit
+     * @param object the commit object, as retrieved from the remote
+     * @param allowEmpty allow the function to create an empty sparse commit
+     */
+    protected void fetchSparseCommit(ObjectId commitId, Optional<RevObject> object,
+            boolean allowEmpty) {
         if (object.isPresent() && object.get().getType().equals(TYPE.COMMIT)) {
             RevCommit commit = (RevCommit) object.get();
+            fetchSparseCommit(commit, getFilteredChanges(commit), allowEmpty);
+        }
+    }
 
-            FilteredDiffIterator changes = getFilteredChanges(commit);
-
-            localRepository.getGraphDatabase().put(commit.getId(), commit.getParentIds());
-
-            RevTree rootTree = RevTree.EMPTY;
-
-            if (commit.getParentIds().size() > 0) {
-                // Map this commit to the last "sparse" commit in my ancestry
-                ObjectId mappedCommit = localRepository.getGraphDatabase().getMapping(
-                        commit.getParentIds().get(0));
-                localRepository.getGraphDatabase().map(commit.getId(), mappedCommit);
-                Optional<ObjectId> treeId = localRepository.command(ResolveTreeish.class)
-                        .setTreeish(mappedCommit).call();
-                if (treeId.isPresent() && !treeId.get().equals(ObjectId.NULL)) {
-                    rootTree = localRepository.getTree(treeId.get());
-                }
-
-            } else {
-                localRepository.getGraphDatabase().map(commit.getId(), ObjectId.NULL);
+    /**
+     * Creates the sparse commit for the given commit out of its filtered changes.
+     * 
+     * @param commit the original, non-sparse commit
+     * @param changes the changes of the commit that match the repository filter
+     * @param allowEmpty allow the function to create an empty sparse commit
+     */
+    protected void fetchSparseCommit(RevCommit commit, FilteredDiffIterator changes,
+            boolean allowEmpty) {
+        localRepository.getGraphDatabase().put(commit.getId(), commit.getParentIds());
+
+        RevTree rootTree = RevTree.EMPTY;
+
+        if (commit.getParentIds().size() > 0) {
+            // Map this commit to the last "sparse" commit in my ancestry
+            ObjectId mappedCommit = localRepository.getGraphDatabase().getMapping(
+                    commit.getParentIds().get(0));
+            localRepository.getGraphDatabase().map(commit.getId(), mappedCommit);
+            Optional<ObjectId> treeId = localRepository.command(ResolveTreeish.class)
+                    .setTreeish(mappedCommit).call();
+            if (treeId.isPresent() && !treeId.get().equals(ObjectId.NULL)) {
+                rootTree = localRepository.getTree(treeId.get());
             }
 
-            if (changes.hasNext()) {
-                // Create new commit
-                ObjectId newTreeId = localRepository.command(WriteTree.class)
-                        .setOldRoot(Suppliers.ofInstance(rootTree))
-                        .setDiffSupplier(Suppliers.ofInstance((Iterator<DiffEntry>) changes))
-                        .call();
-
-                CommitBuilder builder = new CommitBuilder(commit);
-                List<ObjectId> newParents = new LinkedList<ObjectId>();
-                for (ObjectId parentCommitId : commit.getParentIds()) {
-                    newParents.add(localRepository.getGraphDatabase().getMapping(parentCommitId));
-                }
-                builder.setParentIds(newParents);
-                builder.setTreeId(newTreeId);
-
-                RevCommit mapped = builder.build();
-                localRepository.getObjectDatabase().put(mapped);
-
-                if (changes.wasFiltered()) {
-                    localRepository.getGraphDatabase().setProperty(mapped.getId(),
-                            GraphDatabase.SPARSE_FLAG, "true");
-                }
+        } else {
+            localRepository.getGraphDatabase().map(commit.getId(), ObjectId.NULL);
+        }
 
-                localRepository.getGraphDatabase().map(mapped.getId(), commit.getId());
-                // Replace the old mapping with the new commit Id.
-                localRepository.getGraphDatabase().map(commit.getId(), mapped.getId());
-            } else if (allowEmpty) {
-                CommitBuilder builder = new CommitBuilder(commit);
-                List<ObjectId> newParents = new LinkedList<ObjectId>();
-                for (ObjectId parentCommitId : commit.getParentIds()) {
-                    newParents.add(localRepository.getGraphDatabase().getMapping(parentCommitId));
-                }
-                builder.setParentIds(newParents);
-                builder.setTreeId(rootTree.getId());
-                builder.setMessage(PLACEHOLDER_COMMIT_MESSAGE);
+        if (changes.hasNext()) {
+            // Create new commit
+            ObjectId newTreeId = localRepository.command(WriteTree.class)
+                    .setOldRoot(Suppliers.ofInstance(rootTree))
+                    .setDiffSupplier(Suppliers.ofInstance((Iterator<DiffEntry>) changes))
+                    .call();
+
+            CommitBuilder builder = new CommitBuilder(commit);
+            List<ObjectId> newParents = new LinkedList<ObjectId>();
+            for (ObjectId parentCommitId : commit.getParentIds()) {
+                newParents.add(localRepository.getGraphDatabase().getMapping(parentCommitId));
+            }
+            builder.setParentIds(newParents);
+            builder.setTreeId(newTreeId);
 
-                RevCommit mapped = builder.build();
-                localRepository.getObjectDatabase().put(mapped);
+            RevCommit mapped = builder.build();
+            localRepository.getObjectDatabase().put(mapped);
 
+            if (changes.wasFiltered()) {
                 localRepository.getGraphDatabase().setProperty(mapped.getId(),
                         GraphDatabase.SPARSE_FLAG, "true");
+            }
 
-                localRepository.getGraphDatabase().map(mapped.getId(), commit.getId());
-                // Replace the old mapping with the new commit Id.
-                localRepository.getGraphDatabase().map(commit.getId(), mapped.getId());
-            } else {
-                // Mark the mapped commit as sparse, since it wont have these changes
-                localRepository.getGraphDatabase().setProperty(
-                        localRepository.getGraphDatabase().getMapping(commit.getId()),
-                        GraphDatabase.SPARSE_FLAG, "true");
+            localRepository.getGraphDatabase().map(mapped.getId(), commit.getId());
+            // Replace the old mapping with the new commit Id.
+            localRepository.getGraphDatabase().map(commit.getId(), mapped.getId());
+        } else if (allowEmpty) {
+            CommitBuilder builder = new CommitBuilder(commit);
+            List<ObjectId> newParents = new LinkedList<ObjectId>();
+            for (ObjectId parentCommitId : commit.getParentIds()) {
+                newParents.add(localRepository.getGraphDatabase().getMapping(parentCommitId));
             }
+            builder.setParentIds(newParents);
+            builder.setTreeId(rootTree.getId());
+            builder.setMessage(PLACEHOLDER_COMMIT_MESSAGE);
+
+            RevCommit mapped = builder.build();
+            localRepository.getObjectDatabase().put(mapped);
+
+            localRepository.getGraphDatabase().setProperty(mapped.getId(),
+                    GraphDatabase.SPARSE_FLAG, "true");
+
+            localRepository.getGraphDatabase().map(mapped.getId(), commit.getId());
+            // Replace the old mapping with the new commit Id.
+            localRepository.getGraphDatabase().map(commit.getId(), mapped.getId());
+        } else {
+            // Mark the mapped commit as sparse, since it wont have these changes
+            localRepository.getGraphDatabase().setProperty(
+                    localRepository.getGraphDatabase().getMapping(commit.getId()),
+                    GraphDatabase.SPARSE_FLAG, "true");
         }
     }
 
@@ -283,6 +429,25 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
      */
     protected abstract Optional<RevObject> getObject(ObjectId objectId);
 
+    /**
+     * Retrieves the objects with the specified ids from the remote. Remotes that can retrieve
+     * several objects at once should override this method, the default implementation retrieves
+     * each object with {@link #getObject(ObjectId)}.
+     * 
+     * @param objectIds the objects to get
+     * @return the fetched objects by id, objects that were not found are left out
+     */
+    protected Map<ObjectId, RevObject> getObjects(Iterable<ObjectId> objectIds) {
+        Map<ObjectId, RevObject> objects = Maps.newHashMap();
+        for (ObjectId objectId : objectIds) {
+            Optional<RevObject> object = getObject(objectId);
+            if (object.isPresent()) {
+                objects.put(objectId, object.get());
+            }
+        }
+        return objects;
+    }
+
     /**
      * Gets all of the changes from the target commit that should be applied to the sparse clone.
      * 
@@ -4,7 +4,9 @@
  */
 package org.geogit.remote;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -12,6 +14,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -23,7 +26,9 @@ import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject;
 import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.HashObject;
 import org.geogit.repository.PostOrderIterator;
+import org.geogit.storage.BulkOpListener;
 import org.geogit.storage.Deduplicator;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.ObjectReader;
@@ -36,6 +41,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 
 public final class BinaryPackedObjects {
     private final ObjectWriter<RevCommit> commitWriter;
@@ -48,7 +54,9 @@ public final class BinaryPackedObjects {
 
     private final ObjectReader<RevObject> objectReader;
 
-    private final int CAP = 100;
+    private static final int CAP = 100;
+
+    private static final int INGEST_BATCH_SIZE = 10000;
 
     private final ObjectDatabase database;
 
@@ -67,8 +75,39 @@ public final class BinaryPackedObjects {
         write(out, want, have, new HashSet<ObjectId>(), DEFAULT_CALLBACK, traverseCommits, deduplicator);
     }
 
+    /**
+     * Writes the objects reachable from {@code want} and not from {@code have}, stopping after
+     * {@link #CAP} commits. The receiving end is expected to ask again for the rest.
+     */
     public <T> T write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
             Set<ObjectId> sent, Callback<T> callback, boolean traverseCommits, Deduplicator deduplicator) throws IOException {
+        return write(out, want, have, sent, callback, traverseCommits, deduplicator, false);
+    }
+
+    public void writeAll(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            boolean traverseCommits, Deduplicator deduplicator) throws IOException {
+        writeAll(out, want, have, new HashSet<ObjectId>(), DEFAULT_CALLBACK, traverseCommits,
+                deduplicator);
+    }
+
+    /**
+     * Writes all the objects reachable from {@code want} and not from {@code have} in a single
+     * stream.
+     * <p>
+     * Objects are written in post order, so every commit follows all the objects it references.
+     * The output is flushed every {@link #CAP} commits so that, if the transfer is interrupted, the
+     * receiving end holds complete commits up to a recent checkpoint and can resume from there by
+     * asking again with its updated want and have lists.
+     */
+    public <T> T writeAll(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            Set<ObjectId> sent, Callback<T> callback, boolean traverseCommits,
+            Deduplicator deduplicator) throws IOException {
+        return write(out, want, have, sent, callback, traverseCommits, deduplicator, true);
+    }
+
+    private <T> T write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            Set<ObjectId> sent, Callback<T> callback, boolean traverseCommits,
+            Deduplicator deduplicator, boolean singleStream) throws IOException {
         T state = null;
         for (ObjectId i : want) {
             if (!database.exists(i)) {
@@ -85,26 +124,56 @@ public final class BinaryPackedObjects {
         int commitsSent = 0;
         Iterator<RevObject> objects = PostOrderIterator.range(want, new ArrayList<ObjectId>(
                 previsitResults), database, traverseCommits, deduplicator);
-        while (objects.hasNext() && commitsSent < CAP) {
+        while (objects.hasNext() && (singleStream || commitsSent < CAP)) {
             RevObject object = objects.next();
 
-            out.write(object.getId().getRawValue());
+            writeObject(object, out);
             if (object instanceof RevCommit) {
-                commitWriter.write((RevCommit) object, out);
                 commitsSent++;
-            } else if (object instanceof RevTree) {
-                treeWriter.write((RevTree) object, out);
-            } else if (object instanceof RevFeature) {
-                featureWriter.write((RevFeature) object, out);
-            } else if (object instanceof RevFeatureType) {
-                featureTypeWriter.write((RevFeatureType) object, out);
+                if (singleStream && commitsSent % CAP == 0) {
+                    // checkpoint
+                    out.flush();
+                }
             }
             state = callback.callback(object, state);
         }
+        out.flush();
 
         return state;
     }
 
+    /**
+     * Writes the given objects, as opposed to the objects reachable from them, in the same format
+     * as the other write methods. Objects not in the database are skipped.
+     * 
+     * @param out the stream to write to
+     * @param ids the ids of the objects to write
+     * @throws IOException
+     */
+    public void writeObjects(OutputStream out, Iterable<ObjectId> ids) throws IOException {
+        // the stored form is what the writers would produce, no need to decode and encode again
+        Iterator<Entry<ObjectId, byte[]>> objects = database.getAllRaw(ids);
+        while (objects.hasNext()) {
+            Entry<ObjectId, byte[]> object = objects.next();
+            out.write(object.getKey().getRawValue());
+            out.write(object.getValue());
+        }
+        out.flush();
+    }
+
+    private void writeObject(RevObject object, OutputStream out) throws IOException {
+        out.write(object.getId().getRawValue());
+        if (object instanceof RevCommit) {
+            commitWriter.write((RevCommit) object, out);
+        } else if (object instanceof RevTree) {
+            treeWriter.write((RevTree) object, out);
+        } else if (object instanceof RevFeature) {
+            featureWriter.write((RevFeature) object, out);
+        } else if (object instanceof RevFeatureType) {
+            featureTypeWriter.write((RevFeatureType) object, out);
+        }
+    }
+
     /**
      * Find commits which should be previsited to avoid resending objects that are already on the
      * receiving end. A commit should be previsited if:
@@ -154,11 +223,20 @@ public final class BinaryPackedObjects {
         ingest(in, DEFAULT_CALLBACK);
     }
 
+    /**
+     * Reads all the objects in the stream and saves the ones not already in the database, storing
+     * the bytes as they were received rather than encoding the decoded objects again.
+     * 
+     * @param in the stream to read from
+     * @param callback called for every object that was not already in the database
+     * @return the state returned by the last call to {@code callback}
+     */
     public <T> T ingest(final InputStream in, Callback<T> callback) {
+        final RecordingInputStream recording = new RecordingInputStream(in);
         T state = null;
         while (true) {
             try {
-                state = ingestOne(in, callback, state);
+                state = ingestOne(recording, callback, state);
             } catch (EOFException e) {
                 break;
             } catch (IOException e) {
@@ -168,20 +246,139 @@ public final class BinaryPackedObjects {
         return state;
     }
 
-    private <T> T ingestOne(final InputStream in, Callback<T> callback, T state) throws IOException {
+    /**
+     * Reads all the objects in the stream and saves them in batches of {@value #INGEST_BATCH_SIZE},
+     * checking which ones are {@link ObjectDatabase#missing missing} from the database with a
+     * single call per batch instead of one at a time. Like {@link #ingest(InputStream, Callback)},
+     * the bytes are stored as they were received, except for commits, which are saved with
+     * {@link ObjectDatabase#putAll bulk insert} so they make it into the commit graph.
+     * 
+     * @param in the stream to read from
+     * @param callback called for every object read, whether it was already in the database or not
+     * @param listener notified of the objects that were actually inserted
+     * @return the state returned by the last call to {@code callback}
+     */
+    public <T> T ingestAll(final InputStream in, Callback<T> callback, BulkOpListener listener) {
+        final RecordingInputStream recording = new RecordingInputStream(in);
+        T state = null;
+        List<RevObject> batch = new ArrayList<RevObject>(INGEST_BATCH_SIZE);
+        List<byte[]> rawBatch = new ArrayList<byte[]>(INGEST_BATCH_SIZE);
+        boolean eof = false;
+        while (!eof) {
+            try {
+                ObjectId id = readObjectId(recording);
+                recording.record();
+                RevObject revObj = objectReader.read(id, recording);
+                verify(revObj);
+                state = callback.callback(revObj, state);
+                batch.add(revObj);
+                rawBatch.add(recording.recorded());
+            } catch (EOFException e) {
+                eof = true;
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            if (eof || batch.size() == INGEST_BATCH_SIZE) {
+                insertMissing(batch, rawBatch, listener);
+                batch.clear();
+                rawBatch.clear();
+            }
+        }
+        return state;
+    }
+
+    private void insertMissing(List<RevObject> objects, List<byte[]> raw,
+            BulkOpListener listener) {
+        List<ObjectId> ids = new ArrayList<ObjectId>(objects.size());
+        for (RevObject object : objects) {
+            ids.add(object.getId());
+        }
+        Set<ObjectId> missing = database.missing(ids);
+
+        List<RevObject> commits = new ArrayList<RevObject>();
+        List<RevObject> inserted = new ArrayList<RevObject>();
+        List<Entry<ObjectId, byte[]>> others = new ArrayList<Entry<ObjectId, byte[]>>();
+        for (int i = 0; i < objects.size(); i++) {
+            RevObject object = objects.get(i);
+            // removed so that an object sent twice is only inserted once
+            if (!missing.remove(object.getId())) {
+                continue;
+            }
+            if (object instanceof RevCommit) {
+                commits.add(object);
+            } else {
+                inserted.add(object);
+                others.add(Maps.immutableEntry(object.getId(), raw.get(i)));
+            }
+        }
+        database.putAllRaw(others.iterator());
+        for (RevObject object : inserted) {
+            listener.inserted(object, null);
+        }
+        database.putAll(commits.iterator(), listener);
+    }
+
+    /**
+     * Reads all the objects in a stream written by this class, without saving them to any
+     * database.
+     * 
+     * @param in the stream to read from
+     * @return the objects read, in the order they were written
+     */
+    public static List<RevObject> read(final InputStream in) {
+        ObjectReader<RevObject> objectReader = new DataStreamSerializationFactory()
+                .createObjectReader();
+        List<RevObject> objects = new ArrayList<RevObject>();
+        while (true) {
+            try {
+                ObjectId id = readObjectId(in);
+                objects.add(objectReader.read(id, in));
+            } catch (EOFException e) {
+                break;
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        return objects;
+    }
+
+    private <T> T ingestOne(final RecordingInputStream in, Callback<T> callback, T state)
+            throws IOException {
         ObjectId id = readObjectId(in);
+        in.record();
         RevObject revObj = objectReader.read(id, in);
+        byte[] raw = in.recorded();
+        verify(revObj);
         final T result;
         if (!database.exists(id)) {
             result = callback.callback(revObj, state);
-            database.put(revObj);
+            if (revObj instanceof RevCommit) {
+                // commits go through put so they're added to the commit graph
+                database.put(revObj);
+            } else {
+                database.putRaw(id, raw);
+            }
         } else {
             result = state;
         }
         return result;
     }
 
-    private ObjectId readObjectId(final InputStream in) throws IOException {
+    /**
+     * Checks that the id an object was sent with is the hash of its contents, so a corrupt stream
+     * can't be saved under an id it doesn't match. This applies to features and feature types too:
+     * one whose decoded contents don't hash back to its id is not in canonical form and is
+     * rejected rather than stored under an id that doesn't identify it.
+     */
+    private static void verify(RevObject object) {
+        ObjectId hash = new HashObject().setObject(object).call();
+        if (!hash.equals(object.getId())) {
+            throw new IllegalStateException("Received " + object.getType() + " " + object.getId()
+                    + " but its contents hash to " + hash);
+        }
+    }
+
+    private static ObjectId readObjectId(final InputStream in) throws IOException {
         byte[] rawBytes = new byte[20];
         int amount = 0;
         int len = 20;
@@ -197,6 +394,59 @@ public final class BinaryPackedObjects {
         return id;
     }
 
+    /**
+     * Keeps a copy of the bytes read since the last call to {@link #record()}, so the serialized
+     * form of an object can be stored as it was received.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public void record() {
+            buffer.reset();
+        }
+
+        public byte[] recorded() {
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                buffer.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                buffer.write(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() != -1) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
     public static interface Callback<T> {
         public abstract T callback(RevObject object, T state);
     }
@@ -0,0 +1,173 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.geogit.repository.Repository;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Answers the commit negotiation requests a remote client sends before a fetch or a push to find
+ * out, in a few round trips, which commits have to be transferred.
+ * <p>
+ * A request is a JSON object with the following optional members:
+ * <ul>
+ * <li>{@code want}: commits whose history the client wants to learn. The history is walked
+ * breadth-first from them, without going past the {@code have} commits, and each commit found is
+ * reported as a {@code commit <id> [<parentId>...]} line, up to {@code limit} commits. Wanted
+ * commits the repository doesn't have are reported as {@code missing <id>}.
+ * <li>{@code have}: commits the client already has.
+ * <li>{@code query}: commits the client wants to know whether the repository has. Each one the
+ * repository has is reported as a {@code have <id>} line.
+ * <li>{@code limit}: the maximum number of commits to report, defaults to {@link #DEFAULT_LIMIT}.
+ * <li>{@code depth}: the number of generations to walk from the {@code want} commits, the
+ * {@code want} commits being the first one. Unlimited by default, it's used by shallow fetches.
+ * <li>{@code encodings}: the {@link PackEncoding pack encodings} the client can send, by order of
+ * preference. The one the client should use is reported as an {@code encoding <name>} line.
+ * </ul>
+ * The response is plain text, one line per reported commit.
+ */
+public class CommitNegotiation {
+
+    /**
+     * Default number of commits reported or queried in a single exchange.
+     */
+    public static final int DEFAULT_LIMIT = 1000;
+
+    private static final int MAX_LIMIT = 10 * DEFAULT_LIMIT;
+
+    static final String WANT = "want";
+
+    static final String HAVE = "have";
+
+    static final String QUERY = "query";
+
+    static final String LIMIT = "limit";
+
+    static final String DEPTH = "depth";
+
+    static final String ENCODINGS = "encodings";
+
+    static final String ENCODING = "encoding";
+
+    static final String COMMIT = "commit";
+
+    static final String MISSING = "missing";
+
+    private final Repository repository;
+
+    /**
+     * Constructs a new {@code CommitNegotiation} for the given repository.
+     *
+     * @param repository the repository to answer requests for
+     */
+    public CommitNegotiation(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Reads a negotiation request and writes its response.
+     *
+     * @param request the JSON request
+     * @param alsoPresent objects to report as present even if they're not in the repository yet,
+     *        e.g. objects already sent by the client during an ongoing push
+     * @param response the writer to write the response to
+     * @throws IOException
+     */
+    public void respond(Reader request, Predicate<ObjectId> alsoPresent, Writer response)
+            throws IOException {
+        final JsonElement json = new JsonParser().parse(request);
+        final JsonObject message = json.isJsonObject() ? json.getAsJsonObject() : new JsonObject();
+
+        if (message.has(ENCODINGS) && message.get(ENCODINGS).isJsonArray()) {
+            List<String> offered = Lists.newArrayList();
+            for (JsonElement e : message.get(ENCODINGS).getAsJsonArray()) {
+                if (e.isJsonPrimitive()) {
+                    offered.add(e.getAsString());
+                }
+            }
+            response.write(ENCODING + " " + PackEncoding.negotiate(offered).getName() + "\n");
+        }
+
+        for (ObjectId id : ids(message, QUERY)) {
+            if (id.isNull() || repository.blobExists(id) || alsoPresent.apply(id)) {
+                response.write(HAVE + " " + id + "\n");
+            }
+        }
+
+        int limit = DEFAULT_LIMIT;
+        if (message.has(LIMIT) && message.get(LIMIT).isJsonPrimitive()) {
+            limit = Math.max(1, Math.min(MAX_LIMIT, message.get(LIMIT).getAsInt()));
+        }
+
+        int depth = Integer.MAX_VALUE;
+        if (message.has(DEPTH) && message.get(DEPTH).isJsonPrimitive()) {
+            depth = Math.max(1, message.get(DEPTH).getAsInt());
+        }
+
+        final Set<ObjectId> visited = Sets.newHashSet(ids(message, HAVE));
+        final Queue<ObjectId> pending = new LinkedList<ObjectId>();
+        final Map<ObjectId, Integer> depths = Maps.newHashMap();
+        for (ObjectId id : ids(message, WANT)) {
+            if (!id.isNull() && visited.add(id)) {
+                pending.add(id);
+                depths.put(id, 1);
+            }
+        }
+
+        int count = 0;
+        while (!pending.isEmpty() && count < limit) {
+            final ObjectId id = pending.poll();
+            final int commitDepth = depths.remove(id).intValue();
+            if (!repository.blobExists(id)) {
+                response.write(MISSING + " " + id + "\n");
+                continue;
+            }
+            ImmutableList<ObjectId> parents = repository.getGraphDatabase().getParents(id);
+            StringBuilder line = new StringBuilder(COMMIT).append(' ').append(id);
+            for (ObjectId parentId : parents) {
+                line.append(' ').append(parentId);
+                if (commitDepth < depth && !parentId.isNull() && visited.add(parentId)) {
+                    pending.add(parentId);
+                    depths.put(parentId, commitDepth + 1);
+                }
+            }
+            response.write(line.append('\n').toString());
+            count++;
+        }
+        response.flush();
+    }
+
+    private static List<ObjectId> ids(JsonObject message, String member) {
+        List<ObjectId> ids = Lists.newArrayList();
+        if (message.has(member) && message.get(member).isJsonArray()) {
+            JsonArray array = message.get(member).getAsJsonArray();
+            for (JsonElement e : array) {
+                if (e.isJsonPrimitive()) {
+                    ids.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -6,6 +6,9 @@ package org.geogit.remote;
 
 import java.util.Iterator;
 
+import javax.annotation.Nullable;
+
+import org.geogit.api.Bounded;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RepositoryFilter;
@@ -16,6 +19,7 @@ import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.repository.Repository;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 
 /**
@@ -32,6 +36,9 @@ public class FilteredDiffIterator extends AbstractIterator<DiffEntry> {
 
     private RepositoryFilter repoFilter;
 
+    @Nullable
+    private Predicate<Bounded> boundsFilter;
+
     public final boolean wasFiltered() {
         return filtered;
     }
@@ -51,6 +58,14 @@ public class FilteredDiffIterator extends AbstractIterator<DiffEntry> {
         filtered = false;
     }
 
+    /**
+     * @param boundsFilter if given, features whose node doesn't pass it are known not to match the
+     *        repository filter, and are discarded without being evaluated unless they are tracked
+     */
+    public void setBoundsFilter(@Nullable Predicate<Bounded> boundsFilter) {
+        this.boundsFilter = boundsFilter;
+    }
+
     /**
      * Compute the next {@link DiffEntry} that matches our {@link RepositoryFilter}.
      */
@@ -58,42 +73,69 @@ public class FilteredDiffIterator extends AbstractIterator<DiffEntry> {
         while (source.hasNext()) {
             DiffEntry input = source.next();
 
-            NodeRef oldObject = filter(input.getOldObject());
-            NodeRef newObject;
-            if (oldObject != null) {
-                newObject = input.getNewObject();
-                if (newObject != null) {
-                    // we are tracking this object, but we still need to process the new object
-                    RevObject object = sourceRepo.command(RevObjectParse.class)
-                            .setObjectId(newObject.getNode().getObjectId()).call().get();
-
-                    RevObject metadata = null;
-                    if (newObject.getMetadataId() != ObjectId.NULL) {
-                        metadata = sourceRepo.command(RevObjectParse.class)
-                                .setObjectId(newObject.getMetadataId()).call().get();
-                    }
-                    processObject(object);
-                    processObject(metadata);
-                }
-            } else {
-                newObject = filter(input.getNewObject());
-            }
-
-            if (oldObject == null && newObject == null) {
+            DiffEntry output = filter(input);
+            if (output == null) {
                 filtered = true;
                 continue;
             }
-
-            return new DiffEntry(oldObject, newObject);
+            return output;
         }
         return endOfData();
     }
 
+    /**
+     * Filters a single change. Does not change the {@link #wasFiltered() filtered} state, so it can
+     * be called concurrently for different changes as long as {@link #trackingObject(ObjectId)} and
+     * {@link #processObject(RevObject)} are thread safe.
+     * 
+     * @param input the change to filter
+     * @return the change to apply, or {@code null} if the change is filtered out entirely
+     */
+    @Nullable
+    protected DiffEntry filter(DiffEntry input) {
+        NodeRef oldObject = filter(input.getOldObject());
+        NodeRef newObject;
+        if (oldObject != null) {
+            newObject = input.getNewObject();
+            if (newObject != null) {
+                // we are tracking this object, but we still need to process the new object
+                RevObject object = sourceRepo.command(RevObjectParse.class)
+                        .setObjectId(newObject.getNode().getObjectId()).call().get();
+
+                RevObject metadata = null;
+                if (newObject.getMetadataId() != ObjectId.NULL) {
+                    metadata = sourceRepo.command(RevObjectParse.class)
+                            .setObjectId(newObject.getMetadataId()).call().get();
+                }
+                processObject(object);
+                processObject(metadata);
+            }
+        } else {
+            newObject = filter(input.getNewObject());
+        }
+
+        if (oldObject == null && newObject == null) {
+            return null;
+        }
+
+        return new DiffEntry(oldObject, newObject);
+    }
+
     private NodeRef filter(NodeRef node) {
         if (node == null) {
             return null;
         }
 
+        if (node.getType() == TYPE.FEATURE) {
+            if (trackingObject(node.getNode().getObjectId())) {
+                // We are already tracking this object, continue to do so
+                return node;
+            }
+            if (boundsFilter != null && !boundsFilter.apply(node.getNode())) {
+                return null;
+            }
+        }
+
         RevObject object = sourceRepo.command(RevObjectParse.class)
                 .setObjectId(node.getNode().getObjectId()).call().get();
 
@@ -103,11 +145,6 @@ public class FilteredDiffIterator extends AbstractIterator<DiffEntry> {
                     .call().get();
         }
         if (node.getType() == TYPE.FEATURE) {
-            if (trackingObject(object.getId())) {
-                // We are already tracking this object, continue to do so
-                return node;
-            }
-
             RevFeatureType revFeatureType = (RevFeatureType) metadata;
 
             if (!repoFilter.filterObject(revFeatureType, node.getParentPath(), object)) {
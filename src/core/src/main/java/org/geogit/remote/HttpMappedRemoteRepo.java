@@ -17,6 +17,7 @@ import java.net.URL;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
@@ -103,11 +104,7 @@ class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
         try {
             String expanded = repositoryURL.toString() + "/repo/manifest";
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = HttpUtils.connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -154,11 +151,7 @@ class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
         try {
             String expanded = repositoryURL.toString() + "/repo/manifest";
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = HttpUtils.connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -412,6 +405,17 @@ class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
         return HttpUtils.getNetworkObject(repositoryURL, null, objectId);
     }
 
+    /**
+     * Retrieves the objects with the specified ids from the remote in batches.
+     * 
+     * @param objectIds the objects to get
+     * @return the fetched objects by id
+     */
+    @Override
+    protected Map<ObjectId, RevObject> getObjects(Iterable<ObjectId> objectIds) {
+        return HttpUtils.getNetworkObjects(repositoryURL, objectIds);
+    }
+
     /**
      * Updates the remote ref that matches the given refspec.
      * 
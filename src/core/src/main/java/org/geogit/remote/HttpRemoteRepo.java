@@ -12,6 +12,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
@@ -30,9 +31,11 @@ import org.geogit.storage.DeduplicationService;
 import org.geogit.storage.Deduplicator;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -48,8 +51,8 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
 
     private URL repositoryURL;
 
-    private List<ObjectId> fetchedIds;
-    
+    private HttpRepositoryWrapper remoteWrapper;
+
     final private DeduplicationService deduplicationService;
 
     /**
@@ -69,6 +72,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         } catch (MalformedURLException e) {
             this.repositoryURL = repositoryURL;
         }
+        this.remoteWrapper = new HttpRepositoryWrapper(this.repositoryURL);
     }
 
     /**
@@ -101,11 +105,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         try {
             String expanded = repositoryURL.toString() + "/repo/manifest";
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = HttpUtils.connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -147,11 +147,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         try {
             String expanded = repositoryURL.toString() + "/repo/manifest";
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = HttpUtils.connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -184,28 +180,37 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
      */
     @Override
     public void fetchNewData(Ref ref, Optional<Integer> fetchLimit) {
-        fetchedIds = new LinkedList<ObjectId>();
-
         CommitTraverser traverser = getFetchTraverser(fetchLimit);
 
+        // Commits are requested oldest first and each one is received after all the objects it
+        // references, so the objects received before a failure are kept: every commit in the
+        // local repository is complete, and a new fetch resumes after the last one received.
         try {
+            remoteWrapper.negotiateFetch(ref.getObjectId(), new LocalRepositoryWrapper(
+                    localRepository), fetchLimit);
             traverser.traverse(ref.getObjectId());
-            List<ObjectId> want = new LinkedList<ObjectId>();
-            want.addAll(traverser.commits);
-            Collections.reverse(want);
-            Set<ObjectId> have = new HashSet<ObjectId>();
-            have.addAll(traverser.have);
-            while (!want.isEmpty()) {
+        } finally {
+            remoteWrapper.clearCache();
+        }
+        List<ObjectId> want = new LinkedList<ObjectId>();
+        want.addAll(traverser.commits);
+        Collections.reverse(want);
+        Set<ObjectId> have = new HashSet<ObjectId>();
+        have.addAll(traverser.have);
+        while (!want.isEmpty()) {
+            final int remaining = want.size();
+            try {
                 fetchMoreData(want, have);
+            } catch (RuntimeException e) {
+                if (!(e.getCause() instanceof IOException) || want.size() == remaining) {
+                    throw e;
+                }
+                // the transfer was interrupted after some commits were complete, resume
+                // from the last one
+                continue;
             }
-        } catch (Exception e) {
-            for (ObjectId oid : fetchedIds) {
-                localRepository.getObjectDatabase().delete(oid);
-            }
-            Throwables.propagate(e);
-        } finally {
-            fetchedIds.clear();
-            fetchedIds = null;
+            Preconditions.checkState(want.size() < remaining,
+                    "The remote stopped sending objects before the fetch was complete");
         }
     }
 
@@ -223,7 +228,12 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
 
         CommitTraverser traverser = getPushTraverser(remoteRef);
 
-        traverser.traverse(ref.getObjectId());
+        remoteWrapper.negotiatePush(ref.getObjectId(), new LocalRepositoryWrapper(localRepository));
+        try {
+            traverser.traverse(ref.getObjectId());
+        } finally {
+            remoteWrapper.clearCache();
+        }
 
         List<ObjectId> toSend = new LinkedList<ObjectId>();
         toSend.addAll(traverser.commits);
@@ -248,14 +258,17 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
     private void sendPackedObjects(final List<ObjectId> toSend, final Set<ObjectId> roots, Deduplicator deduplicator) {
         Set<ObjectId> sent = new HashSet<ObjectId>();
         while (!toSend.isEmpty()) {
+            HttpURLConnection connection = null;
             try {
-                String expanded = repositoryURL.toString() + "/repo/sendobject";
-                HttpURLConnection connection = (HttpURLConnection) new URL(expanded)
-                        .openConnection();
-                connection.setDoOutput(true);
+                String internalIp = InetAddress.getLocalHost().getHostName();
+                String expanded = repositoryURL.toString() + "/repo/sendobject?internalIp="
+                        + internalIp;
+                connection = HttpUtils.connect(expanded, "POST");
                 connection.setChunkedStreamingMode(4096);
+                final PackEncoding encoding = remoteWrapper.getPackEncoding();
+                connection.setRequestProperty("Content-Type", encoding.mediaType());
 
-                OutputStream out = connection.getOutputStream();
+                OutputStream out = encoding.encode(connection.getOutputStream());
                 BinaryPackedObjects.Callback<Void> callback = new BinaryPackedObjects.Callback<Void>() {
                     @Override
                     public Void callback(RevObject object, Void state) {
@@ -270,14 +283,17 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
                 };
                 BinaryPackedObjects packer = new BinaryPackedObjects(
                         localRepository.getObjectDatabase());
-                packer.write(out, toSend, ImmutableList.copyOf(roots), sent, callback, false, deduplicator);
-                out.flush();
+                packer.writeAll(out, toSend, ImmutableList.copyOf(roots), sent, callback, false,
+                        deduplicator);
+                encoding.finish(out);
                 out.close();
 
                 InputStream in = connection.getInputStream();
                 HttpUtils.consumeAndCloseStream(in);
             } catch (IOException e) {
                 Throwables.propagate(e);
+            } finally {
+                HttpUtils.consumeErrStreamAndCloseConnection(connection);
             }
         }
     }
@@ -306,6 +322,9 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
      * list, and any parents of those commits are removed from the have list (it only represents the
      * most recent common commits.) Retrieved objects are added to the local repository, and the
      * want/have lists are updated in-place.
+     * <p>
+     * The remote is asked to send everything in a single stream; remotes that don't support it
+     * send the objects for a limited number of commits instead.
      * 
      * @param want a list of ObjectIds that need to be fetched
      * @param have a list of ObjectIds that are in common with the remote repository
@@ -337,7 +356,8 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
 
         final InputStream in;
         try {
-            in = connection.getInputStream();
+            in = PackEncoding.fromMediaType(connection.getContentType()).decode(
+                    connection.getInputStream());
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
@@ -355,7 +375,11 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
                 return null;
             }
         };
-        unpacker.ingest(in, callback);
+        try {
+            unpacker.ingest(in, callback);
+        } finally {
+            Closeables.closeQuietly(in);
+        }
     }
 
     private JsonObject createFetchMessage(List<ObjectId> want, Set<ObjectId> have) {
@@ -370,6 +394,8 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         }
         message.add("want", wantArray);
         message.add("have", haveArray);
+        message.add("stream", new JsonPrimitive(true));
+        message.add("encodings", HttpRepositoryWrapper.encodingsOffer());
         return message;
     }
 
@@ -378,7 +404,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
      */
     @Override
     public RepositoryWrapper getRemoteWrapper() {
-        return new HttpRepositoryWrapper(repositoryURL);
+        return remoteWrapper;
     }
 
     /**
@@ -5,19 +5,49 @@
 package org.geogit.remote;
 
 import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 
 import org.geogit.api.ObjectId;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Provides an interface to make basic queries to a remote repository over http.
+ * <p>
+ * {@link #negotiateFetch} and {@link #negotiatePush} learn, in batches, the commit graph and
+ * commit existence information a fetch or push traversal is going to ask for, so that
+ * {@link #objectExists} and {@link #getParents} don't need a request per commit. Queries not
+ * answered by the last negotiation still go to the remote, and so do all of them if the remote
+ * doesn't support negotiation.
  */
 class HttpRepositoryWrapper implements RepositoryWrapper {
 
     private URL repositoryURL;
 
+    private final Map<ObjectId, Boolean> knownExists = Maps.newHashMap();
+
+    private final Map<ObjectId, ImmutableList<ObjectId>> knownParents = Maps.newHashMap();
+
+    private PackEncoding packEncoding = PackEncoding.IDENTITY;
+
+    /**
+     * Whether the remote answers negotiation requests, {@code false} once one has been refused
+     */
+    private boolean negotiationSupported = true;
+
     /**
      * Constructs a new {@code HttpRepositoryWrapper} with the provided URL.
      * 
@@ -35,7 +65,14 @@ class HttpRepositoryWrapper implements RepositoryWrapper {
      */
     @Override
     public boolean objectExists(ObjectId objectId) {
-        return objectId.isNull() || HttpUtils.networkObjectExists(repositoryURL, objectId);
+        if (objectId.isNull()) {
+            return true;
+        }
+        Boolean exists = knownExists.get(objectId);
+        if (exists != null) {
+            return exists.booleanValue();
+        }
+        return HttpUtils.networkObjectExists(repositoryURL, objectId);
     }
 
     /**
@@ -46,6 +83,10 @@ class HttpRepositoryWrapper implements RepositoryWrapper {
      */
     @Override
     public ImmutableList<ObjectId> getParents(ObjectId commitId) {
+        ImmutableList<ObjectId> parents = knownParents.get(commitId);
+        if (parents != null) {
+            return parents;
+        }
         return HttpUtils.getParents(repositoryURL, commitId);
     }
 
@@ -73,4 +114,200 @@ class HttpRepositoryWrapper implements RepositoryWrapper {
         return HttpUtils.getDepth(repositoryURL, null);
     }
 
+    /**
+     * Learns the history of the remote commit {@code tip} that is missing from {@code local}, a
+     * batch of commits per request.
+     * 
+     * @param tip the remote commit to fetch
+     * @param local the repository to fetch into
+     * @param fetchLimit the maximum depth to fetch, counting {@code tip} as depth 1
+     */
+    public void negotiateFetch(ObjectId tip, RepositoryWrapper local,
+            Optional<Integer> fetchLimit) {
+        clearCache();
+        final Set<ObjectId> have = Sets.newHashSet();
+        // the depth of each commit from the tip, to stop at the fetch limit
+        final Map<ObjectId, Integer> depths = Maps.newHashMap();
+        Set<ObjectId> want = Sets.newLinkedHashSet();
+        if (!local.objectExists(tip)) {
+            want.add(tip);
+            depths.put(tip, 1);
+        }
+        while (!want.isEmpty() && negotiationSupported) {
+            JsonObject message = new JsonObject();
+            message.add(CommitNegotiation.WANT, toJson(want));
+            message.add(CommitNegotiation.HAVE, toJson(have));
+            if (fetchLimit.isPresent()) {
+                int minDepth = Integer.MAX_VALUE;
+                for (ObjectId id : want) {
+                    minDepth = Math.min(minDepth, depths.get(id));
+                }
+                message.addProperty(CommitNegotiation.DEPTH, fetchLimit.get() - minDepth + 1);
+            }
+
+            Optional<ImmutableList<String>> response = HttpUtils.negotiate(repositoryURL,
+                    message);
+            if (!response.isPresent()) {
+                // the traversal asks the remote about each commit instead
+                negotiationSupported = false;
+                break;
+            }
+            List<ObjectId> described = Lists.newArrayList();
+            for (String line : response.get()) {
+                List<String> tokens = Lists.newArrayList(Splitter.on(' ').omitEmptyStrings()
+                        .split(line));
+                if (tokens.size() < 2) {
+                    continue;
+                }
+                ObjectId id = ObjectId.valueOf(tokens.get(1));
+                if (CommitNegotiation.COMMIT.equals(tokens.get(0))) {
+                    ImmutableList.Builder<ObjectId> parents = ImmutableList.builder();
+                    for (String parentId : tokens.subList(2, tokens.size())) {
+                        parents.add(ObjectId.valueOf(parentId));
+                    }
+                    knownParents.put(id, parents.build());
+                    knownExists.put(id, Boolean.TRUE);
+                    described.add(id);
+                } else if (CommitNegotiation.MISSING.equals(tokens.get(0))) {
+                    knownExists.put(id, Boolean.FALSE);
+                }
+            }
+
+            Set<ObjectId> nextWant = Sets.newLinkedHashSet();
+            for (ObjectId id : want) {
+                if (!knownExists.containsKey(id)) {
+                    // not reached before the response limit
+                    nextWant.add(id);
+                }
+            }
+            for (ObjectId id : described) {
+                // commits are described breadth-first, after the commits they're reached from
+                Integer depth = depths.get(id);
+                for (ObjectId parentId : knownParents.get(id)) {
+                    if (depth != null && !depths.containsKey(parentId)) {
+                        depths.put(parentId, depth + 1);
+                    }
+                    if (knownExists.containsKey(parentId) || have.contains(parentId)) {
+                        continue;
+                    }
+                    if (fetchLimit.isPresent()
+                            && (depth == null || depth.intValue() >= fetchLimit.get())) {
+                        // past the fetch limit
+                        continue;
+                    }
+                    if (local.objectExists(parentId)) {
+                        have.add(parentId);
+                    } else {
+                        nextWant.add(parentId);
+                    }
+                }
+            }
+            want = nextWant;
+        }
+    }
+
+    /**
+     * Learns which commits in the history of the local commit {@code tip} the remote is missing,
+     * querying a batch of commits per request.
+     * 
+     * @param tip the local commit to push
+     * @param local the repository to push from
+     */
+    public void negotiatePush(ObjectId tip, RepositoryWrapper local) {
+        clearCache();
+        packEncoding = PackEncoding.IDENTITY;
+        // the commit each one was reached from, to know whether it's worth walking past it
+        final Map<ObjectId, ObjectId> children = Maps.newHashMap();
+        // commits the remote is missing, whose parents need to be walked
+        final Set<ObjectId> needed = Sets.newHashSet();
+        final Set<ObjectId> visited = Sets.newHashSet();
+        final Queue<ObjectId> pending = new LinkedList<ObjectId>();
+        visited.add(tip);
+        pending.add(tip);
+        while (!pending.isEmpty() && negotiationSupported) {
+            // walk ahead of the answers, the commits below one the remote has are pruned later
+            List<ObjectId> batch = Lists.newArrayList();
+            while (!pending.isEmpty() && batch.size() < CommitNegotiation.DEFAULT_LIMIT) {
+                ObjectId id = pending.poll();
+                batch.add(id);
+                for (ObjectId parentId : local.getParents(id)) {
+                    if (!parentId.isNull() && visited.add(parentId)) {
+                        children.put(parentId, id);
+                        pending.add(parentId);
+                    }
+                }
+            }
+
+            JsonObject message = new JsonObject();
+            message.add(CommitNegotiation.QUERY, toJson(batch));
+            message.add(CommitNegotiation.ENCODINGS, encodingsOffer());
+            Optional<ImmutableList<String>> response = HttpUtils.negotiate(repositoryURL,
+                    message);
+            if (!response.isPresent()) {
+                // the traversal asks the remote about each commit instead
+                negotiationSupported = false;
+                break;
+            }
+            Set<ObjectId> present = Sets.newHashSet();
+            for (String line : response.get()) {
+                if (line.startsWith(CommitNegotiation.HAVE + " ")) {
+                    present.add(ObjectId.valueOf(line.substring(
+                            CommitNegotiation.HAVE.length() + 1).trim()));
+                } else if (line.startsWith(CommitNegotiation.ENCODING + " ")) {
+                    PackEncoding encoding = PackEncoding.fromName(line.substring(
+                            CommitNegotiation.ENCODING.length() + 1).trim());
+                    packEncoding = encoding == null ? PackEncoding.IDENTITY : encoding;
+                }
+            }
+
+            for (ObjectId id : batch) {
+                boolean exists = present.contains(id);
+                knownExists.put(id, Boolean.valueOf(exists));
+                boolean reachable = id.equals(tip) || needed.contains(children.get(id));
+                if (reachable && !exists) {
+                    needed.add(id);
+                }
+            }
+            Iterator<ObjectId> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                if (!needed.contains(children.get(iterator.next()))) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the encoding the remote agreed to accept pushed objects in during the last push
+     *         negotiation
+     */
+    public PackEncoding getPackEncoding() {
+        return packEncoding;
+    }
+
+    /**
+     * @return the names of the pack encodings this client supports, by order of preference
+     */
+    static JsonArray encodingsOffer() {
+        JsonArray array = new JsonArray();
+        array.add(new JsonPrimitive(PackEncoding.DEFLATE.getName()));
+        array.add(new JsonPrimitive(PackEncoding.LZF.getName()));
+        return array;
+    }
+
+    /**
+     * Forgets the commits learned by the last negotiation.
+     */
+    public void clearCache() {
+        knownExists.clear();
+        knownParents.clear();
+    }
+
+    private static JsonArray toJson(Iterable<ObjectId> ids) {
+        JsonArray array = new JsonArray();
+        for (ObjectId id : ids) {
+            array.add(new JsonPrimitive(id.toString()));
+        }
+        return array;
+    }
 }
@@ -5,12 +5,20 @@
 package org.geogit.remote;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import javax.annotation.Nullable;
 import javax.xml.stream.XMLInputFactory;
@@ -24,18 +32,76 @@ import org.geogit.api.SymRef;
 import org.geogit.repository.Repository;
 import org.geogit.storage.datastream.ObjectReader;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Utility functions for performing common communications and operations with http remotes.
  */
 class HttpUtils {
 
+    /**
+     * Maximum number of requests opened with {@link #connect(String, String)} that can be in
+     * flight at the same time
+     */
+    static final int MAX_CONCURRENT_REQUESTS = 8;
+
+    /**
+     * Maximum number of objects asked for in a single request by
+     * {@link #getNetworkObjects(URL, Iterable)}
+     */
+    static final int OBJECT_BATCH_SIZE = 1000;
+
+    private static final Semaphore REQUEST_PERMITS = new Semaphore(MAX_CONCURRENT_REQUESTS, true);
+
+    private static final Set<HttpURLConnection> OPEN_CONNECTIONS = Collections
+            .synchronizedSet(Sets.<HttpURLConnection> newIdentityHashSet());
+
+    /**
+     * Opens a connection to send a request to a remote repository.
+     * <p>
+     * No more than {@link #MAX_CONCURRENT_REQUESTS} connections opened this way are in flight at
+     * the same time, the calling thread waits until another one is released with
+     * {@link #consumeErrStreamAndCloseConnection(HttpURLConnection)}. Released connections are not
+     * disconnected, so their sockets are kept alive and reused for the next requests to the same
+     * host instead of setting up a new connection for each request.
+     * 
+     * @param url the URL of the resource
+     * @param method the HTTP method of the request
+     * @return the connection
+     * @throws IOException
+     */
+    public static HttpURLConnection connect(String url, String method) throws IOException {
+        REQUEST_PERMITS.acquireUninterruptibly();
+        boolean opened = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+
+            connection.setUseCaches(false);
+            connection.setDoOutput(true);
+            OPEN_CONNECTIONS.add(connection);
+            opened = true;
+            return connection;
+        } finally {
+            if (!opened) {
+                REQUEST_PERMITS.release();
+            }
+        }
+    }
+
     /**
      * Parse the provided ref string to a {@link Ref}. The input string should be in the following
      * format:
@@ -70,7 +136,9 @@ class HttpUtils {
     }
 
     /**
-     * Consumes the error stream of the provided connection and then closes it.
+     * Consumes the error stream of the provided connection and then releases it. The underlying
+     * socket is only closed if the error stream couldn't be consumed, otherwise it's kept alive to
+     * be reused by later requests.
      * 
      * @param connection the connection to close
      */
@@ -78,13 +146,20 @@ class HttpUtils {
         if (connection == null) {
             return;
         }
+        boolean consumed = false;
         try {
             InputStream es = ((HttpURLConnection) connection).getErrorStream();
             consumeAndCloseStream(es);
+            consumed = true;
         } catch (IOException ex) {
             throw Throwables.propagate(ex);
         } finally {
-            connection.disconnect();
+            if (!consumed) {
+                connection.disconnect();
+            }
+            if (OPEN_CONNECTIONS.remove(connection)) {
+                REQUEST_PERMITS.release();
+            }
         }
     }
 
@@ -141,11 +216,7 @@ class HttpUtils {
         Optional<RevObject> object = Optional.absent();
         try {
             String expanded = repositoryURL.toString() + "/repo/objects/" + objectId.toString();
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -169,6 +240,67 @@ class HttpUtils {
 
     }
 
+    /**
+     * Retrieves a set of {@link RevObject objects} from the remote repository, asking for up to
+     * {@link #OBJECT_BATCH_SIZE} objects in each request. Remotes that don't support batched
+     * requests are asked for each object separately.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param objectIds the ids of the objects to retrieve
+     * @return the retrieved objects by id, objects that were not found are left out
+     */
+    public static Map<ObjectId, RevObject> getNetworkObjects(URL repositoryURL,
+            Iterable<ObjectId> objectIds) {
+        Map<ObjectId, RevObject> objects = Maps.newHashMap();
+        for (List<ObjectId> batch : Iterables.partition(objectIds, OBJECT_BATCH_SIZE)) {
+            HttpURLConnection connection = null;
+            try {
+                String expanded = repositoryURL.toString() + "/repo/getobjects";
+                connection = connect(expanded, "POST");
+
+                JsonArray ids = new JsonArray();
+                for (ObjectId id : batch) {
+                    ids.add(new JsonPrimitive(id.toString()));
+                }
+                JsonObject message = new JsonObject();
+                message.add("objects", ids);
+                Writer writer = new OutputStreamWriter(connection.getOutputStream(),
+                        Charsets.UTF_8);
+                try {
+                    new Gson().toJson(message, writer);
+                } finally {
+                    writer.close();
+                }
+
+                // Get Response
+                InputStream is = connection.getInputStream();
+                try {
+                    for (RevObject object : BinaryPackedObjects.read(is)) {
+                        objects.put(object.getId(), object);
+                    }
+                } finally {
+                    consumeAndCloseStream(is);
+                }
+            } catch (FileNotFoundException e) {
+                // the remote doesn't support batched requests, release the connection before
+                // asking for each object
+                consumeErrStreamAndCloseConnection(connection);
+                connection = null;
+                for (ObjectId id : batch) {
+                    Optional<RevObject> object = getNetworkObject(repositoryURL, null, id);
+                    if (object.isPresent()) {
+                        objects.put(id, object.get());
+                    }
+                }
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            } finally {
+                consumeErrStreamAndCloseConnection(connection);
+            }
+        }
+        return objects;
+    }
+
     /**
      * Determines whether or not an object with the given {@link ObjectId} exists in the remote
      * repository.
@@ -185,11 +317,7 @@ class HttpUtils {
             String expanded = repositoryURL.toString() + "/repo/exists?oid=" + objectId.toString()
                     + "&internalIp=" + internalIp;
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -233,11 +361,7 @@ class HttpUtils {
                 expanded = repositoryURL.toString() + "/updateref?name=" + refspec + "&delete=true";
             }
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             InputStream inputStream = connection.getInputStream();
 
@@ -300,11 +424,7 @@ class HttpUtils {
                 expanded = repositoryURL.toString() + "/repo/getdepth";
             }
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -339,11 +459,7 @@ class HttpUtils {
             String expanded = repositoryURL.toString() + "/repo/getparents?commitId="
                     + commit.toString();
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -366,6 +482,56 @@ class HttpUtils {
         return listBuilder.build();
     }
 
+    /**
+     * Sends a commit negotiation request to the remote repository.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param message the negotiation request
+     * @return the lines of the response, or {@link Optional#absent()} if the remote doesn't
+     *         support commit negotiation
+     * @see CommitNegotiation
+     */
+    public static Optional<ImmutableList<String>> negotiate(URL repositoryURL, JsonObject message) {
+        HttpURLConnection connection = null;
+        Builder<String> listBuilder = new ImmutableList.Builder<String>();
+        try {
+            String internalIp = InetAddress.getLocalHost().getHostName();
+            String expanded = repositoryURL.toString() + "/repo/negotiate?internalIp="
+                    + internalIp;
+
+            connection = connect(expanded, "POST");
+
+            Writer writer = new OutputStreamWriter(connection.getOutputStream(), Charsets.UTF_8);
+            try {
+                new Gson().toJson(message, writer);
+            } finally {
+                writer.close();
+            }
+
+            // Get Response
+            InputStream is = connection.getInputStream();
+            try {
+                BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charsets.UTF_8));
+
+                String line = rd.readLine();
+                while (line != null) {
+                    listBuilder.add(line);
+                    line = rd.readLine();
+                }
+            } finally {
+                consumeAndCloseStream(is);
+            }
+        } catch (FileNotFoundException e) {
+            // the remote doesn't have the negotiation endpoint
+            return Optional.absent();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        } finally {
+            consumeErrStreamAndCloseConnection(connection);
+        }
+        return Optional.of(listBuilder.build());
+    }
+
     /**
      * Retrieves the remote ref that matches the provided refspec.
      * 
@@ -379,11 +545,7 @@ class HttpUtils {
         try {
             String expanded = repositoryURL.toString() + "/refparse?name=" + refspec;
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             InputStream inputStream = connection.getInputStream();
 
@@ -442,11 +604,7 @@ class HttpUtils {
             String expanded = repositoryURL.toString() + "/repo/affectedfeatures?commitId="
                     + commit.toString();
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             // Get Response
             InputStream is = connection.getInputStream();
@@ -480,11 +638,7 @@ class HttpUtils {
             String internalIp = InetAddress.getLocalHost().getHostName();
             String expanded = repositoryURL.toString() + "/repo/beginpush?internalIp=" + internalIp;
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
             InputStream stream = connection.getInputStream();
             HttpUtils.consumeAndCloseStream(stream);
@@ -514,13 +668,9 @@ class HttpUtils {
                     + "&objectId=" + newCommitId.toString() + "&internalIp=" + internalIp
                     + "&originalRefValue=" + originalRefValue;
 
-            connection = (HttpURLConnection) new URL(expanded).openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
+            connection = connect(expanded, "GET");
 
-            connection.getInputStream();
+            consumeAndCloseStream(connection.getInputStream());
             // TODO: throw an exception if the remote ref was not updated.
 
         } catch (Exception e) {
@@ -35,7 +35,9 @@ class LocalFilteredDiffIterator extends FilteredDiffIterator {
     }
 
     /**
-     * Hints that objects that I have in the sparse repository should continue to be tracked.
+     * Hints that objects that I have in the sparse repository should continue to be tracked. The
+     * staging database is checked too, as that is where objects are copied to until the trees that
+     * reference them are written.
      * 
      * @param objectId the id of the object
      * @return true if the object should be tracked, false if it should only be tracked if it
@@ -43,7 +45,7 @@ class LocalFilteredDiffIterator extends FilteredDiffIterator {
      */
     @Override
     protected boolean trackingObject(ObjectId objectId) {
-        return destinationRepo.blobExists(objectId);
+        return destinationRepo.getIndex().getDatabase().exists(objectId);
     }
 
     /**
@@ -53,7 +55,7 @@ class LocalFilteredDiffIterator extends FilteredDiffIterator {
      */
     @Override
     protected void processObject(RevObject object) {
-        if (object != null && !destinationRepo.blobExists(object.getId())) {
+        if (object != null && !destinationRepo.getIndex().getDatabase().exists(object.getId())) {
             destinationRepo.getIndex().getDatabase().put(object);
         }
     }
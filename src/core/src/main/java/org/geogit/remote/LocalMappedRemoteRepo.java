@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.geogit.api.CommitBuilder;
 import org.geogit.api.GeoGIT;
@@ -307,6 +308,23 @@ public class LocalMappedRemoteRepo extends AbstractMappedRemoteRepo {
                 localRepository, filter);
     }
 
+    /**
+     * Retrieves the filtered changes of the given commits through a {@link SparseFetchPipeline},
+     * that splits computing, filtering and copying the changes into concurrent stages.
+     * 
+     * @param commits the commits to fetch, oldest first
+     * @param have the commits of the remote that the local repository already has
+     * @param executor the executor to run the stages on
+     * @return the filtered changes of each commit
+     */
+    @Override
+    protected Iterator<FilteredCommit> getFilteredCommits(Iterator<RevCommit> commits,
+            List<ObjectId> have, ExecutorService executor) {
+        SparseFetchPipeline pipeline = new SparseFetchPipeline(remoteGeoGit.getRepository(),
+                localRepository, filter, have, executor);
+        return pipeline.start(commits);
+    }
+
     /**
      * Gets the depth of the remote repository.
      * 
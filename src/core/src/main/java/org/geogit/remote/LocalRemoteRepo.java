@@ -7,8 +7,17 @@ package org.geogit.remote;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.geogit.api.Bucket;
 import org.geogit.api.GeoGIT;
@@ -27,13 +36,18 @@ import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.porcelain.SynchronizationException;
 import org.geogit.repository.Repository;
+import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.ObjectInserter;
+import org.geogit.storage.datastream.FormatCommon;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 
 /**
@@ -51,6 +65,24 @@ class LocalRemoteRepo extends AbstractRemoteRepo {
 
     private List<ObjectId> touchedIds;
 
+    private boolean bulkCopied;
+
+    /**
+     * Number of object id ranges copied concurrently by a bulk copy
+     */
+    private static final int COPY_RANGES = 16;
+
+    /**
+     * Commits are left out of bulk copies, to be inserted one at a time once everything else is in
+     * place, so that the commit graph is updated and an interrupted fetch can be resumed.
+     */
+    private static final Predicate<Entry<ObjectId, byte[]>> NOT_A_COMMIT = new Predicate<Entry<ObjectId, byte[]>>() {
+        @Override
+        public boolean apply(Entry<ObjectId, byte[]> object) {
+            return !TYPE.COMMIT.equals(FormatCommon.readType(object.getValue()));
+        }
+    };
+
     /**
      * Constructs a new {@code LocalRemoteRepo} with the given parameters.
      * 
@@ -140,24 +172,57 @@ class LocalRemoteRepo extends AbstractRemoteRepo {
     @Override
     public void fetchNewData(Ref ref, Optional<Integer> fetchLimit) {
 
-        touchedIds = new LinkedList<ObjectId>();
-
         CommitTraverser traverser = getFetchTraverser(fetchLimit);
 
+        // Commits are copied oldest first, each one after all the objects it references, so the
+        // objects copied before a failure are kept and a new fetch resumes after the last
+        // complete commit.
+        traverser.traverse(ref.getObjectId());
+        if (!bulkCopied && !fetchLimit.isPresent() && traverser.have.isEmpty()
+                && !traverser.commits.isEmpty()) {
+            // nothing in common with the remote, e.g. a clone. Copy all its objects but the
+            // commits at once, so that the walk below only has to insert the commits.
+            copyObjects(remoteGeoGit.getRepository().getObjectDatabase(),
+                    localRepository.getObjectDatabase());
+            bulkCopied = true;
+        }
+        while (!traverser.commits.isEmpty()) {
+            walkCommit(traverser.commits.pop(), true);
+        }
+    }
+
+    /**
+     * Copies all the objects in {@code from} except commits to {@code to} in their raw form,
+     * splitting the object id space among several threads.
+     */
+    private void copyObjects(final ObjectDatabase from, final ObjectDatabase to) {
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("geogit-object-copy-%d").setDaemon(true).build();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, threadFactory);
         try {
-            traverser.traverse(ref.getObjectId());
-            while (!traverser.commits.isEmpty()) {
-                walkCommit(traverser.commits.pop(), true);
+            List<Future<Long>> results = Lists.newArrayList();
+            final int rangeSize = 256 / COPY_RANGES;
+            for (int prefix = 0; prefix < 256; prefix += rangeSize) {
+                final int fromPrefix = prefix;
+                final int toPrefix = prefix + rangeSize;
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return to.putAllRaw(Iterators.filter(from.scanRaw(fromPrefix, toPrefix),
+                                NOT_A_COMMIT));
+                    }
+                }));
             }
-
-        } catch (Exception e) {
-            for (ObjectId oid : touchedIds) {
-                localRepository.getObjectDatabase().delete(oid);
+            for (Future<Long> result : results) {
+                result.get();
             }
-            Throwables.propagate(e);
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
         } finally {
-            touchedIds.clear();
-            touchedIds = null;
+            executor.shutdownNow();
         }
     }
 
@@ -232,7 +297,7 @@ class LocalRemoteRepo extends AbstractRemoteRepo {
             walkTree(commit.getTreeId(), from, to, objectInserter);
 
             objectInserter.insert(commit);
-            touchedIds.add(commitId);
+            touched(commitId);
         }
     }
 
@@ -247,42 +312,58 @@ class LocalRemoteRepo extends AbstractRemoteRepo {
         if (object.isPresent() && object.get().getType().equals(TYPE.TREE)) {
             RevTree tree = (RevTree) object.get();
 
-            objectInserter.insert(tree);
-            touchedIds.add(treeId);
             // walk subtrees
             if (tree.buckets().isPresent()) {
                 for (Bucket bucket : tree.buckets().get().values()) {
                     walkTree(bucket.id(), from, to, objectInserter);
                 }
             } else {
-                // get new objects
+                // copy the new features and feature types in their stored form, in one go
+                Set<ObjectId> missing = new LinkedHashSet<ObjectId>();
                 for (Iterator<Node> children = tree.children(); children.hasNext();) {
                     Node ref = children.next();
-                    moveObject(ref.getObjectId(), from, to, objectInserter);
+                    if (TYPE.TREE.equals(ref.getType())) {
+                        walkTree(ref.getObjectId(), from, to, objectInserter);
+                    } else {
+                        missing.add(ref.getObjectId());
+                    }
                     ObjectId metadataId = ref.getMetadataId().or(ObjectId.NULL);
                     if (!metadataId.isNull()) {
-                        moveObject(metadataId, from, to, objectInserter);
+                        missing.add(metadataId);
                     }
                 }
+                copyObjects(missing, from, to);
             }
+            // insert the tree once all its contents are in place, so that an existing tree can be
+            // skipped if the transfer is resumed
+            objectInserter.insert(tree);
+            touched(treeId);
         }
     }
 
-    private void moveObject(ObjectId objectId, Repository from, Repository to,
-            ObjectInserter objectInserter) {
-        // See if we already have it
-        if (to.getObjectDatabase().exists(objectId)) {
+    /**
+     * Copies the objects {@code to} doesn't have yet without decoding them. They are read through
+     * the index database, same as {@link RevObjectParse} does.
+     */
+    private void copyObjects(Set<ObjectId> ids, Repository from, Repository to) {
+        final ObjectDatabase target = to.getObjectDatabase();
+        List<ObjectId> missing = Lists.newArrayListWithCapacity(ids.size());
+        for (ObjectId id : ids) {
+            if (!target.exists(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
             return;
         }
+        target.putAllRaw(from.getIndex().getDatabase().getAllRaw(missing));
+        for (ObjectId id : missing) {
+            touched(id);
+        }
+    }
 
-        Optional<RevObject> childObject = from.command(RevObjectParse.class).setObjectId(objectId)
-                .call();
-        if (childObject.isPresent()) {
-            RevObject revObject = childObject.get();
-            if (TYPE.TREE.equals(revObject.getType())) {
-                walkTree(objectId, from, to, objectInserter);
-            }
-            objectInserter.insert(revObject);
+    private void touched(ObjectId objectId) {
+        if (touchedIds != null) {
             touchedIds.add(objectId);
         }
     }
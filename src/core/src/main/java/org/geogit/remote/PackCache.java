@@ -0,0 +1,418 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A disk cache of the {@link BinaryPackedObjects packed object} streams a repository serves to its
+ * clients, so that the same clone or fetch requested over and over is only computed once.
+ * <p>
+ * Streams are keyed by the want and have lists of the request, the streaming mode and the
+ * encoding, and are recorded while they are sent to the first client that asks for them. Later
+ * requests for the same key are served straight from the file. Since the contents reachable from
+ * a set of ids never change, the cache is only dropped when the refs of the repository change, at
+ * which point clients start asking for the new tips anyway. Least recently used streams are
+ * evicted once the cache goes over its size limit.
+ * <p>
+ * Every instance keeps its streams in a subdirectory of its own, held with a file lock while the
+ * instance is open, so several processes serving the same repository never remove each other's
+ * files. Subdirectories whose lock is free were left by an instance that didn't close, and are
+ * removed when a new instance is created.
+ */
+public class PackCache {
+
+    /**
+     * The default size limit of a cache, in bytes
+     */
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * The maximum number of caches kept open by {@link #forDirectory(File)}
+     */
+    private static final int MAX_CACHES = 16;
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * The subdirectories of the caches open in this JVM, which can't be told from stale ones by
+     * their file locks since those are held per process.
+     */
+    private static final Set<File> OPEN_DIRECTORIES = new HashSet<File>();
+
+    private static final LoadingCache<File, PackCache> CACHES = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHES).removalListener(new RemovalListener<File, PackCache>() {
+                @Override
+                public void onRemoval(RemovalNotification<File, PackCache> notification) {
+                    notification.getValue().close();
+                }
+            }).build(new CacheLoader<File, PackCache>() {
+                @Override
+                public PackCache load(File directory) {
+                    return new PackCache(directory, DEFAULT_MAX_SIZE);
+                }
+            });
+
+    /**
+     * Produces a packed object stream.
+     */
+    public static interface Pack {
+
+        /**
+         * Writes the stream, including any encoding, to the given output.
+         *
+         * @param out the stream to write to
+         * @throws IOException
+         */
+        public void write(OutputStream out) throws IOException;
+    }
+
+    private final File directory;
+
+    private final File lockFile;
+
+    private final RandomAccessFile lockChannelFile;
+
+    private final long maxSize;
+
+    private final LinkedHashMap<String, File> entries = new LinkedHashMap<String, File>(16,
+            0.75f, true);
+
+    private long size;
+
+    @Nullable
+    private Map<String, String> refs;
+
+    private boolean closed;
+
+    /**
+     * Returns the cache of the given repository, stored in the {@code packcache} directory of its
+     * {@code .geogit} folder.
+     *
+     * @param geogit the repository serving the streams
+     * @return the cache for that repository
+     */
+    public static PackCache forRepository(GeoGIT geogit) {
+        final URL repoUrl = geogit.command(ResolveGeogitDir.class).call();
+        if (repoUrl == null) {
+            throw new IllegalStateException("Can't find geogit repository home");
+        }
+        try {
+            return forDirectory(new File(new File(repoUrl.toURI()), "packcache"));
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Returns the cache stored in the given directory, creating it if needed. At most
+     * {@value #MAX_CACHES} caches are kept open, the least recently used one is closed when
+     * another one is needed.
+     *
+     * @param directory the directory to store the cached streams in
+     * @return the cache for that directory
+     */
+    public static PackCache forDirectory(File directory) {
+        return CACHES.getUnchecked(directory);
+    }
+
+    /**
+     * Constructs a new {@code PackCache} in a new subdirectory of {@code directory}, removing the
+     * subdirectories instances that weren't closed left behind.
+     *
+     * @param directory the directory to store the cached streams in
+     * @param maxSize the size limit of the cache, in bytes
+     */
+    public PackCache(File directory, long maxSize) {
+        this.maxSize = maxSize;
+        directory.mkdirs();
+        synchronized (OPEN_DIRECTORIES) {
+            removeStale(directory);
+            String name;
+            File lockFile;
+            RandomAccessFile lockChannelFile;
+            try {
+                do {
+                    name = UUID.randomUUID().toString();
+                    lockFile = new File(directory, name + LOCK_SUFFIX);
+                    lockChannelFile = new RandomAccessFile(lockFile, "rw");
+                    lockChannelFile.getChannel().lock();
+                    // another process may have removed the lock file as stale before it was locked
+                    if (!lockFile.exists()) {
+                        lockChannelFile.close();
+                        lockChannelFile = null;
+                    }
+                } while (lockChannelFile == null);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            this.directory = new File(directory, name);
+            this.lockFile = lockFile;
+            this.lockChannelFile = lockChannelFile;
+            this.directory.mkdir();
+            OPEN_DIRECTORIES.add(this.directory);
+        }
+    }
+
+    /**
+     * Removes the cached streams and the directory of this cache. Later calls to
+     * {@link #write write} produce the streams without caching them.
+     */
+    public void close() {
+        synchronized (OPEN_DIRECTORIES) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                clear();
+                deleteDirectory(directory);
+                lockFile.delete();
+                try {
+                    lockChannelFile.close();
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                } finally {
+                    OPEN_DIRECTORIES.remove(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a packed object stream to {@code out}, either from the cache or by calling
+     * {@code pack} and recording its output for later requests.
+     *
+     * @param out the stream to write to
+     * @param want the ids the client asked for
+     * @param have the ids the client already has
+     * @param singleStream whether the whole range is sent at once
+     * @param encoding the encoding of the stream
+     * @param refs the current refs of the repository, the cache is cleared if they changed since
+     *        the last call
+     * @param pack produces the stream if it's not cached
+     * @throws IOException
+     */
+    public void write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            boolean singleStream, PackEncoding encoding, Map<String, String> refs, Pack pack)
+            throws IOException {
+        final String key = key(want, have, singleStream, encoding);
+
+        File cached = lookup(key, refs);
+        if (cached != null) {
+            try {
+                transfer(cached, out);
+                return;
+            } catch (FileNotFoundException e) {
+                // evicted in the meantime, build it again
+            }
+        }
+
+        File tmp;
+        try {
+            tmp = File.createTempFile("pack", ".tmp", directory);
+        } catch (IOException e) {
+            // closed in the meantime, or the disk is not writable, serve it without caching
+            pack.write(out);
+            return;
+        }
+        boolean complete = false;
+        try {
+            OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                pack.write(new TeeOutputStream(out, fileOut));
+                complete = true;
+            } finally {
+                fileOut.close();
+            }
+        } finally {
+            if (!(complete && add(key, tmp, refs))) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the total size of the cached streams, in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private synchronized File lookup(String key, Map<String, String> refs) {
+        if (closed) {
+            return null;
+        }
+        if (!Objects.equal(this.refs, refs)) {
+            clear();
+            this.refs = refs;
+            return null;
+        }
+        return entries.get(key);
+    }
+
+    private synchronized boolean add(String key, File tmp, Map<String, String> refs) {
+        if (closed || !Objects.equal(this.refs, refs) || entries.containsKey(key)) {
+            return false;
+        }
+        File file = new File(directory, key + ".pack");
+        if (!tmp.renameTo(file)) {
+            return false;
+        }
+        entries.put(key, file);
+        size += file.length();
+
+        Iterator<File> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            File evicted = eldest.next();
+            eldest.remove();
+            size -= evicted.length();
+            evicted.delete();
+        }
+        return true;
+    }
+
+    private void clear() {
+        for (File f : entries.values()) {
+            f.delete();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Removes the subdirectories of {@code directory} whose lock file is not locked by any process.
+     * Must be called holding the {@link #OPEN_DIRECTORIES} monitor, closing a channel to a file
+     * releases the locks the whole process holds on it on some platforms, so the lock files of the
+     * caches open in this JVM are never opened.
+     */
+    private static void removeStale(File directory) {
+        File[] lockFiles = directory.listFiles();
+        for (File lockFile : lockFiles == null ? new File[0] : lockFiles) {
+            String name = lockFile.getName();
+            if (!name.endsWith(LOCK_SUFFIX)) {
+                continue;
+            }
+            File dataDirectory = new File(directory, name.substring(0, name.length()
+                    - LOCK_SUFFIX.length()));
+            if (OPEN_DIRECTORIES.contains(dataDirectory)) {
+                continue;
+            }
+            try {
+                RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+                try {
+                    FileLock lock = file.getChannel().tryLock();
+                    if (lock != null) {
+                        deleteDirectory(dataDirectory);
+                        lockFile.delete();
+                    }
+                } catch (OverlappingFileLockException e) {
+                    // being removed by another thread
+                } finally {
+                    file.close();
+                }
+            } catch (IOException e) {
+                // in use or not accessible, leave it alone
+            }
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private static String key(List<ObjectId> want, List<ObjectId> have, boolean singleStream,
+            PackEncoding encoding) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (ObjectId id : want) {
+            hasher.putBytes(id.getRawValue());
+        }
+        hasher.putByte((byte) 0);
+        for (ObjectId id : have) {
+            hasher.putBytes(id.getRawValue());
+        }
+        hasher.putBoolean(singleStream);
+        hasher.putString(encoding.getName(), Charsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Copies the cached stream to {@code out}.
+     *
+     * @throws FileNotFoundException if the file was evicted
+     */
+    private static void transfer(File file, OutputStream out) throws IOException {
+        Files.copy(file, out);
+        out.flush();
+    }
+
+    private static class TeeOutputStream extends FilterOutputStream {
+
+        private final OutputStream copy;
+
+        TeeOutputStream(OutputStream out, OutputStream copy) {
+            super(out);
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            copy.flush();
+        }
+    }
+}
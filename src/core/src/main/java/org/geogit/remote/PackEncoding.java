@@ -0,0 +1,167 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+
+/**
+ * The compression applied to a stream of {@link BinaryPackedObjects packed objects} sent between
+ * repositories.
+ * <p>
+ * The sending end picks one of the encodings offered by the receiving end with
+ * {@link #negotiate(Iterable)} and labels the stream with its {@link #mediaType() media type}, so
+ * that peers that don't know about encodings keep exchanging uncompressed streams.
+ */
+public enum PackEncoding {
+    /**
+     * No compression
+     */
+    IDENTITY("identity") {
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    },
+    /**
+     * Deflate compression, for the best ratio on slow links
+     */
+    DEFLATE("deflate") {
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION),
+                    BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+        }
+    },
+    /**
+     * LZF compression, cheaper on CPU than {@link #DEFLATE} with a lower ratio
+     */
+    LZF("lzf") {
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return new LZFOutputStream(out);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new LZFInputStream(in);
+        }
+    };
+
+    /**
+     * Media type of an uncompressed stream of packed objects
+     */
+    public static final String MEDIA_TYPE = "application/x-geogit-packed";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+
+    private PackEncoding(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of this encoding, as offered in requests
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the media type of a stream of packed objects with this encoding
+     */
+    public String mediaType() {
+        return this == IDENTITY ? MEDIA_TYPE : MEDIA_TYPE + "+" + name;
+    }
+
+    /**
+     * Wraps a stream to write encoded data to it. {@link #finish(OutputStream)} must be called on
+     * the returned stream once everything has been written.
+     */
+    public abstract OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Wraps a stream to read decoded data from it.
+     */
+    public abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * Writes out any data buffered by a stream returned by {@link #encode(OutputStream)}, without
+     * closing the underlying stream.
+     */
+    public void finish(OutputStream encoded) throws IOException {
+        if (encoded instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) encoded).finish();
+        }
+        encoded.flush();
+    }
+
+    /**
+     * @param name the name of an encoding
+     * @return the encoding with that name, or {@code null} if it's not supported
+     */
+    @Nullable
+    public static PackEncoding fromName(@Nullable String name) {
+        for (PackEncoding encoding : values()) {
+            if (encoding.name.equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param mediaType the media type a stream of packed objects was labelled with, may be
+     *        {@code null} or include parameters
+     * @return the encoding of the stream, {@link #IDENTITY} if not recognized
+     */
+    public static PackEncoding fromMediaType(@Nullable String mediaType) {
+        if (mediaType != null) {
+            int params = mediaType.indexOf(';');
+            String type = (params < 0 ? mediaType : mediaType.substring(0, params)).trim();
+            for (PackEncoding encoding : values()) {
+                if (encoding.mediaType().equalsIgnoreCase(type)) {
+                    return encoding;
+                }
+            }
+        }
+        return IDENTITY;
+    }
+
+    /**
+     * @param offered the names of the encodings the receiving end accepts, by order of preference
+     * @return the first supported encoding offered, or {@link #IDENTITY}
+     */
+    public static PackEncoding negotiate(Iterable<String> offered) {
+        for (String name : offered) {
+            PackEncoding encoding = fromName(name);
+            if (encoding != null) {
+                return encoding;
+            }
+        }
+        return IDENTITY;
+    }
+}
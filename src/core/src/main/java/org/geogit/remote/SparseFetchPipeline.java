@@ -0,0 +1,538 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Bounded;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RepositoryFilter;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.DiffTree;
+import org.geogit.api.plumbing.diff.DepthTreeIterator;
+import org.geogit.api.plumbing.diff.DepthTreeIterator.Strategy;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.remote.AbstractMappedRemoteRepo.FilteredCommit;
+import org.geogit.repository.Repository;
+import org.geogit.storage.StagingDatabase;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Retrieves the changes of the commits fetched into a sparse clone from a repository on the local
+ * machine, through stages that run concurrently and are connected by bounded queues:
+ * <ol>
+ * <li>diff: computes the changes of each commit against its first parent. Buckets of features
+ * whose bounds show none of them can be in the sparse clone are not traversed.
+ * <li>filter: evaluates the {@link RepositoryFilter} on batches of changes, splitting each batch
+ * among several threads.
+ * <li>copy: stores the objects of the changes that passed the filter in the sparse repository.
+ * </ol>
+ * The caller builds the trees and commits of the sparse repository out of the resulting changes
+ * while the stages work on the following ones.
+ * <p>
+ * A feature is tracked if the sparse repository already has it, so the changes of a commit are
+ * only computed once the objects of the previous commit have been copied.
+ */
+class SparseFetchPipeline {
+
+    /**
+     * Number of changes passed from one stage to the next at once
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Number of batches a stage can be ahead of the next one
+     */
+    private static final int QUEUE_CAPACITY = 16;
+
+    /**
+     * Node and tree bounds are stored with float precision, so bounds are compared with this
+     * relative tolerance
+     */
+    private static final double BOUNDS_TOLERANCE = 1E-6;
+
+    private final Repository source;
+
+    private final Repository destination;
+
+    private final RepositoryFilter filter;
+
+    private final ExecutorService executor;
+
+    private final int nThreads;
+
+    /**
+     * Contains the bounds of every feature the sparse repository has, or gets from the commits
+     * filtered so far. {@code null} if the filter is not limited to an area, or the sparse
+     * repository has features without bounds, so no bucket can be skipped.
+     */
+    @Nullable
+    private Envelope pruningBounds;
+
+    private final Semaphore commitsCopied = new Semaphore(0);
+
+    private final StageQueue<ChangeBatch> diffQueue = new StageQueue<ChangeBatch>(QUEUE_CAPACITY);
+
+    private final StageQueue<ChangeBatch> filterQueue = new StageQueue<ChangeBatch>(
+            QUEUE_CAPACITY);
+
+    private final StageQueue<ChangeBatch> copyQueue = new StageQueue<ChangeBatch>(QUEUE_CAPACITY);
+
+    /**
+     * A batch of the changes of a commit, as passed from one stage to the next.
+     */
+    private static class ChangeBatch {
+
+        /**
+         * The commit the changes belong to, set for the first batch of each commit only
+         */
+        @Nullable
+        final RevCommit commit;
+
+        final List<DiffEntry> entries;
+
+        /**
+         * The objects the changes need in the sparse repository, set by the filter stage
+         */
+        List<RevObject> objects = ImmutableList.of();
+
+        /**
+         * The bounds filter the changes were computed with
+         */
+        @Nullable
+        BoundsFilter boundsFilter;
+
+        /**
+         * Whether this is the last batch of the commit
+         */
+        boolean last;
+
+        /**
+         * Whether any change of the commit up to this batch was filtered out
+         */
+        boolean filtered;
+
+        ChangeBatch(@Nullable RevCommit commit, List<DiffEntry> entries) {
+            this.commit = commit;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Constructs a new {@code SparseFetchPipeline}.
+     * 
+     * @param source the full repository
+     * @param destination the sparse repository
+     * @param filter the filter of the sparse repository
+     * @param have the commits of the full repository the sparse repository already has
+     * @param executor the executor to run the stages on, it must be able to run all of them at once
+     */
+    public SparseFetchPipeline(Repository source, Repository destination,
+            RepositoryFilter filter, List<ObjectId> have, ExecutorService executor) {
+        this.source = source;
+        this.destination = destination;
+        this.filter = filter;
+        this.executor = executor;
+        this.nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.pruningBounds = initialBounds(have);
+    }
+
+    /**
+     * Starts the stages.
+     * 
+     * @param commits the commits to fetch, oldest first. It's consumed by the diff stage.
+     * @return the filtered changes of each commit, in the same order. The changes of a commit must
+     *         be consumed before moving to the next commit.
+     */
+    public Iterator<FilteredCommit> start(final Iterator<RevCommit> commits) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    diffStage(commits);
+                } catch (Throwable e) {
+                    diffQueue.fail(e);
+                }
+            }
+        });
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    filterStage();
+                } catch (Throwable e) {
+                    filterQueue.fail(e);
+                }
+            }
+        });
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    copyStage();
+                } catch (Throwable e) {
+                    copyQueue.fail(e);
+                }
+            }
+        });
+        return new FilteredCommits();
+    }
+
+    private void diffStage(Iterator<RevCommit> commits) throws InterruptedException {
+        boolean first = true;
+        while (commits.hasNext()) {
+            RevCommit commit = commits.next();
+            if (!first) {
+                commitsCopied.acquire();
+            }
+            first = false;
+
+            BoundsFilter boundsFilter = boundsFilter();
+            Iterator<DiffEntry> changes = diff(commit, boundsFilter);
+            ChangeBatch batch = new ChangeBatch(commit, Lists.<DiffEntry> newArrayList());
+            while (changes.hasNext()) {
+                batch.entries.add(changes.next());
+                if (batch.entries.size() == BATCH_SIZE) {
+                    batch.boundsFilter = boundsFilter;
+                    diffQueue.put(batch);
+                    batch = new ChangeBatch(null, Lists.<DiffEntry> newArrayList());
+                }
+            }
+            batch.boundsFilter = boundsFilter;
+            batch.last = true;
+            diffQueue.put(batch);
+        }
+        diffQueue.close();
+    }
+
+    private void filterStage() throws InterruptedException {
+        boolean commitFiltered = false;
+        while (diffQueue.hasNext()) {
+            ChangeBatch batch = diffQueue.next();
+            if (batch.commit != null) {
+                commitFiltered = false;
+            }
+            final BatchFilter batchFilter = new BatchFilter();
+            batchFilter.setBoundsFilter(batch.boundsFilter);
+
+            List<Future<List<DiffEntry>>> results = Lists.newArrayList();
+            int partitionSize = Math.max(1, (batch.entries.size() + nThreads - 1) / nThreads);
+            for (final List<DiffEntry> partition : Lists.partition(batch.entries, partitionSize)) {
+                results.add(executor.submit(new Callable<List<DiffEntry>>() {
+                    @Override
+                    public List<DiffEntry> call() {
+                        List<DiffEntry> passed = Lists.newArrayListWithCapacity(partition.size());
+                        for (DiffEntry entry : partition) {
+                            DiffEntry filteredEntry = batchFilter.filter(entry);
+                            if (filteredEntry != null) {
+                                passed.add(filteredEntry);
+                            }
+                        }
+                        return passed;
+                    }
+                }));
+            }
+            List<DiffEntry> passed = Lists.newArrayListWithCapacity(batch.entries.size());
+            for (Future<List<DiffEntry>> result : results) {
+                try {
+                    passed.addAll(result.get());
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+            commitFiltered |= passed.size() < batch.entries.size();
+            if (batch.last && batch.boundsFilter != null) {
+                // the diff of the commit is complete, so is the record of what it skipped
+                commitFiltered |= batch.boundsFilter.rejected;
+            }
+            updatePruningBounds(passed);
+
+            ChangeBatch output = new ChangeBatch(batch.commit, passed);
+            output.objects = ImmutableList.copyOf(batchFilter.objects.values());
+            output.last = batch.last;
+            output.filtered = commitFiltered;
+            filterQueue.put(output);
+        }
+        filterQueue.close();
+    }
+
+    private void copyStage() throws InterruptedException {
+        StagingDatabase index = destination.getIndex().getDatabase();
+        while (filterQueue.hasNext()) {
+            ChangeBatch batch = filterQueue.next();
+            if (!batch.objects.isEmpty()) {
+                index.putAll(batch.objects.iterator());
+                batch.objects = ImmutableList.of();
+            }
+            copyQueue.put(batch);
+            if (batch.last) {
+                commitsCopied.release();
+            }
+        }
+        copyQueue.close();
+    }
+
+    /**
+     * Computes the changes of a commit against its first parent. If a bounds filter is given, it's
+     * applied to the trees that only contain features, as those are the ones the repository filter
+     * applies to.
+     */
+    private Iterator<DiffEntry> diff(RevCommit commit,
+            @Nullable final Predicate<Bounded> boundsFilter) {
+        final ObjectId newTreeId = commit.getTreeId();
+        final ObjectId oldTreeId;
+        if (commit.getParentIds().isEmpty()) {
+            oldTreeId = ObjectId.NULL;
+        } else {
+            oldTreeId = source.getCommit(commit.getParentIds().get(0)).getTreeId();
+        }
+        if (boundsFilter == null) {
+            return diffTree(oldTreeId, newTreeId).call();
+        }
+        Iterator<DiffEntry> children = diffTree(oldTreeId, newTreeId).setRecursive(false).call();
+        return Iterators.concat(Iterators.transform(children,
+                new Function<DiffEntry, Iterator<DiffEntry>>() {
+                    @Override
+                    public Iterator<DiffEntry> apply(DiffEntry child) {
+                        if (!isTree(child.getOldObject()) && !isTree(child.getNewObject())) {
+                            return Iterators.singletonIterator(child);
+                        }
+                        String path = child.newPath() == null ? child.oldPath() : child.newPath();
+                        boolean featuresOnly = hasFeaturesOnly(child.getOldObject())
+                                && hasFeaturesOnly(child.getNewObject());
+                        return diffTree(oldTreeId, newTreeId).setFilterPath(path)
+                                .setBoundsFilter(featuresOnly ? boundsFilter : null).call();
+                    }
+                }));
+    }
+
+    private DiffTree diffTree(ObjectId oldTreeId, ObjectId newTreeId) {
+        return source.command(DiffTree.class).setOldTree(oldTreeId).setNewTree(newTreeId)
+                .setReportTrees(true);
+    }
+
+    private static boolean isTree(@Nullable NodeRef ref) {
+        return ref != null && ref.getType() == TYPE.TREE;
+    }
+
+    private boolean hasFeaturesOnly(@Nullable NodeRef ref) {
+        if (ref == null) {
+            return true;
+        }
+        return isTree(ref) && source.getTree(ref.objectId()).numTrees() == 0;
+    }
+
+    /**
+     * @return a filter that rejects the buckets and features that don't intersect the pruning
+     *         bounds, or {@code null} if nothing can be rejected by its bounds
+     */
+    @Nullable
+    private synchronized BoundsFilter boundsFilter() {
+        if (pruningBounds == null) {
+            return null;
+        }
+        Envelope bounds = new Envelope(pruningBounds);
+        if (!bounds.isNull()) {
+            double magnitude = Math.max(
+                    Math.max(Math.abs(bounds.getMinX()), Math.abs(bounds.getMaxX())),
+                    Math.max(Math.abs(bounds.getMinY()), Math.abs(bounds.getMaxY())));
+            bounds.expandBy(Math.max(1D, magnitude) * BOUNDS_TOLERANCE);
+        }
+        return new BoundsFilter(bounds);
+    }
+
+    /**
+     * Rejects what doesn't intersect the given bounds, and remembers whether it rejected anything,
+     * as that means changes were left out of the sparse commit.
+     */
+    private static class BoundsFilter implements Predicate<Bounded> {
+
+        private final Envelope bounds;
+
+        private volatile boolean rejected;
+
+        BoundsFilter(Envelope bounds) {
+            this.bounds = bounds;
+        }
+
+        @Override
+        public boolean apply(Bounded input) {
+            boolean intersects = input.intersects(bounds);
+            if (!intersects) {
+                rejected = true;
+            }
+            return intersects;
+        }
+    }
+
+    /**
+     * Features may pass the filter because they are tracked, even if they are outside its bounds.
+     * Extends the pruning bounds to the new versions of the features that passed, so that their
+     * buckets are not skipped in the following commits.
+     */
+    private synchronized void updatePruningBounds(List<DiffEntry> passed) {
+        if (pruningBounds == null) {
+            return;
+        }
+        for (DiffEntry entry : passed) {
+            NodeRef newObject = entry.getNewObject();
+            if (newObject == null || newObject.getType() != TYPE.FEATURE) {
+                continue;
+            }
+            Envelope featureBounds = new Envelope();
+            newObject.getNode().expand(featureBounds);
+            if (featureBounds.isNull()) {
+                // a feature without bounds can be in any bucket
+                pruningBounds = null;
+                return;
+            }
+            pruningBounds.expandToInclude(featureBounds);
+        }
+    }
+
+    /**
+     * Computes the pruning bounds for the features the sparse repository has in the commits the
+     * fetch starts from.
+     */
+    @Nullable
+    private Envelope initialBounds(List<ObjectId> have) {
+        Optional<Envelope> filterBounds = filter.getBounds();
+        if (!filterBounds.isPresent()) {
+            return null;
+        }
+        Envelope bounds = new Envelope(filterBounds.get());
+        for (ObjectId commitId : have) {
+            ObjectId mappedId = destination.getGraphDatabase().getMapping(commitId);
+            if (mappedId.equals(ObjectId.NULL) || !destination.commitExists(mappedId)) {
+                continue;
+            }
+            RevTree root = destination.getTree(destination.getCommit(mappedId).getTreeId());
+            if (root.buckets().isPresent()
+                    || (root.features().isPresent() && !root.features().get().isEmpty())) {
+                return null;
+            }
+            Iterator<NodeRef> trees = new DepthTreeIterator(NodeRef.ROOT, ObjectId.NULL, root,
+                    destination.getObjectDatabase(), Strategy.RECURSIVE_TREES_ONLY);
+            while (trees.hasNext()) {
+                NodeRef tree = trees.next();
+                Envelope treeBounds = new Envelope();
+                tree.getNode().expand(treeBounds);
+                if (treeBounds.isNull()) {
+                    if (destination.getTree(tree.objectId()).size() > 0) {
+                        return null;
+                    }
+                    continue;
+                }
+                bounds.expandToInclude(treeBounds);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Applies the repository filter to the changes of a batch, possibly from several threads at
+     * once, collecting the objects the sparse repository needs for them.
+     */
+    private class BatchFilter extends FilteredDiffIterator {
+
+        private final StagingDatabase index = destination.getIndex().getDatabase();
+
+        private final ConcurrentMap<ObjectId, RevObject> objects = Maps.newConcurrentMap();
+
+        BatchFilter() {
+            super(Iterators.<DiffEntry> emptyIterator(), SparseFetchPipeline.this.source,
+                    SparseFetchPipeline.this.filter);
+        }
+
+        @Override
+        protected boolean trackingObject(ObjectId objectId) {
+            return index.exists(objectId);
+        }
+
+        @Override
+        protected void processObject(RevObject object) {
+            if (object != null && !objects.containsKey(object.getId())
+                    && !index.exists(object.getId())) {
+                objects.putIfAbsent(object.getId(), object);
+            }
+        }
+    }
+
+    /**
+     * Iterates over the commits coming out of the copy stage.
+     */
+    private class FilteredCommits extends AbstractIterator<FilteredCommit> {
+
+        @Nullable
+        private QueuedChanges current;
+
+        @Override
+        protected FilteredCommit computeNext() {
+            if (current != null) {
+                // skip whatever the caller didn't consume to get to the next commit
+                Iterators.size(current);
+                current = null;
+            }
+            if (!copyQueue.hasNext()) {
+                return endOfData();
+            }
+            ChangeBatch first = copyQueue.next();
+            current = new QueuedChanges(first);
+            return new FilteredCommit(first.commit, current);
+        }
+    }
+
+    /**
+     * The changes of a single commit, read from the batches coming out of the copy stage.
+     */
+    private class QueuedChanges extends FilteredDiffIterator {
+
+        private ChangeBatch batch;
+
+        private Iterator<DiffEntry> entries;
+
+        QueuedChanges(ChangeBatch first) {
+            super(null, null, null);
+            this.batch = first;
+            this.entries = first.entries.iterator();
+        }
+
+        @Override
+        protected DiffEntry computeNext() {
+            while (!entries.hasNext()) {
+                if (batch.last) {
+                    filtered = batch.filtered;
+                    return endOfData();
+                }
+                batch = copyQueue.next();
+                entries = batch.entries.iterator();
+            }
+            return entries.next();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * A bounded queue that connects two stages of a fetch running on different threads. The producing
+ * stage blocks on {@link #put(Object)} while the queue is full, and ends it with {@link #close()}
+ * or {@link #fail(Throwable)}. The consuming stage reads it as an iterator that blocks until the
+ * next item is available, and rethrows the failure of the producing stage.
+ * 
+ * @param <T> the type of the items in the queue
+ */
+class StageQueue<T> extends AbstractIterator<T> {
+
+    private static final Object END = new Object();
+
+    private static class Failure {
+
+        private final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final BlockingQueue<Object> queue;
+
+    /**
+     * Constructs a new {@code StageQueue}.
+     * 
+     * @param capacity the number of items the producing stage can be ahead of the consuming one
+     */
+    public StageQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    /**
+     * Adds an item to the queue, waiting for room if it's full.
+     * 
+     * @param item the item to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /**
+     * Signals that there are no more items.
+     * 
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public void close() throws InterruptedException {
+        queue.put(END);
+    }
+
+    /**
+     * Signals that the producing stage failed, the consuming stage will get the exception after the
+     * items that were already queued.
+     * 
+     * @param cause the failure
+     */
+    public void fail(Throwable cause) {
+        try {
+            queue.put(new Failure(cause));
+        } catch (InterruptedException e) {
+            // the fetch is being cancelled, there's nobody left to report to
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected T computeNext() {
+        Object next;
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        }
+        if (next == END) {
+            return endOfData();
+        }
+        if (next instanceof Failure) {
+            throw Throwables.propagate(((Failure) next).cause);
+        }
+        return (T) next;
+    }
+}
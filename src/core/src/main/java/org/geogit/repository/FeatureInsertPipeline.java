@@ -0,0 +1,231 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.storage.StagingDatabase;
+import org.opengis.feature.Feature;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.Name;
+import org.opengis.util.ProgressListener;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Inserts a stream of features into the staging database as three concurrent stages connected by
+ * bounded queues:
+ * <ul>
+ * <li>the calling thread reads the source features and groups them in batches;
+ * <li>a pool of threads builds the {@link RevFeature}s of each batch, hashing included;
+ * <li>a single thread saves the batches, in the same order they were read, and puts their nodes
+ * in the tree builder.
+ * </ul>
+ * The source iterator is only ever used from the calling thread, and the tree builder only from
+ * the storage thread, so neither needs to be thread safe.
+ */
+class FeatureInsertPipeline {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static class Batch {
+
+        final List<RevFeature> features;
+
+        final List<Node> nodes;
+
+        Batch(List<RevFeature> features, List<Node> nodes) {
+            this.features = features;
+            this.nodes = nodes;
+        }
+    }
+
+    private static final Future<Batch> END = Futures.immediateFuture(null);
+
+    private final StagingDatabase indexDatabase;
+
+    private final RevTreeBuilder treeBuilder;
+
+    private final ObjectId defaultMetadataId;
+
+    private final ProgressListener listener;
+
+    @Nullable
+    private final List<Node> insertedTarget;
+
+    @Nullable
+    private final Integer collectionSize;
+
+    /**
+     * @param indexDatabase the database to save the features and feature types to
+     * @param treeBuilder the builder of the tree the features are inserted into
+     * @param defaultMetadataId the default feature type of the tree
+     * @param listener notified of the progress of the insert
+     * @param insertedTarget if provided, the nodes of the inserted features are added to it, in
+     *        the order the features were read
+     * @param collectionSize the number of features, if known
+     */
+    FeatureInsertPipeline(StagingDatabase indexDatabase, RevTreeBuilder treeBuilder,
+            ObjectId defaultMetadataId, ProgressListener listener,
+            @Nullable List<Node> insertedTarget, @Nullable Integer collectionSize) {
+        this.indexDatabase = indexDatabase;
+        this.treeBuilder = treeBuilder;
+        this.defaultMetadataId = defaultMetadataId;
+        this.listener = listener;
+        this.insertedTarget = insertedTarget;
+        this.collectionSize = collectionSize;
+    }
+
+    /**
+     * Inserts all the features, returning once they are all saved and in the tree builder.
+     *
+     * @param features the features to insert
+     */
+    public void run(Iterator<? extends Feature> features) {
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ExecutorService encoders = Executors.newFixedThreadPool(nThreads,
+                threadFactory("geogit-feature-encoder-%d"));
+        ExecutorService storer = Executors
+                .newSingleThreadExecutor(threadFactory("geogit-feature-storage-%d"));
+
+        final BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<Future<Batch>>(
+                2 * nThreads);
+        try {
+            Future<Void> storage = storer.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    store(queue);
+                    return null;
+                }
+            });
+
+            Map<Name, ObjectId> revFeatureTypes = Maps.newHashMap();
+            List<Feature> batch = new ArrayList<Feature>(BATCH_SIZE);
+            List<ObjectId> metadataIds = new ArrayList<ObjectId>(BATCH_SIZE);
+            while (features.hasNext()) {
+                Feature feature = features.next();
+                batch.add(feature);
+                metadataIds.add(metadataId(feature.getType(), revFeatureTypes));
+                if (batch.size() == BATCH_SIZE) {
+                    enqueue(queue, encoders.submit(encode(batch, metadataIds)), storage);
+                    batch = new ArrayList<Feature>(BATCH_SIZE);
+                    metadataIds = new ArrayList<ObjectId>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                enqueue(queue, encoders.submit(encode(batch, metadataIds)), storage);
+            }
+            enqueue(queue, END, storage);
+            storage.get();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            encoders.shutdownNow();
+            storer.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the metadata id for the nodes of features of the given type, saving the type if
+     *         it's the first time it's seen
+     */
+    private ObjectId metadataId(FeatureType featureType, Map<Name, ObjectId> revFeatureTypes) {
+        ObjectId revFeatureTypeId = revFeatureTypes.get(featureType.getName());
+        if (null == revFeatureTypeId) {
+            RevFeatureType newFeatureType = RevFeatureType.build(featureType);
+            revFeatureTypeId = newFeatureType.getId();
+            indexDatabase.put(newFeatureType);
+            revFeatureTypes.put(featureType.getName(), revFeatureTypeId);
+        }
+        return defaultMetadataId.equals(revFeatureTypeId) ? ObjectId.NULL : revFeatureTypeId;
+    }
+
+    private static Callable<Batch> encode(final List<Feature> features,
+            final List<ObjectId> metadataIds) {
+        return new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                RevFeatureBuilder builder = new RevFeatureBuilder();
+                List<RevFeature> revFeatures = new ArrayList<RevFeature>(features.size());
+                List<Node> nodes = new ArrayList<Node>(features.size());
+                for (int i = 0; i < features.size(); i++) {
+                    Feature feature = features.get(i);
+                    RevFeature revFeature = builder.build(feature);
+                    revFeatures.add(revFeature);
+                    nodes.add(WorkingTree.createNode(metadataIds.get(i), feature, revFeature));
+                }
+                return new Batch(revFeatures, nodes);
+            }
+        };
+    }
+
+    /**
+     * Adds a batch to the queue, waiting for room unless the storage stage is no longer running,
+     * in which case its failure is rethrown.
+     */
+    private static void enqueue(BlockingQueue<Future<Batch>> queue, Future<Batch> batch,
+            Future<Void> storage) throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (storage.isDone()) {
+                storage.get();
+                throw new IllegalStateException("Feature storage stage ended prematurely");
+            }
+        }
+    }
+
+    private void store(BlockingQueue<Future<Batch>> queue) throws InterruptedException,
+            ExecutionException {
+        listener.started();
+        int count = 0;
+        while (true) {
+            Future<Batch> next = queue.take();
+            if (next == END) {
+                break;
+            }
+            Batch batch = next.get();
+            indexDatabase.putAll(batch.features.iterator());
+            for (Node node : batch.nodes) {
+                treeBuilder.put(node);
+                if (insertedTarget != null) {
+                    insertedTarget.add(node);
+                }
+            }
+            count += batch.nodes.size();
+            if (collectionSize != null) {
+                listener.progress((float) (count * 100) / collectionSize.intValue());
+            }
+        }
+        listener.complete();
+    }
+
+    private static ThreadFactory threadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+}
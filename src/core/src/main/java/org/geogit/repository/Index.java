@@ -26,7 +26,7 @@ import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.ResolveTreeish;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.UpdateRef;
-import org.geogit.api.plumbing.WriteBack;
+import org.geogit.api.plumbing.WriteBackAll;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffObjectCount;
 import org.geogit.api.plumbing.merge.Conflict;
@@ -35,8 +35,8 @@ import org.opengis.util.ProgressListener;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -61,6 +61,8 @@ import com.google.inject.Inject;
  */
 public class Index implements StagingArea {
 
+    private static final int CONFLICTS_BATCH_SIZE = 1000;
+
     private StagingDatabase indexDatabase;
 
     private CommandLocator commandLocator;
@@ -122,19 +124,6 @@ public class Index implements StagingArea {
         return stageTree;
     }
 
-    /**
-     * @return a supplier for the index.
-     */
-    private Supplier<RevTreeBuilder> getTreeSupplier() {
-        Supplier<RevTreeBuilder> supplier = new Supplier<RevTreeBuilder>() {
-            @Override
-            public RevTreeBuilder get() {
-                return getTree().builder(getDatabase());
-            }
-        };
-        return Suppliers.memoize(supplier);
-    }
-
     /**
      * @param path the path of the {@link Node} to find
      * @return the {@code Node} for the feature at the specified path if it exists in the index,
@@ -179,6 +168,8 @@ public class Index implements StagingArea {
         Map<String, RevTreeBuilder> parentTress = Maps.newHashMap();
         Map<String, ObjectId> parentMetadataIds = Maps.newHashMap();
         Set<String> removedTrees = Sets.newHashSet();
+        // staging a path resolves its conflict, if any. Resolved paths are removed in batches
+        List<String> resolved = Lists.newArrayListWithCapacity(CONFLICTS_BATCH_SIZE);
         while (unstaged.hasNext()) {
             final DiffEntry diff = unstaged.next();
             final String fullPath = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
@@ -192,6 +183,7 @@ public class Index implements StagingArea {
             }
             if (null == parentPath) {
                 // it is the root tree that's been changed, update head and ignore anything else
+                indexDatabase.removeConflicts(null, resolved);
                 ObjectId newRoot = diff.newObjectId();
                 updateStageHead(newRoot);
                 progress.progress(100f);
@@ -223,28 +215,27 @@ public class Index implements StagingArea {
                 parentTree.put(node);
             }
 
-            indexDatabase.removeConflict(null, fullPath);
+            resolved.add(fullPath);
+            if (resolved.size() == CONFLICTS_BATCH_SIZE) {
+                indexDatabase.removeConflicts(null, resolved);
+                resolved.clear();
+            }
+        }
+        if (!resolved.isEmpty()) {
+            indexDatabase.removeConflicts(null, resolved);
         }
 
-        ObjectId newRootTree = currentIndexHead.getId();
-
-        for (Map.Entry<String, RevTreeBuilder> entry : parentTress.entrySet()) {
-            String changedTreePath = entry.getKey();
-            RevTreeBuilder changedTreeBuilder = entry.getValue();
-            RevTree changedTree = changedTreeBuilder.build();
-            ObjectId parentMetadataId = parentMetadataIds.get(changedTreePath);
-            if (NodeRef.ROOT.equals(changedTreePath)) {
-                // root
-                indexDatabase.put(changedTree);
-                newRootTree = changedTree.getId();
-            } else {
-                // parentMetadataId = parentMetadataId == null ?
-                Supplier<RevTreeBuilder> rootTreeSupplier = getTreeSupplier();
-                newRootTree = commandLocator.command(WriteBack.class).setAncestor(rootTreeSupplier)
-                        .setChildPath(changedTreePath).setMetadataId(parentMetadataId)
-                        .setToIndex(true).setTree(changedTree).call();
+        if (!parentTress.isEmpty()) {
+            // write all the changed trees back at once, so that every ancestor is rebuilt only once
+            WriteBackAll writeBack = commandLocator.command(WriteBackAll.class).setToIndex(true)
+                    .setAncestor(currentIndexHead);
+            for (Map.Entry<String, RevTreeBuilder> entry : parentTress.entrySet()) {
+                String changedTreePath = entry.getKey();
+                RevTree changedTree = entry.getValue().build();
+                ObjectId parentMetadataId = parentMetadataIds.get(changedTreePath);
+                writeBack.addTree(changedTreePath, changedTree, parentMetadataId);
             }
-            updateStageHead(newRootTree);
+            updateStageHead(writeBack.call());
         }
 
         progress.complete();
@@ -22,7 +22,6 @@ import org.geogit.api.Ref;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureBuilder;
 import org.geogit.api.RevFeatureType;
-import org.geogit.api.RevObject;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.RevTreeBuilder;
@@ -37,6 +36,7 @@ import org.geogit.api.plumbing.ResolveTreeish;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.WriteBack;
+import org.geogit.api.plumbing.WriteBackAll;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffObjectCount;
 import org.geogit.storage.StagingDatabase;
@@ -48,7 +48,6 @@ import org.opengis.filter.Filter;
 import org.opengis.geometry.BoundingBox;
 import org.opengis.util.ProgressListener;
 
-import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
@@ -319,7 +318,11 @@ public class WorkingTree {
             String featureName = NodeRef.nodeFromPath(featurePath);
             parentTree.remove(featureName);
         }
-        ObjectId newTree = null;
+        if (parents.isEmpty()) {
+            return;
+        }
+        WriteBackAll writeBack = commandLocator.command(WriteBackAll.class).setToIndex(true)
+                .setAncestor(currentWorkHead);
         for (Map.Entry<String, RevTreeBuilder> entry : parents.entrySet()) {
             String path = entry.getKey();
 
@@ -332,11 +335,9 @@ public class WorkingTree {
             if (currentTreeRef.isPresent()) {
                 metadataId = currentTreeRef.get().getMetadataId();
             }
-            newTree = commandLocator.command(WriteBack.class).setAncestor(getTreeSupplier())
-                    .setChildPath(path).setToIndex(true).setTree(newTypeTree)
-                    .setMetadataId(metadataId).call();
-            updateWorkHead(newTree);
+            writeBack.addTree(path, newTypeTree, metadataId);
         }
+        updateWorkHead(writeBack.call());
     }
 
     public NodeRef createTypeTree(final String treePath, final FeatureType featureType) {
@@ -449,64 +450,17 @@ public class WorkingTree {
         }
 
         final ObjectId defaultMetadataId = treeRef.getMetadataId();
-        final Map<Name, ObjectId> revFeatureTypes = Maps.newHashMap();
 
         final RevTreeBuilder typeTreeBuilder = commandLocator.command(FindOrCreateSubtree.class)
                 .setIndex(true).setParent(Suppliers.ofInstance(Optional.of(getTree())))
                 .setChildPath(treePath).call().builder(indexDatabase);
 
-        Iterator<RevObject> objects = Iterators.transform(features,
-                new Function<Feature, RevObject>() {
-
-                    private RevFeatureBuilder builder = new RevFeatureBuilder();
-
-                    private int count;
-
-                    @Override
-                    public RevFeature apply(Feature feature) {
-                        final RevFeature revFeature = builder.build(feature);
-                        FeatureType featureType = feature.getType();
-                        ObjectId revFeatureTypeId = revFeatureTypes.get(featureType.getName());
-
-                        if (null == revFeatureTypeId) {
-                            RevFeatureType newFeatureType = RevFeatureType.build(featureType);
-                            revFeatureTypeId = newFeatureType.getId();
-                            indexDatabase.put(newFeatureType);
-                            revFeatureTypes.put(feature.getType().getName(), revFeatureTypeId);
-                        }
-
-                        ObjectId metadataId = defaultMetadataId.equals(revFeatureTypeId) ? ObjectId.NULL
-                                : revFeatureTypeId;
-                        Node node = createNode(metadataId, feature, revFeature);
-
-                        if (insertedTarget != null) {
-                            insertedTarget.add(node);
-                        }
-                        typeTreeBuilder.put(node);
-
-                        count++;
-                        if (collectionSize != null) {
-                            listener.progress((float) (count * 100) / collectionSize.intValue());
-                        }
-                        return revFeature;
-                    }
-
-                });
-
-        // System.err.println("\n inserting rev features...");
-        // Stopwatch sw = new Stopwatch().start();
-        listener.started();
-        indexDatabase.putAll(objects);
-        listener.complete();
-        // sw.stop();
-        // System.err.printf("\n%d features inserted in %s", collectionSize, sw);
-
-        // System.err.println("\nBuilding final tree...");
-        // sw.reset().start();
+        // reading, encoding and storing the features run concurrently
+        new FeatureInsertPipeline(indexDatabase, typeTreeBuilder, defaultMetadataId, listener,
+                insertedTarget, collectionSize).run(features);
+
         RevTree newFeatureTree = typeTreeBuilder.build();
         indexDatabase.put(newFeatureTree);
-        // sw.stop();
-        // System.err.println("\nfinal tree built in " + sw);
 
         ObjectId newTree = commandLocator.command(WriteBack.class).setAncestor(getTreeSupplier())
                 .setChildPath(treePath).setMetadataId(treeRef.getMetadataId()).setToIndex(true)
@@ -515,7 +469,7 @@ public class WorkingTree {
         updateWorkHead(newTree);
     }
 
-    private Node createNode(final ObjectId metadataId, Feature feature, final RevFeature revFeature) {
+    static Node createNode(final ObjectId metadataId, Feature feature, final RevFeature revFeature) {
         final String name;
         final ObjectId oid;
         final Envelope env;
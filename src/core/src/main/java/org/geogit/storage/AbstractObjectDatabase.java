@@ -4,12 +4,16 @@
  */
 package org.geogit.storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -22,8 +26,13 @@ import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTag;
 import org.geogit.api.RevTree;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.ning.compress.lzf.LZFInputStream;
 import com.ning.compress.lzf.LZFOutputStream;
@@ -263,6 +272,135 @@ public abstract class AbstractObjectDatabase implements ObjectDatabase {
         return new ObjectInserter(this);
     }
 
+    @Override
+    public byte[] getRaw(final ObjectId id) throws IllegalArgumentException {
+        Preconditions.checkNotNull(id, "id");
+        InputStream raw = getRaw(id, true);
+        try {
+            return ByteStreams.toByteArray(raw);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            Closeables.closeQuietly(raw);
+        }
+    }
+
+    /**
+     * This default implementation checks each object with {@link #exists(ObjectId)}; subclasses
+     * may override if appropriate.
+     */
+    @Override
+    public Set<ObjectId> missing(Iterable<ObjectId> ids) {
+        Preconditions.checkNotNull(ids, "ids");
+        Set<ObjectId> missing = new HashSet<ObjectId>();
+        for (ObjectId id : ids) {
+            if (!exists(id)) {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * This default implementation looks up each object with
+     * {@link #getRawInternal(ObjectId, boolean)} as the iterator is consumed; subclasses may
+     * override if appropriate.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(final Iterable<ObjectId> ids) {
+        Preconditions.checkNotNull(ids, "ids");
+        final Iterator<ObjectId> iterator = ids.iterator();
+        return new AbstractIterator<Entry<ObjectId, byte[]>>() {
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                while (iterator.hasNext()) {
+                    ObjectId id = iterator.next();
+                    InputStream raw = getRaw(id, false);
+                    if (raw != null) {
+                        try {
+                            return Maps.immutableEntry(id, ByteStreams.toByteArray(raw));
+                        } catch (IOException e) {
+                            throw Throwables.propagate(e);
+                        } finally {
+                            Closeables.closeQuietly(raw);
+                        }
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override
+    public boolean putRaw(final ObjectId id, final byte[] raw) {
+        Preconditions.checkNotNull(id, "id");
+        Preconditions.checkNotNull(raw, "raw");
+        return putInternal(id, compress(raw));
+    }
+
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> scanRaw(final int fromPrefix, final int toPrefix) {
+        Preconditions.checkArgument(0 <= fromPrefix && fromPrefix < toPrefix && toPrefix <= 256,
+                "Invalid id prefix range: [%s, %s)", fromPrefix, toPrefix);
+        return Iterators.transform(scanInternal(fromPrefix, toPrefix),
+                new Function<Entry<ObjectId, byte[]>, Entry<ObjectId, byte[]>>() {
+                    @Override
+                    public Entry<ObjectId, byte[]> apply(Entry<ObjectId, byte[]> stored) {
+                        return Maps.immutableEntry(stored.getKey(), uncompress(stored.getValue()));
+                    }
+                });
+    }
+
+    /**
+     * Iterates over the ids and stored data, as given to {@link #putInternal(ObjectId, byte[])},
+     * of the objects whose id's first byte is in the given range.
+     * 
+     * @see #scanRaw(int, int)
+     */
+    protected abstract Iterator<Entry<ObjectId, byte[]>> scanInternal(int fromPrefix, int toPrefix);
+
+    /**
+     * This default implementation calls {@link #putInternal(ObjectId, byte[])} for each object;
+     * subclasses may override if appropriate.
+     */
+    @Override
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects) {
+        long inserted = 0;
+        while (objects.hasNext()) {
+            Entry<ObjectId, byte[]> object = objects.next();
+            if (putInternal(object.getKey(), compress(object.getValue()))) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * @return the stored form of the given raw serialized object
+     */
+    protected byte[] compress(byte[] raw) {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        LZFOutputStream cOut = new LZFOutputStream(target);
+        try {
+            cOut.write(raw);
+            cOut.close();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return target.toByteArray();
+    }
+
+    /**
+     * @return the raw serialized object for the given stored data
+     */
+    protected byte[] uncompress(byte[] stored) {
+        try {
+            return ByteStreams.toByteArray(new LZFInputStream(new ByteArrayInputStream(stored)));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     @Override
     public Iterator<RevObject> getAll(final Iterable<ObjectId> ids) {
         return getAll(ids, BulkOpListener.NOOP_LISTENER);
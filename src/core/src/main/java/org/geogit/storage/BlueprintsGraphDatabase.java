@@ -319,25 +319,29 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
     public boolean put(ObjectId commitId, ImmutableList<ObjectId> parentIds) {
         boolean updated = false;
         try {
-            // See if it already exists
-            Vertex commitNode = getOrAddNode(commitId);
-
-            if (parentIds.isEmpty()) {
-                if (!commitNode.getEdges(OUT, CommitRelationshipTypes.TOROOT.name()).iterator()
-                        .hasNext()) {
-                    // Attach this node to the root node
-                    commitNode.addEdge(CommitRelationshipTypes.TOROOT.name(), root);
-                    updated = true;
-                }
-            }
+            updated = putInternal(commitId, parentIds);
+            this.commit();
+        } catch (Exception e) {
+            this.rollback();
+            throw Throwables.propagate(e);
+        }
+        return updated;
+    }
 
-            if (!commitNode.getEdges(OUT, CommitRelationshipTypes.PARENT.name()).iterator()
-                    .hasNext()) {
-                // Don't make relationships if they have been created already
-                for (ObjectId parent : parentIds) {
-                    Vertex parentNode = getOrAddNode(parent);
-                    commitNode.addEdge(CommitRelationshipTypes.PARENT.name(), parentNode);
-                    updated = true;
+    /**
+     * Adds a batch of commits to the database, committing the graph transaction only once for the
+     * whole batch.
+     * 
+     * @param commits the commit ids to insert mapped to the ids of their parents
+     * @return the ids of the commits that were inserted or updated
+     */
+    @Override
+    public ImmutableList<ObjectId> putAll(Map<ObjectId, ImmutableList<ObjectId>> commits) {
+        Builder<ObjectId> updated = new ImmutableList.Builder<ObjectId>();
+        try {
+            for (Entry<ObjectId, ImmutableList<ObjectId>> entry : commits.entrySet()) {
+                if (putInternal(entry.getKey(), entry.getValue())) {
+                    updated.add(entry.getKey());
                 }
             }
             this.commit();
@@ -345,6 +349,37 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
             this.rollback();
             throw Throwables.propagate(e);
         }
+        return updated.build();
+    }
+
+    /**
+     * Adds the commit node and its relationships without committing the graph transaction.
+     * 
+     * @return true if the commit id was inserted or updated, false otherwise
+     */
+    private boolean putInternal(ObjectId commitId, ImmutableList<ObjectId> parentIds) {
+        boolean updated = false;
+        // See if it already exists
+        Vertex commitNode = getOrAddNode(commitId);
+
+        if (parentIds.isEmpty()) {
+            if (!commitNode.getEdges(OUT, CommitRelationshipTypes.TOROOT.name()).iterator()
+                    .hasNext()) {
+                // Attach this node to the root node
+                commitNode.addEdge(CommitRelationshipTypes.TOROOT.name(), root);
+                updated = true;
+            }
+        }
+
+        if (!commitNode.getEdges(OUT, CommitRelationshipTypes.PARENT.name()).iterator()
+                .hasNext()) {
+            // Don't make relationships if they have been created already
+            for (ObjectId parent : parentIds) {
+                Vertex parentNode = getOrAddNode(parent);
+                commitNode.addEdge(CommitRelationshipTypes.PARENT.name(), parentNode);
+                updated = true;
+            }
+        }
         return updated;
     }
 
@@ -560,6 +595,31 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
             this.commit();
         } catch (Exception e) {
             this.rollback();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Gets the value of a property of the provided commit node.
+     * 
+     * @param commitId the id of the commit
+     * @param propertyName the name of the property
+     * @return the value of the property, or {@link Optional#absent()} if not set
+     */
+    @Override
+    public Optional<String> getProperty(ObjectId commitId, String propertyName) {
+        try {
+            Iterator<Vertex> results = graphDB.getVertices("identifier", commitId.toString())
+                    .iterator();
+            if (results.hasNext()) {
+                Object value = results.next().getProperty(propertyName);
+                if (value != null) {
+                    return Optional.of(value.toString());
+                }
+            }
+            return Optional.absent();
+        } finally {
+            this.rollback();
         }
     }
 
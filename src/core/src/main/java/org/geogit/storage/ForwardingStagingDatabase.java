@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -20,7 +21,12 @@ import org.geogit.api.RevObject;
 import org.geogit.api.RevTag;
 import org.geogit.api.RevTree;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
 
 /**
@@ -128,6 +134,67 @@ public abstract class ForwardingStagingDatabase implements StagingDatabase {
         stagingDb.putAll(objects, listener);
     }
 
+    @Override
+    public byte[] getRaw(ObjectId id) {
+        if (stagingDb.exists(id)) {
+            return stagingDb.getRaw(id);
+        }
+        return repositoryDb.getRaw(id);
+    }
+
+    /**
+     * Reads the objects from the staging database first, and the ones not found there from the
+     * repository database.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(final Iterable<ObjectId> ids) {
+        final Set<ObjectId> foundInStaging = new HashSet<ObjectId>();
+        Iterator<Entry<ObjectId, byte[]>> staged = Iterators.transform(stagingDb.getAllRaw(ids),
+                new Function<Entry<ObjectId, byte[]>, Entry<ObjectId, byte[]>>() {
+                    @Override
+                    public Entry<ObjectId, byte[]> apply(Entry<ObjectId, byte[]> object) {
+                        foundInStaging.add(object.getKey());
+                        return object;
+                    }
+                });
+        // only asked for once the staging database is exhausted
+        Iterator<Entry<ObjectId, byte[]>> missing = new AbstractIterator<Entry<ObjectId, byte[]>>() {
+
+            private Iterator<Entry<ObjectId, byte[]>> fromRepository;
+
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                if (fromRepository == null) {
+                    fromRepository = repositoryDb.getAllRaw(Iterables.filter(ids,
+                            Predicates.not(Predicates.in(foundInStaging))));
+                }
+                return fromRepository.hasNext() ? fromRepository.next() : endOfData();
+            }
+        };
+        return Iterators.concat(staged, missing);
+    }
+
+    @Override
+    public boolean putRaw(ObjectId id, byte[] raw) {
+        if (repositoryDb.exists(id)) {
+            return false;
+        }
+        return stagingDb.putRaw(id, raw);
+    }
+
+    /**
+     * Scans the staging database only.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> scanRaw(int fromPrefix, int toPrefix) {
+        return stagingDb.scanRaw(fromPrefix, toPrefix);
+    }
+
+    @Override
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects) {
+        return stagingDb.putAllRaw(objects);
+    }
+
     @Override
     public long deleteAll(Iterator<ObjectId> ids) {
         return deleteAll(ids, BulkOpListener.NOOP_LISTENER);
@@ -144,6 +211,24 @@ public abstract class ForwardingStagingDatabase implements StagingDatabase {
         return exists;
     }
 
+    /**
+     * Looks up the objects in the staging database first, and the ones not found there in the
+     * repository database.
+     */
+    @Override
+    public Set<ObjectId> missing(Iterable<ObjectId> ids) {
+        Set<ObjectId> notStaged = stagingDb.missing(ids);
+        if (notStaged.isEmpty()) {
+            return notStaged;
+        }
+        return repositoryDb.missing(notStaged);
+    }
+
+    @Override
+    public boolean isStaged(ObjectId id) {
+        return stagingDb.exists(id);
+    }
+
     @Override
     public List<ObjectId> lookUp(String partialId) {
         Set<ObjectId> lookUp = new HashSet<ObjectId>(stagingDb.lookUp(partialId));
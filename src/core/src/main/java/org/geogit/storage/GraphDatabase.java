@@ -4,6 +4,8 @@
  */
 package org.geogit.storage;
 
+import java.util.Map;
+
 import org.geogit.api.ObjectId;
 import org.geogit.repository.RepositoryConnectionException;
 
@@ -16,6 +18,11 @@ public interface GraphDatabase {
 
     public static final String SPARSE_FLAG = "sparse";
 
+    /**
+     * Property set on commits whose whole history is known to be in the graph
+     */
+    public static final String COMPLETE_FLAG = "complete";
+
     /**
      * Initializes/opens the databse. It's safe to call this method multiple times, and only the
      * first call shall take effect.
@@ -78,6 +85,16 @@ public interface GraphDatabase {
      */
     public boolean put(final ObjectId commitId, ImmutableList<ObjectId> parentIds);
 
+    /**
+     * Adds a batch of commits to the database in a single unit of work. Commits that already exist
+     * with all their relationships are left untouched.
+     * 
+     * @param commits the commit ids to insert mapped to the ids of their parents, in insertion
+     *        order
+     * @return the ids of the commits that were inserted or updated
+     */
+    public ImmutableList<ObjectId> putAll(Map<ObjectId, ImmutableList<ObjectId>> commits);
+
     /**
      * Maps a commit to another original commit. This is used in sparse repositories.
      * 
@@ -120,6 +137,16 @@ public interface GraphDatabase {
      */
     public void setProperty(ObjectId commitId, String propertyName, String propertyValue);
 
+    /**
+     * Gets the value of a property of the provided commit node.
+     * 
+     * @param commitId the id of the commit
+     * @param propertyName the name of the property
+     * @return the value of the property, or {@link Optional#absent()} if the commit does not exist
+     *         or the property has not been set
+     */
+    public Optional<String> getProperty(ObjectId commitId, String propertyName);
+
     /**
      * Determines if there are any sparse commits between the start commit and the end commit, not
      * including the end commit.
@@ -6,6 +6,8 @@ package org.geogit.storage;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -57,6 +59,16 @@ public interface ObjectDatabase {
      */
     public boolean exists(final ObjectId id);
 
+    /**
+     * Determines which of the given objects are not in the object database, looking them up in
+     * bulk where the storage backend allows it.
+     * 
+     * @param ids the ids to search for
+     * @return the ids of the objects that don't exist
+     * @see #exists(ObjectId)
+     */
+    public Set<ObjectId> missing(Iterable<ObjectId> ids);
+
     /**
      * Searches the database for {@link ObjectId}s that match the given partial id.
      * 
@@ -211,4 +223,68 @@ public interface ObjectDatabase {
      * @return the number of objects actually deleted
      */
     public long deleteAll(Iterator<ObjectId> ids, BulkOpListener listener);
+
+    /**
+     * Reads an object in its raw serialized form, without decoding it.
+     * <p>
+     * The raw form of an object is the uncompressed output of the {@link ObjectSerializingFactory}
+     * in use, so it can be copied to another database with {@link #putRaw(ObjectId, byte[])} or
+     * sent to a remote as is.
+     * 
+     * @param id the id of the object
+     * @return the raw serialized object
+     * @throws IllegalArgumentException if no object with such id exists
+     */
+    public byte[] getRaw(ObjectId id) throws IllegalArgumentException;
+
+    /**
+     * Reads the given objects in their raw serialized form, without decoding them. Ids of objects
+     * not in the database are skipped.
+     * 
+     * @param ids the ids of the objects to read
+     * @return an iterator of object ids and raw serialized objects, in no particular order
+     * @see #getRaw(ObjectId)
+     */
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(Iterable<ObjectId> ids);
+
+    /**
+     * Inserts an object in its raw serialized form, without decoding it, if it doesn't exist
+     * already.
+     * <p>
+     * The id is trusted to match the object, callers receiving objects from elsewhere are
+     * responsible for checking it. Note that, unlike {@link #put(RevObject)}, this method doesn't
+     * add commits to the commit graph.
+     * 
+     * @param id the id of the object
+     * @param raw the raw serialized object, as returned by {@link #getRaw(ObjectId)}
+     * @return {@code true} if the object was inserted, {@code false} if it already existed
+     */
+    public boolean putRaw(ObjectId id, byte[] raw);
+
+    /**
+     * Iterates over the objects in the database whose id's first byte is in the given range, in
+     * their raw serialized form, without decoding them.
+     * <p>
+     * The raw form of an object is the uncompressed output of the {@link ObjectSerializingFactory}
+     * in use, which is the same for all the object databases in a GeoGit installation, so raw
+     * objects read from one database can be inserted into another with
+     * {@link #putAllRaw(Iterator)}. Disjoint ranges can be scanned concurrently.
+     * 
+     * @param fromPrefix the lowest first byte of the ids to return, inclusive, from 0 to 255
+     * @param toPrefix the highest first byte of the ids to return, exclusive, from 1 to 256
+     * @return an iterator of object ids and raw serialized objects, in no particular order
+     */
+    public Iterator<Entry<ObjectId, byte[]>> scanRaw(int fromPrefix, int toPrefix);
+
+    /**
+     * Inserts objects in their raw serialized form, as returned by {@link #scanRaw(int, int)},
+     * without decoding them.
+     * <p>
+     * Objects already present are not inserted. Note that, unlike {@link #put(RevObject)}, this
+     * method doesn't add the commits inserted to the commit graph.
+     * 
+     * @param objects the ids and raw serialized objects to insert
+     * @return the number of objects actually inserted
+     */
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects);
 }
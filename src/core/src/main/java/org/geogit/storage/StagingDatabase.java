@@ -4,10 +4,12 @@
  */
 package org.geogit.storage;
 
+import java.util.Iterator;
 import java.util.List;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.ObjectId;
 import org.geogit.api.plumbing.merge.Conflict;
 
 import com.google.common.base.Optional;
@@ -18,6 +20,14 @@ import com.google.common.base.Optional;
  */
 public interface StagingDatabase extends ObjectDatabase {
 
+    /**
+     * Unlike {@link #exists(ObjectId)}, doesn't look for the object in the repository database.
+     * 
+     * @param id the id of the object to look for
+     * @return {@code true} if the object is stored in the staging database itself
+     */
+    public boolean isStaged(ObjectId id);
+
     /**
      * Gets the specified conflict from the database.
      * 
@@ -36,6 +46,20 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter);
 
+    /**
+     * Gets all conflicts that match the specified path filter, without loading them all in memory
+     * at once.
+     * <p>
+     * The conflicts are not required to reflect changes made to the database after the iterator is
+     * created.
+     * 
+     * @param namespace the namespace of the conflict
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be returned
+     * @return an iterator over the conflicts
+     */
+    public Iterator<Conflict> iterateConflicts(@Nullable String namespace,
+            @Nullable String pathFilter);
+
     /**
      * Adds a conflict to the database.
      * 
@@ -44,6 +68,15 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public void addConflict(@Nullable String namespace, Conflict conflict);
 
+    /**
+     * Adds all the given conflicts to the database, replacing any existing conflict for the same
+     * path.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts);
+
     /**
      * Removes a conflict from the database.
      * 
@@ -52,6 +85,15 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public void removeConflict(@Nullable String namespace, String path);
 
+    /**
+     * Removes the conflicts of the given paths from the database, paths that have no conflict are
+     * ignored.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths);
+
     /**
      * Removes all conflicts from the database.
      * 
@@ -8,6 +8,8 @@ import static org.geogit.api.Ref.append;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -89,6 +91,22 @@ public class TransactionStagingDatabase implements StagingDatabase {
         return database.exists(id);
     }
 
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public Set<ObjectId> missing(Iterable<ObjectId> ids) {
+        return database.missing(ids);
+    }
+
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public boolean isStaged(ObjectId id) {
+        return database.isStaged(id);
+    }
+
     /**
      * Pass through to the original {@link StagingDatabase}.
      */
@@ -209,6 +227,46 @@ public class TransactionStagingDatabase implements StagingDatabase {
         return database.getAll(ids, listener);
     }
 
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public byte[] getRaw(ObjectId id) {
+        return database.getRaw(id);
+    }
+
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(Iterable<ObjectId> ids) {
+        return database.getAllRaw(ids);
+    }
+
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public boolean putRaw(ObjectId id, byte[] raw) {
+        return database.putRaw(id, raw);
+    }
+
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> scanRaw(int fromPrefix, int toPrefix) {
+        return database.scanRaw(fromPrefix, toPrefix);
+    }
+
+    /**
+     * Pass through to the original {@link StagingDatabase}.
+     */
+    @Override
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects) {
+        return database.putAllRaw(objects);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -227,6 +285,16 @@ public class TransactionStagingDatabase implements StagingDatabase {
         return database.getConflicts(txNamespace, pathFilter);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public Iterator<Conflict> iterateConflicts(@Nullable String namespace,
+            @Nullable String pathFilter) {
+        return database.iterateConflicts(txNamespace, pathFilter);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -236,6 +304,15 @@ public class TransactionStagingDatabase implements StagingDatabase {
         database.addConflict(txNamespace, conflict);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts) {
+        database.addConflicts(txNamespace, conflicts);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -245,6 +322,15 @@ public class TransactionStagingDatabase implements StagingDatabase {
         database.removeConflict(txNamespace, path);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        database.removeConflicts(txNamespace, paths);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
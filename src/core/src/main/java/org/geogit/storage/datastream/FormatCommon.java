@@ -22,6 +22,7 @@ import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevPerson;
 import org.geogit.api.RevTag;
 import org.geogit.api.RevTree;
@@ -69,6 +70,33 @@ public class FormatCommon {
                     + s);
     }
 
+    /**
+     * Reads the type of a serialized object from its header, without decoding the rest of it.
+     * 
+     * @param raw the serialized object
+     * @return the type of the object
+     * @throws IllegalArgumentException if the header is not recognized
+     */
+    public static TYPE readType(byte[] raw) {
+        int end = 0;
+        while (end < raw.length && raw[end] != NUL) {
+            end++;
+        }
+        String header = new String(raw, 0, end, Charset.forName("US-ASCII"));
+        if ("commit".equals(header))
+            return TYPE.COMMIT;
+        else if ("tree".equals(header))
+            return TYPE.TREE;
+        else if ("feature".equals(header))
+            return TYPE.FEATURE;
+        else if ("featuretype".equals(header))
+            return TYPE.FEATURETYPE;
+        else if ("tag".equals(header))
+            return TYPE.TAG;
+        else
+            throw new IllegalArgumentException("Unrecognized object header: " + header);
+    }
+
     public final static ObjectId readObjectId(DataInput in) throws IOException {
         byte[] bytes = new byte[20];
         in.readFully(bytes);
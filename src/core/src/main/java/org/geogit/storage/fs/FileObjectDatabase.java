@@ -17,6 +17,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
@@ -29,9 +30,14 @@ import org.geogit.storage.ConfigDatabase;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.ObjectSerializingFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import com.google.inject.Inject;
 
 /**
@@ -191,6 +197,47 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
         return true;
     }
 
+    @Override
+    protected Iterator<Entry<ObjectId, byte[]>> scanInternal(final int fromPrefix,
+            final int toPrefix) {
+        List<File> dirs = Lists.newArrayList();
+        for (int prefix = fromPrefix; prefix < toPrefix; prefix++) {
+            File dir = new File(dataRoot, String.format("%02x", prefix));
+            if (dir.isDirectory()) {
+                dirs.add(dir);
+            }
+        }
+        // list the object files of each first level directory only when it's reached
+        Iterator<File> files = Iterators.concat(Iterators.transform(dirs.iterator(),
+                new Function<File, Iterator<File>>() {
+                    @Override
+                    public Iterator<File> apply(File dir) {
+                        List<File> objectFiles = Lists.newArrayList();
+                        File[] subdirs = dir.listFiles();
+                        for (File subdir : subdirs == null ? new File[0] : subdirs) {
+                            File[] children = subdir.listFiles();
+                            for (File f : children == null ? new File[0] : children) {
+                                if (f.getName().length() == 2 * ObjectId.NUM_BYTES) {
+                                    objectFiles.add(f);
+                                }
+                            }
+                        }
+                        return objectFiles.iterator();
+                    }
+                }));
+        return Iterators.transform(files, new Function<File, Entry<ObjectId, byte[]>>() {
+            @Override
+            public Entry<ObjectId, byte[]> apply(File f) {
+                try {
+                    return Maps.immutableEntry(ObjectId.valueOf(f.getName()),
+                            Files.toByteArray(f));
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        });
+    }
+
     /**
      * Deletes the object with the provided {@link ObjectId id} from the database.
      * 
@@ -0,0 +1,308 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.Platform;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.api.plumbing.merge.Conflict;
+import org.geogit.repository.RepositoryConnectionException;
+import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ForwardingStagingDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.inject.Inject;
+
+/**
+ * The default staging database, which keeps the staged objects on disk in a
+ * {@link LogObjectDatabase} in the {@code index} directory of the repository, so that the size of
+ * an import is not limited by the heap and the staged changes survive the process.
+ * <p>
+ * Conflicts are stored in a file per namespace in the repository directory, same as the other
+ * file based staging databases do, and cached in memory once read. Adding a conflict appends it
+ * to the file, and the file is only rewritten when a conflict that's actually there is removed.
+ */
+public class FileStagingDatabase extends ForwardingStagingDatabase {
+
+    private final Platform platform;
+
+    private final ConfigDatabase configDB;
+
+    private final Map<String, Map<String, Conflict>> conflicts = Maps.newHashMap();
+
+    /**
+     * @param repositoryDb the repository reference database, used to get delegate read operations
+     *        to for objects not found here
+     */
+    @Inject
+    public FileStagingDatabase(final ObjectDatabase repositoryDb,
+            final ObjectSerializingFactory serialFactory, final Platform platform,
+            final ConfigDatabase configDB) {
+        super(Suppliers.ofInstance(repositoryDb), Suppliers.ofInstance(new LogObjectDatabase(
+                platform, "index", serialFactory)));
+        this.platform = platform;
+        this.configDB = configDB;
+    }
+
+    @Override
+    public void close() {
+        synchronized (conflicts) {
+            conflicts.clear();
+        }
+        super.close();
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.STAGING.configure(configDB, "log", "1.0");
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.STAGING.verify(configDB, "log", "1.0");
+    }
+
+    /**
+     * Gets all conflicts that match the specified path filter.
+     *
+     * @param namespace the namespace of the conflict
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be returned
+     * @return the list of conflicts
+     */
+    @Override
+    public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter) {
+        synchronized (conflicts) {
+            Map<String, Conflict> map = conflicts(namespace);
+            if (pathFilter == null) {
+                return ImmutableList.copyOf(map.values());
+            }
+            List<Conflict> matches = Lists.newArrayList();
+            for (Conflict c : map.values()) {
+                if (c.getPath().startsWith(pathFilter)) {
+                    matches.add(c);
+                }
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * Gets all conflicts that match the specified path filter. The conflicts are copied when the
+     * iterator is created, so the database can be modified while it's being used.
+     *
+     * @param namespace the namespace of the conflict
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be returned
+     * @return an iterator over the conflicts
+     */
+    @Override
+    public Iterator<Conflict> iterateConflicts(@Nullable String namespace,
+            @Nullable String pathFilter) {
+        return getConflicts(namespace, pathFilter).iterator();
+    }
+
+    /**
+     * Adds a conflict to the database.
+     *
+     * @param namespace the namespace of the conflict
+     * @param conflict the conflict to add
+     */
+    @Override
+    public void addConflict(@Nullable String namespace, Conflict conflict) {
+        synchronized (conflicts) {
+            Map<String, Conflict> map = conflicts(namespace);
+            Conflict previous = map.put(conflict.getPath(), conflict);
+            try {
+                if (previous == null) {
+                    Files.append(conflict.toString() + "\n", conflictsFile(namespace),
+                            Charsets.UTF_8);
+                } else {
+                    write(namespace, map);
+                }
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /**
+     * Adds all the given conflicts to the database, appending them to the namespace file with a
+     * single write unless some of them replace existing conflicts, in which case the file is
+     * rewritten once.
+     *
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts) {
+        synchronized (this.conflicts) {
+            Map<String, Conflict> map = conflicts(namespace);
+            StringBuilder appended = new StringBuilder();
+            boolean replaced = false;
+            while (conflicts.hasNext()) {
+                Conflict conflict = conflicts.next();
+                if (map.put(conflict.getPath(), conflict) != null) {
+                    replaced = true;
+                }
+                if (!replaced) {
+                    appended.append(conflict.toString()).append('\n');
+                }
+            }
+            try {
+                if (replaced) {
+                    write(namespace, map);
+                } else if (appended.length() > 0) {
+                    Files.append(appended, conflictsFile(namespace), Charsets.UTF_8);
+                }
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /**
+     * Removes a conflict from the database.
+     *
+     * @param namespace the namespace of the conflict
+     * @param path the path of feature whose conflict should be removed
+     */
+    @Override
+    public void removeConflict(@Nullable String namespace, String path) {
+        synchronized (conflicts) {
+            Map<String, Conflict> map = conflicts(namespace);
+            if (map.remove(path) != null) {
+                try {
+                    write(namespace, map);
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the conflicts of the given paths from the database, rewriting the namespace file
+     * once.
+     *
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        synchronized (conflicts) {
+            Map<String, Conflict> map = conflicts(namespace);
+            boolean removed = false;
+            for (String path : paths) {
+                removed |= map.remove(path) != null;
+            }
+            if (removed) {
+                try {
+                    write(namespace, map);
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the specified conflict from the database.
+     *
+     * @param namespace the namespace of the conflict
+     * @param path the conflict to retrieve
+     * @return the conflict, or {@link Optional#absent()} if it was not found
+     */
+    @Override
+    public Optional<Conflict> getConflict(@Nullable String namespace, String path) {
+        synchronized (conflicts) {
+            return Optional.fromNullable(conflicts(namespace).get(path));
+        }
+    }
+
+    /**
+     * Removes all conflicts from the database.
+     *
+     * @param namespace the namespace of the conflicts to remove
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace) {
+        synchronized (conflicts) {
+            conflicts.put(namespace(namespace), new LinkedHashMap<String, Conflict>());
+            conflictsFile(namespace).delete();
+        }
+    }
+
+    private static String namespace(@Nullable String namespace) {
+        return namespace == null ? "conflicts" : namespace;
+    }
+
+    /**
+     * @return the conflicts of the namespace, read from its file the first time
+     */
+    private Map<String, Conflict> conflicts(@Nullable String namespace) {
+        Map<String, Conflict> map = conflicts.get(namespace(namespace));
+        if (map == null) {
+            map = new LinkedHashMap<String, Conflict>();
+            File file = conflictsFile(namespace);
+            if (file.exists()) {
+                try {
+                    for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                        if (!line.isEmpty()) {
+                            Conflict c = Conflict.valueOf(line);
+                            map.put(c.getPath(), c);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            conflicts.put(namespace(namespace), map);
+        }
+        return map;
+    }
+
+    private void write(@Nullable String namespace, Map<String, Conflict> map) throws IOException {
+        File file = conflictsFile(namespace);
+        if (map.isEmpty()) {
+            file.delete();
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Conflict conflict : map.values()) {
+            sb.append(conflict.toString()).append('\n');
+        }
+        Files.write(sb.toString(), file, Charsets.UTF_8);
+    }
+
+    private File conflictsFile(@Nullable String namespace) {
+        URL repoPath = new ResolveGeogitDir(platform).call();
+        if (repoPath == null) {
+            throw new IllegalStateException("Can't find geogit repository home");
+        }
+        try {
+            return new File(new File(repoPath.toURI()), namespace(namespace));
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
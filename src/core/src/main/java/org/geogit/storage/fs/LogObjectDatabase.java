@@ -0,0 +1,550 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevObject;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.storage.AbstractObjectDatabase;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ning.compress.lzf.LZFInputStream;
+
+/**
+ * Provides an implementation of a GeoGit object database that appends the objects to a single log
+ * file, and keeps track of where each object is in a {@link ObjectOffsetIndex hash table} stored
+ * in a second file.
+ * <p>
+ * Unlike the {@link FileObjectDatabase}, that creates a file per object, writing an object is a
+ * single append, which makes it suitable for holding the large amounts of short lived objects an
+ * import produces. Neither the objects nor the table are held in the heap.
+ * <p>
+ * Deleted objects are only removed from the table. The space they take in the log is reclaimed
+ * at once when the database becomes empty, which is what normally happens to a staging area once
+ * its contents are committed, and otherwise by compacting the log before the next write once the
+ * objects deleted since it was opened outnumber the live ones. Deleting a large part of the
+ * objects is thus not slowed down by copying the rest of them.
+ * <p>
+ * Each record in the log holds the object id, so the table can be rebuilt from the log if it's
+ * lost.
+ */
+public class LogObjectDatabase extends AbstractObjectDatabase implements ObjectDatabase {
+
+    private static final int RECORD_HEADER_SIZE = ObjectId.NUM_BYTES + 4;
+
+    /**
+     * Size the log has to reach before it's worth compacting
+     */
+    private static final long COMPACTION_MIN_SIZE = 16 * 1024 * 1024;
+
+    private final Platform platform;
+
+    private final String databaseName;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private File dataRoot;
+
+    private RandomAccessFile log;
+
+    private FileChannel logChannel;
+
+    private long logSize;
+
+    private ObjectOffsetIndex index;
+
+    /**
+     * Number of objects deleted since the database was opened or the log last shrank
+     */
+    private long deletedCount;
+
+    /**
+     * Incremented every time the log shrinks, so that pending scans know the positions they read
+     * are no longer valid
+     */
+    private volatile int logVersion;
+
+    /**
+     * Constructs a new {@code LogObjectDatabase}.
+     *
+     * @param platform the platform to use
+     * @param databaseName the name of the directory, inside the repository directory, to store
+     *        the files in
+     * @param serialFactory the serialization factory
+     */
+    public LogObjectDatabase(final Platform platform, final String databaseName,
+            final ObjectSerializingFactory serialFactory) {
+        super(serialFactory);
+        checkNotNull(platform);
+        checkNotNull(databaseName);
+        this.platform = platform;
+        this.databaseName = databaseName;
+    }
+
+    /**
+     * @return true if the database is open, false otherwise
+     */
+    @Override
+    public boolean isOpen() {
+        return index != null;
+    }
+
+    /**
+     * Opens the database for use by GeoGit.
+     */
+    @Override
+    public synchronized void open() {
+        if (isOpen()) {
+            return;
+        }
+        final URL repoUrl = new ResolveGeogitDir(platform).call();
+        if (repoUrl == null) {
+            throw new IllegalStateException("Can't find geogit repository home");
+        }
+        try {
+            dataRoot = new File(new File(repoUrl.toURI()), databaseName);
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+        if (!dataRoot.exists() && !dataRoot.mkdirs()) {
+            throw new IllegalStateException("Can't create environment: "
+                    + dataRoot.getAbsolutePath());
+        }
+        try {
+            openFiles();
+        } catch (IOException e) {
+            close();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private void openFiles() throws IOException {
+        File logFile = new File(dataRoot, "objects.log");
+        File indexFile = new File(dataRoot, "objects.idx");
+        final boolean rebuild = !indexFile.exists() && logFile.exists();
+        log = new RandomAccessFile(logFile, "rw");
+        logChannel = log.getChannel();
+        logSize = logChannel.size();
+        index = new ObjectOffsetIndex(indexFile);
+        if (rebuild) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Closes the database.
+     */
+    @Override
+    public synchronized void close() {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.close();
+            }
+            if (log != null) {
+                log.close();
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            index = null;
+            log = null;
+            logChannel = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds every record in the log to the table, dropping a partially written last record.
+     */
+    private void rebuildIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = 0;
+        while (position + RECORD_HEADER_SIZE <= logSize) {
+            header.clear();
+            readFully(header, position);
+            byte[] raw = new byte[ObjectId.NUM_BYTES];
+            header.flip();
+            header.get(raw);
+            int length = header.getInt();
+            if (position + RECORD_HEADER_SIZE + length > logSize) {
+                break;
+            }
+            index.put(ObjectId.createNoClone(raw), position);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < logSize) {
+            logChannel.truncate(position);
+            logSize = position;
+        }
+    }
+
+    /**
+     * Determines if the given {@link ObjectId} exists in the object database.
+     *
+     * @param id the id to search for
+     * @return true if the object exists, false otherwise
+     */
+    @Override
+    public boolean exists(final ObjectId id) {
+        checkNotNull(id);
+        lock.readLock().lock();
+        try {
+            return index.get(id) >= 0;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected InputStream getRawInternal(ObjectId id, boolean failIfNotFound) {
+        byte[] data = read(id);
+        if (data == null) {
+            if (failIfNotFound) {
+                throw new IllegalArgumentException(id + " does not exist");
+            }
+            return null;
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    /**
+     * @return the stored (compressed) form of the object, or {@code null} if it's not in the
+     *         database
+     */
+    private byte[] read(ObjectId id) {
+        lock.readLock().lock();
+        try {
+            long position = index.get(id);
+            if (position < 0) {
+                return null;
+            }
+            return readRecord(position);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private byte[] readRecord(long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, position + ObjectId.NUM_BYTES);
+        ByteBuffer data = ByteBuffer.allocate(length.getInt(0));
+        readFully(data, position + RECORD_HEADER_SIZE);
+        return data.array();
+    }
+
+    @Override
+    protected boolean putInternal(final ObjectId id, final byte[] rawData) {
+        lock.writeLock().lock();
+        try {
+            if (index.get(id) >= 0) {
+                return false;
+            }
+            if (deletedCount > index.size() && logSize >= COMPACTION_MIN_SIZE) {
+                compact();
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + rawData.length);
+            record.put(id.getRawValue()).putInt(rawData.length).put(rawData);
+            record.flip();
+            final long position = logSize;
+            writeFully(record, position);
+            logSize += record.limit();
+            index.put(id, position);
+            return true;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the object with the provided {@link ObjectId id} from the database.
+     *
+     * @param objectId the id of the object to delete
+     * @return true if the object was deleted, false if it was not found
+     */
+    @Override
+    public boolean delete(ObjectId objectId) {
+        checkNotNull(objectId);
+        lock.writeLock().lock();
+        try {
+            boolean deleted = index.remove(objectId);
+            if (deleted) {
+                deletedCount++;
+                truncateIfEmpty();
+            }
+            return deleted;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long deleteAll(Iterator<ObjectId> ids, final BulkOpListener listener) {
+        long count = 0;
+        lock.writeLock().lock();
+        try {
+            while (ids.hasNext()) {
+                ObjectId id = ids.next();
+                if (index.remove(id)) {
+                    count++;
+                    listener.deleted(id);
+                } else {
+                    listener.notFound(id);
+                }
+            }
+            if (count > 0) {
+                deletedCount += count;
+                truncateIfEmpty();
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Reclaims the space of the log once every object in it was deleted.
+     */
+    private void truncateIfEmpty() throws IOException {
+        if (index.size() == 0) {
+            index.clear();
+            logChannel.truncate(0);
+            logSize = 0;
+            deletedCount = 0;
+            logVersion++;
+        }
+    }
+
+    /**
+     * Copies the live records, in log order, to a new log that replaces the current one, and
+     * rebuilds the table from it. Must be called holding the write lock.
+     * <p>
+     * The new log is synced to disk before it's renamed over the current one, so the log file is
+     * always either the old or the new complete log. The table is removed before the rename, as
+     * the positions it holds are only valid for the old log; if the process stops in between, the
+     * table is rebuilt from the old log when it's reopened.
+     */
+    private void compact() throws IOException {
+        File logFile = new File(dataRoot, "objects.log");
+        File indexFile = new File(dataRoot, "objects.idx");
+        File compactedFile = new File(dataRoot, "objects.log.compact");
+        RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw");
+        try {
+            compacted.setLength(0);
+            FileChannel compactedChannel = compacted.getChannel();
+            long position = 0;
+            for (Entry<ObjectId, Long> entry : sortedEntries(0, 256)) {
+                byte[] data = readRecord(entry.getValue().longValue());
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+                record.put(entry.getKey().getRawValue()).putInt(data.length).put(data);
+                record.flip();
+                while (record.hasRemaining()) {
+                    position += compactedChannel.write(record, position);
+                }
+            }
+            compactedChannel.force(true);
+        } finally {
+            compacted.close();
+        }
+        index.close();
+        log.close();
+        boolean replaced = indexFile.delete() && compactedFile.renameTo(logFile);
+        // the old log is reindexed if it wasn't replaced, and the new one otherwise
+        openFiles();
+        deletedCount = 0;
+        logVersion++;
+        if (!replaced) {
+            compactedFile.delete();
+            throw new IOException("Unable to replace " + logFile + " by its compacted copy");
+        }
+    }
+
+    @Override
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        checkState(isOpen(), "db is closed");
+        return new AbstractIterator<RevObject>() {
+            final Iterator<ObjectId> iterator = ids.iterator();
+
+            @Override
+            protected RevObject computeNext() {
+                while (iterator.hasNext()) {
+                    ObjectId id = iterator.next();
+                    byte[] raw = read(id);
+                    if (raw == null) {
+                        listener.notFound(id);
+                        continue;
+                    }
+                    RevObject found;
+                    try {
+                        found = serializationFactory.createObjectReader().read(id,
+                                new LZFInputStream(new ByteArrayInputStream(raw)));
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    listener.found(found, raw.length);
+                    return found;
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override
+    protected Iterator<Entry<ObjectId, byte[]>> scanInternal(final int fromPrefix,
+            final int toPrefix) {
+        // read in log order rather than in table order, to keep the log reads sequential
+        final List<Entry<ObjectId, Long>> positions;
+        final int version;
+        lock.readLock().lock();
+        try {
+            positions = sortedEntries(fromPrefix, toPrefix);
+            version = logVersion;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new AbstractIterator<Entry<ObjectId, byte[]>>() {
+            final Iterator<Entry<ObjectId, Long>> iterator = positions.iterator();
+
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                while (iterator.hasNext()) {
+                    Entry<ObjectId, Long> entry = iterator.next();
+                    lock.readLock().lock();
+                    try {
+                        long position = entry.getValue().longValue();
+                        if (version != logVersion) {
+                            // the log shrank since the scan started, look the object up again
+                            position = index.get(entry.getKey());
+                            if (position < 0) {
+                                continue;
+                            }
+                        }
+                        return Maps.immutableEntry(entry.getKey(), readRecord(position));
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * @return the table entries in the given prefix range, sorted by their position in the log.
+     *         Must be called holding the lock.
+     */
+    private List<Entry<ObjectId, Long>> sortedEntries(final int fromPrefix, final int toPrefix) {
+        List<Entry<ObjectId, Long>> positions = Lists.newArrayList(index.entries(fromPrefix,
+                toPrefix));
+        Collections.sort(positions, new Comparator<Entry<ObjectId, Long>>() {
+            @Override
+            public int compare(Entry<ObjectId, Long> o1, Entry<ObjectId, Long> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+        return positions;
+    }
+
+    /**
+     * Searches the database for {@link ObjectId}s that match the given partial id.
+     *
+     * @param partialId the partial id to search for
+     * @return a list of matching results
+     */
+    @Override
+    public List<ObjectId> lookUp(final String partialId) {
+        Preconditions.checkNotNull(partialId);
+        if (partialId.length() < 2) {
+            return ImmutableList.of();
+        }
+        final int prefix = Integer.parseInt(partialId.substring(0, 2), 16);
+        List<ObjectId> matches = Lists.newLinkedList();
+        lock.readLock().lock();
+        try {
+            Iterator<Entry<ObjectId, Long>> entries = index.entries(prefix, prefix + 1);
+            while (entries.hasNext()) {
+                ObjectId id = entries.next().getKey();
+                if (id.toString().startsWith(partialId)) {
+                    matches.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    @Override
+    protected List<ObjectId> lookUpInternal(byte[] raw) {
+        throw new UnsupportedOperationException("we override lookup directly");
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = logChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of object log");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += logChannel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void configure() {
+        // No-op, the staging database using it records the format
+    }
+
+    @Override
+    public void checkConfig() {
+        // No-op
+    }
+}
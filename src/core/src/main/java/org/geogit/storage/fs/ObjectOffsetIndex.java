@@ -0,0 +1,427 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.geogit.api.ObjectId;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+/**
+ * A hash table stored in a file, mapping object ids to the position of the objects in the log of a
+ * {@link LogObjectDatabase}, so that the number of objects it can hold is not bound by the heap.
+ * <p>
+ * The table uses open addressing with linear probing. Since object ids are SHA-1 hashes, their
+ * first bytes are used as the hash code directly. Removed entries are left as tombstones until the
+ * table is rehashed, which happens when live entries and tombstones fill three quarters of it.
+ * <p>
+ * The entry counts in the file header are only written on {@link #close()}, if the table was not
+ * closed cleanly the counts are recomputed when it's opened again.
+ */
+final class ObjectOffsetIndex implements Closeable {
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int SLOT_SIZE = ObjectId.NUM_BYTES + 8;
+
+    private static final long MIN_CAPACITY = 1 << 14;
+
+    /**
+     * Offset value of a slot that was never used, offsets are stored plus one so that a valid
+     * position of zero is not confused with it
+     */
+    private static final long EMPTY = 0;
+
+    private static final long DELETED = -1;
+
+    private static final int CLEAN = 1;
+
+    private final File file;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private long capacity;
+
+    /**
+     * number of live entries
+     */
+    private long size;
+
+    /**
+     * number of live entries plus tombstones
+     */
+    private long used;
+
+    private boolean dirty;
+
+    private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+    /**
+     * Opens the table stored in {@code file}, creating it if it doesn't exist.
+     *
+     * @param file the file to store the table in
+     * @throws IOException
+     */
+    ObjectOffsetIndex(File file) throws IOException {
+        this.file = file;
+        boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+        open();
+        if (exists) {
+            readHeader();
+        } else {
+            reset(MIN_CAPACITY);
+        }
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        size = header.getLong();
+        used = header.getLong();
+        int clean = header.getInt();
+        capacity = (channel.size() - HEADER_SIZE) / SLOT_SIZE;
+        if (clean != CLEAN) {
+            recount();
+        }
+    }
+
+    private void writeHeader(boolean clean) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(size).putLong(used).putInt(clean ? CLEAN : 0).putInt(0);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void recount() throws IOException {
+        size = 0;
+        used = 0;
+        for (long i = 0; i < capacity; i++) {
+            long offset = readSlot(i);
+            if (offset != EMPTY) {
+                used++;
+                if (offset != DELETED) {
+                    size++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncates the file to an empty table of the given capacity
+     */
+    private void reset(long newCapacity) throws IOException {
+        channel.truncate(0);
+        capacity = newCapacity;
+        size = 0;
+        used = 0;
+        // extending the file zero-fills it, which marks every slot as empty
+        raf.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+        writeHeader(false);
+        dirty = true;
+    }
+
+    /**
+     * @return the number of entries in the table
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @param id the id to look for
+     * @return the position the object was {@link #put stored} with, or {@code -1} if it's not in
+     *         the table
+     * @throws IOException
+     */
+    public synchronized long get(ObjectId id) throws IOException {
+        long index = find(id);
+        if (index < 0) {
+            return -1;
+        }
+        return readSlot(index) - 1;
+    }
+
+    /**
+     * Adds an entry to the table, unless the id is already in it.
+     *
+     * @param id the id of the object
+     * @param position the position of the object in the log
+     * @return {@code true} if the entry was added
+     * @throws IOException
+     */
+    public synchronized boolean put(ObjectId id, long position) throws IOException {
+        if (find(id) >= 0) {
+            return false;
+        }
+        if (4 * (used + 1) > 3 * capacity) {
+            rehash(2 * size + 2 > capacity ? 2 * capacity : capacity);
+        }
+        markDirty();
+        long index = bucket(id, capacity);
+        while (true) {
+            long offset = readSlot(index);
+            if (offset == EMPTY || offset == DELETED) {
+                if (offset == EMPTY) {
+                    used++;
+                }
+                writeSlot(channel, index, id, position + 1);
+                size++;
+                return true;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Removes an entry from the table.
+     *
+     * @param id the id of the object
+     * @return {@code true} if the entry was in the table
+     * @throws IOException
+     */
+    public synchronized boolean remove(ObjectId id) throws IOException {
+        long index = find(id);
+        if (index < 0) {
+            return false;
+        }
+        markDirty();
+        slot.clear();
+        slot.putLong(ObjectId.NUM_BYTES, DELETED);
+        slot.position(ObjectId.NUM_BYTES);
+        writeFully(slot, HEADER_SIZE + index * SLOT_SIZE + ObjectId.NUM_BYTES);
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes all the entries, shrinking the file back to its initial size.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        reset(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the entries whose ids start with a byte in the given range, in no particular order.
+     * The table is read lazily, a few slots at a time, and the iterator is not meant to be used
+     * while the table is being modified.
+     *
+     * @param fromPrefix the first byte of the range, inclusive
+     * @param toPrefix the last byte of the range, exclusive
+     * @return the id and position of every matching entry
+     */
+    public Iterator<Entry<ObjectId, Long>> entries(final int fromPrefix, final int toPrefix) {
+        return new AbstractIterator<Entry<ObjectId, Long>>() {
+
+            private final ByteBuffer page = (ByteBuffer) ByteBuffer.allocate(SLOT_SIZE * 1024)
+                    .limit(0);
+
+            private long next = 0;
+
+            @Override
+            protected Entry<ObjectId, Long> computeNext() {
+                try {
+                    while (true) {
+                        if (page.remaining() < SLOT_SIZE && !readPage()) {
+                            return endOfData();
+                        }
+                        while (page.remaining() >= SLOT_SIZE) {
+                            byte[] raw = new byte[ObjectId.NUM_BYTES];
+                            page.get(raw);
+                            long offset = page.getLong();
+                            int prefix = raw[0] & 0xFF;
+                            if (offset != EMPTY && offset != DELETED && prefix >= fromPrefix
+                                    && prefix < toPrefix) {
+                                return Maps.immutableEntry(ObjectId.createNoClone(raw),
+                                        Long.valueOf(offset - 1));
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+
+            private boolean readPage() throws IOException {
+                synchronized (ObjectOffsetIndex.this) {
+                    if (next >= capacity) {
+                        return false;
+                    }
+                    int slots = (int) Math.min(page.capacity() / SLOT_SIZE, capacity - next);
+                    page.clear();
+                    page.limit(slots * SLOT_SIZE);
+                    readFully(page, HEADER_SIZE + next * SLOT_SIZE);
+                    page.flip();
+                    next += slots;
+                    return true;
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the entry counts and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            writeHeader(true);
+        } finally {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    private void markDirty() throws IOException {
+        if (!dirty) {
+            writeHeader(false);
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the slot holding {@code id}, or {@code -1}
+     */
+    private long find(ObjectId id) throws IOException {
+        long index = bucket(id, capacity);
+        for (long probes = 0; probes < capacity; probes++) {
+            long offset = readSlot(index);
+            if (offset == EMPTY) {
+                return -1;
+            }
+            if (offset != DELETED && matches(id)) {
+                return index;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the live entries to a new table of the given capacity, dropping the tombstones.
+     */
+    private void rehash(long newCapacity) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        RandomAccessFile newRaf = new RandomAccessFile(tmp, "rw");
+        try {
+            newRaf.setLength(0);
+            newRaf.setLength(HEADER_SIZE + newCapacity * SLOT_SIZE);
+            FileChannel newChannel = newRaf.getChannel();
+            Iterator<Entry<ObjectId, Long>> entries = entries(0, 256);
+            while (entries.hasNext()) {
+                Entry<ObjectId, Long> entry = entries.next();
+                long index = bucket(entry.getKey(), newCapacity);
+                while (readSlot(newChannel, index) != EMPTY) {
+                    index = (index + 1) & (newCapacity - 1);
+                }
+                writeSlot(newChannel, index, entry.getKey(), entry.getValue().longValue() + 1);
+            }
+        } finally {
+            newRaf.close();
+        }
+        raf.close();
+        if (!file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file.getAbsolutePath());
+        }
+        open();
+        capacity = newCapacity;
+        used = size;
+        dirty = false;
+        markDirty();
+    }
+
+    private static long bucket(ObjectId id, long capacity) {
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | id.byteN(i);
+        }
+        return hash & (capacity - 1);
+    }
+
+    /**
+     * Reads a slot into {@link #slot}
+     *
+     * @return the stored offset of the slot
+     */
+    private long readSlot(long index) throws IOException {
+        return readSlot(channel, index);
+    }
+
+    private long readSlot(FileChannel channel, long index) throws IOException {
+        slot.clear();
+        readFully(channel, slot, HEADER_SIZE + index * SLOT_SIZE);
+        return slot.getLong(ObjectId.NUM_BYTES);
+    }
+
+    /**
+     * @return whether the slot last {@link #readSlot read} holds {@code id}
+     */
+    private boolean matches(ObjectId id) {
+        for (int i = 0; i < ObjectId.NUM_BYTES; i++) {
+            if ((slot.get(i) & 0xFF) != id.byteN(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeSlot(FileChannel channel, long index, ObjectId id, long offset)
+            throws IOException {
+        slot.clear();
+        slot.put(id.getRawValue());
+        slot.putLong(offset);
+        slot.flip();
+        writeFully(channel, slot, HEADER_SIZE + index * SLOT_SIZE);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of index file");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        writeFully(channel, buffer, position);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
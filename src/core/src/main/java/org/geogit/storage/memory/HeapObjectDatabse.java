@@ -13,6 +13,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject;
@@ -146,6 +147,21 @@ public class HeapObjectDatabse extends AbstractObjectDatabase implements ObjectD
         return true;
     }
 
+    @Override
+    protected Iterator<Entry<ObjectId, byte[]>> scanInternal(final int fromPrefix,
+            final int toPrefix) {
+        List<Entry<ObjectId, byte[]>> matches = Lists.newArrayList();
+        synchronized (objects) {
+            for (Entry<ObjectId, byte[]> entry : objects.entrySet()) {
+                int prefix = entry.getKey().byteN(0);
+                if (prefix >= fromPrefix && prefix < toPrefix) {
+                    matches.add(Maps.immutableEntry(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        return matches.iterator();
+    }
+
     @Override
     public long deleteAll(Iterator<ObjectId> ids, final BulkOpListener listener) {
         long count = 0;
@@ -6,6 +6,7 @@ package org.geogit.storage.memory;
 
 import static com.google.common.base.Suppliers.ofInstance;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -85,6 +86,20 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
         return ImmutableList.copyOf(filtered);
     }
 
+    /**
+     * Gets all conflicts that match the specified path filter. The conflicts are copied when the
+     * iterator is created, so the database can be modified while it's being used.
+     * 
+     * @param namespace the namespace of the conflict
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be returned
+     * @return an iterator over the conflicts
+     */
+    @Override
+    public Iterator<Conflict> iterateConflicts(@Nullable String namespace,
+            @Nullable String pathFilter) {
+        return getConflicts(namespace, pathFilter).iterator();
+    }
+
     /**
      * Adds a conflict to the database.
      * 
@@ -105,6 +120,28 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
 
     }
 
+    /**
+     * Adds all the given conflicts to the database.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts) {
+        if (namespace == null) {
+            namespace = "root";
+        }
+        Map<String, Conflict> conflictMap = this.conflicts.get(namespace);
+        if (conflictMap == null) {
+            conflictMap = Maps.newHashMap();
+            this.conflicts.put(namespace, conflictMap);
+        }
+        while (conflicts.hasNext()) {
+            Conflict conflict = conflicts.next();
+            conflictMap.put(conflict.getPath(), conflict);
+        }
+    }
+
     /**
      * Removes a conflict from the database.
      * 
@@ -122,6 +159,25 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
         }
     }
 
+    /**
+     * Removes the conflicts of the given paths from the database.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        if (namespace == null) {
+            namespace = "root";
+        }
+        Map<String, Conflict> conflictMap = conflicts.get(namespace);
+        if (conflictMap != null) {
+            for (String path : paths) {
+                conflictMap.remove(path);
+            }
+        }
+    }
+
     /**
      * Gets the specified conflict from the database.
      * 
@@ -0,0 +1,126 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.geogit.api.Bucket;
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.StagingDatabase;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class DeepMoveTest extends RepositoryTestCase {
+
+    private StagingDatabase indexDb;
+
+    private ObjectDatabase objectDb;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        indexDb = geogit.getRepository().getIndex().getDatabase();
+        objectDb = geogit.getRepository().getObjectDatabase();
+    }
+
+    @Test
+    public void testMoveBucketTree() {
+        List<Node> features = createFeatures("feature", 10500);
+        RevTreeBuilder builder = new RevTreeBuilder(indexDb);
+        for (Node feature : features) {
+            builder.put(feature);
+        }
+        RevTree tree = builder.build();
+        indexDb.put(tree);
+        assertTrue(tree.buckets().isPresent());
+
+        Node treeNode = Node.create("points", tree.getId(), ObjectId.NULL, TYPE.TREE);
+        ObjectId moved = geogit.command(DeepMove.class).setObjectRef(Suppliers.ofInstance(treeNode))
+                .call();
+
+        assertEquals(tree.getId(), moved);
+        assertTreeMoved(tree.getId());
+        for (Node feature : features) {
+            assertMoved(feature.getObjectId());
+        }
+    }
+
+    @Test
+    public void testMoveNestedTree() {
+        List<Node> subtreeFeatures = createFeatures("subtree", 2);
+        RevTreeBuilder subtreeBuilder = new RevTreeBuilder(indexDb);
+        for (Node feature : subtreeFeatures) {
+            subtreeBuilder.put(feature);
+        }
+        RevTree subtree = subtreeBuilder.build();
+        indexDb.put(subtree);
+
+        List<Node> rootFeatures = createFeatures("root", 1);
+        RevTree root = new RevTreeBuilder(indexDb).put(rootFeatures.get(0))
+                .put(Node.create("first", subtree.getId(), ObjectId.NULL, TYPE.TREE))
+                .put(Node.create("second", subtree.getId(), ObjectId.NULL, TYPE.TREE)).build();
+        indexDb.put(root);
+
+        Node rootNode = Node.create("root", root.getId(), ObjectId.NULL, TYPE.TREE);
+        geogit.command(DeepMove.class).setObjectRef(Suppliers.ofInstance(rootNode)).call();
+
+        assertTreeMoved(root.getId());
+        assertMoved(subtree.getId());
+        assertMoved(rootFeatures.get(0).getObjectId());
+        for (Node feature : subtreeFeatures) {
+            assertMoved(feature.getObjectId());
+        }
+    }
+
+    @Test
+    public void testMoveObjects() {
+        final List<Node> features = createFeatures("feature", 3);
+        Iterator<Node> nodes = features.iterator();
+        ObjectId moved = geogit.command(DeepMove.class).setObjects(Suppliers.ofInstance(nodes))
+                .call();
+
+        assertNull(moved);
+        for (Node feature : features) {
+            assertMoved(feature.getObjectId());
+        }
+    }
+
+    private List<Node> createFeatures(String namePrefix, int count) {
+        List<Node> nodes = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            String name = namePrefix + "." + i;
+            RevFeature feature = RevFeature.build(ImmutableList.of(Optional.<Object> of(name)));
+            indexDb.put(feature);
+            nodes.add(Node.create(name, feature.getId(), ObjectId.NULL, TYPE.FEATURE));
+        }
+        return nodes;
+    }
+
+    private void assertTreeMoved(ObjectId treeId) {
+        assertMoved(treeId);
+        RevTree tree = objectDb.get(treeId, RevTree.class);
+        if (tree.buckets().isPresent()) {
+            for (Bucket bucket : tree.buckets().get().values()) {
+                assertTreeMoved(bucket.id());
+            }
+        }
+    }
+
+    private void assertMoved(ObjectId id) {
+        assertTrue(objectDb.exists(id));
+        assertFalse(indexDb.isStaged(id));
+    }
+}
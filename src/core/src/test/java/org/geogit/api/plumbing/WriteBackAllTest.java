@@ -0,0 +1,134 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.api.plumbing;
+
+import org.geogit.api.MemoryModule;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.di.GeogitModule;
+import org.geogit.repository.DepthSearch;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.StagingDatabase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+/**
+ *
+ */
+public class WriteBackAllTest extends Assert {
+
+    private Injector injector;
+
+    ObjectDatabase odb;
+
+    StagingDatabase indexDb;
+
+    @Before
+    public void setUp() {
+        injector = Guice.createInjector(Modules.override(new GeogitModule()).with(
+                new MemoryModule(null)));
+
+        odb = injector.getInstance(ObjectDatabase.class);
+        indexDb = injector.getInstance(StagingDatabase.class);
+        odb.open();
+        indexDb.open();
+    }
+
+    private WriteBackAll writeBack() {
+        return injector.getInstance(WriteBackAll.class);
+    }
+
+    @Test
+    public void testNothingChanged() {
+        RevTree root = new RevTreeBuilder(odb).put(blob("blob")).build();
+        assertEquals(root.getId(), writeBack().setAncestor(root).call());
+    }
+
+    @Test
+    public void testSiblingsAndNested() {
+        RevTree tree1 = new RevTreeBuilder(odb).put(blob("blob1")).build();
+        RevTree tree2 = new RevTreeBuilder(odb).put(blob("blob2")).build();
+        RevTree tree3 = new RevTreeBuilder(odb).put(blob("blob3")).build();
+
+        ObjectId newRootId = writeBack().setAncestor(RevTree.EMPTY)
+                .addTree("subtree1/level2", tree1, null).addTree("subtree1/other", tree2, null)
+                .addTree("subtree2/level2/level3", tree3, null).call();
+
+        DepthSearch depthSearch = new DepthSearch(odb);
+        assertTrue(depthSearch.find(newRootId, "subtree1/level2/blob1").isPresent());
+        assertTrue(depthSearch.find(newRootId, "subtree1/other/blob2").isPresent());
+        assertTrue(depthSearch.find(newRootId, "subtree2/level2/level3/blob3").isPresent());
+    }
+
+    @Test
+    public void testChangedTreeAndChangedChild() {
+        RevTree child = new RevTreeBuilder(odb).put(blob("blob")).build();
+        RevTree level1 = new RevTreeBuilder(odb).put(blob("blob")).build();
+        RevTree oldRoot = new RevTreeBuilder(odb).put(blob("rootBlob")).build();
+        odb.put(oldRoot);
+
+        // the parent's own changes and the child's are both kept, whatever the order they're added
+        ObjectId newRootId = writeBack().setAncestor(oldRoot).addTree("level1/level2", child, null)
+                .addTree("level1", level1, null).call();
+
+        DepthSearch depthSearch = new DepthSearch(odb);
+        assertTrue(depthSearch.find(newRootId, "rootBlob").isPresent());
+        assertTrue(depthSearch.find(newRootId, "level1/blob").isPresent());
+        assertTrue(depthSearch.find(newRootId, "level1/level2/blob").isPresent());
+    }
+
+    @Test
+    public void testPreserveExistingSiblings() {
+        RevTree tree1 = new RevTreeBuilder(odb).put(blob("blob")).build();
+        ObjectId oldRootId = writeBack().setAncestor(RevTree.EMPTY)
+                .addTree("level1/untouched", tree1, null).call();
+
+        RevTree tree2 = new RevTreeBuilder(odb).put(blob("blob2")).build();
+        ObjectId newRootId = writeBack().setAncestor(odb.getTree(oldRootId))
+                .addTree("level1/changed", tree2, null).call();
+
+        DepthSearch depthSearch = new DepthSearch(odb);
+        assertTrue(depthSearch.find(newRootId, "level1/untouched/blob").isPresent());
+        assertTrue(depthSearch.find(newRootId, "level1/changed/blob2").isPresent());
+    }
+
+    @Test
+    public void testPreserveMetadataId() {
+        RevTree tree = new RevTreeBuilder(odb).put(blob("blob")).build();
+        final ObjectId treeMetadataId = ObjectId.forString("fakeMdId");
+
+        ObjectId newRootId = writeBack().setAncestor(RevTree.EMPTY)
+                .addTree("level1/level2", tree, treeMetadataId).call();
+
+        Optional<NodeRef> ref = new DepthSearch(odb).find(newRootId, "level1/level2");
+        assertTrue(ref.isPresent());
+        assertEquals(treeMetadataId, ref.get().getNode().getMetadataId().get());
+    }
+
+    @Test
+    public void testToIndex() {
+        RevTree tree = new RevTreeBuilder(indexDb).put(blob("blob")).build();
+        ObjectId newRootId = writeBack().setToIndex(true).setAncestor(RevTree.EMPTY)
+                .addTree("level1", tree, null).call();
+
+        assertTrue(indexDb.exists(newRootId));
+        assertFalse(odb.exists(newRootId));
+    }
+
+    private Node blob(String path) {
+        return Node.create(path, ObjectId.forString(path), ObjectId.NULL, TYPE.FEATURE);
+    }
+}
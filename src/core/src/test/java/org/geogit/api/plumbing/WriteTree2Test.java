@@ -303,6 +303,41 @@ public class WriteTree2Test extends RepositoryTestCase {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testManyChangedTrees() {
+        // enough changed trees for them to be rebuilt concurrently
+        final int numTrees = 8;
+        NodeRef[] leftRefs = new NodeRef[numTrees];
+        NodeRef[] rightRefs = new NodeRef[numTrees];
+        Set<String> expected = Sets.newHashSet();
+        for (int i = 0; i < numTrees; i++) {
+            String name = "layer" + i;
+            leftRefs[i] = repoTree(name, "b" + i, "d1", 10);
+            rightRefs[i] = indexTree(name, "c" + i, "d1", 20);
+            expected.add(name);
+            for (int f = 0; f < 20; f++) {
+                expected.add(name + "/" + name + "." + f);
+            }
+        }
+        leftTree = createHeadTree(leftRefs);
+        rightTree = createStageHeadTree(rightRefs);
+
+        final ObjectId newRepoRoot = command.call();
+        assertNotNull(newRepoRoot);
+        // check all blobs have been moved from the index to the object database
+        verifyRepositoryTree(NodeRef.ROOT, newRepoRoot);
+
+        ImmutableMap<String, NodeRef> refsByPath = getRefsByPath(newRepoRoot, true);
+        assertEquals(expected, refsByPath.keySet());
+        // the added features were moved out of the index
+        for (int i = 0; i < numTrees; i++) {
+            for (int f = 10; f < 20; f++) {
+                String path = "layer" + i + "/layer" + i + "." + f;
+                assertFalse(path, indexDb.isStaged(refsByPath.get(path).objectId()));
+            }
+        }
+    }
+
     @Test
     public void testAllKindsOfChanges() {
         leftTree = createHeadTree(//
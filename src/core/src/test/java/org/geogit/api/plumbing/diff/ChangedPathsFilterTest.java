@@ -0,0 +1,55 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.api.plumbing.diff;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class ChangedPathsFilterTest extends Assert {
+
+    @Test
+    public void testAllPaths() {
+        ChangedPathsFilter filter = ChangedPathsFilter.create(
+                ImmutableList.of("Points/Points.1", "Lines/sub/Lines.1"), false);
+        assertFalse(filter.isTreesOnly());
+        assertTrue(filter.mightBeAffected("Points/Points.1"));
+        assertTrue(filter.mightBeAffected("Points"));
+        assertTrue(filter.mightBeAffected("Lines"));
+        assertTrue(filter.mightBeAffected("Lines/sub"));
+        assertTrue(filter.mightBeAffected("Lines/sub/Lines.1"));
+    }
+
+    @Test
+    public void testTreesOnly() {
+        ChangedPathsFilter filter = ChangedPathsFilter.create(ImmutableList.of("Points"), true);
+        assertTrue(filter.isTreesOnly());
+        assertTrue(filter.mightBeAffected("Points"));
+        assertTrue(filter.mightBeAffected("Points/Points.1"));
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        ChangedPathsFilter filter = ChangedPathsFilter.create(ImmutableList.of("Points/Points.1"),
+                false);
+        ChangedPathsFilter decoded = ChangedPathsFilter.decode(filter.encode());
+        assertEquals(filter.isTreesOnly(), decoded.isTreesOnly());
+        assertTrue(decoded.mightBeAffected("Points/Points.1"));
+        assertTrue(decoded.mightBeAffected("Points"));
+        assertEquals(filter.encode(), decoded.encode());
+
+        filter = ChangedPathsFilter.create(ImmutableList.of("Points"), true);
+        decoded = ChangedPathsFilter.decode(filter.encode());
+        assertTrue(decoded.isTreesOnly());
+        assertTrue(decoded.mightBeAffected("Points/Points.1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        ChangedPathsFilter.decode("Xabc");
+    }
+}
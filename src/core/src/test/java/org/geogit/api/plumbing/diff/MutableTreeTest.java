@@ -16,6 +16,7 @@ import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
 import org.geogit.api.plumbing.diff.DepthTreeIterator.Strategy;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
@@ -129,6 +130,63 @@ public class MutableTreeTest extends Assert {
         }
     }
 
+    @Test
+    public void testLazyExpansion() {
+        ObjectDatabase db = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        db.open();
+
+        RevTree highways = leafTree(db, "highways.1");
+        RevTree streets = leafTree(db, "streets.1");
+        RevTree newStreets = leafTree(db, "streets.2");
+        RevTree stores = leafTree(db, "stores.1");
+        RevTree buildings = parentTree(db, treeNode("stores", stores.getId(), id("d3")));
+
+        RevTree leftRoot = parentTree(db,
+                treeNode("roads", parentTree(db, treeNode("highways", highways.getId(), id("d1")),
+                        treeNode("streets", streets.getId(), id("d2"))).getId(), NULL),
+                treeNode("buildings", buildings.getId(), NULL));
+        RevTree rightRoot = parentTree(db,
+                treeNode("roads", parentTree(db, treeNode("highways", highways.getId(), id("d1")),
+                        treeNode("streets", newStreets.getId(), id("d2"))).getId(), NULL),
+                treeNode("buildings", buildings.getId(), NULL));
+
+        MutableTree left = MutableTree.create(leftRoot.getId(), db);
+        MutableTree right = MutableTree.create(rightRoot.getId(), db);
+        assertFalse(left.isExpanded());
+
+        TreeDifference difference = TreeDifference.create(left, right);
+        assertFalse(difference.areEqual());
+        assertEquals(2, difference.findChanges().size());
+        assertTrue(difference.findNewTrees().isEmpty());
+        assertTrue(difference.findDeletes().isEmpty());
+
+        // the unchanged trees are never read
+        assertTrue(left.getChild("roads").isExpanded());
+        assertFalse(left.getChild("roads/highways").isExpanded());
+        assertFalse(left.getChild("buildings").isExpanded());
+
+        left.setChild("roads", treeNode("streets", newStreets.getId(), id("d2")));
+        assertEquals(rightRoot.getId(), left.build(db, db).getId());
+    }
+
+    private RevTree leafTree(ObjectDatabase db, String featureName) {
+        RevTree tree = new RevTreeBuilder(db).put(
+                Node.create(featureName, ObjectId.forString(featureName), NULL, TYPE.FEATURE))
+                .build();
+        db.put(tree);
+        return tree;
+    }
+
+    private RevTree parentTree(ObjectDatabase db, Node... children) {
+        RevTreeBuilder builder = new RevTreeBuilder(db);
+        for (Node child : children) {
+            builder.put(child);
+        }
+        RevTree tree = builder.build();
+        db.put(tree);
+        return tree;
+    }
+
     private void assertNode(MutableTree mutableTree, ObjectId treeId, @Nullable ObjectId metadtaId,
             String nodeName) {
 
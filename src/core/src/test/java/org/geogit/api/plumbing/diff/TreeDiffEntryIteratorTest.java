@@ -14,6 +14,7 @@ import java.util.TreeSet;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.Bounded;
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
@@ -28,6 +29,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -239,6 +241,29 @@ public class TreeDiffEntryIteratorTest extends Assert {
         assertEquals(expected, diffset);
     }
 
+    @Test
+    public void testChildrenChildrenBoundsFilter() {
+
+        RevTree leftTree = childenTree("1", "aa", "2", "bb", "3", "cc");
+        RevTree rightTree = childenTree("1", "a1", "2", "b2", "4", "dd");
+
+        Predicate<Bounded> boundsFilter = new Predicate<Bounded>() {
+            @Override
+            public boolean apply(Bounded input) {
+                String name = ((Node) input).getName();
+                return name.equals("2") || name.equals("4");
+            }
+        };
+
+        ImmutableSet<DiffEntry> diffset = diffSet(leftTree, rightTree, boundsFilter);
+        ImmutableSet<DiffEntry> expected = ImmutableSet.of(//
+                entry("2", "bb", "2", "b2"),//
+                entry(null, null, "4", "dd")//
+                );
+
+        assertEquals(expected, diffset);
+    }
+
     private RevTree bucketTree() {
 
         ObjectId id = ObjectId.forString("null");
@@ -304,13 +329,19 @@ public class TreeDiffEntryIteratorTest extends Assert {
     }
 
     private ImmutableSet<DiffEntry> diffSet(RevTree leftTree, RevTree rightTree) {
+        return diffSet(leftTree, rightTree, null);
+    }
+
+    private ImmutableSet<DiffEntry> diffSet(RevTree leftTree, RevTree rightTree,
+            @Nullable Predicate<Bounded> boundsFilter) {
         NodeRef leftNodeRef = new NodeRef(Node.create("", leftTree.getId(), ObjectId.NULL,
                 TYPE.TREE), "", ObjectId.NULL);
         NodeRef rightNodeRef = new NodeRef(Node.create("", leftTree.getId(), ObjectId.NULL,
                 TYPE.TREE), "", ObjectId.NULL);
         boolean reportTrees = false;
         ImmutableSet<DiffEntry> diffset = ImmutableSet.copyOf(new TreeDiffEntryIterator(
-                leftNodeRef, rightNodeRef, leftTree, rightTree, reportTrees, true, mockDb));
+                leftNodeRef, rightNodeRef, leftTree, rightTree, reportTrees, true, boundsFilter,
+                mockDb));
         return diffset;
     }
 }
@@ -0,0 +1,220 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectWriter;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class BinaryPackedObjectsTest {
+
+    private ObjectDatabase odb;
+
+    @Before
+    public void setUp() {
+        odb = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        odb.open();
+    }
+
+    @Test
+    public void testWriteAndReadObjects() throws Exception {
+        odb.put(RevTree.EMPTY);
+        CommitBuilder b = new CommitBuilder();
+        b.setAuthor("groldan");
+        b.setAuthorEmail("groldan@opengeo.org");
+        b.setCommitter("jdeolive");
+        b.setCommitterEmail("jdeolive@opengeo.org");
+        b.setMessage("cool this works");
+        b.setCommitterTimestamp(1000);
+        b.setTreeId(RevTree.EMPTY.getId());
+        RevCommit commit = b.build();
+        odb.put(commit);
+
+        ObjectId missing = ObjectId.forString("missing");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(odb).writeObjects(out,
+                ImmutableList.of(commit.getId(), missing, RevTree.EMPTY.getId()));
+
+        List<RevObject> objects = BinaryPackedObjects.read(new ByteArrayInputStream(out
+                .toByteArray()));
+        assertEquals(ImmutableSet.<RevObject> of(commit, RevTree.EMPTY),
+                ImmutableSet.copyOf(objects));
+    }
+
+    @Test
+    public void testIngestAll() throws Exception {
+        RevCommit commit = commit("first");
+        odb.put(RevTree.EMPTY);
+        odb.put(commit);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(odb).writeObjects(out,
+                ImmutableList.of(RevTree.EMPTY.getId(), commit.getId()));
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        target.put(RevTree.EMPTY);
+
+        final List<ObjectId> read = new ArrayList<ObjectId>();
+        final List<ObjectId> inserted = new ArrayList<ObjectId>();
+        new BinaryPackedObjects(target).ingestAll(new ByteArrayInputStream(out.toByteArray()),
+                new BinaryPackedObjects.Callback<Void>() {
+                    @Override
+                    public Void callback(RevObject object, Void state) {
+                        read.add(object.getId());
+                        return null;
+                    }
+                }, new BulkOpListener() {
+                    @Override
+                    public void inserted(RevObject object, Integer storageSizeBytes) {
+                        inserted.add(object.getId());
+                    }
+                });
+
+        assertEquals(ImmutableList.of(RevTree.EMPTY.getId(), commit.getId()), read);
+        assertEquals(ImmutableList.of(commit.getId()), inserted);
+        assertEquals(commit, target.getCommit(commit.getId()));
+    }
+
+    @Test
+    public void testIngestAllStoresRawForm() throws Exception {
+        RevCommit commit = commit("first");
+        odb.put(RevTree.EMPTY);
+        odb.put(commit);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(odb).writeObjects(out,
+                ImmutableList.of(RevTree.EMPTY.getId(), commit.getId(), RevTree.EMPTY.getId()));
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        final List<ObjectId> inserted = new ArrayList<ObjectId>();
+        new BinaryPackedObjects(target).ingestAll(new ByteArrayInputStream(out.toByteArray()),
+                new BinaryPackedObjects.Callback<Void>() {
+                    @Override
+                    public Void callback(RevObject object, Void state) {
+                        return null;
+                    }
+                }, new BulkOpListener() {
+                    @Override
+                    public void inserted(RevObject object, Integer storageSizeBytes) {
+                        inserted.add(object.getId());
+                    }
+                });
+
+        // the tree sent twice is inserted once
+        assertEquals(ImmutableSet.of(RevTree.EMPTY.getId(), commit.getId()),
+                ImmutableSet.copyOf(inserted));
+        assertEquals(2, inserted.size());
+        assertArrayEquals(odb.getRaw(RevTree.EMPTY.getId()), target.getRaw(RevTree.EMPTY.getId()));
+        assertEquals(commit, target.getCommit(commit.getId()));
+    }
+
+    @Test
+    public void testIngestStoresRawForm() throws Exception {
+        RevCommit commit = commit("first");
+        odb.put(RevTree.EMPTY);
+        odb.put(commit);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(odb).writeObjects(out,
+                ImmutableList.of(RevTree.EMPTY.getId(), commit.getId()));
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(RevTree.EMPTY, target.getTree(RevTree.EMPTY.getId()));
+        assertEquals(commit, target.getCommit(commit.getId()));
+        assertArrayEquals(odb.getRaw(RevTree.EMPTY.getId()), target.getRaw(RevTree.EMPTY.getId()));
+    }
+
+    @Test
+    public void testIngestRejectsMismatchedId() throws Exception {
+        RevCommit commit = commit("first");
+        ObjectId other = commit("second").getId();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(other.getRawValue());
+        new DataStreamSerializationFactory().createObjectWriter(TYPE.COMMIT).write(commit, out);
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        try {
+            new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(out.toByteArray()));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(other.toString()));
+        }
+        assertFalse(target.exists(other));
+    }
+
+    @Test
+    public void testIngestVerifiesFeatures() throws Exception {
+        RevFeature feature = RevFeature.build(ImmutableList.of(Optional.<Object> of("first")));
+        ObjectId other = RevFeature.build(ImmutableList.of(Optional.<Object> of("second")))
+                .getId();
+        ObjectWriter<RevObject> writer = new DataStreamSerializationFactory()
+                .createObjectWriter(TYPE.FEATURE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(feature.getId().getRawValue());
+        writer.write(feature, out);
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(feature, target.getFeature(feature.getId()));
+
+        out.reset();
+        out.write(other.getRawValue());
+        writer.write(feature, out);
+        try {
+            new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(out.toByteArray()));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(other.toString()));
+        }
+        assertFalse(target.exists(other));
+    }
+
+    private RevCommit commit(String message) {
+        CommitBuilder b = new CommitBuilder();
+        b.setAuthor("groldan");
+        b.setAuthorEmail("groldan@opengeo.org");
+        b.setCommitter("jdeolive");
+        b.setCommitterEmail("jdeolive@opengeo.org");
+        b.setMessage(message);
+        b.setCommitterTimestamp(1000);
+        b.setTreeId(RevTree.EMPTY.getId());
+        return b.build();
+    }
+}
@@ -0,0 +1,176 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geogit.api.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class PackCacheTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static final List<ObjectId> HAVE = ImmutableList.of();
+
+    private static class CountingPack implements PackCache.Pack {
+
+        private final byte[] data;
+
+        private int calls;
+
+        CountingPack(int size) {
+            data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (i % 7);
+            }
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            calls++;
+            out.write(data);
+            out.flush();
+        }
+    }
+
+    private byte[] write(PackCache cache, ObjectId want, Map<String, String> refs,
+            PackCache.Pack pack) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(out, ImmutableList.of(want), HAVE, true, PackEncoding.IDENTITY, refs, pack);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRepeatedRequest() throws Exception {
+        PackCache cache = new PackCache(tmpFolder.newFolder("cache"), 1024 * 1024);
+        Map<String, String> refs = ImmutableMap.of("refs/heads/master", "a");
+        ObjectId want = ObjectId.forString("commit");
+        CountingPack pack = new CountingPack(10000);
+
+        assertArrayEquals(pack.data, write(cache, want, refs, pack));
+        assertArrayEquals(pack.data, write(cache, want, refs, pack));
+        assertEquals(1, pack.calls);
+        assertEquals(10000, cache.size());
+
+        // a different encoding is a different stream
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(out, ImmutableList.of(want), HAVE, true, PackEncoding.DEFLATE, refs, pack);
+        assertEquals(2, pack.calls);
+    }
+
+    @Test
+    public void testRefUpdateInvalidates() throws Exception {
+        PackCache cache = new PackCache(tmpFolder.newFolder("cache"), 1024 * 1024);
+        ObjectId want = ObjectId.forString("commit");
+        CountingPack pack = new CountingPack(100);
+
+        write(cache, want, ImmutableMap.of("refs/heads/master", "a"), pack);
+        write(cache, want, ImmutableMap.of("refs/heads/master", "b"), pack);
+        assertEquals(2, pack.calls);
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        PackCache cache = new PackCache(tmpFolder.newFolder("cache"), 250);
+        Map<String, String> refs = ImmutableMap.of("refs/heads/master", "a");
+        ObjectId first = ObjectId.forString("first");
+        ObjectId second = ObjectId.forString("second");
+        ObjectId third = ObjectId.forString("third");
+        CountingPack pack = new CountingPack(100);
+
+        write(cache, first, refs, pack);
+        write(cache, second, refs, pack);
+        write(cache, first, refs, pack);
+        assertEquals(2, pack.calls);
+
+        // evicts second, the least recently used
+        write(cache, third, refs, pack);
+        assertEquals(3, pack.calls);
+        assertEquals(200, cache.size());
+
+        write(cache, first, refs, pack);
+        assertEquals(3, pack.calls);
+        write(cache, second, refs, pack);
+        assertEquals(4, pack.calls);
+    }
+
+    @Test
+    public void testFailedStreamIsNotCached() throws Exception {
+        File directory = tmpFolder.newFolder("cache");
+        PackCache cache = new PackCache(directory, 1024 * 1024);
+        Map<String, String> refs = ImmutableMap.of("refs/heads/master", "a");
+        ObjectId want = ObjectId.forString("commit");
+        try {
+            write(cache, want, refs, new PackCache.Pack() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    out.write(new byte[10]);
+                    throw new IOException("connection reset");
+                }
+            });
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertEquals("connection reset", expected.getMessage());
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, streamFiles(directory).size());
+    }
+
+    @Test
+    public void testSharedDirectory() throws Exception {
+        File directory = tmpFolder.newFolder("cache");
+        Map<String, String> refs = ImmutableMap.of("refs/heads/master", "a");
+        ObjectId want = ObjectId.forString("commit");
+        CountingPack pack = new CountingPack(100);
+
+        PackCache cache = new PackCache(directory, 1024 * 1024);
+        write(cache, want, refs, pack);
+
+        // another cache in the same directory leaves the streams of the open one alone
+        PackCache other = new PackCache(directory, 1024 * 1024);
+        write(other, want, refs, pack);
+        write(cache, want, refs, pack);
+        assertEquals(2, pack.calls);
+        assertEquals(2, streamFiles(directory).size());
+
+        cache.close();
+        assertEquals(1, streamFiles(directory).size());
+        // a closed cache still serves the streams, without caching them
+        assertArrayEquals(pack.data, write(cache, want, refs, pack));
+        assertEquals(3, pack.calls);
+        assertEquals(1, streamFiles(directory).size());
+        other.close();
+    }
+
+    private static List<File> streamFiles(File directory) {
+        List<File> files = new ArrayList<File>();
+        for (File f : directory.listFiles()) {
+            if (f.isDirectory()) {
+                files.addAll(streamFiles(f));
+            } else if (!f.getName().endsWith(".lock")) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+}
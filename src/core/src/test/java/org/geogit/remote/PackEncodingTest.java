@@ -0,0 +1,49 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+public class PackEncodingTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 13);
+        }
+        for (PackEncoding encoding : PackEncoding.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = encoding.encode(bytes);
+            out.write(data);
+            encoding.finish(out);
+
+            InputStream in = encoding.decode(new ByteArrayInputStream(bytes.toByteArray()));
+            assertArrayEquals(encoding.getName(), data, ByteStreams.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testNegotiation() {
+        assertEquals(PackEncoding.LZF, PackEncoding.negotiate(ImmutableList.of("zstd", "lzf")));
+        assertEquals(PackEncoding.IDENTITY, PackEncoding.negotiate(ImmutableList.of("zstd")));
+        assertEquals(PackEncoding.DEFLATE,
+                PackEncoding.fromMediaType(PackEncoding.DEFLATE.mediaType() + "; charset=UTF-8"));
+        assertEquals(PackEncoding.IDENTITY,
+                PackEncoding.fromMediaType("application/octet-stream"));
+        assertEquals(PackEncoding.IDENTITY, PackEncoding.fromMediaType(null));
+    }
+}
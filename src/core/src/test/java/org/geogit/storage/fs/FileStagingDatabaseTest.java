@@ -0,0 +1,144 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.List;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevFeature;
+import org.geogit.api.plumbing.merge.Conflict;
+import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class FileStagingDatabaseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Platform platform;
+
+    private ObjectDatabase repositoryDb;
+
+    private FileStagingDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        File workingDir = tempFolder.newFolder("mockWorkingDir");
+        tempFolder.newFolder("mockWorkingDir/.geogit");
+
+        platform = mock(Platform.class);
+        when(platform.pwd()).thenReturn(workingDir);
+
+        repositoryDb = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        repositoryDb.open();
+        db = createDatabase();
+        db.open();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        repositoryDb.close();
+    }
+
+    private FileStagingDatabase createDatabase() {
+        return new FileStagingDatabase(repositoryDb, new DataStreamSerializationFactory(),
+                platform, mock(ConfigDatabase.class));
+    }
+
+    @Test
+    public void testObjectsFallBackToRepository() {
+        RevFeature staged = RevFeature.build(ImmutableList.of(Optional.<Object> of("staged")));
+        RevFeature stored = RevFeature.build(ImmutableList.of(Optional.<Object> of("stored")));
+        db.put(staged);
+        repositoryDb.put(stored);
+
+        assertTrue(db.exists(staged.getId()));
+        assertTrue(db.exists(stored.getId()));
+        assertTrue(db.isStaged(staged.getId()));
+        assertFalse(db.isStaged(stored.getId()));
+        assertEquals(stored, db.get(stored.getId()));
+
+        db.close();
+        db = createDatabase();
+        db.open();
+        assertEquals(staged, db.get(staged.getId()));
+    }
+
+    @Test
+    public void testConflicts() {
+        Conflict conflict = conflict("Points/1", "");
+        Conflict conflict2 = conflict("Points/2", "");
+        assertTrue(db.getConflicts(null, null).isEmpty());
+
+        db.addConflict(null, conflict);
+        assertEquals(conflict, db.getConflict(null, "Points/1").get());
+        db.removeConflict(null, "Points/1");
+        assertTrue(db.getConflicts(null, null).isEmpty());
+
+        db.addConflict(null, conflict);
+        db.addConflict(null, conflict2);
+        db.addConflict("ns", conflict);
+        assertEquals(2, db.getConflicts(null, null).size());
+        assertEquals(1, db.getConflicts(null, "Points/2").size());
+        assertEquals(1, db.getConflicts("ns", null).size());
+
+        // adding a conflict for the same path replaces it
+        Conflict replacement = conflict("Points/1", "2");
+        db.addConflict(null, replacement);
+        assertEquals(2, db.getConflicts(null, null).size());
+        assertEquals(replacement, db.getConflict(null, "Points/1").get());
+
+        db.removeConflicts("ns");
+        assertTrue(db.getConflicts("ns", null).isEmpty());
+        assertEquals(2, db.getConflicts(null, null).size());
+    }
+
+    @Test
+    public void testConflictsReopen() {
+        List<Conflict> conflicts = Lists.newArrayList();
+        List<String> even = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            conflicts.add(conflict("Points/" + i, ""));
+            if (i % 2 == 0) {
+                even.add("Points/" + i);
+            }
+        }
+        db.addConflicts(null, conflicts.iterator());
+        db.addConflict(null, conflict("Points/1", "2"));
+        db.removeConflicts(null, even);
+
+        db.close();
+        db = createDatabase();
+        db.open();
+        assertEquals(50, db.getConflicts(null, null).size());
+        assertEquals(conflict("Points/1", "2"), db.getConflict(null, "Points/1").get());
+        assertFalse(db.getConflict(null, "Points/0").isPresent());
+    }
+
+    private static Conflict conflict(String path, String suffix) {
+        return new Conflict(path, ObjectId.forString("ancestor" + suffix),
+                ObjectId.forString("ours" + suffix), ObjectId.forString("theirs" + suffix));
+    }
+}
@@ -0,0 +1,235 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevFeature;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class LogObjectDatabaseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Platform platform;
+
+    private File dataRoot;
+
+    private LogObjectDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        File workingDir = tempFolder.newFolder("mockWorkingDir");
+        File repoDir = tempFolder.newFolder("mockWorkingDir/.geogit");
+        dataRoot = new File(repoDir, "index");
+
+        platform = mock(Platform.class);
+        when(platform.pwd()).thenReturn(workingDir);
+
+        db = createDatabase();
+        db.open();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private LogObjectDatabase createDatabase() {
+        return new LogObjectDatabase(platform, "index", new DataStreamSerializationFactory());
+    }
+
+    @Test
+    public void testPutGet() {
+        RevFeature feature = feature("value");
+        assertFalse(db.exists(feature.getId()));
+
+        assertTrue(db.put(feature));
+        assertFalse(db.put(feature));
+        assertTrue(db.exists(feature.getId()));
+        assertEquals(feature, db.get(feature.getId()));
+        assertEquals(feature, db.getFeature(feature.getId()));
+        assertNotNull(db.getRaw(feature.getId()));
+        assertEquals(ImmutableList.of(feature.getId()),
+                db.lookUp(feature.getId().toString().substring(0, 8)));
+    }
+
+    @Test
+    public void testDelete() {
+        RevFeature feature = feature("value");
+        RevFeature other = feature("other");
+        db.put(feature);
+        db.put(other);
+
+        assertTrue(db.delete(feature.getId()));
+        assertFalse(db.delete(feature.getId()));
+        assertFalse(db.exists(feature.getId()));
+        assertEquals(other, db.get(other.getId()));
+    }
+
+    @Test
+    public void testDeleteAll() {
+        List<RevFeature> features = features(10, 8);
+        db.putAll(features.iterator());
+
+        List<ObjectId> deleted = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            deleted.add(features.get(i).getId());
+        }
+        deleted.add(ObjectId.forString("missing"));
+        assertEquals(5, db.deleteAll(deleted.iterator()));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i >= 5, db.exists(features.get(i).getId()));
+        }
+    }
+
+    @Test
+    public void testScan() {
+        List<RevFeature> features = features(100, 8);
+        db.putAll(features.iterator());
+
+        Set<ObjectId> scanned = Sets.newHashSet();
+        for (int prefix = 0; prefix < 256; prefix += 64) {
+            Iterator<Entry<ObjectId, byte[]>> range = db.scanRaw(prefix, prefix + 64);
+            while (range.hasNext()) {
+                ObjectId id = range.next().getKey();
+                assertTrue(id.byteN(0) >= prefix && id.byteN(0) < prefix + 64);
+                assertTrue(scanned.add(id));
+            }
+        }
+        assertEquals(ids(features), scanned);
+    }
+
+    @Test
+    public void testReopen() {
+        List<RevFeature> features = features(100, 8);
+        db.putAll(features.iterator());
+        db.delete(features.get(0).getId());
+        db.close();
+
+        db = createDatabase();
+        db.open();
+        assertFalse(db.exists(features.get(0).getId()));
+        for (RevFeature feature : features.subList(1, features.size())) {
+            assertEquals(feature, db.get(feature.getId()));
+        }
+    }
+
+    @Test
+    public void testReopenWithoutIndex() {
+        List<RevFeature> features = features(100, 8);
+        db.putAll(features.iterator());
+        db.close();
+
+        assertTrue(new File(dataRoot, "objects.idx").delete());
+        db = createDatabase();
+        db.open();
+        for (RevFeature feature : features) {
+            assertEquals(feature, db.get(feature.getId()));
+        }
+    }
+
+    @Test
+    public void testTruncateWhenEmpty() {
+        List<RevFeature> features = features(100, 8);
+        db.putAll(features.iterator());
+        File log = new File(dataRoot, "objects.log");
+        assertTrue(log.length() > 0);
+
+        db.deleteAll(ids(features).iterator());
+        assertEquals(0, log.length());
+    }
+
+    @Test
+    public void testCompaction() {
+        // 32MB of barely compressible features, twice the size that triggers compaction
+        List<RevFeature> features = features(1000, 32 * 1024);
+        db.putAll(features.iterator());
+        File log = new File(dataRoot, "objects.log");
+        final long fullSize = log.length();
+
+        List<RevFeature> deleted = features.subList(0, 600);
+        List<RevFeature> kept = features.subList(600, features.size());
+        db.deleteAll(ids(deleted).iterator());
+        // deletes alone don't compact the log
+        assertEquals(fullSize, log.length());
+
+        Iterator<Entry<ObjectId, byte[]>> pendingScan = db.scanRaw(0, 256);
+        RevFeature added = feature("added");
+        db.put(added);
+        assertTrue(log.length() < fullSize / 2);
+        // the compacted copy was renamed over the log
+        assertFalse(new File(dataRoot, "objects.log.compact").exists());
+
+        for (RevFeature feature : kept) {
+            assertEquals(feature, db.get(feature.getId()));
+        }
+        assertEquals(added, db.get(added.getId()));
+        assertFalse(db.exists(deleted.get(0).getId()));
+
+        // a scan started before compacting still returns the live objects
+        Set<ObjectId> scanned = Sets.newHashSet();
+        while (pendingScan.hasNext()) {
+            scanned.add(pendingScan.next().getKey());
+        }
+        assertEquals(ids(kept), scanned);
+
+        db.close();
+        db = createDatabase();
+        db.open();
+        assertEquals(kept.get(0), db.get(kept.get(0).getId()));
+    }
+
+    private static RevFeature feature(String value) {
+        return RevFeature.build(ImmutableList.of(Optional.<Object> of(value)));
+    }
+
+    private static List<RevFeature> features(int count, int valueLength) {
+        Random random = new Random(count);
+        List<RevFeature> features = Lists.newArrayListWithCapacity(count);
+        StringBuilder sb = new StringBuilder(valueLength);
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            for (int j = 0; j < valueLength; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            features.add(feature(sb.toString()));
+        }
+        return features;
+    }
+
+    private static Set<ObjectId> ids(List<RevFeature> features) {
+        Set<ObjectId> ids = Sets.newHashSet();
+        for (RevFeature feature : features) {
+            ids.add(feature.getId());
+        }
+        return ids;
+    }
+}
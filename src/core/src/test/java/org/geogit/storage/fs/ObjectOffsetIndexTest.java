@@ -0,0 +1,109 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.geogit.api.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObjectOffsetIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+
+    private ObjectOffsetIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(tempFolder.getRoot(), "objects.idx");
+        index = new ObjectOffsetIndex(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        ObjectId id = ObjectId.forString("object");
+        assertEquals(-1, index.get(id));
+
+        assertTrue(index.put(id, 0));
+        assertFalse(index.put(id, 10));
+        assertEquals(0, index.get(id));
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove(id));
+        assertFalse(index.remove(id));
+        assertEquals(-1, index.get(id));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testGrowAndReopen() throws Exception {
+        // enough entries to force the table to be rehashed a couple of times
+        final int count = 50000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(index.put(ObjectId.forString("object" + i), i * 10L));
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(index.remove(ObjectId.forString("object" + i)));
+        }
+        index.close();
+
+        index = new ObjectOffsetIndex(file);
+        assertEquals(count / 2, index.size());
+        for (int i = 0; i < count; i++) {
+            long expected = i % 2 == 0 ? -1 : i * 10L;
+            assertEquals(expected, index.get(ObjectId.forString("object" + i)));
+        }
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        final int count = 1000;
+        for (int i = 0; i < count; i++) {
+            index.put(ObjectId.forString("object" + i), i);
+        }
+        int all = 0;
+        for (Iterator<Entry<ObjectId, Long>> it = index.entries(0, 256); it.hasNext();) {
+            Entry<ObjectId, Long> entry = it.next();
+            assertEquals(index.get(entry.getKey()), entry.getValue().longValue());
+            all++;
+        }
+        assertEquals(count, all);
+
+        for (Iterator<Entry<ObjectId, Long>> it = index.entries(0x10, 0x20); it.hasNext();) {
+            int prefix = it.next().getKey().byteN(0);
+            assertTrue(prefix >= 0x10 && prefix < 0x20);
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        for (int i = 0; i < 20000; i++) {
+            index.put(ObjectId.forString("object" + i), i);
+        }
+        final long grownLength = file.length();
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.get(ObjectId.forString("object1")));
+        assertTrue(file.length() < grownLength);
+    }
+}
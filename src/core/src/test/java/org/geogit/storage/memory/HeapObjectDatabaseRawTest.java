@@ -0,0 +1,121 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.datastream.FormatCommon;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+public class HeapObjectDatabaseRawTest {
+
+    private ObjectDatabase source;
+
+    private ObjectDatabase target;
+
+    private RevCommit commit;
+
+    @Before
+    public void setUp() {
+        source = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        source.open();
+        target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+
+        source.put(RevTree.EMPTY);
+        CommitBuilder b = new CommitBuilder();
+        b.setAuthor("groldan");
+        b.setAuthorEmail("groldan@opengeo.org");
+        b.setCommitter("jdeolive");
+        b.setCommitterEmail("jdeolive@opengeo.org");
+        b.setMessage("cool this works");
+        b.setCommitterTimestamp(1000);
+        b.setTreeId(RevTree.EMPTY.getId());
+        commit = b.build();
+        source.put(commit);
+    }
+
+    @Test
+    public void testScanRanges() {
+        List<Entry<ObjectId, byte[]>> all = Lists.newArrayList(source.scanRaw(0, 256));
+        assertEquals(2, all.size());
+
+        int count = 0;
+        for (int prefix = 0; prefix < 256; prefix += 64) {
+            Iterator<Entry<ObjectId, byte[]>> range = source.scanRaw(prefix, prefix + 64);
+            while (range.hasNext()) {
+                int firstByte = range.next().getKey().byteN(0);
+                assertTrue(firstByte >= prefix && firstByte < prefix + 64);
+                count++;
+            }
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testPutAllRaw() {
+        for (Entry<ObjectId, byte[]> object : Lists.newArrayList(source.scanRaw(0, 256))) {
+            TYPE type = object.getKey().equals(commit.getId()) ? TYPE.COMMIT : TYPE.TREE;
+            assertEquals(type, FormatCommon.readType(object.getValue()));
+        }
+
+        assertEquals(2, target.putAllRaw(source.scanRaw(0, 256)));
+        assertEquals(commit, target.getCommit(commit.getId()));
+        assertEquals(RevTree.EMPTY, target.getTree(RevTree.EMPTY.getId()));
+
+        // objects already present are skipped
+        assertEquals(0, target.putAllRaw(source.scanRaw(0, 256)));
+        assertEquals(2, Iterators.size(target.scanRaw(0, 256)));
+    }
+
+    @Test
+    public void testGetAndPutRaw() {
+        byte[] raw = source.getRaw(commit.getId());
+        assertEquals(TYPE.COMMIT, FormatCommon.readType(raw));
+
+        assertTrue(target.putRaw(commit.getId(), raw));
+        assertFalse(target.putRaw(commit.getId(), raw));
+        assertEquals(commit, target.getCommit(commit.getId()));
+    }
+
+    @Test
+    public void testGetAllRawSkipsMissing() {
+        ObjectId missing = ObjectId.forString("missing");
+        List<Entry<ObjectId, byte[]>> objects = Lists.newArrayList(source.getAllRaw(ImmutableList
+                .of(commit.getId(), missing, RevTree.EMPTY.getId())));
+        assertEquals(2, objects.size());
+        assertEquals(commit.getId(), objects.get(0).getKey());
+        assertArrayEquals(source.getRaw(commit.getId()), objects.get(0).getValue());
+        assertEquals(RevTree.EMPTY.getId(), objects.get(1).getKey());
+    }
+
+    @Test
+    public void testMissing() {
+        ObjectId missing = ObjectId.forString("missing");
+        assertEquals(ImmutableSet.of(missing),
+                source.missing(ImmutableList.of(commit.getId(), missing, RevTree.EMPTY.getId())));
+        assertTrue(source.missing(ImmutableList.<ObjectId> of()).isEmpty());
+    }
+}
@@ -8,14 +8,21 @@ import java.util.Collection;
 import java.util.Map;
 
 import org.geogit.api.NodeRef;
+import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.porcelain.BlameOp;
 import org.geogit.api.porcelain.BlameReport;
+import org.geogit.api.porcelain.BranchCreateOp;
+import org.geogit.api.porcelain.CheckoutOp;
 import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.MergeOp;
 import org.geogit.api.porcelain.ValueAndCommit;
 import org.junit.Test;
 import org.opengis.feature.Feature;
 
+import com.google.common.base.Suppliers;
+
 public class BlameOpTest extends RepositoryTestCase {
 
     @Override
@@ -73,6 +80,31 @@ public class BlameOpTest extends RepositoryTestCase {
         assertEquals(points1.getProperty("pp").getValue(), changes.get("pp").value.get());
     }
 
+    @Test
+    public void testBlameChangedInAMergedBranch() throws Exception {
+        insertAndAdd(points1);
+        RevCommit firstCommit = geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        Feature pointsModified = feature(pointsType, idP1, "StringProp1_3", new Integer(1000),
+                "POINT(1 1)");
+        insertAndAdd(pointsModified);
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        insertAndAdd(points2);
+        geogit.command(CommitOp.class).call();
+        Ref branch1 = geogit.command(RefParse.class).setName("branch1").call().get();
+        geogit.command(MergeOp.class).addCommit(Suppliers.ofInstance(branch1.getObjectId()))
+                .call();
+
+        String path = NodeRef.appendChild(pointsName, idP1);
+        BlameReport report = geogit.command(BlameOp.class).setPath(path).call();
+        Map<String, ValueAndCommit> changes = report.getChanges();
+        assertEquals(3, changes.size());
+        assertEquals(branchCommit, changes.get("sp").commit);
+        assertEquals(firstCommit, changes.get("ip").commit);
+        assertEquals(firstCommit, changes.get("pp").commit);
+    }
+
     @Test
     public void testBlameWithWrongFeaturePath() throws Exception {
         insertAndAdd(points1);
@@ -24,9 +24,13 @@ import org.geogit.api.porcelain.BranchDeleteOp;
 import org.geogit.api.porcelain.CheckoutOp;
 import org.geogit.api.porcelain.CloneOp;
 import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.ConfigOp;
+import org.geogit.api.porcelain.ConfigOp.ConfigAction;
+import org.geogit.api.porcelain.ConfigOp.ConfigScope;
 import org.geogit.api.porcelain.LogOp;
 import org.geogit.api.porcelain.MergeOp;
 import org.geogit.api.porcelain.MergeOp.MergeReport;
+import org.geogit.api.porcelain.RemoteAddOp;
 import org.geogit.remote.RemoteRepositoryTestCase;
 import org.junit.Rule;
 import org.junit.Test;
@@ -298,6 +302,46 @@ public class CloneOpTest extends RemoteRepositoryTestCase {
         assertEquals(expectedMaster, logged);
     }
 
+    @Test
+    public void testResumeInterruptedClone() throws Exception {
+        List<Feature> features = Arrays.asList(points1, lines1, points2);
+        LinkedList<RevCommit> expected = new LinkedList<RevCommit>();
+        for (Feature f : features) {
+            insertAndAdd(remoteGeogit.geogit, f);
+            expected.addFirst(remoteGeogit.geogit.command(CommitOp.class).call());
+        }
+
+        // leave the local repository as a clone interrupted before fetching anything
+        final String url = remoteGeogit.envHome.getCanonicalPath();
+        localGeogit.geogit.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET)
+                .setScope(ConfigScope.LOCAL).setName(CloneOp.CLONE_URL_CONFIG_KEY).setValue(url)
+                .call();
+        localGeogit.geogit.command(RemoteAddOp.class).setName("origin").setURL(url).call();
+
+        CloneOp clone = clone();
+        clone.setRepositoryURL(url).call();
+
+        Iterator<RevCommit> logs = localGeogit.geogit.command(LogOp.class).call();
+        List<RevCommit> logged = new ArrayList<RevCommit>();
+        for (; logs.hasNext();) {
+            logged.add(logs.next());
+        }
+        assertEquals(expected, logged);
+        assertFalse(CloneOp.getInterruptedCloneURL(localGeogit.geogit.getRepository())
+                .isPresent());
+    }
+
+    @Test
+    public void testResumeInterruptedCloneFromOtherURL() throws Exception {
+        localGeogit.geogit.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET)
+                .setScope(ConfigScope.LOCAL).setName(CloneOp.CLONE_URL_CONFIG_KEY)
+                .setValue("http://example.com/repo").call();
+
+        CloneOp clone = clone();
+        exception.expect(IllegalStateException.class);
+        clone.setRepositoryURL(remoteGeogit.envHome.getCanonicalPath()).call();
+    }
+
     @Test
     public void testCloneEmptyRepo() throws Exception {
         CloneOp clone = clone();
@@ -0,0 +1,94 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.porcelain.ConfigOp;
+import org.geogit.api.porcelain.ConfigOp.ConfigAction;
+import org.geogit.remote.CommitNegotiation;
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+public class CommitNegotiationTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        repo.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET).setName("user.name")
+                .setValue("groldan").call();
+        repo.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET).setName("user.email")
+                .setValue("groldan@opengeo.org").call();
+    }
+
+    private List<String> respond(String request) throws Exception {
+        StringWriter response = new StringWriter();
+        new CommitNegotiation(repo).respond(new StringReader(request),
+                Predicates.<ObjectId> alwaysFalse(), response);
+        return Lists.newArrayList(Splitter.on('\n').omitEmptyStrings()
+                .split(response.toString()));
+    }
+
+    @Test
+    public void testWantStopsAtHave() throws Exception {
+        List<RevCommit> commits = populate(true, points1, points2, points3);
+        RevCommit c1 = commits.get(0);
+        RevCommit c2 = commits.get(1);
+        RevCommit c3 = commits.get(2);
+
+        List<String> lines = respond("{\"want\":[\"" + c3.getId() + "\"],\"have\":[\""
+                + c1.getId() + "\"]}");
+
+        assertEquals(2, lines.size());
+        assertEquals("commit " + c3.getId() + " " + c2.getId(), lines.get(0));
+        assertEquals("commit " + c2.getId() + " " + c1.getId(), lines.get(1));
+    }
+
+    @Test
+    public void testWantLimit() throws Exception {
+        List<RevCommit> commits = populate(true, points1, points2, points3);
+        RevCommit c2 = commits.get(1);
+        RevCommit c3 = commits.get(2);
+
+        List<String> lines = respond("{\"want\":[\"" + c3.getId() + "\"],\"limit\":1}");
+
+        assertEquals(1, lines.size());
+        assertEquals("commit " + c3.getId() + " " + c2.getId(), lines.get(0));
+    }
+
+    @Test
+    public void testWantDepth() throws Exception {
+        List<RevCommit> commits = populate(true, points1, points2, points3);
+        RevCommit c1 = commits.get(0);
+        RevCommit c2 = commits.get(1);
+        RevCommit c3 = commits.get(2);
+
+        List<String> lines = respond("{\"want\":[\"" + c3.getId() + "\"],\"depth\":2}");
+
+        assertEquals(2, lines.size());
+        assertEquals("commit " + c3.getId() + " " + c2.getId(), lines.get(0));
+        assertEquals("commit " + c2.getId() + " " + c1.getId(), lines.get(1));
+    }
+
+    @Test
+    public void testMissingAndQuery() throws Exception {
+        List<RevCommit> commits = populate(true, points1);
+        RevCommit c1 = commits.get(0);
+        ObjectId unknown = ObjectId.forString("unknown commit");
+
+        List<String> lines = respond("{\"want\":[\"" + unknown + "\"],\"query\":[\""
+                + c1.getId() + "\",\"" + unknown + "\"]}");
+
+        assertEquals(2, lines.size());
+        assertEquals("have " + c1.getId(), lines.get(0));
+        assertEquals("missing " + unknown, lines.get(1));
+    }
+}
@@ -25,9 +25,13 @@ import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.plumbing.BuildChangedPathsFilter;
+import org.geogit.api.plumbing.diff.ChangedPathsFilter;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.porcelain.AddOp;
 import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.ConfigOp;
+import org.geogit.api.porcelain.ConfigOp.ConfigAction;
 import org.geogit.api.porcelain.LogOp;
 import org.geogit.api.porcelain.NothingToCommitException;
 import org.geogit.repository.StagingArea;
@@ -731,4 +735,20 @@ public class CommitOpTest extends RepositoryTestCase {
         assertTrue(featureBlobId.isPresent());
     }
 
+    @Test
+    public void testChangedPathsFilterIsOptIn() throws Exception {
+        insertAndAdd(points1);
+        RevCommit commit = geogit.command(CommitOp.class).call();
+        assertFalse(ChangedPathsFilter.read(repo.getGraphDatabase(), commit.getId()).isPresent());
+
+        geogit.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET)
+                .setName(BuildChangedPathsFilter.ENABLED_CONFIG_KEY).setValue("true").call();
+        insertAndAdd(points2);
+        commit = geogit.command(CommitOp.class).call();
+        Optional<ChangedPathsFilter> filter = ChangedPathsFilter.read(repo.getGraphDatabase(),
+                commit.getId());
+        assertTrue(filter.isPresent());
+        assertTrue(filter.get().mightBeAffected(NodeRef.appendChild(pointsName, idP2)));
+    }
+
 }
@@ -226,6 +226,22 @@ public class LogOpTest extends RepositoryTestCase {
         logOp.setSkip(-1).call();
     }
 
+    @Test
+    public void testSkipAndLimit() throws Exception {
+        List<Feature> features = Arrays.asList(points1, lines1, points2, lines2, points3, lines3);
+        List<RevCommit> expected = new ArrayList<RevCommit>();
+        for (Feature f : features) {
+            insertAndAdd(f);
+            expected.add(0, geogit.command(CommitOp.class).call());
+        }
+
+        List<RevCommit> logged = Lists.newArrayList(logOp.setSkip(2).setLimit(3).call());
+        assertEquals(expected.subList(2, 5), logged);
+
+        logged = Lists.newArrayList(geogit.command(LogOp.class).setSkip(4).call());
+        assertEquals(expected.subList(4, 6), logged);
+    }
+
     @Test
     public void testTemporalConstraint() throws Exception {
 
@@ -419,6 +435,41 @@ public class LogOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testMergedHistoryLongerThanABatch() throws Exception {
+        // two interleaved lines of history long enough to be read in several batches
+        insertAndAdd(points1);
+        final RevCommit base = geogit.command(CommitOp.class).setCommitterTimestamp(1000L).call();
+        geogit.command(BranchCreateOp.class).setName("branch1").call();
+
+        LinkedList<RevCommit> expected = new LinkedList<RevCommit>();
+        List<RevCommit> branchCommits = Lists.newArrayList();
+        for (int i = 1; i <= 150; i++) {
+            expected.addFirst(geogit.command(CommitOp.class).setAllowEmpty(true)
+                    .setCommitterTimestamp(Long.valueOf(1000 + 2 * i)).call());
+        }
+        geogit.command(CheckoutOp.class).setSource("branch1").call();
+        for (int i = 1; i <= 150; i++) {
+            branchCommits.add(geogit.command(CommitOp.class).setAllowEmpty(true)
+                    .setCommitterTimestamp(Long.valueOf(1001 + 2 * i)).call());
+        }
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        for (int i = branchCommits.size() - 1; i >= 0; i--) {
+            expected.add(2 * (branchCommits.size() - 1 - i), branchCommits.get(i));
+        }
+        expected.add(base);
+
+        Ref branch1 = geogit.command(RefParse.class).setName("branch1").call().get();
+        MergeReport mergeReport = geogit.command(MergeOp.class)
+                .addCommit(Suppliers.ofInstance(branch1.getObjectId())).call();
+        expected.addFirst(mergeReport.getMergeCommit());
+
+        assertEquals(expected, toList(logOp.call()));
+        assertEquals(expected.subList(120, 170),
+                toList(geogit.command(LogOp.class).setSkip(120).setLimit(50).call()));
+        assertEquals(302, Iterators.size(geogit.command(LogOp.class).setTopoOrder(true).call()));
+    }
+
     @Test
     public void testAll() throws Exception {
         // Create the following revision graph
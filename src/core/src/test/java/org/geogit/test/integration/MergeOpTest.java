@@ -9,6 +9,7 @@ import static org.geogit.api.NodeRef.appendChild;
 import java.util.Iterator;
 import java.util.List;
 
+import org.geogit.api.GeogitTransaction;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
@@ -19,10 +20,13 @@ import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.api.plumbing.TransactionBegin;
+import org.geogit.api.plumbing.TransactionEnd;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.merge.Conflict;
 import org.geogit.api.plumbing.merge.ConflictsReadOp;
+import org.geogit.api.plumbing.merge.MergeScenarioConsumer;
 import org.geogit.api.plumbing.merge.ReadMergeCommitMessageOp;
 import org.geogit.api.porcelain.AddOp;
 import org.geogit.api.porcelain.BranchCreateOp;
@@ -45,6 +49,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
 
 public class MergeOpTest extends RepositoryTestCase {
     @Rule
@@ -675,6 +680,59 @@ public class MergeOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testMergeConflictingBranchesInTransaction() throws Exception {
+        insertAndAdd(points1, points2);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        Feature points1Modified = feature(pointsType, idP1, "StringProp1_2", new Integer(1000),
+                "POINT(1 1)");
+        insert(points1Modified);
+        delete(points2);
+        geogit.command(AddOp.class).call();
+        geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+        Feature points1ModifiedB = feature(pointsType, idP1, "StringProp1_3", new Integer(2000),
+                "POINT(1 1)");
+        insert(points1ModifiedB);
+        insert(points3);
+        geogit.command(AddOp.class).call();
+        geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        Ref branch = geogit.command(RefParse.class).setName("TestBranch").call().get();
+
+        GeogitTransaction t = geogit.command(TransactionBegin.class).call();
+        final List<Conflict> reported = Lists.newArrayList();
+        try {
+            t.command(MergeOp.class).addCommit(Suppliers.ofInstance(branch.getObjectId()))
+                    .setConsumer(new MergeScenarioConsumer() {
+                        @Override
+                        public void conflicted(Conflict conflict) {
+                            reported.add(conflict);
+                        }
+                    }).call();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("conflict"));
+        }
+
+        List<Conflict> conflicts = t.command(ConflictsReadOp.class).call();
+        assertEquals(1, conflicts.size());
+        assertEquals(NodeRef.appendChild(pointsName, idP1), conflicts.get(0).getPath());
+        assertEquals(conflicts, reported);
+        assertTrue(t.command(RefParse.class).setName(Ref.MERGE_HEAD).call().isPresent());
+
+        // the unconflicted changes have been staged in the transaction
+        String path = NodeRef.appendChild(pointsName, idP3);
+        assertTrue(t.command(RevObjectParse.class).setRefSpec(Ref.STAGE_HEAD + ":" + path)
+                .call(RevFeature.class).isPresent());
+
+        // and nothing leaked into the repository
+        assertTrue(geogit.command(ConflictsReadOp.class).call().isEmpty());
+        assertFalse(geogit.command(RefParse.class).setName(Ref.MERGE_HEAD).call().isPresent());
+        geogit.command(TransactionEnd.class).setCancel(true).setTransaction(t).call();
+    }
+
     @Test
     public void testConflictingOctopusMerge() throws Exception {
         // Create the following revision graph
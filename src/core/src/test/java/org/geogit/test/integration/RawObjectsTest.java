@@ -0,0 +1,98 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.StagingDatabase;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.datastream.FormatCommon;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+public class RawObjectsTest extends RepositoryTestCase {
+
+    private ObjectDatabase objects;
+
+    private StagingDatabase index;
+
+    private RevFeature feature;
+
+    private RevFeatureType featureType;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        objects = geogit.getRepository().getObjectDatabase();
+        index = geogit.getRepository().getIndex().getDatabase();
+        feature = new RevFeatureBuilder().build(points1);
+        featureType = RevFeatureType.build(pointsType);
+    }
+
+    @Test
+    public void testGetAndPutRaw() {
+        index.put(feature);
+        byte[] raw = index.getRaw(feature.getId());
+        assertEquals(TYPE.FEATURE, FormatCommon.readType(raw));
+
+        assertFalse(objects.exists(feature.getId()));
+        assertTrue(objects.putRaw(feature.getId(), raw));
+        assertFalse(objects.putRaw(feature.getId(), raw));
+        assertEquals(feature, objects.getFeature(feature.getId()));
+        assertArrayEquals(raw, objects.getRaw(feature.getId()));
+    }
+
+    @Test
+    public void testPutRawToIndexSkipsRepositoryObjects() throws Exception {
+        objects.put(featureType);
+        byte[] raw = objects.getRaw(featureType.getId());
+
+        assertFalse(index.putRaw(featureType.getId(), raw));
+        assertArrayEquals(raw, index.getRaw(featureType.getId()));
+
+        assertTrue(index.putRaw(feature.getId(), rawOf(feature)));
+        assertEquals(feature, index.getFeature(feature.getId()));
+        assertFalse(objects.exists(feature.getId()));
+    }
+
+    @Test
+    public void testGetAllRaw() {
+        index.put(feature);
+        objects.put(featureType);
+        ObjectId missing = ObjectId.forString("missing");
+
+        Map<ObjectId, byte[]> found = Maps.newHashMap();
+        for (Entry<ObjectId, byte[]> object : toList(index.getAllRaw(ImmutableList.of(
+                feature.getId(), missing, featureType.getId())))) {
+            found.put(object.getKey(), object.getValue());
+        }
+        assertEquals(2, found.size());
+        assertArrayEquals(index.getRaw(feature.getId()), found.get(feature.getId()));
+        assertArrayEquals(objects.getRaw(featureType.getId()), found.get(featureType.getId()));
+
+        assertFalse(objects.getAllRaw(ImmutableList.of(feature.getId(), missing)).hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetRawMissing() {
+        objects.getRaw(ObjectId.forString("missing"));
+    }
+
+    private byte[] rawOf(RevFeature feature) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DataStreamSerializationFactory().createObjectWriter(TYPE.FEATURE).write(feature, out);
+        return out.toByteArray();
+    }
+}
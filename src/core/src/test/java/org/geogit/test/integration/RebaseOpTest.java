@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
@@ -161,6 +162,63 @@ public class RebaseOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testRebaseChangesOnReplayedCommits() throws Exception {
+        // Create the following revision graph
+        // o - master - Points 1 added
+        // |\
+        // | o - branch1 - Points 2 added
+        // |
+        // o - Points 3 added
+        // |
+        // o - Points 1 modified, Lines 1 added
+        // |
+        // o - branch2 - HEAD - Points 3 removed
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).setMessage("commit for " + idP1).call();
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        insertAndAdd(points2);
+        geogit.command(CommitOp.class).setMessage("commit for " + idP2).call();
+
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch2").call();
+        insertAndAdd(points3);
+        geogit.command(CommitOp.class).setMessage("commit for " + idP3).call();
+        insertAndAdd(points1_modified, lines1);
+        geogit.command(CommitOp.class).setMessage("commit for " + idP1 + " and " + idL1).call();
+        deleteAndAdd(points3);
+        geogit.command(CommitOp.class).setMessage("remove " + idP3).call();
+
+        Ref branch1 = geogit.command(RefParse.class).setName("branch1").call().get();
+        geogit.command(RebaseOp.class).setUpstream(Suppliers.ofInstance(branch1.getObjectId()))
+                .call();
+
+        // each replayed commit builds on the changes of the previous one
+        List<RevCommit> log = toList(geogit.command(LogOp.class).call());
+        assertEquals(5, log.size());
+        assertEquals(branch1.getObjectId(), log.get(3).getId());
+        assertEquals(log.get(1).getId(), log.get(0).getParentIds().get(0));
+
+        Optional<RevFeature> points = geogit.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(pointsName, idP1))
+                .call(RevFeature.class);
+        assertEquals(new RevFeatureBuilder().build(points1_modified), points.get());
+        assertTrue(geogit.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(pointsName, idP2)).call()
+                .isPresent());
+        assertTrue(geogit.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(linesName, idL1)).call()
+                .isPresent());
+        assertFalse(geogit.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(pointsName, idP3)).call()
+                .isPresent());
+
+        // the index and the working tree are left at the last replayed commit
+        final ObjectId headTreeId = log.get(0).getTreeId();
+        assertEquals(headTreeId, repo.getIndex().getTree().getId());
+        assertEquals(headTreeId, repo.getWorkingTree().getTree().getId());
+    }
+
     @Test
     public void testRebaseSquash() throws Exception {
         // Create the following revision graph
@@ -115,6 +115,46 @@ public class RebuildGraphOpTest extends RepositoryTestCase {
         assertFalse(updated.contains(c4.getId()));
     }
 
+    @Test
+    public void testRebuildGraphMissingHistoryBehindPresentCommit() throws Exception {
+        // Create the following revision graph
+        // o
+        // |
+        // o - Points 1 added
+        // |
+        // o - Points 2 added
+        // |
+        // o - master - HEAD - Points 3 added
+        insertAndAdd(points1);
+        final RevCommit c1 = geogit.command(CommitOp.class).setMessage("commit for " + idP1).call();
+        insertAndAdd(points2);
+        final RevCommit c2 = geogit.command(CommitOp.class).setMessage("commit for " + idP2).call();
+
+        // Delete the graph
+        database.truncate();
+        database.close();
+        database.open();
+
+        // the new commit adds itself and an empty node for its parent to the graph, which holds
+        // nothing of the parent's history
+        insertAndAdd(points3);
+        final RevCommit c3 = geogit.command(CommitOp.class).setMessage("commit for " + idP3).call();
+        assertFalse(database.getParents(c3.getId()).isEmpty());
+        assertTrue(database.getParents(c2.getId()).isEmpty());
+
+        // Rebuild the graph
+        ImmutableList<ObjectId> updated = geogit.command(RebuildGraphOp.class).call();
+        assertEquals(2, updated.size());
+        assertTrue(updated.contains(c1.getId()));
+        assertTrue(updated.contains(c2.getId()));
+        assertEquals(ImmutableList.of(c1.getId()), database.getParents(c2.getId()));
+        assertTrue(database.getProperty(c3.getId(), GraphDatabase.COMPLETE_FLAG).isPresent());
+
+        // the next rebuild stops at the complete tip
+        updated = geogit.command(RebuildGraphOp.class).call();
+        assertTrue(updated.isEmpty());
+    }
+
     @Test
     public void testRebuildGraphWithNoErrors() throws Exception {
         // Create the following revision graph
@@ -146,4 +186,45 @@ public class RebuildGraphOpTest extends RepositoryTestCase {
         ImmutableList<ObjectId> updated = geogit.command(RebuildGraphOp.class).call();
         assertEquals(0, updated.size());
     }
+
+    @Test
+    public void testRebuildGraphFromTip() throws Exception {
+        // Create the following revision graph
+        // o
+        // |
+        // o - Points 1 added
+        // |\
+        // | o - branch1 - Points 2 added
+        // |
+        // o - master - HEAD - Points 3 added
+        insertAndAdd(points1);
+        final RevCommit c1 = geogit.command(CommitOp.class).setMessage("commit for " + idP1).call();
+
+        // create branch1 and checkout
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        insertAndAdd(points2);
+        final RevCommit c2 = geogit.command(CommitOp.class).setMessage("commit for " + idP2).call();
+
+        // checkout master
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        insertAndAdd(points3);
+        final RevCommit c3 = geogit.command(CommitOp.class).setMessage("commit for " + idP3).call();
+
+        // Delete the graph
+        database.truncate();
+        database.close();
+        database.open();
+
+        // Rebuild only the history of master
+        ImmutableList<ObjectId> updated = geogit.command(RebuildGraphOp.class)
+                .addTip(c3.getId()).call();
+        assertEquals(2, updated.size());
+        assertTrue(updated.contains(c1.getId()));
+        assertTrue(updated.contains(c3.getId()));
+
+        // Rebuilding the rest stops at the already complete history
+        updated = geogit.command(RebuildGraphOp.class).call();
+        assertEquals(1, updated.size());
+        assertTrue(updated.contains(c2.getId()));
+    }
 }
@@ -4,8 +4,17 @@
  */
 package org.geogit.test.integration;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.merge.CheckMergeScenarioOp;
+import org.geogit.api.plumbing.merge.Conflict;
+import org.geogit.api.plumbing.merge.MergeScenarioConsumer;
 import org.geogit.api.plumbing.merge.MergeScenarioReport;
 import org.geogit.api.plumbing.merge.ReportMergeScenarioOp;
 import org.geogit.api.porcelain.AddOp;
@@ -181,6 +190,102 @@ public class ReportMergeConflictsOpTest extends RepositoryTestCase {
         assertTrue(hasConflicts.booleanValue());
     }
 
+    @Test
+    public void testRemovedTreeModifiedInOtherBranch() throws Exception {
+        insertAndAdd(points1, points2);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        geogit.command(RemoveOp.class).addPathToRemove(pointsName).call();
+        geogit.command(AddOp.class).call();
+        RevCommit masterCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+        Feature points1Modified = feature(pointsType, idP1, "StringProp1_2", new Integer(1000),
+                "POINT(1 1)");
+        insertAndAdd(points1Modified, points3);
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+
+        MergeScenarioReport report = geogit.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit).call();
+        List<Conflict> conflicts = report.getConflicts();
+        assertEquals(2, conflicts.size());
+        assertEquals(pointsName, conflicts.get(0).getPath());
+        assertEquals(ObjectId.NULL, conflicts.get(0).getOurs());
+        assertEquals(NodeRef.appendChild(pointsName, idP1), conflicts.get(1).getPath());
+        assertEquals(1, report.getUnconflicted().size());
+        assertEquals(NodeRef.appendChild(pointsName, idP3), report.getUnconflicted().get(0)
+                .newPath());
+        Boolean hasConflicts = geogit.command(CheckMergeScenarioOp.class)
+                .setCommits(Lists.newArrayList(masterCommit, branchCommit)).call();
+        assertTrue(hasConflicts.booleanValue());
+    }
+
+    @Test
+    public void testConsumer() throws Exception {
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        insertAndAdd(points2);
+        RevCommit masterCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+
+        geogit.command(RemoveOp.class).addPathToRemove(pointsName).call();
+        geogit.command(AddOp.class).call();
+
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+        final List<Conflict> conflicted = Lists.newArrayList();
+        final List<DiffEntry> unconflicted = Lists.newArrayList();
+        final AtomicBoolean finished = new AtomicBoolean();
+        MergeScenarioReport report = geogit.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit)
+                .setConsumer(new MergeScenarioConsumer() {
+                    @Override
+                    public void conflicted(Conflict conflict) {
+                        conflicted.add(conflict);
+                    }
+
+                    @Override
+                    public void unconflicted(DiffEntry diff) {
+                        unconflicted.add(diff);
+                    }
+
+                    @Override
+                    public void finished() {
+                        finished.set(true);
+                    }
+                }).call();
+        assertEquals(1, conflicted.size());
+        assertEquals(pointsName, conflicted.get(0).getPath());
+        assertEquals(1, unconflicted.size());
+        assertTrue(finished.get());
+        assertEquals(0, report.getConflicts().size());
+        assertEquals(0, report.getUnconflicted().size());
+    }
+
+    @Test
+    public void testReportWholeTrees() throws Exception {
+        insertAndAdd(points1, lines1);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        insertAndAdd(points2);
+        RevCommit masterCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+        insertAndAdd(lines2, lines3);
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+
+        MergeScenarioReport report = geogit.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit).call();
+        assertEquals(0, report.getConflicts().size());
+        assertEquals(2, report.getUnconflicted().size());
+
+        report = geogit.command(ReportMergeScenarioOp.class).setMergeIntoCommit(masterCommit)
+                .setToMergeCommit(branchCommit).setReportWholeTrees(true).call();
+        assertEquals(0, report.getConflicts().size());
+        assertEquals(1, report.getUnconflicted().size());
+        DiffEntry treeChange = report.getUnconflicted().get(0);
+        assertEquals(linesName, treeChange.newPath());
+        assertEquals(TYPE.TREE, treeChange.getNewObject().getType());
+    }
+
     @Test
     public void testAddedDifferentFeatures() throws Exception {
         insertAndAdd(points1);
@@ -295,6 +400,32 @@ public class ReportMergeConflictsOpTest extends RepositoryTestCase {
         assertTrue(hasConflicts.booleanValue());
     }
 
+    @Test
+    public void testModifiedDefaultFeatureTypeInOneBranchEditedFeatureInTheOther()
+            throws Exception {
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        insertAndAdd(points1_modified);
+        RevCommit masterCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+        geogit.getRepository().getWorkingTree().updateTypeTree(pointsName, modifiedPointsType);
+        geogit.command(AddOp.class).call();
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+
+        MergeScenarioReport conflicts = geogit.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit).call();
+        // the tree can't be taken from either branch without losing the other one's change
+        List<String> conflictPaths = Lists.newArrayList();
+        for (Conflict conflict : conflicts.getConflicts()) {
+            conflictPaths.add(conflict.getPath());
+        }
+        assertTrue(conflictPaths.contains(pointsName));
+        for (DiffEntry unconflicted : conflicts.getUnconflicted()) {
+            assertFalse(pointsName.equals(unconflicted.newPath()));
+        }
+    }
+
     @Test
     public void testModifiedFeatureTypeInOneBranch() throws Exception {
         insertAndAdd(points1);
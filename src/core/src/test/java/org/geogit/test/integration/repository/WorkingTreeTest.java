@@ -81,6 +81,29 @@ public class WorkingTreeTest extends RepositoryTestCase {
                 .getObjectId());
     }
 
+    @Test
+    public void testInsertCollectionSeveralBatches() throws Exception {
+        final int count = 2500;
+        List<Feature> featureList = new LinkedList<Feature>();
+        for (int i = 0; i < count; i++) {
+            featureList.add(feature(pointsType, "Points." + i, "StringProp1_" + i,
+                    Integer.valueOf(i), "POINT(" + i + " " + i + ")"));
+        }
+
+        List<Node> targetList = new LinkedList<Node>();
+        workTree.insert(pointsName, featureList.iterator(), LISTENER, targetList, count);
+
+        assertEquals(count, targetList.size());
+        // nodes are reported in the same order the features were provided
+        for (int i = 0; i < count; i++) {
+            assertEquals("Points." + i, targetList.get(i).getName());
+        }
+        assertEquals(count, workTree.getTree().size());
+        Node last = targetList.get(count - 1);
+        assertEquals(last.getObjectId(),
+                workTree.findUnstaged(appendChild(pointsName, last.getName())).get().getObjectId());
+    }
+
     @Test
     public void testInsertCollectionNullCollectionSize() throws Exception {
         List<Feature> featureList = new LinkedList<Feature>();
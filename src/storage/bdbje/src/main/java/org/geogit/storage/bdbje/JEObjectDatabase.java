@@ -18,8 +18,11 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -46,6 +49,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.UnmodifiableIterator;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
@@ -247,6 +251,38 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         return SUCCESS == status;
     }
 
+    /**
+     * Looks up the keys in sorted order with a single cursor, without retrieving the data.
+     */
+    @Override
+    public Set<ObjectId> missing(final Iterable<ObjectId> ids) {
+        Preconditions.checkNotNull(ids, "ids");
+
+        CursorConfig cursorConfig = new CursorConfig();
+        cursorConfig.setReadUncommitted(true);
+        Transaction transaction = txn == null ? null : txn.getTransaction();
+        Cursor cursor = objectDb.openCursor(transaction, cursorConfig);
+
+        Set<ObjectId> missing = new HashSet<ObjectId>();
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry data = new DatabaseEntry();
+            // tell db not to retrieve data
+            data.setPartial(0, 0, true);
+            for (ObjectId id : ObjectId.NATURAL_ORDER.sortedCopy(ids)) {
+                key.setData(id.getRawValue());
+                OperationStatus status = cursor.getSearchKey(key, data,
+                        LockMode.READ_UNCOMMITTED);
+                if (!SUCCESS.equals(status)) {
+                    missing.add(id);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return missing;
+    }
+
     @Override
     protected InputStream getRawInternal(final ObjectId id, final boolean failIfNotFound) {
         Preconditions.checkNotNull(id, "id");
@@ -383,6 +419,92 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         }
     }
 
+    @Override
+    protected Iterator<Entry<ObjectId, byte[]>> scanInternal(final int fromPrefix,
+            final int toPrefix) {
+        Transaction transaction = txn == null ? null : txn.getTransaction();
+        final Cursor cursor = objectDb.openCursor(transaction, CursorConfig.READ_UNCOMMITTED);
+        return new AbstractIterator<Entry<ObjectId, byte[]>>() {
+
+            private final DatabaseEntry key = new DatabaseEntry(new byte[] { (byte) fromPrefix });
+
+            private final DatabaseEntry data = new DatabaseEntry();
+
+            private boolean positioned;
+
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                OperationStatus status;
+                try {
+                    if (positioned) {
+                        status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+                    } else {
+                        // position cursor at the first key of the range
+                        positioned = true;
+                        status = cursor.getSearchKeyRange(key, data, LockMode.READ_UNCOMMITTED);
+                    }
+                } catch (RuntimeException e) {
+                    cursor.close();
+                    throw e;
+                }
+                if (!SUCCESS.equals(status) || (key.getData()[0] & 0xFF) >= toPrefix) {
+                    cursor.close();
+                    return endOfData();
+                }
+                byte[] stored = Arrays.copyOfRange(data.getData(), data.getOffset(),
+                        data.getOffset() + data.getSize());
+                return Maps.immutableEntry(new ObjectId(key.getData()), stored);
+            }
+        };
+    }
+
+    /**
+     * Inserts the objects in batches, each one in its own transaction if the database is
+     * transactional and there's no transaction in progress.
+     */
+    @Override
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects) {
+        long inserted = 0;
+        UnmodifiableIterator<List<Entry<ObjectId, byte[]>>> partitions = partition(objects, 500);
+        while (partitions.hasNext()) {
+            inserted += putAllRaw(partitions.next());
+        }
+        return inserted;
+    }
+
+    private long putAllRaw(List<Entry<ObjectId, byte[]>> partition) {
+        final boolean transactional = objectDb.getConfig().getTransactional();
+        Transaction transaction = txn == null ? null : txn.getTransaction();
+        final boolean handleTx = transactional && transaction == null;
+        if (handleTx) {
+            transaction = txn.beginTransaction(TransactionConfig.DEFAULT);
+        }
+        long inserted = 0;
+        Cursor cursor = objectDb.openCursor(transaction, CursorConfig.READ_UNCOMMITTED);
+        try {
+            for (Entry<ObjectId, byte[]> object : partition) {
+                DatabaseEntry key = new DatabaseEntry(object.getKey().getRawValue());
+                DatabaseEntry data = new DatabaseEntry(compress(object.getValue()));
+                if (SUCCESS.equals(cursor.putNoOverwrite(key, data))) {
+                    inserted++;
+                }
+            }
+            cursor.close();
+            cursor = null;
+            if (handleTx) {
+                txn.commitTransaction();
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+                if (handleTx) {
+                    txn.abortTransaction();
+                }
+            }
+        }
+        return inserted;
+    }
+
     @Override
     protected boolean putInternal(final ObjectId id, final byte[] rawData) {
         OperationStatus status;
@@ -503,6 +625,84 @@ public class JEObjectDatabase extends AbstractObjectDatabase implements ObjectDa
         return allObjectsFound;
     }
 
+    /**
+     * Looks up the objects in sorted batches with a cursor, as {@link #getAll(Iterable)} does.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(final Iterable<ObjectId> ids) {
+        Preconditions.checkNotNull(ids, "ids");
+
+        final int partitionSize = 1000 * 10;
+        final Iterator<List<ObjectId>> partitions = partition(ids.iterator(), partitionSize);
+
+        Function<List<ObjectId>, Iterator<Entry<ObjectId, byte[]>>> idsToRawCursor = new Function<List<ObjectId>, Iterator<Entry<ObjectId, byte[]>>>() {
+            @Override
+            public Iterator<Entry<ObjectId, byte[]>> apply(List<ObjectId> ids) {
+
+                CursorConfig cursorConfig = new CursorConfig();
+                cursorConfig.setReadUncommitted(true);
+
+                Transaction transaction = txn == null ? null : txn.getTransaction();
+                Cursor cursor = objectDb.openCursor(transaction, cursorConfig);
+
+                return new CursorRawIterator(cursor, ids);
+            }
+        };
+
+        return concat(transform(partitions, idsToRawCursor));
+    }
+
+    private class CursorRawIterator extends AbstractIterator<Entry<ObjectId, byte[]>> implements
+            Closeable {
+
+        private Cursor cursor;
+
+        private Iterator<ObjectId> sortedIds;
+
+        public CursorRawIterator(Cursor cursor, Iterable<ObjectId> unsortedIds) {
+            this.sortedIds = ObjectId.NATURAL_ORDER.sortedCopy(unsortedIds).iterator();
+            this.cursor = cursor;
+        }
+
+        @Override
+        protected Entry<ObjectId, byte[]> computeNext() {
+            try {
+                byte[] keyBuff = new byte[ObjectId.NUM_BYTES];
+                DatabaseEntry key = new DatabaseEntry(keyBuff);
+                while (sortedIds.hasNext()) {
+                    ObjectId id = sortedIds.next();
+                    id.getRawValue(keyBuff);
+                    key.setData(keyBuff);
+
+                    DatabaseEntry data = new DatabaseEntry();
+                    OperationStatus status;
+                    status = cursor.getSearchKey(key, data, LockMode.READ_UNCOMMITTED);
+                    if (SUCCESS.equals(status)) {
+                        return Maps.immutableEntry(id, uncompress(data.getData()));
+                    }
+                }
+                close();
+                return endOfData();
+            } catch (Exception e) {
+                try {
+                    throw Throwables.propagate(e);
+                } finally {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            sortedIds = null;
+            Cursor cursor = this.cursor;
+            this.cursor = null;
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     private class CursorRevObjectIterator extends AbstractIterator<RevObject> implements Closeable {
 
         private final ObjectReader<RevObject> reader = serializationFactory.createObjectReader();
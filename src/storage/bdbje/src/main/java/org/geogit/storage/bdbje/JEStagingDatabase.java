@@ -4,11 +4,16 @@
  */
 package org.geogit.storage.bdbje;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -24,16 +29,26 @@ import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
-import com.google.common.io.LineProcessor;
 import com.google.inject.Inject;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.je.TransactionConfig;
 
 /**
  * The Index (or Staging Area) object database.
@@ -56,14 +71,41 @@ import com.sleepycat.je.Environment;
  * <p>
  * A diff operation between the repository root tree and the index staged root tree results in the
  * list of staged objects.
+ * <p>
+ * Conflicts are stored in a separate database of the staging environment, keyed by namespace and
+ * path, so that single conflicts are looked up, added and removed without touching the rest, and
+ * the conflicts of a namespace or under a path are found with a range scan.
  * 
  */
 public class JEStagingDatabase extends ForwardingStagingDatabase {
 
+    private static final String DEFAULT_NAMESPACE = "conflicts";
+
+    /**
+     * Number of conflicts written or deleted per transaction, and read per cursor when iterating
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Separates the namespace from the path in the conflict keys, so that the conflicts of a
+     * namespace are never mistaken by those of another one whose name starts with it
+     */
+    private static final char KEY_SEPARATOR = '\0';
+
     private Platform platform;
 
     private ConfigDatabase configDB;
 
+    private final Supplier<Environment> environment;
+
+    @Nullable
+    private Database conflictsDb;
+
+    /**
+     * Namespaces already checked for a conflicts file left by previous versions
+     */
+    private final Set<String> migratedNamespaces = Sets.newHashSet();
+
     /**
      * @param referenceDatabase the repository reference database, used to get the head re
      * @param repoDb
@@ -73,34 +115,71 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
     public JEStagingDatabase(final ObjectSerializingFactory sfac,
             final ObjectDatabase repositoryDb, final EnvironmentBuilder envBuilder,
             final Platform platform, final ConfigDatabase configDB) {
+        this(sfac, repositoryDb, environmentSupplier(envBuilder), platform, configDB);
+    }
+
+    private JEStagingDatabase(final ObjectSerializingFactory sfac,
+            final ObjectDatabase repositoryDb, final Supplier<Environment> environment,
+            final Platform platform, final ConfigDatabase configDB) {
 
-        super(Suppliers.ofInstance(repositoryDb), stagingDbSupplier(sfac, envBuilder));
+        super(Suppliers.ofInstance(repositoryDb), stagingDbSupplier(sfac, environment));
 
+        this.environment = environment;
         this.platform = platform;
         this.configDB = configDB;
     }
 
+    private static Supplier<Environment> environmentSupplier(final EnvironmentBuilder envProvider) {
+        return Suppliers.memoize(new Supplier<Environment>() {
+
+            @Override
+            public Environment get() {
+                envProvider.setRelativePath("index");
+                envProvider.setIsStagingDatabase(true);
+                return envProvider.get();
+            }
+        });
+    }
+
     private static Supplier<JEObjectDatabase> stagingDbSupplier(
-            final ObjectSerializingFactory sfac, final EnvironmentBuilder envProvider) {
+            final ObjectSerializingFactory sfac, final Supplier<Environment> environment) {
 
         return Suppliers.memoize(new Supplier<JEObjectDatabase>() {
 
             @Override
             public JEObjectDatabase get() {
-                envProvider.setRelativePath("index");
-                envProvider.setIsStagingDatabase(true);
-                Environment env = envProvider.get();
+                Environment env = environment.get();
                 JEObjectDatabase db = new JEObjectDatabase(sfac, env);
                 return db;
             }
         });
     }
 
-    // TODO:
-    // *****************************************************************************************
-    // The following methods are a temporary implementation of conflict storage that relies on a
-    // conflict file in the index folder
-    // *****************************************************************************************
+    @Override
+    public synchronized void open() {
+        super.open();
+        if (conflictsDb == null) {
+            Environment env = environment.get();
+            boolean transactional = env.getConfig().getTransactional();
+            DatabaseConfig dbConfig = new DatabaseConfig();
+            dbConfig.setAllowCreate(true);
+            dbConfig.setTransactional(transactional);
+            dbConfig.setDeferredWrite(!transactional);
+            conflictsDb = env.openDatabase(null, "ConflictsDatabase", dbConfig);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (conflictsDb != null) {
+            conflictsDb.close();
+            conflictsDb = null;
+        }
+        synchronized (migratedNamespaces) {
+            migratedNamespaces.clear();
+        }
+        super.close();
+    }
 
     /**
      * Gets all conflicts that match the specified path filter.
@@ -110,40 +189,95 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      * @return the list of conflicts
      */
     @Override
-    public List<Conflict> getConflicts(@Nullable String namespace, final String pathFilter) {
-        Optional<File> conflictsFile = findOrCreateConflictsFile(namespace);
-        if (!conflictsFile.isPresent()) {
+    public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter) {
+        final Database db = conflictsDb(namespace);
+        if (db == null) {
             return ImmutableList.of();
         }
-        File file = conflictsFile.get();
+        final byte[] prefix = key(namespace, pathFilter == null ? "" : pathFilter);
         List<Conflict> conflicts = Lists.newArrayList();
+        scan(db, prefix, null, Integer.MAX_VALUE, conflicts);
+        return conflicts;
+    }
+
+    /**
+     * Gets all conflicts that match the specified path filter. The conflicts are read a page at a
+     * time, each page with a short lived cursor, so the iterator holds no database resources
+     * between calls and can be abandoned at any point.
+     * 
+     * @param namespace the namespace of the conflict
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be returned
+     * @return an iterator over the conflicts
+     */
+    @Override
+    public Iterator<Conflict> iterateConflicts(@Nullable final String namespace,
+            @Nullable final String pathFilter) {
+        final Database db = conflictsDb(namespace);
+        if (db == null) {
+            return Iterators.emptyIterator();
+        }
+        final byte[] prefix = key(namespace, pathFilter == null ? "" : pathFilter);
+        return new AbstractIterator<Conflict>() {
+
+            private List<Conflict> page = Lists.newArrayListWithCapacity(BATCH_SIZE);
+
+            private Iterator<Conflict> pageIterator = Iterators.emptyIterator();
+
+            private byte[] lastKey;
+
+            private boolean exhausted;
+
+            @Override
+            protected Conflict computeNext() {
+                if (!pageIterator.hasNext()) {
+                    if (exhausted) {
+                        return endOfData();
+                    }
+                    page.clear();
+                    lastKey = scan(db, prefix, lastKey, BATCH_SIZE, page);
+                    exhausted = lastKey == null;
+                    pageIterator = page.iterator();
+                    if (!pageIterator.hasNext()) {
+                        return endOfData();
+                    }
+                }
+                return pageIterator.next();
+            }
+        };
+    }
+
+    /**
+     * Reads up to {@code limit} conflicts whose keys start with {@code prefix}, in key order.
+     * 
+     * @param after the key to resume the scan after, or {@code null} to start at the prefix
+     * @return the key of the last conflict read if the limit was reached, or {@code null} if there
+     *         are no more conflicts
+     */
+    @Nullable
+    private byte[] scan(Database db, byte[] prefix, @Nullable byte[] after, int limit,
+            List<Conflict> target) {
+        DatabaseEntry key = new DatabaseEntry(after == null ? prefix : after);
+        DatabaseEntry data = new DatabaseEntry();
+        Cursor cursor = db.openCursor(null, CursorConfig.READ_UNCOMMITTED);
         try {
-            synchronized (file.getCanonicalPath().intern()) {
-                conflicts = Files.readLines(file, Charsets.UTF_8,
-                        new LineProcessor<List<Conflict>>() {
-                            List<Conflict> conflicts = Lists.newArrayList();
-
-                            @Override
-                            public List<Conflict> getResult() {
-                                return conflicts;
-                            }
-
-                            @Override
-                            public boolean processLine(String s) throws IOException {
-                                Conflict c = Conflict.valueOf(s);
-                                if (pathFilter == null) {
-                                    conflicts.add(c);
-                                } else if (c.getPath().startsWith(pathFilter)) {
-                                    conflicts.add(c);
-                                }
-                                return true;
-                            }
-                        });
+            OperationStatus status = cursor.getSearchKeyRange(key, data,
+                    LockMode.READ_UNCOMMITTED);
+            if (after != null && OperationStatus.SUCCESS.equals(status)
+                    && Arrays.equals(after, bytes(key))) {
+                status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
             }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+            int count = 0;
+            while (OperationStatus.SUCCESS.equals(status) && startsWith(key, prefix)) {
+                target.add(conflict(data));
+                if (++count == limit) {
+                    return bytes(key);
+                }
+                status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+            }
+            return null;
+        } finally {
+            cursor.close();
         }
-        return conflicts;
     }
 
     /**
@@ -154,12 +288,42 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void addConflict(@Nullable String namespace, Conflict conflict) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        Preconditions.checkState(file.isPresent());
-        try {
-            Files.append(conflict.toString() + "\n", file.get(), Charsets.UTF_8);
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+        final Database db = conflictsDb(namespace);
+        checkState(db != null, "db is closed");
+        db.put(null, new DatabaseEntry(key(namespace, conflict.getPath())), new DatabaseEntry(
+                conflict.toString().getBytes(Charsets.UTF_8)));
+    }
+
+    /**
+     * Adds all the given conflicts to the database, in batches that are each written in a single
+     * transaction.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts) {
+        final Database db = conflictsDb(namespace);
+        checkState(db != null, "db is closed");
+        Iterator<List<Conflict>> batches = Iterators.partition(conflicts, BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<Conflict> batch = batches.next();
+            final Transaction transaction = beginTransaction(db);
+            boolean committed = false;
+            try {
+                for (Conflict conflict : batch) {
+                    db.put(transaction, new DatabaseEntry(key(namespace, conflict.getPath())),
+                            new DatabaseEntry(conflict.toString().getBytes(Charsets.UTF_8)));
+                }
+                if (transaction != null) {
+                    transaction.commit();
+                }
+                committed = true;
+            } finally {
+                if (transaction != null && !committed) {
+                    transaction.abort();
+                }
+            }
         }
     }
 
@@ -171,25 +335,40 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void removeConflict(@Nullable String namespace, String path) {
-        List<Conflict> conflicts = getConflicts(namespace, null);
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        Preconditions.checkState(file.isPresent());
+        final Database db = conflictsDb(namespace);
+        checkState(db != null, "db is closed");
+        db.delete(null, new DatabaseEntry(key(namespace, path)));
+    }
 
-        StringBuilder sb = new StringBuilder();
-        try {
-            for (Conflict conflict : conflicts) {
-                if (!path.equals(conflict.getPath())) {
-                    sb.append(conflict.toString() + "\n");
+    /**
+     * Removes the conflicts of the given paths from the database, in batches that are each
+     * deleted in a single transaction.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        final Database db = conflictsDb(namespace);
+        checkState(db != null, "db is closed");
+        Iterator<List<String>> batches = Iterators.partition(paths.iterator(), BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<String> batch = batches.next();
+            final Transaction transaction = beginTransaction(db);
+            boolean committed = false;
+            try {
+                for (String path : batch) {
+                    db.delete(transaction, new DatabaseEntry(key(namespace, path)));
+                }
+                if (transaction != null) {
+                    transaction.commit();
+                }
+                committed = true;
+            } finally {
+                if (transaction != null && !committed) {
+                    transaction.abort();
                 }
             }
-            String s = sb.toString();
-            if (!s.isEmpty()) {
-                Files.write(s, file.get(), Charsets.UTF_8);
-            } else {
-                file.get().delete();
-            }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
         }
     }
 
@@ -202,79 +381,153 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public Optional<Conflict> getConflict(@Nullable String namespace, final String path) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        if (!file.isPresent()) {
+        final Database db = conflictsDb(namespace);
+        if (db == null) {
             return Optional.absent();
         }
-        Conflict conflict = null;
+        DatabaseEntry data = new DatabaseEntry();
+        OperationStatus status = db.get(null, new DatabaseEntry(key(namespace, path)), data,
+                LockMode.READ_UNCOMMITTED);
+        if (OperationStatus.SUCCESS.equals(status)) {
+            return Optional.of(conflict(data));
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Removes all conflicts from the database.
+     * 
+     * @param namespace the namespace of the conflicts to remove
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace) {
+        final Database db = conflictsDb(namespace);
+        if (db == null) {
+            return;
+        }
+        final byte[] prefix = key(namespace, "");
+        final Transaction transaction = beginTransaction(db);
+        boolean committed = false;
+        DatabaseEntry key = new DatabaseEntry(prefix);
+        DatabaseEntry data = new DatabaseEntry();
+        // only the keys are needed to delete the records
+        data.setPartial(0, 0, true);
+        Cursor cursor = db.openCursor(transaction, null);
         try {
-            File conflictsFile = file.get();
-            synchronized (conflictsFile.getCanonicalPath().intern()) {
-                conflict = Files.readLines(conflictsFile, Charsets.UTF_8,
-                        new LineProcessor<Conflict>() {
-                            Conflict conflict = null;
-
-                            @Override
-                            public Conflict getResult() {
-                                return conflict;
-                            }
-
-                            @Override
-                            public boolean processLine(String s) throws IOException {
-                                Conflict c = Conflict.valueOf(s);
-                                if (c.getPath().equals(path)) {
-                                    conflict = c;
-                                    return false;
-                                } else {
-                                    return true;
-                                }
-                            }
-                        });
+            OperationStatus status = cursor.getSearchKeyRange(key, data, LockMode.RMW);
+            while (OperationStatus.SUCCESS.equals(status) && startsWith(key, prefix)) {
+                cursor.delete();
+                status = cursor.getNext(key, data, LockMode.RMW);
+            }
+            cursor.close();
+            cursor = null;
+            if (transaction != null) {
+                transaction.commit();
+            }
+            committed = true;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (transaction != null && !committed) {
+                transaction.abort();
             }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
         }
-        return Optional.fromNullable(conflict);
     }
 
-    private Optional<File> findOrCreateConflictsFile(@Nullable String namespace) {
-        if (namespace == null) {
-            namespace = "conflicts";
+    /**
+     * @return the conflicts database, or {@code null} if the staging database is not open, after
+     *         moving to it the conflicts of the namespace stored in a file by previous versions
+     */
+    @Nullable
+    private Database conflictsDb(@Nullable String namespace) {
+        final Database db = conflictsDb;
+        if (db == null) {
+            return null;
         }
-        Optional<File> conflicts = Optional.absent();
-        if (isOpen()) {
-            URL repoPath = new ResolveGeogitDir(platform).call();
-            File file = null;
-            try {
-                file = new File(repoPath.toURI());
-            } catch (URISyntaxException e1) {
-                Throwables.propagate(e1);
+        final String name = namespace == null ? DEFAULT_NAMESPACE : namespace;
+        synchronized (migratedNamespaces) {
+            if (migratedNamespaces.add(name)) {
+                migrateConflictsFile(db, namespace);
             }
-            file = new File(file, namespace);
-            if (!file.exists()) {
-                try {
-                    file.getParentFile().mkdirs();
-                    file.createNewFile();
-                } catch (IOException e) {
-                    throw Throwables.propagate(e);
+        }
+        return db;
+    }
+
+    private void migrateConflictsFile(Database db, @Nullable String namespace) {
+        URL repoPath = new ResolveGeogitDir(platform).call();
+        if (repoPath == null) {
+            return;
+        }
+        File file;
+        try {
+            file = new File(new File(repoPath.toURI()), namespace == null ? DEFAULT_NAMESPACE
+                    : namespace);
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+        if (!file.isFile()) {
+            return;
+        }
+        final Transaction transaction = beginTransaction(db);
+        boolean committed = false;
+        try {
+            for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    Conflict c = Conflict.valueOf(line);
+                    db.put(transaction, new DatabaseEntry(key(namespace, c.getPath())),
+                            new DatabaseEntry(line.getBytes(Charsets.UTF_8)));
                 }
             }
-            conflicts = Optional.of(file);
+            if (transaction != null) {
+                transaction.commit();
+            }
+            committed = true;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            if (transaction != null && !committed) {
+                transaction.abort();
+            }
         }
-        return conflicts;
+        file.delete();
     }
 
-    /**
-     * Removes all conflicts from the database.
-     * 
-     * @param namespace the namespace of the conflicts to remove
-     */
-    @Override
-    public void removeConflicts(@Nullable String namespace) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        if (file.isPresent()) {
-            file.get().delete();
+    @Nullable
+    private Transaction beginTransaction(Database db) {
+        if (!db.getConfig().getTransactional()) {
+            return null;
         }
+        return db.getEnvironment().beginTransaction(null, TransactionConfig.DEFAULT);
+    }
+
+    private static byte[] key(@Nullable String namespace, String path) {
+        String ns = namespace == null ? DEFAULT_NAMESPACE : namespace;
+        return (ns + KEY_SEPARATOR + path).getBytes(Charsets.UTF_8);
+    }
+
+    private static boolean startsWith(DatabaseEntry key, byte[] prefix) {
+        if (key.getSize() < prefix.length) {
+            return false;
+        }
+        final byte[] data = key.getData();
+        final int offset = key.getOffset();
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(DatabaseEntry entry) {
+        return Arrays.copyOfRange(entry.getData(), entry.getOffset(),
+                entry.getOffset() + entry.getSize());
+    }
+
+    private static Conflict conflict(DatabaseEntry data) {
+        return Conflict.valueOf(new String(data.getData(), data.getOffset(), data.getSize(),
+                Charsets.UTF_8));
     }
 
     @Override
@@ -13,6 +13,8 @@ import org.geogit.test.integration.RepositoryTestCase;
 import org.junit.Test;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
 public class JEConflictsTest extends RepositoryTestCase {
 
@@ -66,4 +68,66 @@ public class JEConflictsTest extends RepositoryTestCase {
         assertFalse(conflicts.isEmpty());
 
     }
+
+    @Test
+    public void testPathFilterAndNamespaces() {
+        StagingDatabase db = geogit.getRepository().getIndex().getDatabase();
+
+        for (int i = 0; i < 100; i++) {
+            db.addConflict(null, new Conflict(pointsName + "/" + i, ObjectId.forString("ancestor"
+                    + i), ObjectId.forString("ours" + i), ObjectId.forString("theirs" + i)));
+        }
+        db.addConflict(null, new Conflict(idL1, ObjectId.forString("ancestor"),
+                ObjectId.forString("ours"), ObjectId.forString("theirs")));
+        // a namespace whose name starts with another one's
+        db.addConflict("ns", new Conflict(idP1, ObjectId.forString("ancestor"),
+                ObjectId.forString("ours"), ObjectId.forString("theirs")));
+        db.addConflict("ns2", new Conflict(idP2, ObjectId.forString("ancestor"),
+                ObjectId.forString("ours"), ObjectId.forString("theirs")));
+
+        assertEquals(101, db.getConflicts(null, null).size());
+        assertEquals(100, db.getConflicts(null, pointsName).size());
+        assertEquals(11, db.getConflicts(null, pointsName + "/1").size());
+        assertEquals(1, db.getConflicts(null, linesName).size());
+        assertEquals(1, db.getConflicts("ns", null).size());
+
+        // adding a conflict for the same path replaces it
+        Conflict replacement = new Conflict(idL1, ObjectId.forString("ancestor2"),
+                ObjectId.forString("ours2"), ObjectId.forString("theirs2"));
+        db.addConflict(null, replacement);
+        assertEquals(1, db.getConflicts(null, linesName).size());
+        assertEquals(replacement, db.getConflict(null, idL1).get());
+
+        db.removeConflicts("ns");
+        assertTrue(db.getConflicts("ns", null).isEmpty());
+        assertEquals(1, db.getConflicts("ns2", null).size());
+        assertEquals(101, db.getConflicts(null, null).size());
+    }
+
+    @Test
+    public void testBulkConflicts() {
+        StagingDatabase db = geogit.getRepository().getIndex().getDatabase();
+
+        List<Conflict> conflicts = Lists.newArrayList();
+        List<String> even = Lists.newArrayList();
+        for (int i = 0; i < 2500; i++) {
+            String path = pointsName + "/" + i;
+            conflicts.add(new Conflict(path, ObjectId.forString("ancestor" + i), ObjectId
+                    .forString("ours" + i), ObjectId.forString("theirs" + i)));
+            if (i % 2 == 0) {
+                even.add(path);
+            }
+        }
+        db.addConflicts(null, conflicts.iterator());
+        // adding them again replaces them
+        db.addConflicts(null, conflicts.iterator());
+        assertEquals(2500, db.getConflicts(null, null).size());
+        assertEquals(2500, Iterators.size(db.iterateConflicts(null, pointsName)));
+        assertEquals(conflicts.get(7), db.getConflict(null, pointsName + "/7").get());
+
+        db.removeConflicts(null, even);
+        assertEquals(1250, Iterators.size(db.iterateConflicts(null, null)));
+        assertFalse(db.getConflict(null, pointsName + "/0").isPresent());
+        assertTrue(db.getConflict(null, pointsName + "/1").isPresent());
+    }
 }
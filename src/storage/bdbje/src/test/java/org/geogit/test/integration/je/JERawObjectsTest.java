@@ -0,0 +1,37 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration.je;
+
+import java.io.File;
+
+import org.geogit.api.Platform;
+import org.geogit.api.TestPlatform;
+import org.geogit.di.GeogitModule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Throwables;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+public class JERawObjectsTest extends org.geogit.test.integration.RawObjectsTest {
+    @Rule
+    public TemporaryFolder mockWorkingDirTempFolder = new TemporaryFolder();
+
+    @Override
+    protected Injector createInjector() {
+        File workingDirectory;
+        try {
+            workingDirectory = mockWorkingDirTempFolder.getRoot();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+        Platform testPlatform = new TestPlatform(workingDirectory);
+        return Guice.createInjector(Modules.override(new GeogitModule()).with(
+                new JETestStorageModule(), new TestModule(testPlatform)));
+    }
+
+}
@@ -8,9 +8,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
@@ -29,9 +32,12 @@ import org.geogit.storage.ObjectWriter;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
 
 import com.google.common.base.Functions;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
@@ -138,6 +144,33 @@ public class MongoObjectDatabase implements ObjectDatabase {
         return collection.find(query).hasNext();
     }
 
+    /**
+     * Queries the ids in batches, with one {@code $in} query per batch that only returns the ids
+     * found.
+     */
+    @Override
+    public Set<ObjectId> missing(Iterable<ObjectId> ids) {
+        Set<ObjectId> missing = new HashSet<ObjectId>();
+        for (List<ObjectId> batch : Iterables.partition(ids, 1000)) {
+            List<String> oids = new ArrayList<String>();
+            for (ObjectId id : batch) {
+                oids.add(id.toString());
+            }
+            missing.addAll(batch);
+            DBObject query = new BasicDBObject();
+            query.put("oid", new BasicDBObject("$in", oids));
+            DBCursor cursor = collection.find(query, new BasicDBObject("oid", 1));
+            try {
+                while (cursor.hasNext()) {
+                    missing.remove(ObjectId.valueOf((String) cursor.next().get("oid")));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return missing;
+    }
+
     @Override
     public List<ObjectId> lookUp(final String partialId) {
         if (partialId.matches("[a-fA-F0-9]+")) {
@@ -272,6 +305,100 @@ public class MongoObjectDatabase implements ObjectDatabase {
         }
     }
 
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> scanRaw(int fromPrefix, int toPrefix) {
+        Preconditions.checkArgument(0 <= fromPrefix && fromPrefix < toPrefix && toPrefix <= 256,
+                "Invalid id prefix range: [%s, %s)", fromPrefix, toPrefix);
+        // ids are stored as lower case hex strings, which sort as their raw bytes do
+        BasicDBObjectBuilder range = BasicDBObjectBuilder.start().push("oid")
+                .add("$gte", String.format("%02x", fromPrefix));
+        if (toPrefix < 256) {
+            range.add("$lt", String.format("%02x", toPrefix));
+        }
+        final DBCursor cursor = collection.find(range.pop().get());
+        return new AbstractIterator<Entry<ObjectId, byte[]>>() {
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                if (!cursor.hasNext()) {
+                    cursor.close();
+                    return endOfData();
+                }
+                DBObject record = cursor.next();
+                return Maps.immutableEntry(ObjectId.valueOf((String) record.get("oid")),
+                        (byte[]) record.get("serialized_object"));
+            }
+        };
+    }
+
+    @Override
+    public long putAllRaw(Iterator<Entry<ObjectId, byte[]>> objects) {
+        long inserted = 0;
+        while (objects.hasNext()) {
+            Entry<ObjectId, byte[]> object = objects.next();
+            if (putRaw(object.getKey(), object.getValue())) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public byte[] getRaw(ObjectId id) {
+        DBObject query = new BasicDBObject();
+        query.put("oid", id.toString());
+        DBObject result = collection.findOne(query);
+        if (result == null) {
+            throw new IllegalArgumentException("No object with id: " + id);
+        }
+        return (byte[]) result.get("serialized_object");
+    }
+
+    /**
+     * Queries the objects in batches, with one {@code $in} query per batch.
+     */
+    @Override
+    public Iterator<Entry<ObjectId, byte[]>> getAllRaw(final Iterable<ObjectId> ids) {
+        final Iterator<List<ObjectId>> batches = Iterators.partition(ids.iterator(), 1000);
+        return new AbstractIterator<Entry<ObjectId, byte[]>>() {
+
+            private DBCursor cursor;
+
+            @Override
+            protected Entry<ObjectId, byte[]> computeNext() {
+                while (cursor == null || !cursor.hasNext()) {
+                    if (cursor != null) {
+                        cursor.close();
+                        cursor = null;
+                    }
+                    if (!batches.hasNext()) {
+                        return endOfData();
+                    }
+                    List<String> oids = new ArrayList<String>();
+                    for (ObjectId id : batches.next()) {
+                        oids.add(id.toString());
+                    }
+                    DBObject query = new BasicDBObject();
+                    query.put("oid", new BasicDBObject("$in", oids));
+                    cursor = collection.find(query);
+                }
+                DBObject record = cursor.next();
+                return Maps.immutableEntry(ObjectId.valueOf((String) record.get("oid")),
+                        (byte[]) record.get("serialized_object"));
+            }
+        };
+    }
+
+    @Override
+    public boolean putRaw(ObjectId id, byte[] raw) {
+        DBObject query = new BasicDBObject();
+        query.put("oid", id.toString());
+        DBObject record = new BasicDBObject();
+        record.put("oid", id.toString());
+        record.put("serialized_object", raw);
+        WriteResult result = collection.update(query, record, true, false);
+        return !Boolean.TRUE.equals(result.getLastError().get("updatedExisting"));
+    }
+
     @Override
     public ObjectInserter newObjectInserter() {
         return new ObjectInserter(this);
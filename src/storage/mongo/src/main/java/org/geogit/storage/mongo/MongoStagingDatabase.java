@@ -5,7 +5,10 @@
 package org.geogit.storage.mongo;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -19,6 +22,9 @@ import org.geogit.storage.StagingDatabase;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
@@ -30,6 +36,11 @@ import com.mongodb.DBObject;
  */
 public class MongoStagingDatabase extends ForwardingStagingDatabase implements StagingDatabase {
 
+    /**
+     * Number of conflicts sent to the server per bulk operation, and fetched per cursor batch
+     */
+    private static final int BATCH_SIZE = 1000;
+
     protected DBCollection conflicts;
 
     private ConfigDatabase config;
@@ -47,6 +58,7 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
         super.open();
         conflicts = ((MongoObjectDatabase) super.stagingDb).getCollection("conflicts");
         conflicts.ensureIndex("path");
+        conflicts.ensureIndex(new BasicDBObject("namespace", 1).append("path", 1));
     }
 
     @Override
@@ -75,6 +87,17 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
 
     @Override
     public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter) {
+        return Lists.newArrayList(iterateConflicts(namespace, pathFilter));
+    }
+
+    /**
+     * Gets all conflicts that match the specified path filter, fetched from the server in batches
+     * as the iterator is consumed. The server side cursor is closed once the iterator is
+     * exhausted.
+     */
+    @Override
+    public Iterator<Conflict> iterateConflicts(@Nullable String namespace,
+            @Nullable String pathFilter) {
         DBObject query = new BasicDBObject();
         if (namespace == null) {
             query.put("namespace", 0);
@@ -86,17 +109,22 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
             regex.put("$regex", "^" + pathFilter);
             query.put("path", regex);
         }
-        DBCursor cursor = conflicts.find(query);
-        List<Conflict> results = new ArrayList<Conflict>();
-        while (cursor.hasNext()) {
-            DBObject element = cursor.next();
-            String path = (String) element.get("path");
-            ObjectId ancestor = ObjectId.valueOf((String) element.get("ancestor"));
-            ObjectId ours = ObjectId.valueOf((String) element.get("ours"));
-            ObjectId theirs = ObjectId.valueOf((String) element.get("theirs"));
-            results.add(new Conflict(path, ancestor, ours, theirs));
-        }
-        return results;
+        final DBCursor cursor = conflicts.find(query).batchSize(BATCH_SIZE);
+        return new AbstractIterator<Conflict>() {
+            @Override
+            protected Conflict computeNext() {
+                if (!cursor.hasNext()) {
+                    cursor.close();
+                    return endOfData();
+                }
+                DBObject element = cursor.next();
+                String path = (String) element.get("path");
+                ObjectId ancestor = ObjectId.valueOf((String) element.get("ancestor"));
+                ObjectId ours = ObjectId.valueOf((String) element.get("ours"));
+                ObjectId theirs = ObjectId.valueOf((String) element.get("theirs"));
+                return new Conflict(path, ancestor, ours, theirs);
+            }
+        };
     }
 
     @Override
@@ -121,6 +149,37 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
         conflicts.update(query, record, true, false);
     }
 
+    /**
+     * Adds the conflicts in batches, replacing the existing conflicts for the paths of each batch
+     * with a single remove and then inserting the whole batch at once. Only the last of the
+     * conflicts given for the same path is kept.
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterator<Conflict> conflicts) {
+        Iterator<List<Conflict>> batches = Iterators.partition(conflicts, BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<Conflict> batch = batches.next();
+            // keyed by path so a path repeated in the batch is only inserted once, the last
+            // conflict for it replacing the previous ones as addConflict would
+            Map<String, DBObject> records = new LinkedHashMap<String, DBObject>();
+            for (Conflict conflict : batch) {
+                DBObject record = new BasicDBObject();
+                if (namespace == null) {
+                    record.put("namespace", 0);
+                } else {
+                    record.put("namespace", namespace);
+                }
+                record.put("path", conflict.getPath());
+                record.put("ancestor", conflict.getAncestor().toString());
+                record.put("ours", conflict.getOurs().toString());
+                record.put("theirs", conflict.getTheirs().toString());
+                records.put(conflict.getPath(), record);
+            }
+            removeConflicts(namespace, records.keySet());
+            this.conflicts.insert(new ArrayList<DBObject>(records.values()));
+        }
+    }
+
     @Override
     public void removeConflict(@Nullable String namespace, String path) {
         DBObject query = new BasicDBObject();
@@ -133,6 +192,24 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
         conflicts.remove(query);
     }
 
+    /**
+     * Removes the conflicts in batches, each one with a single query matching all its paths.
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        Iterator<List<String>> batches = Iterators.partition(paths.iterator(), BATCH_SIZE);
+        while (batches.hasNext()) {
+            DBObject query = new BasicDBObject();
+            if (namespace == null) {
+                query.put("namespace", 0);
+            } else {
+                query.put("namespace", namespace);
+            }
+            query.put("path", new BasicDBObject("$in", batches.next()));
+            conflicts.remove(query);
+        }
+    }
+
     @Override
     public void removeConflicts(@Nullable String namespace) {
         DBObject query = new BasicDBObject();
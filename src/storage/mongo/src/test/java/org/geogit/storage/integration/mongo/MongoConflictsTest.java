@@ -20,6 +20,8 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.base.Throwables;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -96,4 +98,45 @@ public class MongoConflictsTest extends RepositoryTestCase {
         conflicts = db.getConflicts(null, null);
         assertFalse(conflicts.isEmpty());
     }
+
+    @Test
+    public void testBulkConflicts() {
+        StagingDatabase db = geogit.getRepository().getIndex().getDatabase();
+
+        List<Conflict> conflicts = Lists.newArrayList();
+        List<String> even = Lists.newArrayList();
+        for (int i = 0; i < 2500; i++) {
+            String path = pointsName + "/" + i;
+            conflicts.add(new Conflict(path, ObjectId.forString("ancestor" + i), ObjectId
+                    .forString("ours" + i), ObjectId.forString("theirs" + i)));
+            if (i % 2 == 0) {
+                even.add(path);
+            }
+        }
+        db.addConflicts(null, conflicts.iterator());
+        // adding them again replaces them
+        db.addConflicts(null, conflicts.iterator());
+        assertEquals(2500, db.getConflicts(null, null).size());
+        assertEquals(2500, Iterators.size(db.iterateConflicts(null, pointsName)));
+        assertEquals(conflicts.get(7), db.getConflict(null, pointsName + "/7").get());
+
+        db.removeConflicts(null, even);
+        assertEquals(1250, Iterators.size(db.iterateConflicts(null, null)));
+        assertFalse(db.getConflict(null, pointsName + "/0").isPresent());
+        assertTrue(db.getConflict(null, pointsName + "/1").isPresent());
+    }
+
+    @Test
+    public void testBulkConflictsWithRepeatedPath() {
+        StagingDatabase db = geogit.getRepository().getIndex().getDatabase();
+
+        Conflict conflict = new Conflict(idP1, ObjectId.forString("ancestor"),
+                ObjectId.forString("ours"), ObjectId.forString("theirs"));
+        Conflict replacement = new Conflict(idP1, ObjectId.forString("ancestor2"),
+                ObjectId.forString("ours2"), ObjectId.forString("theirs2"));
+        db.addConflicts(null, Lists.newArrayList(conflict, replacement).iterator());
+
+        assertEquals(1, db.getConflicts(null, null).size());
+        assertEquals(replacement, db.getConflict(null, idP1).get());
+    }
 }
@@ -300,6 +300,7 @@ public class CommandBuilder {
         command.setFetchAll(Boolean.valueOf(options.getFirstValue("all", "false")));
         command.setPrune(Boolean.valueOf(options.getFirstValue("prune", "false")));
         command.setRemote(options.getFirstValue("remote"));
+        command.setRebuildGraph(Boolean.valueOf(options.getFirstValue("rebuildGraph", "false")));
         return command;
     }
 
@@ -342,6 +343,7 @@ public class CommandBuilder {
         command.setCommitId(options.getFirstValue("commitId", ObjectId.NULL.toString()));
         command.setPage(parseInt(options, "page", 0));
         command.setElementsPerPage(parseInt(options, "show", 30));
+        command.setCursor(options.getFirstValue("cursor", null));
         return command;
     }
 
@@ -44,8 +44,10 @@ import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffEntry.ChangeType;
 import org.geogit.api.plumbing.merge.Conflict;
 import org.geogit.api.plumbing.merge.MergeScenarioReport;
+import org.geogit.api.plumbing.merge.ReportMergeScenarioOp;
 import org.geogit.api.porcelain.FetchResult;
 import org.geogit.api.porcelain.FetchResult.ChangedRef;
+import org.geogit.api.porcelain.MergeOp.MergeReport;
 import org.geogit.api.porcelain.PullResult;
 import org.geogit.web.api.commands.BranchWebOp;
 import org.geogit.web.api.commands.Commit;
@@ -533,10 +535,14 @@ public class ResponseWriter {
             writeElement("Removed", Integer.toString(removed));
         }
         if (result.getMergeReport().isPresent()
-                && result.getMergeReport().get().getReport().isPresent()) {
-            writeMergeResponse(result.getMergeReport().get().getReport().get(), geogit, result
-                    .getMergeReport().get().getOurs(), result.getMergeReport().get().getPairs()
-                    .get(0).getTheirs(), result.getMergeReport().get().getPairs().get(0)
+                && !result.getMergeReport().get().getPairs().isEmpty()) {
+            MergeReport mergeReport = result.getMergeReport().get();
+            ObjectId ours = mergeReport.getOurs();
+            ObjectId theirs = mergeReport.getPairs().get(0).getTheirs();
+            MergeScenarioReport report = geogit.command(ReportMergeScenarioOp.class)
+                    .setMergeIntoCommit(commit(geogit, ours))
+                    .setToMergeCommit(commit(geogit, theirs)).call();
+            writeMergeResponse(report, geogit, ours, theirs, mergeReport.getPairs().get(0)
                     .getAncestor());
         }
         out.writeEndElement();
@@ -843,6 +849,11 @@ public class ResponseWriter {
         }
     }
 
+    private static RevCommit commit(CommandLocator geogit, ObjectId commitId) {
+        return geogit.command(RevObjectParse.class).setObjectId(commitId).call(RevCommit.class)
+                .get();
+    }
+
     /**
      * Writes the response for a merge dry-run, contains unconflicted, conflicted and merged
      * features.
@@ -27,6 +27,8 @@ public class FetchWebOp extends AbstractWebAPICommand {
 
     private String remote;
 
+    private boolean rebuildGraph;
+
     /**
      * Mutator for the prune variable
      * 
@@ -54,6 +56,15 @@ public class FetchWebOp extends AbstractWebAPICommand {
         this.remote = remote;
     }
 
+    /**
+     * Mutator for the rebuildGraph variable
+     * 
+     * @param rebuildGraph - true to rebuild the graph of the fetched history in the background
+     */
+    public void setRebuildGraph(boolean rebuildGraph) {
+        this.rebuildGraph = rebuildGraph;
+    }
+
     /**
      * Runs the command and builds the appropriate response
      * 
@@ -70,7 +81,8 @@ public class FetchWebOp extends AbstractWebAPICommand {
         command.addRemote(remote);
 
         try {
-            final FetchResult result = command.setAll(fetchAll).setPrune(prune).call();
+            final FetchResult result = command.setAll(fetchAll).setPrune(prune)
+                    .setRebuildGraph(rebuildGraph).call();
             context.setResponseContent(new CommandResponse() {
                 @Override
                 public void write(ResponseWriter out) throws Exception {
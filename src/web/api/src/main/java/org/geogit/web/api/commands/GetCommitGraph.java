@@ -4,26 +4,54 @@
  */
 package org.geogit.web.api.commands;
 
-import java.util.List;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
-import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.repository.Repository;
 import org.geogit.web.api.AbstractWebAPICommand;
 import org.geogit.web.api.CommandContext;
 import org.geogit.web.api.CommandResponse;
 import org.geogit.web.api.CommandSpecException;
 import org.geogit.web.api.ResponseWriter;
 
-import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 
 /**
  * Lists all commits from a given commitId through to a certain depth.
- * 
+ * <p>
+ * Commits are written to the response as the graph is traversed. When there are more commits than
+ * fit in a page, the response includes a {@code cursor} token that can be passed back in the next
+ * request to resume the traversal where it was left, instead of traversing the graph again from
+ * {@code commitId} to skip the previous pages. Every cursor can be used once, the response to it
+ * includes a new one if there are still more commits. A cursor can only be resumed against the
+ * same repository and with the same {@code commitId}, {@code depth} and {@code show} parameters it
+ * was created with, and expires after {@value #CURSOR_EXPIRE_MINUTES} minutes without being used.
  */
 
 public class GetCommitGraph extends AbstractWebAPICommand {
 
+    private static final int CURSOR_EXPIRE_MINUTES = 10;
+
+    /**
+     * Suspended traversals, keyed by {@link #cursorKey(URL, String) repository, parameters and
+     * token}
+     */
+    private static final Cache<String, CommitGraphIterator> CURSORS = CacheBuilder.newBuilder()
+            .maximumSize(100).expireAfterAccess(CURSOR_EXPIRE_MINUTES, TimeUnit.MINUTES).build();
+
     private String commitId;
 
     private int depth;
@@ -32,6 +60,8 @@ public class GetCommitGraph extends AbstractWebAPICommand {
 
     private int elementsPerPage;
 
+    private String cursor;
+
     /**
      * Mutator for the commitId variable
      * 
@@ -68,6 +98,16 @@ public class GetCommitGraph extends AbstractWebAPICommand {
         this.elementsPerPage = elementsPerPage;
     }
 
+    /**
+     * Mutator for the cursor variable
+     * 
+     * @param cursor - the token returned by a previous request to continue the traversal from, or
+     *        {@code null} to start from {@code commitId}
+     */
+    public void setCursor(@Nullable String cursor) {
+        this.cursor = cursor;
+    }
+
     /**
      * Runs the command and builds the appropriate response.
      * 
@@ -80,24 +120,21 @@ public class GetCommitGraph extends AbstractWebAPICommand {
         if (commitId.equals(ObjectId.NULL.toString())) {
             throw new CommandSpecException("No commitId was given.");
         }
-        final GeoGIT geogit = context.getGeoGIT();
-        RevCommit commit = geogit.getRepository().getCommit(ObjectId.valueOf(commitId));
-        final List<RevCommit> history = Lists.newLinkedList();
-
-        List<CommitNode> nodes = Lists.newLinkedList();
-        CommitNode node = new CommitNode(commit, 1);
-        nodes.add(node);
-
-        while (!nodes.isEmpty()) {
-            node = nodes.remove(0);
-            if (!history.contains(node.commit)) {
-                history.add(node.commit);
-            }
-            if (this.depth == 0 || node.depth < this.depth) {
-                for (ObjectId id : node.commit.getParentIds()) {
-                    nodes.add(new CommitNode(geogit.getRepository().getCommit(id), node.depth + 1));
-                }
+        final Repository repository = context.getGeoGIT().getRepository();
+        final URL location = repository.command(ResolveGeogitDir.class).call();
+
+        final CommitGraphIterator history;
+        if (cursor != null) {
+            history = CURSORS.asMap().remove(cursorKey(location, cursor));
+            if (history == null) {
+                throw new CommandSpecException("Invalid or expired cursor: " + cursor);
             }
+        } else {
+            history = new CommitGraphIterator(ObjectId.valueOf(commitId), depth);
+        }
+        history.resume(repository);
+        if (cursor == null) {
+            Iterators.advance(history, page * elementsPerPage);
         }
 
         context.setResponseContent(new CommandResponse() {
@@ -105,23 +142,86 @@ public class GetCommitGraph extends AbstractWebAPICommand {
             @Override
             public void write(ResponseWriter out) throws Exception {
                 out.start();
-                out.writeCommits(history.iterator(), page, elementsPerPage);
+                out.writeCommits(history, 0, elementsPerPage);
+                if (history.hasNext()) {
+                    final String token = UUID.randomUUID().toString();
+                    history.suspend();
+                    CURSORS.put(cursorKey(location, token), history);
+                    out.writeElement("cursor", token);
+                }
                 out.finish();
             }
         });
     }
 
+    /**
+     * @return the key of the cursor in {@link #CURSORS}, so that it can only be resumed against
+     *         the same repository and with the same parameters
+     */
+    private String cursorKey(URL location, String token) {
+        return new StringBuilder().append(location).append('|').append(commitId).append('|')
+                .append(depth).append('|').append(elementsPerPage).append('|').append(token)
+                .toString();
+    }
+
+    /**
+     * Traverses the commit graph breadth-first from a given commit, returning each commit only
+     * once. The traversal state lives in the iterator itself so that it can be resumed by a later
+     * request, which gives it the repository to read from.
+     */
+    private static class CommitGraphIterator extends AbstractIterator<RevCommit> {
+
+        private final int maxDepth;
+
+        private final Queue<CommitNode> nodes = new LinkedList<CommitNode>();
+
+        private final Set<ObjectId> visited = new HashSet<ObjectId>();
+
+        private Repository repository;
+
+        CommitGraphIterator(ObjectId commitId, int maxDepth) {
+            this.maxDepth = maxDepth;
+            nodes.add(new CommitNode(commitId, 1));
+        }
+
+        void resume(Repository repository) {
+            this.repository = repository;
+        }
+
+        void suspend() {
+            this.repository = null;
+        }
+
+        @Override
+        protected RevCommit computeNext() {
+            while (!nodes.isEmpty()) {
+                CommitNode node = nodes.poll();
+                if (!visited.add(node.id)) {
+                    continue;
+                }
+                RevCommit commit = repository.getCommit(node.id);
+                if (maxDepth == 0 || node.depth < maxDepth) {
+                    for (ObjectId id : commit.getParentIds()) {
+                        nodes.add(new CommitNode(id, node.depth + 1));
+                    }
+                }
+                return commit;
+            }
+            return endOfData();
+        }
+    }
+
     /**
      * Private helper class to store the information needed to traverse the commit graph properly.
      * 
      */
-    private class CommitNode {
-        public RevCommit commit;
+    private static class CommitNode {
+        public ObjectId id;
 
         public int depth;
 
-        CommitNode(RevCommit commit, int depth) {
-            this.commit = commit;
+        CommitNode(ObjectId id, int depth) {
+            this.id = id;
             this.depth = depth;
         }
     }
@@ -6,6 +6,7 @@ package org.geogit.web.api.commands;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.FeatureInfo;
 import org.geogit.api.GeogitTransaction;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
@@ -13,8 +14,10 @@ import org.geogit.api.RevCommit;
 import org.geogit.api.plumbing.FindCommonAncestor;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.api.plumbing.merge.Conflict;
+import org.geogit.api.plumbing.merge.MergeScenarioConsumer;
 import org.geogit.api.plumbing.merge.MergeScenarioReport;
-import org.geogit.api.plumbing.merge.ReportMergeScenarioOp;
 import org.geogit.api.porcelain.MergeOp;
 import org.geogit.api.porcelain.MergeOp.MergeReport;
 import org.geogit.web.api.AbstractWebAPICommand;
@@ -108,6 +111,24 @@ public class MergeWebOp extends AbstractWebAPICommand {
             throw new CommandSpecException("Couldn't resolve '" + commit + "' to a commit.");
         }
 
+        final MergeScenarioReport scenario = new MergeScenarioReport();
+        merge.setConsumer(new MergeScenarioConsumer() {
+            @Override
+            public void conflicted(Conflict conflict) {
+                scenario.addConflict(conflict);
+            }
+
+            @Override
+            public void unconflicted(DiffEntry diff) {
+                scenario.addUnconflicted(diff);
+            }
+
+            @Override
+            public void merged(FeatureInfo featureInfo) {
+                scenario.addMerged(featureInfo);
+            }
+        });
+
         try {
             final MergeReport report = merge.setNoCommit(noCommit).call();
 
@@ -115,9 +136,9 @@ public class MergeWebOp extends AbstractWebAPICommand {
                 @Override
                 public void write(ResponseWriter out) throws Exception {
                     out.start();
-                    out.writeMergeResponse(report.getReport().get(), transaction, report.getOurs(),
-                            report.getPairs().get(0).getTheirs(), report.getPairs().get(0)
-                                    .getAncestor());
+                    out.writeMergeResponse(scenario, transaction, report.getOurs(), report
+                            .getPairs().get(0).getTheirs(), report.getPairs().get(0)
+                            .getAncestor());
                     out.finish();
                 }
             });
@@ -128,13 +149,10 @@ public class MergeWebOp extends AbstractWebAPICommand {
             final Optional<RevCommit> ancestor = transaction.command(FindCommonAncestor.class)
                     .setLeft(ours).setRight(theirs).call();
             context.setResponseContent(new CommandResponse() {
-                final MergeScenarioReport report = transaction.command(ReportMergeScenarioOp.class)
-                        .setMergeIntoCommit(ours).setToMergeCommit(theirs).call();
-
                 @Override
                 public void write(ResponseWriter out) throws Exception {
                     out.start();
-                    out.writeMergeResponse(report, transaction, ours.getId(), theirs.getId(),
+                    out.writeMergeResponse(scenario, transaction, ours.getId(), theirs.getId(),
                             ancestor.get().getId());
                     out.finish();
                 }
@@ -4,21 +4,40 @@
  */
 package org.geogit.web.api.commands;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
+import javax.annotation.Nullable;
+
+import org.geogit.api.Bucket;
 import org.geogit.api.GeoGIT;
+import org.geogit.api.Node;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTag;
+import org.geogit.api.RevTree;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.UpdateRef;
+import org.geogit.remote.BinaryPackedObjects;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.datastream.FormatCommon;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 
 /**
  * Provides a safety net for remote pushes. This class keeps track of all objects that are being
@@ -26,16 +45,46 @@ import com.google.common.base.Optional;
  * in the Index database. If every object is successfully transfered, a message will be sent to the
  * PushManager to transfer all of those objects to the repository database. This prevents the
  * repository from getting corrupted if a push fails halfway through.
+ * <p>
+ * Before moving anything, the objects reachable from the pushed ones are checked to be either part
+ * of the push or already in the repository, so that a push missing some objects fails without
+ * touching the repository. Objects are moved with bulk operations, and the ones a failed push
+ * left in the Index database are removed.
  * 
  */
 public class PushManager {
 
-    private Map<String, List<ObjectId>> incomingData;
+    private static final int BATCH_SIZE = 10000;
+
+    /**
+     * The objects received from a remote machine during a push.
+     */
+    private static class IncomingPush {
+
+        /**
+         * All the objects received
+         */
+        private final Set<ObjectId> received = new LinkedHashSet<ObjectId>();
+
+        /**
+         * The objects that were not in the Index database before the push
+         */
+        private final Set<ObjectId> inserted = new HashSet<ObjectId>();
+    }
+
+    private Map<String, IncomingPush> incomingData;
+
+    /**
+     * The pushes whose objects may still be in the index database, including the ones being moved
+     * to the repository, which are no longer in {@link #incomingData}
+     */
+    private Set<IncomingPush> pendingPushes;
 
     private static PushManager instance = new PushManager();
 
     private PushManager() {
-        incomingData = new HashMap<String, List<ObjectId>>();
+        incomingData = new HashMap<String, IncomingPush>();
+        pendingPushes = new HashSet<IncomingPush>();
     }
 
     /**
@@ -46,19 +95,22 @@ public class PushManager {
     }
 
     /**
-     * Begins tracking incoming objects from the specified ip address.
+     * Begins tracking incoming objects from the specified ip address, discarding whatever an
+     * unfinished push from the same address left behind.
      * 
+     * @param geogit the geogit of the local repository
      * @param ipAddress the remote machine that is pushing objects
      */
-    public void connectionBegin(String ipAddress) {
-        if (incomingData.containsKey(ipAddress)) {
-            incomingData.remove(ipAddress);
+    public void connectionBegin(GeoGIT geogit, String ipAddress) {
+        IncomingPush previous;
+        synchronized (this) {
+            IncomingPush push = new IncomingPush();
+            previous = incomingData.put(ipAddress, push);
+            pendingPushes.add(push);
         }
-        if (incomingData.size() > 0) {
-            // Fail?
+        if (previous != null) {
+            discard(geogit, previous);
         }
-        List<ObjectId> newList = new LinkedList<ObjectId>();
-        incomingData.put(ipAddress, newList);
     }
 
     /**
@@ -68,39 +120,86 @@ public class PushManager {
      * 
      * @param geogit the geogit of the local repository
      * @param ipAddress the remote machine that is pushing objects
+     * @throws IllegalStateException if some object reachable from the pushed ones is missing, in
+     *         which case nothing is moved to the object database
      */
     public void connectionSucceeded(GeoGIT geogit, String ipAddress, String refspec,
             ObjectId newCommit) {
-        // Add objects to the repository
-        if (incomingData.containsKey(ipAddress)) {
-            List<ObjectId> objectsToMove = incomingData.remove(ipAddress);
-            for (ObjectId oid : objectsToMove) {
-                RevObject toAdd = geogit.getRepository().getIndex().getDatabase().get(oid);
-                geogit.getRepository().getObjectDatabase().put(toAdd);
+        final IncomingPush push;
+        synchronized (this) {
+            push = incomingData.remove(ipAddress);
+        }
+        if (push == null) {
+            throw new RuntimeException("Tried to end a connection that didn't exist.");
+        }
+        // Add objects to the repository. The push stays pending until they're moved, so that
+        // other pushes being discarded leave the objects it received in the index database
+        final ObjectDatabase index = geogit.getRepository().getIndex().getDatabase();
+        final ObjectDatabase objectDatabase = geogit.getRepository().getObjectDatabase();
+        try {
+            verifyConnectivity(index, objectDatabase, push.received, newCommit);
+            for (List<ObjectId> batch : Iterables.partition(push.received, BATCH_SIZE)) {
+                moveObjects(batch, index, objectDatabase);
             }
-            Optional<Ref> oldRef = geogit.command(RefParse.class).setName(refspec).call();
-            Optional<Ref> headRef = geogit.command(RefParse.class).setName(Ref.HEAD).call();
-            String refName = refspec;
-            if (oldRef.isPresent()) {
-                if (oldRef.get().getObjectId().equals(newCommit)) {
-                    return;
-                }
-                refName = oldRef.get().getName();
+        } catch (RuntimeException e) {
+            discard(geogit, push);
+            throw e;
+        }
+        synchronized (this) {
+            pendingPushes.remove(push);
+        }
+        for (List<ObjectId> batch : Iterables.partition(push.received, BATCH_SIZE)) {
+            index.deleteAll(batch.iterator());
+        }
+
+        Optional<Ref> oldRef = geogit.command(RefParse.class).setName(refspec).call();
+        Optional<Ref> headRef = geogit.command(RefParse.class).setName(Ref.HEAD).call();
+        String refName = refspec;
+        if (oldRef.isPresent()) {
+            if (oldRef.get().getObjectId().equals(newCommit)) {
+                return;
             }
-            if (headRef.isPresent() && headRef.get() instanceof SymRef) {
-                if (((SymRef) headRef.get()).getTarget().equals(refName)) {
-                    RevCommit commit = geogit.getRepository().getCommit(newCommit);
-                    geogit.command(UpdateRef.class).setName(Ref.WORK_HEAD)
-                            .setNewValue(commit.getTreeId()).call();
-                    geogit.command(UpdateRef.class).setName(Ref.STAGE_HEAD)
-                            .setNewValue(commit.getTreeId()).call();
-                }
+            refName = oldRef.get().getName();
+        }
+        if (headRef.isPresent() && headRef.get() instanceof SymRef) {
+            if (((SymRef) headRef.get()).getTarget().equals(refName)) {
+                RevCommit commit = geogit.getRepository().getCommit(newCommit);
+                geogit.command(UpdateRef.class).setName(Ref.WORK_HEAD)
+                        .setNewValue(commit.getTreeId()).call();
+                geogit.command(UpdateRef.class).setName(Ref.STAGE_HEAD)
+                        .setNewValue(commit.getTreeId()).call();
             }
+        }
 
-            geogit.command(UpdateRef.class).setName(refName).setNewValue(newCommit).call();
-        } else {
-            throw new RuntimeException("Tried to end a connection that didn't exist.");
+        geogit.command(UpdateRef.class).setName(refName).setNewValue(newCommit).call();
+    }
+
+    /**
+     * This is called when the push from the specified ip address is abandoned, removing the
+     * objects it left in the index database.
+     * 
+     * @param geogit the geogit of the local repository
+     * @param ipAddress the remote machine that was pushing objects
+     */
+    public void connectionFailed(GeoGIT geogit, String ipAddress) {
+        IncomingPush push;
+        synchronized (this) {
+            push = incomingData.remove(ipAddress);
         }
+        if (push != null) {
+            discard(geogit, push);
+        }
+    }
+
+    /**
+     * Determines whether there is a push in progress from the given address.
+     * 
+     * @param ipAddress the remote machine that may be pushing objects
+     * @return {@code true} if {@link #connectionBegin} was called for that address and the push
+     *         hasn't ended yet
+     */
+    public synchronized boolean isPushing(String ipAddress) {
+        return incomingData.containsKey(ipAddress);
     }
 
     /**
@@ -112,8 +211,14 @@ public class PushManager {
      *         {@code PushManager}
      */
     public boolean alreadyPushed(String ipAddress, ObjectId oid) {
-        if (incomingData.containsKey(ipAddress)) {
-            return incomingData.get(ipAddress).contains(oid);
+        IncomingPush push;
+        synchronized (this) {
+            push = incomingData.get(ipAddress);
+        }
+        if (push != null) {
+            synchronized (push) {
+                return push.received.contains(oid);
+            }
         }
         return false;
     }
@@ -126,11 +231,170 @@ public class PushManager {
      * @param oid the id of the object
      */
     public void addObject(String ipAddress, ObjectId oid) {
-        if (incomingData.containsKey(ipAddress)) {
-            incomingData.get(ipAddress).add(oid);
-        } else {
+        IncomingPush push = push(ipAddress);
+        synchronized (push) {
+            push.received.add(oid);
+        }
+    }
+
+    /**
+     * Saves a stream of {@link BinaryPackedObjects packed objects} pushed from the given address
+     * into the index database, in batches, and tracks them until the push ends.
+     * 
+     * @param geogit the geogit of the local repository
+     * @param ipAddress the remote machine that is pushing objects
+     * @param in the packed objects
+     */
+    public void ingest(GeoGIT geogit, String ipAddress, InputStream in) {
+        final IncomingPush push = push(ipAddress);
+        final BinaryPackedObjects unpacker = new BinaryPackedObjects(geogit.getRepository()
+                .getIndex().getDatabase());
+        unpacker.ingestAll(in, new BinaryPackedObjects.Callback<Void>() {
+            @Override
+            public Void callback(RevObject object, Void state) {
+                synchronized (push) {
+                    push.received.add(object.getId());
+                }
+                return null;
+            }
+        }, new BulkOpListener() {
+            @Override
+            public void inserted(RevObject object, @Nullable Integer storageSizeBytes) {
+                synchronized (push) {
+                    push.inserted.add(object.getId());
+                }
+            }
+        });
+    }
+
+    private synchronized IncomingPush push(String ipAddress) {
+        IncomingPush push = incomingData.get(ipAddress);
+        if (push == null) {
             throw new RuntimeException(
                     "Tried to push an object without first opening a connection.");
         }
+        return push;
+    }
+
+    /**
+     * Removes the objects the given push inserted in the index database, except the ones another
+     * pending push received too, since that one didn't insert them itself.
+     */
+    private void discard(GeoGIT geogit, IncomingPush push) {
+        ObjectDatabase index = geogit.getRepository().getIndex().getDatabase();
+        Set<ObjectId> inserted;
+        synchronized (push) {
+            inserted = new HashSet<ObjectId>(push.inserted);
+        }
+        synchronized (this) {
+            pendingPushes.remove(push);
+            for (IncomingPush other : pendingPushes) {
+                synchronized (other) {
+                    inserted.removeAll(other.received);
+                }
+            }
+        }
+        index.deleteAll(inserted.iterator());
+    }
+
+    /**
+     * Moves the objects in their stored form, without decoding them. Commits are the exception,
+     * they are saved with {@link ObjectDatabase#putAll(Iterator)} so they make it into the commit
+     * graph.
+     * 
+     * @throws IllegalStateException if any of the objects is missing, in which case none of them
+     *         is moved
+     */
+    private void moveObjects(List<ObjectId> ids, ObjectDatabase from, ObjectDatabase to) {
+        Set<ObjectId> missing = new HashSet<ObjectId>(ids);
+        List<ObjectId> commits = new ArrayList<ObjectId>();
+        List<Entry<ObjectId, byte[]>> others = new ArrayList<Entry<ObjectId, byte[]>>(ids.size());
+        Iterator<Entry<ObjectId, byte[]>> objects = from.getAllRaw(ids);
+        while (objects.hasNext()) {
+            Entry<ObjectId, byte[]> object = objects.next();
+            missing.remove(object.getKey());
+            if (FormatCommon.readType(object.getValue()) == TYPE.COMMIT) {
+                commits.add(object.getKey());
+            } else {
+                others.add(object);
+            }
+        }
+        Preconditions.checkState(missing.isEmpty(), "Push is missing object %s",
+                Iterables.getFirst(missing, null));
+        to.putAllRaw(others.iterator());
+        to.putAll(from.getAll(commits));
+    }
+
+    /**
+     * Checks that every object referenced by the pushed ones is either part of the push or already
+     * in the repository, reading the pushed objects back and looking up the rest in the repository
+     * in bulk.
+     * Pushed objects no longer in the index database, e.g. because a concurrent push discarded
+     * them, have to be in the repository as well.
+     */
+    private void verifyConnectivity(ObjectDatabase index, ObjectDatabase objectDatabase,
+            Set<ObjectId> received, ObjectId newCommit) {
+        Preconditions.checkState(
+                received.contains(newCommit) || objectDatabase.exists(newCommit),
+                "Push is missing commit %s", newCommit);
+        final Set<ObjectId> checked = new HashSet<ObjectId>();
+        final List<ObjectId> unchecked = new ArrayList<ObjectId>();
+        List<ObjectId> references = new ArrayList<ObjectId>();
+        Iterator<RevObject> objects = index.getAll(received, new BulkOpListener() {
+            @Override
+            public void notFound(ObjectId id) {
+                checked.add(id);
+                unchecked.add(id);
+            }
+        });
+        while (objects.hasNext()) {
+            RevObject object = objects.next();
+            switch (object.getType()) {
+            case COMMIT:
+                RevCommit commit = (RevCommit) object;
+                references.add(commit.getTreeId());
+                references.addAll(commit.getParentIds());
+                break;
+            case TREE:
+                RevTree tree = (RevTree) object;
+                if (tree.buckets().isPresent()) {
+                    for (Bucket bucket : tree.buckets().get().values()) {
+                        references.add(bucket.id());
+                    }
+                } else {
+                    Iterator<Node> children = tree.children();
+                    while (children.hasNext()) {
+                        Node node = children.next();
+                        references.add(node.getObjectId());
+                        if (node.getMetadataId().isPresent()) {
+                            references.add(node.getMetadataId().get());
+                        }
+                    }
+                }
+                break;
+            case TAG:
+                references.add(((RevTag) object).getCommitId());
+                break;
+            default:
+                break;
+            }
+            for (ObjectId id : references) {
+                if (!id.isNull() && !received.contains(id) && checked.add(id)) {
+                    unchecked.add(id);
+                }
+            }
+            references.clear();
+            if (unchecked.size() >= BATCH_SIZE) {
+                checkExist(objectDatabase, unchecked);
+                unchecked.clear();
+            }
+        }
+        checkExist(objectDatabase, unchecked);
+    }
+
+    private void checkExist(ObjectDatabase objectDatabase, List<ObjectId> ids) {
+        Set<ObjectId> missing = objectDatabase.missing(ids);
+        Preconditions.checkState(missing.isEmpty(), "Push is missing object %s",
+                Iterables.getFirst(missing, null));
     }
 }
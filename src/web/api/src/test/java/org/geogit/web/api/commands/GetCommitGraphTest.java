@@ -0,0 +1,194 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api.commands;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.RefParse;
+import org.geogit.api.porcelain.BranchCreateOp;
+import org.geogit.api.porcelain.CheckoutOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.api.porcelain.MergeOp;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.geogit.web.api.CommandContext;
+import org.geogit.web.api.CommandResponse;
+import org.geogit.web.api.CommandSpecException;
+import org.geogit.web.api.ResponseWriter;
+import org.junit.Test;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class GetCommitGraphTest extends RepositoryTestCase {
+
+    private static final Pattern COMMIT_ID = Pattern.compile("<commit><id>([0-9a-f]+)</id>");
+
+    private static final Pattern CURSOR = Pattern.compile("<cursor>([^<]+)</cursor>");
+
+    private List<String> history;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        for (int i = 0; i < 4; i++) {
+            geogit.command(CommitOp.class).setAllowEmpty(true).call();
+        }
+        history = Lists.newArrayList();
+        for (RevCommit commit : toList(geogit.command(LogOp.class).call())) {
+            history.add(commit.getId().toString());
+        }
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        String response = run(command(0, 2, null));
+        assertEquals(history.subList(0, 2), commitIds(response));
+        String cursor = cursor(response);
+        assertNotNull(cursor);
+
+        response = run(command(0, 2, cursor));
+        assertEquals(history.subList(2, 4), commitIds(response));
+        String next = cursor(response);
+        assertNotNull(next);
+        assertFalse(cursor.equals(next));
+
+        response = run(command(0, 2, next));
+        assertEquals(history.subList(4, 5), commitIds(response));
+        assertNull(cursor(response));
+    }
+
+    @Test
+    public void testCursorMatchesPage() throws Exception {
+        String cursor = cursor(run(command(0, 2, null)));
+        assertEquals(commitIds(run(command(1, 2, null))), commitIds(run(command(0, 2, cursor))));
+    }
+
+    @Test
+    public void testCursorIsUsedOnce() throws Exception {
+        String cursor = cursor(run(command(0, 2, null)));
+        run(command(0, 2, cursor));
+        try {
+            run(command(0, 2, cursor));
+            fail("expected CommandSpecException");
+        } catch (CommandSpecException e) {
+            assertTrue(e.getMessage().contains(cursor));
+        }
+    }
+
+    @Test
+    public void testCursorWithOtherParameters() throws Exception {
+        String cursor = cursor(run(command(0, 2, null)));
+        try {
+            run(command(0, 3, cursor));
+            fail("expected CommandSpecException");
+        } catch (CommandSpecException e) {
+            assertTrue(e.getMessage().contains(cursor));
+        }
+        GetCommitGraph command = command(0, 2, cursor);
+        command.setCommitId(history.get(1));
+        try {
+            run(command);
+            fail("expected CommandSpecException");
+        } catch (CommandSpecException e) {
+            assertTrue(e.getMessage().contains(cursor));
+        }
+        // the cursor is still valid with the parameters it was created with
+        assertEquals(history.subList(2, 4), commitIds(run(command(0, 2, cursor))));
+    }
+
+    @Test
+    public void testDepth() throws Exception {
+        GetCommitGraph command = command(0, 10, null);
+        command.setDepth(3);
+        String response = run(command);
+        assertEquals(history.subList(0, 3), commitIds(response));
+        assertNull(cursor(response));
+    }
+
+    @Test
+    public void testMergedHistoryIsNotRepeated() throws Exception {
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        insertAndAdd(points2);
+        geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        insertAndAdd(points3);
+        geogit.command(CommitOp.class).call();
+        Ref branch1 = geogit.command(RefParse.class).setName("branch1").call().get();
+        RevCommit merge = geogit.command(MergeOp.class)
+                .addCommit(Suppliers.ofInstance(branch1.getObjectId())).call().getMergeCommit();
+
+        List<String> ids = Lists.newArrayList();
+        GetCommitGraph command = command(0, 1, null);
+        command.setCommitId(merge.getId().toString());
+        String response = run(command);
+        ids.addAll(commitIds(response));
+        String cursor;
+        while ((cursor = cursor(response)) != null) {
+            command = command(0, 1, cursor);
+            command.setCommitId(merge.getId().toString());
+            response = run(command);
+            ids.addAll(commitIds(response));
+        }
+        assertEquals(history.size() + 3, ids.size());
+        assertEquals(ids.size(), Sets.newHashSet(ids).size());
+    }
+
+    private GetCommitGraph command(int page, int elementsPerPage, @Nullable String cursor) {
+        GetCommitGraph command = new GetCommitGraph();
+        command.setCommitId(history.get(0));
+        command.setPage(page);
+        command.setElementsPerPage(elementsPerPage);
+        command.setCursor(cursor);
+        return command;
+    }
+
+    private String run(GetCommitGraph command) throws Exception {
+        final CommandResponse[] response = new CommandResponse[1];
+        command.run(new CommandContext() {
+            @Override
+            public GeoGIT getGeoGIT() {
+                return geogit;
+            }
+
+            @Override
+            public void setResponseContent(CommandResponse responseContent) {
+                response[0] = responseContent;
+            }
+        });
+        StringWriter writer = new StringWriter();
+        XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+        response[0].write(new ResponseWriter(xml));
+        xml.flush();
+        return writer.toString();
+    }
+
+    private static List<String> commitIds(String response) {
+        List<String> ids = Lists.newArrayList();
+        Matcher matcher = COMMIT_ID.matcher(response);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    @Nullable
+    private static String cursor(String response) {
+        Matcher matcher = CURSOR.matcher(response);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
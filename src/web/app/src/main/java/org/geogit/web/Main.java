@@ -27,6 +27,8 @@ import org.geogit.web.api.repo.DepthResource;
 import org.geogit.web.api.repo.EndPush;
 import org.geogit.web.api.repo.FilteredChangesResource;
 import org.geogit.web.api.repo.ManifestResource;
+import org.geogit.web.api.repo.NegotiateResource;
+import org.geogit.web.api.repo.ObjectBatchResource;
 import org.geogit.web.api.repo.ObjectExistsResource;
 import org.geogit.web.api.repo.ObjectResource;
 import org.geogit.web.api.repo.ParentResource;
@@ -111,12 +113,14 @@ public class Main extends Application {
         router.attach("/manifest", ManifestResource.class);
         router.attach("/objects/{id}", new ObjectResource());
         router.attach("/batchobjects", BatchedObjectResource.class);
+        router.attach("/getobjects", ObjectBatchResource.class);
         router.attach("/sendobject", SendObjectResource.class);
         router.attach("/exists", ObjectExistsResource.class);
         router.attach("/beginpush", BeginPush.class);
         router.attach("/endpush", EndPush.class);
         router.attach("/getdepth", DepthResource.class);
         router.attach("/getparents", ParentResource.class);
+        router.attach("/negotiate", NegotiateResource.class);
         router.attach("/affectedfeatures", AffectedFeaturesResource.class);
         router.attach("/filteredchanges", FilteredChangesResource.class);
         router.attach("/applychanges", ApplyChangesResource.class);
@@ -9,11 +9,14 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
 import org.geogit.api.plumbing.CreateDeduplicator;
 import org.geogit.remote.BinaryPackedObjects;
+import org.geogit.remote.PackCache;
+import org.geogit.remote.PackEncoding;
 import org.geogit.repository.Repository;
 import org.geogit.storage.Deduplicator;
 import org.geogit.storage.memory.HeapDeduplicator;
@@ -38,6 +41,8 @@ public class BatchedObjectResource extends ServerResource {
 
             final List<ObjectId> want = new ArrayList<ObjectId>();
             final List<ObjectId> have = new ArrayList<ObjectId>();
+            boolean singleStream = false;
+            PackEncoding encoding = PackEncoding.IDENTITY;
 
             if (messageJson.isJsonObject()) {
                 final JsonObject message = messageJson.getAsJsonObject();
@@ -63,6 +68,18 @@ public class BatchedObjectResource extends ServerResource {
                         have.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
                     }
                 }
+                if (message.has("stream") && message.get("stream").isJsonPrimitive()) {
+                    singleStream = message.get("stream").getAsBoolean();
+                }
+                if (message.has("encodings") && message.get("encodings").isJsonArray()) {
+                    final List<String> encodings = new ArrayList<String>();
+                    for (final JsonElement e : message.get("encodings").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            encodings.add(e.getAsJsonPrimitive().getAsString());
+                        }
+                    }
+                    encoding = PackEncoding.negotiate(encodings);
+                }
             }
 
             final GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes()
@@ -70,8 +87,12 @@ public class BatchedObjectResource extends ServerResource {
             final Repository repository = ggit.getRepository();
             final Deduplicator deduplicator = ggit.command(CreateDeduplicator.class).call();
 
+            final PackCache cache = PackCache.forRepository(ggit);
+            final Map<String, String> refs = repository.getRefDatabase().getAll();
+
             return new BinaryPackedObjectsRepresentation(new BinaryPackedObjects(
-                    repository.getObjectDatabase()), want, have, deduplicator);
+                    repository.getObjectDatabase()), want, have, deduplicator, singleStream, encoding,
+                    cache, refs);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -88,22 +109,47 @@ public class BatchedObjectResource extends ServerResource {
 
 		private Deduplicator deduplicator;
 
+        private final boolean singleStream;
+
+        private final PackEncoding encoding;
+
+        private final PackCache cache;
+
+        private final Map<String, String> refs;
+
         public BinaryPackedObjectsRepresentation(BinaryPackedObjects packer, List<ObjectId> want,
-                List<ObjectId> have, Deduplicator deduplicator) {
-            super(PACKED_OBJECTS);
+                List<ObjectId> have, Deduplicator deduplicator, boolean singleStream,
+                PackEncoding encoding, PackCache cache, Map<String, String> refs) {
+            super(encoding == PackEncoding.IDENTITY ? PACKED_OBJECTS : new MediaType(encoding
+                    .mediaType()));
             this.want = want;
             this.have = have;
             this.packer = packer;
             this.deduplicator = deduplicator;
+            this.singleStream = singleStream;
+            this.encoding = encoding;
+            this.cache = cache;
+            this.refs = refs;
         }
 
         @Override
         public void write(OutputStream out) throws IOException {
-        	try {
-        		packer.write(out, want, have, false, deduplicator);
-        	} finally {
-        		deduplicator.release();
-        	}
+            try {
+                cache.write(out, want, have, singleStream, encoding, refs, new PackCache.Pack() {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        final OutputStream encoded = encoding.encode(out);
+                        if (singleStream) {
+                            packer.writeAll(encoded, want, have, false, deduplicator);
+                        } else {
+                            packer.write(encoded, want, have, false, deduplicator);
+                        }
+                        encoding.finish(encoded);
+                    }
+                });
+            } finally {
+                deduplicator.release();
+            }
         }
     }
 }
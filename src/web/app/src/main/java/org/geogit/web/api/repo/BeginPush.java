@@ -7,6 +7,7 @@ package org.geogit.web.api.repo;
 import java.io.IOException;
 import java.io.Writer;
 
+import org.geogit.api.GeoGIT;
 import org.geogit.web.api.commands.PushManager;
 import org.restlet.data.ClientInfo;
 import org.restlet.data.Form;
@@ -33,8 +34,9 @@ public class BeginPush extends ServerResource {
             // external network.
             // e.g.: ext.ern.al.IP.int.ern.al.IP
             String ipAddress = info.getAddress() + "." + options.getFirstValue("internalIp", "");
+            GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
             PushManager pushManager = PushManager.get();
-            pushManager.connectionBegin(ipAddress);
+            pushManager.connectionBegin(ggit, ipAddress);
             w.write("Push began for address: " + ipAddress);
             w.flush();
         }
@@ -0,0 +1,53 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api.repo;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.remote.CommitNegotiation;
+import org.geogit.web.api.commands.PushManager;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Answers the commit negotiation of a fetch or push in batches.
+ *
+ * @see CommitNegotiation
+ */
+public class NegotiateResource extends ServerResource {
+    @Post
+    public Representation negotiate(Representation entity) throws IOException {
+        final GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+
+        Form options = getRequest().getResourceRef().getQueryAsForm();
+        ClientInfo info = getRequest().getClientInfo();
+        // make a combined ip address to handle requests from multiple machines in the same
+        // external network.
+        // e.g.: ext.ern.al.IP.int.ern.al.IP
+        final String ipAddress = info.getAddress() + "."
+                + options.getFirstValue("internalIp", "");
+        final PushManager pushManager = PushManager.get();
+
+        StringWriter response = new StringWriter();
+        new CommitNegotiation(ggit.getRepository()).respond(entity.getReader(),
+                new Predicate<ObjectId>() {
+                    @Override
+                    public boolean apply(ObjectId id) {
+                        return pushManager.alreadyPushed(ipAddress, id);
+                    }
+                }, response);
+        return new StringRepresentation(response.toString(), MediaType.TEXT_PLAIN);
+    }
+}
@@ -0,0 +1,56 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.web.api.repo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.remote.BinaryPackedObjects;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Sends a set of objects, given by id, in a single response, so that clients don't need a request
+ * per object.
+ */
+public class ObjectBatchResource extends ServerResource {
+    @Post
+    public Representation getObjects(Representation entity) throws IOException {
+        final JsonElement messageJson = new JsonParser().parse(entity.getReader());
+
+        final List<ObjectId> ids = new ArrayList<ObjectId>();
+        if (messageJson.isJsonObject()) {
+            final JsonObject message = messageJson.getAsJsonObject();
+            if (message.has("objects") && message.get("objects").isJsonArray()) {
+                for (final JsonElement e : message.get("objects").getAsJsonArray()) {
+                    if (e.isJsonPrimitive()) {
+                        ids.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
+                    }
+                }
+            }
+        }
+
+        final GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+        final BinaryPackedObjects packer = new BinaryPackedObjects(ggit.getRepository()
+                .getObjectDatabase());
+        return new OutputRepresentation(MediaType.APPLICATION_OCTET_STREAM) {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                packer.writeObjects(out, ids);
+            }
+        };
+    }
+}
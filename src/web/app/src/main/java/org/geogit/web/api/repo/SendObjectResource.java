@@ -9,6 +9,10 @@ import java.io.InputStream;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.remote.BinaryPackedObjects;
+import org.geogit.remote.PackEncoding;
+import org.geogit.web.api.commands.PushManager;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
@@ -18,12 +22,27 @@ import org.restlet.resource.ServerResource;
 public class SendObjectResource extends ServerResource {
     @Post
     public Representation acceptObject(Representation entity) throws IOException {
-        final InputStream input = entity.getStream();
+        final MediaType mediaType = entity.getMediaType();
+        final PackEncoding encoding = PackEncoding.fromMediaType(mediaType == null ? null
+                : mediaType.getName());
+        final InputStream input = encoding.decode(entity.getStream());
         final GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
-        final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit.getRepository()
-                .getObjectDatabase());
 
-        unpacker.ingest(input);
+        Form options = getRequest().getResourceRef().getQueryAsForm();
+        ClientInfo info = getRequest().getClientInfo();
+        // make a combined ip address to handle requests from multiple machines in the same
+        // external network.
+        // e.g.: ext.ern.al.IP.int.ern.al.IP
+        String ipAddress = info.getAddress() + "." + options.getFirstValue("internalIp", "");
+        PushManager pushManager = PushManager.get();
+
+        if (pushManager.isPushing(ipAddress)) {
+            pushManager.ingest(ggit, ipAddress, input);
+        } else {
+            final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit.getRepository()
+                    .getObjectDatabase());
+            unpacker.ingest(input);
+        }
         return new StringRepresentation("Ingested", MediaType.TEXT_PLAIN);
     }
 }
@@ -20,6 +20,8 @@ import org.geogit.rest.repository.DepthResource;
 import org.geogit.rest.repository.EndPush;
 import org.geogit.rest.repository.FilteredChangesResource;
 import org.geogit.rest.repository.ManifestResource;
+import org.geogit.rest.repository.NegotiateResource;
+import org.geogit.rest.repository.ObjectBatchResource;
 import org.geogit.rest.repository.ObjectExistsResource;
 import org.geogit.rest.repository.ObjectFinder;
 import org.geogit.rest.repository.ParentResource;
@@ -106,12 +108,14 @@ public class GeogitDispatcher extends AbstractController {
         router.attach("/manifest", ManifestResource.class);
         router.attach("/objects/{id}", new ObjectFinder());
         router.attach("/batchobjects", new BatchedObjectResource());
+        router.attach("/getobjects", ObjectBatchResource.class);
         router.attach("/sendobject", SendObjectResource.class);
         router.attach("/exists", ObjectExistsResource.class);
         router.attach("/beginpush", BeginPush.class);
         router.attach("/endpush", EndPush.class);
         router.attach("/getdepth", DepthResource.class);
         router.attach("/getparents", ParentResource.class);
+        router.attach("/negotiate", NegotiateResource.class);
         router.attach("/affectedfeatures", AffectedFeaturesResource.class);
         router.attach("/filteredchanges", new FilteredChangesResource());
         router.attach("/applychanges", new ApplyChangesResource());
@@ -14,11 +14,14 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
 import org.geogit.api.plumbing.CreateDeduplicator;
 import org.geogit.remote.BinaryPackedObjects;
+import org.geogit.remote.PackCache;
+import org.geogit.remote.PackEncoding;
 import org.geogit.repository.Repository;
 import org.geogit.storage.Deduplicator;
 import org.geogit.storage.memory.HeapDeduplicator;
@@ -76,6 +79,8 @@ public class BatchedObjectResource extends Finder {
 
             final List<ObjectId> want = new ArrayList<ObjectId>();
             final List<ObjectId> have = new ArrayList<ObjectId>();
+            boolean singleStream = false;
+            PackEncoding encoding = PackEncoding.IDENTITY;
 
             if (messageJson.isJsonObject()) {
                 final JsonObject message = messageJson.getAsJsonObject();
@@ -101,6 +106,18 @@ public class BatchedObjectResource extends Finder {
                         have.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
                     }
                 }
+                if (message.has("stream") && message.get("stream").isJsonPrimitive()) {
+                    singleStream = message.get("stream").getAsBoolean();
+                }
+                if (message.has("encodings") && message.get("encodings").isJsonArray()) {
+                    final List<String> encodings = new ArrayList<String>();
+                    for (final JsonElement e : message.get("encodings").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            encodings.add(e.getAsJsonPrimitive().getAsString());
+                        }
+                    }
+                    encoding = PackEncoding.negotiate(encodings);
+                }
             }
 
             final GeoGIT ggit = getGeogit(getRequest()).get();
@@ -109,7 +126,10 @@ public class BatchedObjectResource extends Finder {
 
             BinaryPackedObjects packer = new BinaryPackedObjects(repository.getIndex()
                     .getDatabase());
-            getResponse().setEntity(new RevObjectBinaryRepresentation(packer, want, have, deduplicator));
+            PackCache cache = PackCache.forRepository(ggit);
+            Map<String, String> refs = repository.getRefDatabase().getAll();
+            getResponse().setEntity(new RevObjectBinaryRepresentation(packer, want, have,
+                    deduplicator, singleStream, encoding, cache, refs));
         }
     }
 
@@ -122,26 +142,54 @@ public class BatchedObjectResource extends Finder {
 
 		private Deduplicator deduplicator;
 
+        private final boolean singleStream;
+
+        private final PackEncoding encoding;
+
+        private final PackCache cache;
+
+        private final Map<String, String> refs;
+
         public RevObjectBinaryRepresentation( //
                 BinaryPackedObjects packer, //
                 List<ObjectId> want, //
                 List<ObjectId> have, //
-                Deduplicator deduplicator) //
+                Deduplicator deduplicator, //
+                boolean singleStream, //
+                PackEncoding encoding, //
+                PackCache cache, //
+                Map<String, String> refs) //
         {
-            super(MediaType.APPLICATION_OCTET_STREAM);
+            super(encoding == PackEncoding.IDENTITY ? MediaType.APPLICATION_OCTET_STREAM
+                    : new MediaType(encoding.mediaType()));
             this.packer = packer;
             this.want = want;
             this.have = have;
             this.deduplicator = deduplicator;
+            this.singleStream = singleStream;
+            this.encoding = encoding;
+            this.cache = cache;
+            this.refs = refs;
         }
 
         @Override
         public void write(OutputStream out) throws IOException {
-        	try {
-        		packer.write(out, want, have, false, deduplicator);
-        	} finally {
-        		deduplicator.release();
-        	}
+            try {
+                cache.write(out, want, have, singleStream, encoding, refs, new PackCache.Pack() {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        final OutputStream encoded = encoding.encode(out);
+                        if (singleStream) {
+                            packer.writeAll(encoded, want, have, false, deduplicator);
+                        } else {
+                            packer.write(encoded, want, have, false, deduplicator);
+                        }
+                        encoding.finish(encoded);
+                    }
+                });
+            } finally {
+                deduplicator.release();
+            }
         }
     }
 
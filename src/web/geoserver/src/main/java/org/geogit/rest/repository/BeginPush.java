@@ -5,10 +5,13 @@
 
 package org.geogit.rest.repository;
 
+import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
+
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 
+import org.geogit.api.GeoGIT;
 import org.geogit.web.api.commands.PushManager;
 import org.restlet.Context;
 import org.restlet.data.ClientInfo;
@@ -19,6 +22,9 @@ import org.restlet.data.Response;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
 /**
  *
  */
@@ -47,8 +53,10 @@ public class BeginPush extends Resource {
             // external network.
             // e.g.: ext.ern.al.IP.int.ern.al.IP
             String ipAddress = info.getAddress() + "." + options.getFirstValue("internalIp", "");
+            Optional<GeoGIT> ggit = getGeogit(getRequest());
+            Preconditions.checkState(ggit.isPresent());
             PushManager pushManager = PushManager.get();
-            pushManager.connectionBegin(ipAddress);
+            pushManager.connectionBegin(ggit.get(), ipAddress);
             w.write("Push began for address: " + ipAddress);
             w.flush();
         }
@@ -69,6 +69,7 @@ public class EndPush extends Resource {
             if (currentRef.isPresent() && !currentRef.get().getObjectId().equals(ObjectId.NULL)
                     && !currentRef.get().getObjectId().equals(originalRefValue)) {
                 // Abort push
+                PushManager.get().connectionFailed(ggit.get(), ipAddress);
                 w.write("Push aborted for address: " + ipAddress
                         + ". The ref was changed during push.");
                 w.flush();
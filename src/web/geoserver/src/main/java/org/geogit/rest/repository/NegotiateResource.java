@@ -0,0 +1,76 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geogit.rest.repository;
+
+import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.remote.CommitNegotiation;
+import org.geogit.web.api.commands.PushManager;
+import org.geoserver.rest.RestletException;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Resource;
+import org.restlet.resource.StringRepresentation;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.io.Closeables;
+
+/**
+ * Answers the commit negotiation of a fetch or push in batches.
+ * 
+ * @see CommitNegotiation
+ */
+public class NegotiateResource extends Resource {
+
+    @Override
+    public boolean allowPost() {
+        return true;
+    }
+
+    public void post(Representation entity) {
+        Reader body = null;
+        try {
+            body = new InputStreamReader(entity.getStream(), Charsets.UTF_8);
+            final GeoGIT ggit = getGeogit(getRequest()).get();
+
+            Form options = getRequest().getResourceRef().getQueryAsForm();
+            ClientInfo info = getRequest().getClientInfo();
+            // make a combined ip address to handle requests from multiple machines in the same
+            // external network.
+            // e.g.: ext.ern.al.IP.int.ern.al.IP
+            final String ipAddress = info.getAddress() + "."
+                    + options.getFirstValue("internalIp", "");
+            final PushManager pushManager = PushManager.get();
+
+            StringWriter response = new StringWriter();
+            new CommitNegotiation(ggit.getRepository()).respond(body,
+                    new Predicate<ObjectId>() {
+                        @Override
+                        public boolean apply(ObjectId id) {
+                            return pushManager.alreadyPushed(ipAddress, id);
+                        }
+                    }, response);
+            getResponse().setEntity(
+                    new StringRepresentation(response.toString(), MediaType.TEXT_PLAIN));
+        } catch (IOException e) {
+            throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
+        } finally {
+            if (body != null)
+                Closeables.closeQuietly(body);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+
+package org.geogit.rest.repository;
+
+import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geogit.api.GeoGIT;
+import org.geogit.api.ObjectId;
+import org.geogit.remote.BinaryPackedObjects;
+import org.geoserver.rest.RestletException;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Resource;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Sends a set of objects, given by id, in a single response, so that clients don't need a request
+ * per object.
+ */
+public class ObjectBatchResource extends Resource {
+
+    @Override
+    public boolean allowPost() {
+        return true;
+    }
+
+    @Override
+    public void post(Representation entity) {
+        final List<ObjectId> ids = new ArrayList<ObjectId>();
+        Reader body = null;
+        try {
+            body = new InputStreamReader(entity.getStream(), Charsets.UTF_8);
+            final JsonElement messageJson = new JsonParser().parse(body);
+            if (messageJson.isJsonObject()) {
+                final JsonObject message = messageJson.getAsJsonObject();
+                if (message.has("objects") && message.get("objects").isJsonArray()) {
+                    for (final JsonElement e : message.get("objects").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            ids.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
+        } finally {
+            if (body != null)
+                Closeables.closeQuietly(body);
+        }
+
+        final GeoGIT ggit = getGeogit(getRequest()).get();
+        final BinaryPackedObjects packer = new BinaryPackedObjects(ggit.getRepository()
+                .getObjectDatabase());
+        getResponse().setEntity(new OutputRepresentation(MediaType.APPLICATION_OCTET_STREAM) {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                packer.writeObjects(out, ids);
+            }
+        });
+    }
+}
@@ -12,7 +12,12 @@ import java.io.InputStream;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.remote.BinaryPackedObjects;
+import org.geogit.remote.PackEncoding;
+import org.geogit.web.api.commands.PushManager;
 import org.geoserver.rest.RestletException;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
@@ -33,11 +38,28 @@ public class SendObjectResource extends Resource {
         InputStream input = null;
 
         try {
-            input = getRequest().getEntity().getStream();
+            final MediaType mediaType = getRequest().getEntity().getMediaType();
+            final PackEncoding encoding = PackEncoding.fromMediaType(mediaType == null ? null
+                    : mediaType.getName());
+            input = encoding.decode(getRequest().getEntity().getStream());
             final GeoGIT ggit = getGeogit(getRequest()).get();
-            final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit.getRepository()
-                    .getObjectDatabase());
-            unpacker.ingest(input);
+
+            Form options = getRequest().getResourceRef().getQueryAsForm();
+            ClientInfo info = getRequest().getClientInfo();
+            // make a combined ip address to handle requests from multiple machines in the same
+            // external network.
+            // e.g.: ext.ern.al.IP.int.ern.al.IP
+            String ipAddress = info.getAddress() + "."
+                    + options.getFirstValue("internalIp", "");
+            PushManager pushManager = PushManager.get();
+
+            if (pushManager.isPushing(ipAddress)) {
+                pushManager.ingest(ggit, ipAddress, input);
+            } else {
+                final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit
+                        .getRepository().getObjectDatabase());
+                unpacker.ingest(input);
+            }
 
         } catch (IOException e) {
             throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);